@@ -241,6 +241,7 @@ CTX.INPUT['executors'] = """
 
 CTX.INPUT['expressions'] = """
  abstractexpression.cpp
+ batchpredicate.cpp
  expressionutil.cpp
  tupleaddressexpression.cpp
 """
@@ -278,6 +279,7 @@ CTX.INPUT['indexes'] = """
 """
 
 CTX.INPUT['storage'] = """
+ ColumnarProjection.cpp
  constraintutil.cpp
  CopyOnWriteContext.cpp
  CopyOnWriteIterator.cpp
@@ -295,6 +297,8 @@ CTX.INPUT['storage'] = """
  TableStats.cpp
  tableutil.cpp
  temptable.cpp
+ TempTableArena.cpp
+ TempTableArenaStats.cpp
  TupleStreamWrapper.cpp
 """
 
@@ -356,6 +360,7 @@ CTX.TESTS['indexes'] = """
 """
 
 CTX.TESTS['storage'] = """
+ columnar_projection_test
  CopyOnWriteTest
  constraint_test
  filter_test
@@ -365,9 +370,15 @@ CTX.TESTS['storage'] = """
  table_and_indexes_test
  table_test
  tabletuple_elt_test
+ temptable_arena_test
  TupleStreamWrapper_test
 """
 
+# micro-benchmarks are only built and run by the benchmark target
+CTX.BENCHMARKS['storage'] = """
+ wide_scan_benchmark
+"""
+
 # these are incomplete and out of date. need to be replaced
 # CTX.TESTS['expressions'] = """expserialize_test expression_test"""
 
@@ -411,6 +422,8 @@ if retval != 0:
 retval = 0
 if CTX.TARGET == "TEST":
     retval = runTests(CTX)
+elif CTX.TARGET == "BENCHMARK":
+    retval = runBenchmarks(CTX)
 elif CTX.TARGET == "VOLTDBIPC":
     retval = buildIPC(CTX)
 
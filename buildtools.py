@@ -21,6 +21,7 @@ class BuildContext:
         self.INPUT = {}
         self.THIRD_PARTY_INPUT = {}
         self.TESTS = {}
+        self.BENCHMARKS = {}
         self.PLATFORM = os.uname()[0]
         self.PLATFORM_VERSION = os.uname()[2] 
         self.LEVEL = "DEBUG"
@@ -32,7 +33,7 @@ class BuildContext:
         for arg in [x.strip().upper() for x in args]:
             if arg in ["DEBUG", "RELEASE", "MEMCHECK", "MEMCHECK_NOFREELIST"]:
                 self.LEVEL = arg
-            if arg in ["BUILD", "CLEAN", "TEST", "VOLTRUN", "VOLTDBIPC"]:
+            if arg in ["BUILD", "CLEAN", "TEST", "BENCHMARK", "VOLTRUN", "VOLTDBIPC"]:
                 self.TARGET = arg
             if arg in ["COVERAGE"]:
                 self.COVERAGE = True
@@ -162,6 +163,12 @@ def buildMakefile(CTX):
         input = CTX.TESTS[dir].split()
         tests += [TEST_PREFIX + "/" + dir + "/" + x for x in input]
 
+    # benchmarks are built just like tests but they are not part of the test target
+    benchmarks = []
+    for dir in CTX.BENCHMARKS.keys():
+        input = CTX.BENCHMARKS[dir].split()
+        benchmarks += [TEST_PREFIX + "/" + dir + "/" + x for x in input]
+
     makefile = file(OUTPUT_PREFIX + "/makefile", 'w')
     makefile.write("CPPFLAGS += %s\n" % (MAKECPPFLAGS))
     makefile.write("LDFLAGS += %s\n" % (CTX.LDFLAGS))
@@ -184,7 +191,7 @@ def buildMakefile(CTX):
     makefile.write(".PHONY: main\n")
     if CTX.TARGET == "VOLTRUN":
         makefile.write("main: prod/voltrun\n")
-    elif CTX.TARGET == "TEST":
+    elif CTX.TARGET == "TEST" or CTX.TARGET == "BENCHMARK":
         makefile.write("main: ")
     else:
         makefile.write("main: nativelibs/%s.$(JNIEXT)\n" % baselibname)
@@ -232,6 +239,12 @@ def buildMakefile(CTX):
     if CTX.LEVEL == "MEMCHECK_NOFREELIST":
         makefile.write("prod/voltdbipc")
     makefile.write("\n\n")
+    makefile.write(".PHONY: benchmark\n")
+    makefile.write("benchmark: ")
+    for benchmark in benchmarks:
+        binname, objectname, sourcename = namesForTestCode(benchmark)
+        makefile.write(binname + " ")
+    makefile.write("\n\n")
     makefile.write("objects/volt.a: " + " ".join(jni_objects) + " objects/harness.o objects/execution/IPCTopend.o\n")
     makefile.write("\t$(AR) $(ARFLAGS) $@ $?\n")
     makefile.write("objects/harness.o: ../../" + TEST_PREFIX + "/harness.cpp\n")
@@ -246,7 +259,7 @@ def buildMakefile(CTX):
         allsources += [(filename, LOCALCPPFLAGS, IGNORE_SYS_PREFIXES)]
     for filename in third_party_input_paths:
         allsources += [(filename, LOCALCPPFLAGS, IGNORE_SYS_PREFIXES)]
-    for test in tests:
+    for test in tests + benchmarks:
         binname, objectname, sourcename = namesForTestCode(test)
         allsources += [(sourcename, LOCALTESTCPPFLAGS, IGNORE_SYS_PREFIXES)]
     deps = getAllDependencies(allsources, 1)
@@ -281,7 +294,7 @@ def buildMakefile(CTX):
         makefile.write("\t$(CCACHE) $(COMPILE.cpp) %s -o $@ %s\n" % (CTX.EXTRAFLAGS, filename))
     makefile.write("\n")
 
-    for test in tests:
+    for test in tests + benchmarks:
         binname, objectname, sourcename = namesForTestCode(test)
 
         # build the object file
@@ -376,6 +389,35 @@ def runTests(CTX):
 
     return failures
 
+def runBenchmarks(CTX):
+    failedBenchmarks = []
+
+    retval = os.system("make --directory=%s benchmark -j4" % (CTX.OUTPUT_PREFIX))
+    if retval != 0:
+        return -1
+    TEST_PREFIX = CTX.TEST_PREFIX.rstrip("/")
+    OUTPUT_PREFIX = CTX.OUTPUT_PREFIX.rstrip("/")
+
+    benchmarks = []
+    for dir in CTX.BENCHMARKS.keys():
+        input = CTX.BENCHMARKS[dir].split()
+        benchmarks += [TEST_PREFIX + "/" + dir + "/" + x for x in input]
+    # never run these under valgrind, it would make the numbers meaningless
+    for benchmark in benchmarks:
+        binname, objectname, sourcename = namesForTestCode(benchmark)
+        targetpath = OUTPUT_PREFIX + "/" + binname
+        sys.stdout.flush()
+        retval = os.system(targetpath)
+        if retval != 0:
+            failedBenchmarks += [binname]
+    print "==============================================================================="
+    print "BENCHMARKS COMPLETE (RAN: %d, FAILED: %d)" % (len(benchmarks), len(failedBenchmarks))
+    for benchmark in failedBenchmarks:
+        print "BENCHMARK: " + benchmark + " in DIRECTORY: " + CTX.OUTPUT_PREFIX + " FAILED"
+    print "==============================================================================="
+
+    return len(failedBenchmarks)
+
 def getGCCVersion():
     vinfo = output = Popen(["gcc", "-v"], stderr=PIPE).communicate()[1]
     vinfo = vinfo.strip().split("\n")
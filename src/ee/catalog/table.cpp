@@ -46,6 +46,7 @@ Table::Table(Catalog *catalog, CatalogType *parent, const string &path, const st
     m_fields["materializer"] = value;
     m_fields["systable"] = value;
     m_fields["mapreduce"] = value;
+    m_fields["columnar"] = value;
 }
 
 void Table::update() {
@@ -55,6 +56,7 @@ void Table::update() {
     m_materializer = m_fields["materializer"].typeValue;
     m_systable = m_fields["systable"].intValue;
     m_mapreduce = m_fields["mapreduce"].intValue;
+    m_columnar = m_fields["columnar"].intValue;
 }
 
 CatalogType * Table::addChild(const std::string &collectionName, const std::string &childName) {
@@ -149,3 +151,7 @@ bool Table::mapreduce() const {
     return m_mapreduce;
 }
 
+bool Table::columnar() const {
+    return m_columnar;
+}
+
@@ -52,6 +52,7 @@ protected:
     CatalogType* m_materializer;
     bool m_systable;
     bool m_mapreduce;
+    bool m_columnar;
 
     virtual void update();
 
@@ -80,6 +81,8 @@ public:
     bool systable() const;
     /** GETTER: Is this table a MapReduce transaction table? */
     bool mapreduce() const;
+    /** GETTER: Is this table stored in a read-optimized columnar layout? */
+    bool columnar() const;
 };
 
 } // namespace catalog
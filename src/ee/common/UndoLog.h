@@ -66,6 +66,21 @@ namespace voltdb
             return undoQuantum;
         }
 
+        /*
+         * Return the undo quantum for the specified token, generating
+         * it if nobody has asked for it yet. Undo quanta are generated
+         * lazily on the first write of a transaction, so this may be
+         * called any number of times with the same token.
+         */
+        inline UndoQuantum* getOrGenerateUndoQuantum(int64_t undoToken)
+        {
+            if (m_undoQuantums.size() > 0 &&
+                m_undoQuantums.back()->getUndoToken() == undoToken) {
+                return m_undoQuantums.back();
+            }
+            return generateUndoQuantum(undoToken);
+        }
+
         /*
          * Undo all undoable actions from the latest undo quantum back
          * until the undo quantum with the specified undo token.
@@ -74,6 +89,17 @@ namespace voltdb
             //std::cout << "Undoing token " << undoToken
             //         << " lastUndo: " << m_lastUndoToken
             //         << " lastRelease: " << m_lastReleaseToken << std::endl;
+            if (undoToken > m_lastUndoToken) {
+                // a procedure may abort before it sends work to the EE
+                // (informing the EE of its undo token. For example, it
+                // may have invalid parameter values or, possibly, aborts
+                // in user java code before executing any SQL.  Since undo
+                // quanta are generated lazily, the same is true for a
+                // transaction that aborts before it wrote anything. Just
+                // return. There is no work to do here.
+                return;
+            }
+
             // This ensures that undo is only ever called after
             // generateUndoToken has been called
             assert(m_lastReleaseToken < m_lastUndoToken);
@@ -83,15 +109,6 @@ namespace voltdb
             // exist; this will just result in all undo quanta being undone.
             assert(undoToken >= m_lastReleaseToken);
 
-            if (undoToken > m_lastUndoToken) {
-                // a procedure may abort before it sends work to the EE
-                // (informing the EE of its undo token. For example, it
-                // may have invalid parameter values or, possibly, aborts
-                // in user java code before executing any SQL.  Just
-                // return. There is no work to do here.
-                return;
-            }
-
             m_lastUndoToken = undoToken - 1;
             while (m_undoQuantums.size() > 0) {
                 UndoQuantum *undoQuantum = m_undoQuantums.back();
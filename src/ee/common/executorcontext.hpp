@@ -20,6 +20,7 @@
 
 #include "Topend.h"
 #include "common/UndoQuantum.h"
+#include "common/UndoLog.h"
 
 namespace voltdb {
 
@@ -49,6 +50,7 @@ class ExecutorContext {
                     std::string hostname,
                     CatalogId hostId) :
         m_topEnd(topend), m_undoQuantum(undoQuantum),
+        m_undoLog(NULL), m_undoToken(0),
         m_txnId(0),
         m_siteId(siteId), m_partitionId(partitionId),
         m_hostname(hostname), m_hostId(hostId),
@@ -74,6 +76,22 @@ class ExecutorContext {
                                int64_t lastCommittedTxnId)
     {
         m_undoQuantum = undoQuantum;
+        m_undoLog = NULL;
+        m_txnId = txnId;
+        m_lastCommittedTxnId = lastCommittedTxnId;
+    }
+
+    // same as above, except that the undo quantum for the given token is
+    // only generated in the undo log when somebody asks for it. This way
+    // a read-only transaction never touches the undo log at all
+    void setupForPlanFragments(UndoLog *undoLog,
+                               int64_t undoToken,
+                               int64_t txnId,
+                               int64_t lastCommittedTxnId)
+    {
+        m_undoQuantum = NULL;
+        m_undoLog = undoLog;
+        m_undoToken = undoToken;
         m_txnId = txnId;
         m_lastCommittedTxnId = lastCommittedTxnId;
     }
@@ -94,9 +112,14 @@ class ExecutorContext {
     // for test (VoltDBEngine::getExecutorContext())
     void setupForPlanFragments(UndoQuantum *undoQuantum) {
         m_undoQuantum = undoQuantum;
+        m_undoLog = NULL;
     }
 
     UndoQuantum *getCurrentUndoQuantum() {
+        if (m_undoQuantum == NULL && m_undoLog != NULL) {
+            m_undoQuantum = m_undoLog->getOrGenerateUndoQuantum(m_undoToken);
+            m_undoLog = NULL;
+        }
         return m_undoQuantum;
     }
 
@@ -127,6 +150,8 @@ class ExecutorContext {
   private:
     Topend *m_topEnd;
     UndoQuantum *m_undoQuantum;
+    UndoLog *m_undoLog;
+    int64_t m_undoToken;
     int64_t m_txnId;
 
   public:
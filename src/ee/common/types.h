@@ -303,7 +303,9 @@ enum IndexLookupType {
 // Statistics Selector Types
 // ------------------------------------------------------------------
 enum StatisticsSelectorType {
-    STATISTICS_SELECTOR_TYPE_TABLE
+    STATISTICS_SELECTOR_TYPE_TABLE = 0,
+    // Must match the ordinal of SysProcSelector.TEMPTABLE on the Java side
+    STATISTICS_SELECTOR_TYPE_TEMPTABLE = 6
 };
 
 // ------------------------------------------------------------------
@@ -109,11 +109,13 @@ const int64_t AD_HOC_FRAG_ID = -1;
 
 VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
     : m_currentUndoQuantum(NULL),
+      m_currentUndoToken(INT64_MIN),
       m_staticParams(MAX_PARAM_COUNT),
       m_currentOutputDepId(-1),
       m_currentInputDepId(-1),
       m_isELEnabled(false),
       m_stringPool(16777216, 2),
+      m_tempTableArenaStats(&m_tempTableArena),
       m_numResultDependencies(0),
       m_logManager(logProxy),
       m_templateSingleLongTable(NULL),
@@ -168,6 +170,11 @@ bool VoltDBEngine::initialize(
                                             0, /* epoch not yet known */
                                             hostname,
                                             hostId);
+
+    m_tempTableArenaStats.configure("Temp Table Arena stats",
+                                    hostId, hostname, siteId, m_partitionId, 0);
+    getStatsManager().registerStatsSource(STATISTICS_SELECTOR_TYPE_TEMPTABLE,
+                                          0, &m_tempTableArenaStats);
     return true;
 }
 
@@ -289,9 +296,7 @@ int VoltDBEngine::executeQuery(int64_t planfragmentId,
     std::size_t numResultDependenciesCountOffset = m_resultOutput.reserveBytes(4);
 
     // configure the execution context.
-    m_executorContext->setupForPlanFragments(getCurrentUndoQuantum(),
-                                             txnId,
-                                             lastCommittedTxnId);
+    setupExecutorContext(txnId, lastCommittedTxnId);
 
    // count the number of plan fragments executed
     ++m_pfCount;
@@ -589,9 +594,7 @@ bool VoltDBEngine::loadTable(bool allowELT, int32_t tableId,
                              ReferenceSerializeInput &serializeIn,
                              int64_t txnId, int64_t lastCommittedTxnId)
 {
-    m_executorContext->setupForPlanFragments(getCurrentUndoQuantum(),
-                                             txnId,
-                                             lastCommittedTxnId);
+    setupExecutorContext(txnId, lastCommittedTxnId);
 
     Table* ret = getTable(tableId);
     if (ret == NULL) {
@@ -769,6 +772,12 @@ bool VoltDBEngine::initPlanNode(const int64_t fragId, AbstractPlanNode* node, in
         return false;
     }
 
+    // Let the output table recycle its blocks through our arena
+    TempTable *output_table = dynamic_cast<TempTable*>(node->getOutputTable());
+    if (output_table != NULL) {
+        output_table->setBlockArena(&m_tempTableArena);
+    }
+
     return true;
 }
 
@@ -977,6 +986,13 @@ bool VoltDBEngine::initTable(const int32_t databaseId,
                                                          isTableExportOnly(m_database, table_id));
     }
     assert(table != NULL);
+    if (catalogTable->columnar()) {
+        PersistentTable *persistentTable = dynamic_cast<PersistentTable*>(table);
+        if (persistentTable != NULL) {
+            VOLT_DEBUG("Enabling columnar projection for table '%s'", catalogTable->name().c_str());
+            persistentTable->enableColumnarProjection();
+        }
+    }
     getStatsManager().registerStatsSource(STATISTICS_SELECTOR_TYPE_TABLE,
                                           table_id, table->getTableStats());
     m_tables[table_id] = table;
@@ -1189,6 +1205,14 @@ int VoltDBEngine::getStats(int selector, int locators[], int numLocators,
                 locatorIds, interval, now);
 
             break;
+        case STATISTICS_SELECTOR_TYPE_TEMPTABLE:
+            // There is only one arena per engine, so the locators don't matter
+            locatorIds.clear();
+            locatorIds.push_back(0);
+            resultTable = m_statsManager.getStats(
+                (voltdb::StatisticsSelectorType) selector,
+                locatorIds, interval, now);
+            break;
         default:
             char message[256];
             sprintf(message, "getStats() called with an unrecognized selector"
@@ -1213,6 +1237,24 @@ int VoltDBEngine::getStats(int selector, int locators[], int numLocators,
     }
 }
 
+/*
+ * Configure the ExecutorContext for a new batch of work. Unless we are still
+ * using the dummy quantum, the undo quantum is handed to the context lazily
+ * so that it is only generated when the work actually modifies a table.
+ */
+void VoltDBEngine::setupExecutorContext(int64_t txnId, int64_t lastCommittedTxnId) {
+    if (m_currentUndoQuantum != NULL || m_currentUndoToken == INT64_MIN) {
+        m_executorContext->setupForPlanFragments(m_currentUndoQuantum,
+                                                 txnId,
+                                                 lastCommittedTxnId);
+    } else {
+        m_executorContext->setupForPlanFragments(&m_undoLog,
+                                                 m_currentUndoToken,
+                                                 txnId,
+                                                 lastCommittedTxnId);
+    }
+}
+
 /*
  * Exists to transition pre-existing unit test cases.
  */
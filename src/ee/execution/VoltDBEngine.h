@@ -64,6 +64,8 @@
 #include "common/Topend.h"
 #include "common/debuglog.h"
 #include "storage/DefaultTupleSerializer.h"
+#include "storage/TempTableArena.h"
+#include "storage/TempTableArenaStats.h"
 #include "logging/LogManager.h"
 #include "logging/LogProxy.h"
 #include "logging/StdoutLogProxy.h"
@@ -113,10 +115,12 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         /** Constructor for test code: this does not enable JNI callbacks. */
         VoltDBEngine() :
           m_currentUndoQuantum(NULL),
+          m_currentUndoToken(INT64_MIN),
           m_staticParams(MAX_PARAM_COUNT),
           m_currentOutputDepId(-1),
           m_currentInputDepId(-1),
           m_isELEnabled(false),
+          m_tempTableArenaStats(&m_tempTableArena),
           m_numResultDependencies(0),
           m_logManager(new StdoutLogProxy()), m_templateSingleLongTable(NULL), m_topend(NULL)
         {
@@ -287,32 +291,48 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         inline Pool* getStringPool() { return &m_stringPool; }
 
+        /** Arena that the plan fragments' TempTables get their blocks from */
+        inline TempTableArena* getTempTableArena() { return &m_tempTableArena; }
+
         inline LogManager* getLogManager() {
             return &m_logManager;
         }
 
         inline void setUndoToken(int64_t nextUndoToken) {
-            if (nextUndoToken == INT64_MAX) { return; }
+            if (nextUndoToken == INT64_MAX) {
+                // Undo logging is disabled for this batch. The frontend may not have
+                // released the tokens of the txns that committed before it yet, so we
+                // can't leave their quantum as the current one or it would end up
+                // with this batch's undo actions. Switch back to the dummy quantum.
+                if (m_currentUndoQuantum == NULL || !m_currentUndoQuantum->isDummy()) {
+                    m_currentUndoQuantum = new DummyUndoQuantum();
+                }
+                m_currentUndoToken = INT64_MIN;
+                return;
+            }
             if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->isDummy()) {
                 //std::cout << "Deleting dummy undo quantum " << std::endl;
                 delete m_currentUndoQuantum;
                 m_currentUndoQuantum = NULL;
             }
-            if (m_currentUndoQuantum != NULL) {
-                assert(nextUndoToken >= m_currentUndoQuantum->getUndoToken());
-                if (m_currentUndoQuantum->getUndoToken() == nextUndoToken) {
+            if (m_currentUndoToken != INT64_MIN) {
+                assert(nextUndoToken >= m_currentUndoToken);
+                if (m_currentUndoToken == nextUndoToken) {
                     return;
                 }
             }
-            m_currentUndoQuantum = m_undoLog.generateUndoQuantum(nextUndoToken);
+            // The UndoQuantum for this token is not generated until the
+            // first write asks for it (see getCurrentUndoQuantum())
+            m_currentUndoQuantum = NULL;
+            m_currentUndoToken = nextUndoToken;
         }
 
         inline void releaseUndoToken(int64_t undoToken) {
-            if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->isDummy()) {
-                return;
-            }
-            if (m_currentUndoQuantum != NULL && m_currentUndoQuantum->getUndoToken() == undoToken) {
+            // We still have to release the quanta of earlier txns even if the
+            // last batch was executed with the dummy quantum
+            if (m_currentUndoToken != INT64_MIN && m_currentUndoToken <= undoToken) {
                 m_currentUndoQuantum = NULL;
+                m_currentUndoToken = INT64_MIN;
             }
             VOLT_TRACE("Committing Buffer Token %ld at partition %d", undoToken, m_partitionId);
             m_undoLog.release(undoToken);
@@ -324,9 +344,19 @@ class __attribute__((visibility("default"))) VoltDBEngine {
             VOLT_TRACE("Undoing Buffer Token %ld at partition %d", undoToken, m_partitionId);
             m_undoLog.undo(undoToken);
             m_currentUndoQuantum = NULL;
+            m_currentUndoToken = INT64_MIN;
         }
 
-        inline voltdb::UndoQuantum* getCurrentUndoQuantum() { return m_currentUndoQuantum; }
+        /**
+         * Returns the UndoQuantum for the current undo token, generating it
+         * in the UndoLog if this is the first time that it was asked for
+         */
+        inline voltdb::UndoQuantum* getCurrentUndoQuantum() {
+            if (m_currentUndoQuantum == NULL && m_currentUndoToken != INT64_MIN) {
+                m_currentUndoQuantum = m_undoLog.getOrGenerateUndoQuantum(m_currentUndoToken);
+            }
+            return m_currentUndoQuantum;
+        }
 
         inline Topend* getTopend() { return m_topend; }
 
@@ -383,6 +413,7 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         bool initPlanNode(const int64_t fragId, AbstractPlanNode* node, int* tempTableMemoryInBytes);
         bool initCluster(const catalog::Cluster *catalogCluster);
         bool initMaterializedViews();
+        void setupExecutorContext(int64_t txnId, int64_t lastCommittedTxnId);
 
         void printReport();
 
@@ -398,6 +429,8 @@ class __attribute__((visibility("default"))) VoltDBEngine {
 
         voltdb::UndoLog m_undoLog;
         voltdb::UndoQuantum *m_currentUndoQuantum;
+        /** INT64_MIN if there is no current undo token */
+        int64_t m_currentUndoToken;
 
         // -------------------------------------------------
         // Data Members
@@ -473,6 +506,13 @@ class __attribute__((visibility("default"))) VoltDBEngine {
          */
         Pool m_stringPool;
 
+        /*
+         * Blocks for the output TempTables of all of the plan fragments. The blocks that
+         * one fragment gives back when its tables are cleared are reused by the next one.
+         */
+        TempTableArena m_tempTableArena;
+        TempTableArenaStats m_tempTableArenaStats;
+
         /*
          * When executing a plan fragment this is set to the number of result dependencies
          * that have been serialized into the m_resultOutput
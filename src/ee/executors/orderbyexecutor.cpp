@@ -52,6 +52,7 @@
 #include "common/FatalException.hpp"
 #include "plannodes/orderbynode.h"
 #include "plannodes/limitnode.h"
+#include "plannodes/receivenode.h"
 #include "storage/table.h"
 #include "storage/temptable.h"
 #include "storage/tableiterator.h"
@@ -117,6 +118,11 @@ OrderByExecutor::p_init(AbstractPlanNode* abstract_node,
         dynamic_cast<LimitPlanNode*>(node->
                                      getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
 
+    // If our child is a ReceivePlanNode that merges already-sorted
+    // dependencies, then there is no reason for us to sort them again
+    ReceivePlanNode* receive_node = dynamic_cast<ReceivePlanNode*>(child_node);
+    input_sorted = (receive_node != NULL && receive_node->isMergeReceive());
+
     return true;
 }
 
@@ -202,8 +208,10 @@ OrderByExecutor::p_execute(const NValueArray &params)
     }
     VOLT_TRACE("\n***** Input Table PreSort:\n '%s'",
                input_table->debug().c_str());
-    sort(xs.begin(), xs.end(), TupleComparer(node->getSortColumns(),
-                                             node->getSortDirections()));
+    if (input_sorted == false) {
+        sort(xs.begin(), xs.end(), TupleComparer(node->getSortColumns(),
+                                                 node->getSortDirections()));
+    }
 
     int tuple_ctr = 0;
     for (vector<TableTuple>::iterator it = xs.begin(); it != xs.end(); it++)
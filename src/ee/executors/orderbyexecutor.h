@@ -62,7 +62,8 @@ namespace voltdb {
     class OrderByExecutor : public AbstractExecutor {
     public:
         OrderByExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node), limit_node(NULL)
+            : AbstractExecutor(engine, abstract_node), limit_node(NULL),
+              input_sorted(false)
             { }
         ~OrderByExecutor();
 
@@ -73,6 +74,8 @@ namespace voltdb {
 
     private:
         LimitPlanNode *limit_node;
+        /** True if our input is a sorted-merge ReceivePlanNode */
+        bool input_sorted;
     };
 
 }
@@ -48,14 +48,60 @@
 #include "common/common.h"
 #include "common/tabletuple.h"
 #include "plannodes/receivenode.h"
+#include "plannodes/orderbynode.h"
+#include "plannodes/limitnode.h"
 #include "execution/VoltDBEngine.h"
 #include "storage/table.h"
 #include "storage/tablefactory.h"
 #include "storage/tableiterator.h"
 #include "storage/tableutil.h"
 
+#include <algorithm>
+
 namespace voltdb {
 
+/**
+ * Merge cursor over one already-sorted input dependency
+ */
+struct MergeCursor {
+    TableIterator* iterator;
+    TableTuple tuple;
+};
+
+/**
+ * Orders MergeCursors so that std::*_heap keeps the cursor with the
+ * smallest current tuple (according to the sort keys) at the front
+ */
+class MergeCursorComparer
+{
+public:
+    MergeCursorComparer(const std::vector<int>& keys,
+                        const std::vector<SortDirectionType>& dirs)
+        : m_keys(keys), m_dirs(dirs), m_keyCount(keys.size())
+    {
+        assert(keys.size() == dirs.size());
+    }
+
+    bool operator()(const MergeCursor& ca, const MergeCursor& cb)
+    {
+        for (size_t i = 0; i < m_keyCount; ++i)
+        {
+            int k = m_keys[i];
+            int cmp = ca.tuple.getNValue(k).compare(cb.tuple.getNValue(k));
+            if (m_dirs[i] == SORT_DIRECTION_TYPE_DESC) cmp = -cmp;
+            // std::*_heap is a max-heap, so invert to pop the smallest first
+            if (cmp > 0) return true;
+            if (cmp < 0) return false;
+        }
+        return false;
+    }
+
+private:
+    const std::vector<int>& m_keys;
+    const std::vector<SortDirectionType>& m_dirs;
+    size_t m_keyCount;
+};
+
 bool ReceiveExecutor::p_init(AbstractPlanNode *abstract_node,
                              const catalog::Database* catalog_db,
                              int* tempTableMemoryInBytes) {
@@ -84,6 +130,46 @@ bool ReceiveExecutor::p_init(AbstractPlanNode *abstract_node,
     node->setOutputTable(TableFactory::getTempTable(node->databaseId(), "temp", schema, columnNames, tempTableMemoryInBytes));
 
     delete[] columnNames;
+
+    //
+    // OPTIMIZATION: SORTED MERGE
+    // The planner marks us if each partition already sorted its output using
+    // the same keys as the OrderBy that sits on top of us. We resolve those
+    // keys against our own output columns here. If anything does not line up,
+    // then we just fall back to concatenating the dependencies.
+    //
+    m_tempTableMemoryInBytes = tempTableMemoryInBytes;
+    if (node->isMergeReceive() && (node->getParents().size() != 1 ||
+        node->getParents()[0]->getPlanNodeType() != PLAN_NODE_TYPE_ORDERBY)) {
+        node->setMergeReceive(false);
+    }
+    else if (node->isMergeReceive()) {
+        OrderByPlanNode* orderby_node = dynamic_cast<OrderByPlanNode*>(node->getParents()[0]);
+        assert(orderby_node);
+        m_mergeReceive = true;
+        for (int ii = 0; ii < orderby_node->getSortColumnGuids().size(); ii++) {
+            int index = node->getColumnIndexFromGuid(orderby_node->getSortColumnGuids()[ii], catalog_db);
+            if (index == -1) {
+                VOLT_DEBUG("Unable to find sort column guid %d in ReceivePlanNode. "
+                           "Disabling sorted merge", orderby_node->getSortColumnGuids()[ii]);
+                m_mergeReceive = false;
+                break;
+            }
+            m_mergeKeys.push_back(index);
+        }
+        m_mergeDirs = orderby_node->getSortDirections();
+        if (m_mergeKeys.size() != m_mergeDirs.size()) m_mergeReceive = false;
+
+        // Pick up the limit either inlined in the OrderBy or directly above it
+        m_limitNode = dynamic_cast<LimitPlanNode*>(orderby_node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+        if (m_limitNode == NULL && orderby_node->getParents().size() == 1) {
+            m_limitNode = dynamic_cast<LimitPlanNode*>(orderby_node->getParents()[0]);
+        }
+        // Let the OrderBy above us know whether it still needs to sort
+        node->setMergeReceive(m_mergeReceive);
+        VOLT_TRACE("Sorted merge enabled=%d for %s [limit=%s]", m_mergeReceive,
+                   node->debug().c_str(), (m_limitNode ? "true" : "false"));
+    }
     return true;
 }
 
@@ -97,6 +183,9 @@ bool ReceiveExecutor::p_execute(const NValueArray &params) {
 
     // todo: should pass the transaction's string pool through
     // as the underlying table loader would use it.
+    if (m_mergeReceive) {
+        return p_executeMerge(params, output_table);
+    }
     do {
         loadedDeps =
         engine->loadNextDependency(output_table);
@@ -105,7 +194,83 @@ bool ReceiveExecutor::p_execute(const NValueArray &params) {
     return true;
 }
 
+bool ReceiveExecutor::p_executeMerge(const NValueArray &params, Table* output_table) {
+    //
+    // Load every dependency into its own table. We keep these tables around
+    // between invocations so that we only pay for allocating them once.
+    //
+    size_t num_inputs = 0;
+    while (true) {
+        if (num_inputs == m_inputTables.size()) {
+            m_inputTables.push_back(TableFactory::getCopiedTempTable(output_table->databaseId(),
+                                                                     output_table->name(),
+                                                                     output_table,
+                                                                     m_tempTableMemoryInBytes));
+        }
+        if (engine->loadNextDependency(m_inputTables[num_inputs]) <= 0) break;
+        num_inputs++;
+    } // WHILE
+
+    int limit = -1;
+    int offset = -1;
+    if (m_limitNode != NULL) {
+        m_limitNode->getLimitAndOffsetByReference(params, limit, offset);
+        // The LIMIT above us still has to skip past the offset
+        if (limit >= 0 && offset > 0) limit += offset;
+    }
+
+    std::vector<MergeCursor> heap;
+    heap.reserve(num_inputs);
+    for (size_t ii = 0; ii < num_inputs; ii++) {
+        MergeCursor cursor;
+        cursor.iterator = new TableIterator(m_inputTables[ii]);
+        cursor.tuple = TableTuple(m_inputTables[ii]->schema());
+        if (cursor.iterator->next(cursor.tuple)) {
+            heap.push_back(cursor);
+        } else {
+            delete cursor.iterator;
+        }
+    } // FOR
+    MergeCursorComparer comparer(m_mergeKeys, m_mergeDirs);
+    std::make_heap(heap.begin(), heap.end(), comparer);
+
+    bool success = true;
+    int tuple_ctr = 0;
+    while (heap.empty() == false && (limit < 0 || tuple_ctr < limit)) {
+        std::pop_heap(heap.begin(), heap.end(), comparer);
+        MergeCursor& cursor = heap.back();
+        if (!output_table->insertTuple(cursor.tuple)) {
+            VOLT_ERROR("Failed to insert merged tuple into output table '%s'",
+                       output_table->name().c_str());
+            success = false;
+            break;
+        }
+        tuple_ctr++;
+        if (cursor.iterator->next(cursor.tuple)) {
+            std::push_heap(heap.begin(), heap.end(), comparer);
+        } else {
+            delete cursor.iterator;
+            heap.pop_back();
+        }
+    } // WHILE
+    VOLT_TRACE("Merged %d tuples from %d sorted dependencies [limit=%d]",
+               tuple_ctr, (int)num_inputs, limit);
+
+    // Release the cursors and clear out the inputs. The output table only has
+    // shallow copies, but the uninlined values live in the engine's string pool
+    for (size_t ii = 0; ii < heap.size(); ii++) {
+        delete heap[ii].iterator;
+    }
+    for (size_t ii = 0; ii < num_inputs; ii++) {
+        m_inputTables[ii]->deleteAllTuples(false);
+    }
+    return success;
+}
+
 ReceiveExecutor::~ReceiveExecutor() {
+    for (size_t ii = 0; ii < m_inputTables.size(); ii++) {
+        delete m_inputTables[ii];
+    }
 }
 
 }
@@ -50,11 +50,14 @@
 #include "common/valuevector.h"
 #include "executors/abstractexecutor.h"
 #include <iostream>
+#include <vector>
 
 namespace voltdb {
 
 class UndoLog;
 class ReadWriteSet;
+class LimitPlanNode;
+class Table;
 
 /**
  *
@@ -65,6 +68,9 @@ class ReceiveExecutor : public AbstractExecutor {
             : AbstractExecutor(engine, abstract_node)
     {
         this->engine = engine;
+        m_mergeReceive = false;
+        m_limitNode = NULL;
+        m_tempTableMemoryInBytes = NULL;
     }
         ~ReceiveExecutor();
         bool needsPostExecuteClear() { return true; }
@@ -72,7 +78,22 @@ class ReceiveExecutor : public AbstractExecutor {
         bool p_init(AbstractPlanNode*, const catalog::Database* catalog_db, int* tempTableMemoryInBytes);
         bool p_execute(const NValueArray &params);
     private:
+        bool p_executeMerge(const NValueArray &params, Table* output_table);
+
         VoltDBEngine *engine;
+
+        //
+        // Sorted-merge mode
+        // If every input dependency is already sorted on our parent's keys,
+        // we load each one into its own table and merge them into the output
+        // table, stopping once we have enough tuples to satisfy the limit
+        //
+        bool m_mergeReceive;
+        std::vector<int> m_mergeKeys;
+        std::vector<SortDirectionType> m_mergeDirs;
+        LimitPlanNode* m_limitNode;
+        std::vector<Table*> m_inputTables;
+        int* m_tempTableMemoryInBytes;
 };
 
 }
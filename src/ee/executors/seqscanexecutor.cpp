@@ -43,6 +43,7 @@
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+#include <algorithm>
 #include <iostream>
 #include "seqscanexecutor.h"
 #include "common/debuglog.h"
@@ -50,10 +51,13 @@
 #include "common/tabletuple.h"
 #include "common/FatalException.hpp"
 #include "expressions/abstractexpression.h"
+#include "expressions/batchpredicate.h"
 #include "plannodes/seqscannode.h"
 #include "plannodes/projectionnode.h"
 #include "plannodes/limitnode.h"
 #include "storage/table.h"
+#include "storage/persistenttable.h"
+#include "storage/ColumnarProjection.h"
 #include "storage/temptable.h"
 #include "storage/tablefactory.h"
 #include "storage/tableiterator.h"
@@ -113,9 +117,23 @@ bool SeqScanExecutor::p_init(AbstractPlanNode *abstract_node,
                     tempTableMemoryInBytes));
         }
     }
+
+    //
+    // OPTIMIZATION: BATCH PREDICATE
+    // Evaluate our predicate over batches of tuples so that simple column
+    // comparisons can be done without going through eval() for every tuple
+    //
+    if (node->getPredicate() != NULL) {
+        m_batchPredicate = new BatchPredicate(node->getPredicate(),
+                                              node->getTargetTable()->schema());
+    }
     return true;
 }
 
+SeqScanExecutor::~SeqScanExecutor() {
+    delete m_batchPredicate;
+}
+
 bool SeqScanExecutor::needsOutputTableClear() {
     // clear the temporary output table only when it has a predicate.
     // if it doesn't have a predicate, it's the original persistent table
@@ -203,17 +221,63 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                        predicate->debug(true).c_str());
         }
 
+        //
+        // OPTIMIZATION: COLUMNAR PROJECTION
+        // If the target table keeps a columnar copy of itself, then we will
+        // walk the projection's rows so that the predicate only has to
+        // read the arrays for the columns that it references
+        //
+        ColumnarProjection *columns = NULL;
+        if (m_batchPredicate != NULL) {
+            PersistentTable *persistent_table = dynamic_cast<PersistentTable*>(target_table);
+            if (persistent_table != NULL) columns = persistent_table->columnarProjection();
+            if (columns != NULL) columns->refresh();
+            m_batchPredicate->bind(columns);
+            VOLT_TRACE("%s", m_batchPredicate->debug().c_str());
+        }
+
+        //
+        // Fill up a batch of tuples from the table, then use our
+        // BatchPredicate to figure out which ones qualify
+        //
+        char* batch[BatchPredicate::BATCH_SIZE];
+        int selected[BatchPredicate::BATCH_SIZE];
         int tuple_ctr = 0;
-        while (iterator.next(tuple))
+        int64_t row_ctr = 0;
+        bool done = false;
+        while (done == false)
         {
-            VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
-                       tuple.debug(target_table->name()).c_str(), tuple_ctr,
-                       (int)target_table->activeTupleCount());
-            //
-            // For each tuple we need to evaluate it against our predicate
-            //
-            if (predicate == NULL || predicate->eval(&tuple, NULL).isTrue())
+            int batch_size = 0;
+            int num_selected = 0;
+            if (columns != NULL) {
+                const int64_t remaining = columns->getRowCount() - row_ctr;
+                batch_size = (int)std::min<int64_t>(remaining, BatchPredicate::BATCH_SIZE);
+                if (batch_size == 0) break;
+                num_selected = m_batchPredicate->filter(columns, row_ctr, batch_size, selected);
+                for (int ii = 0; ii < num_selected; ii++) {
+                    batch[selected[ii]] = columns->getTupleAddress(row_ctr + selected[ii]);
+                }
+                row_ctr += batch_size;
+            } else {
+                while (batch_size < BatchPredicate::BATCH_SIZE && iterator.next(tuple)) {
+                    VOLT_TRACE("INPUT TUPLE: %s, %d/%d\n",
+                               tuple.debug(target_table->name()).c_str(), tuple_ctr,
+                               (int)target_table->activeTupleCount());
+                    batch[batch_size++] = tuple.address();
+                }
+                if (batch_size == 0) break;
+
+                num_selected = batch_size;
+                if (m_batchPredicate != NULL) {
+                    num_selected = m_batchPredicate->filter(batch, batch_size, selected);
+                } else {
+                    for (int ii = 0; ii < batch_size; ii++) selected[ii] = ii;
+                }
+            }
+
+            for (int ii = 0; ii < num_selected; ii++)
             {
+                tuple.move(batch[selected[ii]]);
                 //
                 // Nested Projection
                 // Project (or replace) values from input tuple
@@ -253,6 +317,7 @@ bool SeqScanExecutor::p_execute(const NValueArray &params) {
                 ++tuple_ctr;
                 // Check whether we have gone past our limit
                 if (limit >= 0 && tuple_ctr >= limit) {
+                    done = true;
                     break;
                 }
             }
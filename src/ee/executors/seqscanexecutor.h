@@ -54,17 +54,23 @@ namespace voltdb
 {
     class UndoLog;
     class ReadWriteSet;
+    class BatchPredicate;
 
     class SeqScanExecutor : public AbstractExecutor {
     public:
         SeqScanExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node)
-            : AbstractExecutor(engine, abstract_node)
+            : AbstractExecutor(engine, abstract_node), m_batchPredicate(NULL)
         {}
+        ~SeqScanExecutor();
     protected:
         bool p_init(AbstractPlanNode* abstract_node,
                     const catalog::Database* catalog_db, int* tempTableMemoryInBytes);
         bool p_execute(const NValueArray& params);
         bool needsOutputTableClear();
+
+    private:
+        /** Evaluates our predicate a batch of tuples at a time */
+        BatchPredicate* m_batchPredicate;
     };
 }
 
@@ -0,0 +1,389 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "batchpredicate.h"
+#include "common/debuglog.h"
+#include "common/NValue.hpp"
+#include "common/ValuePeeker.hpp"
+#include "common/TupleSchema.h"
+#include "expressions/expressionutil.h"
+#include "expressions/tuplevalueexpression.h"
+#include "storage/ColumnarProjection.h"
+
+#include <sstream>
+
+namespace voltdb {
+
+// ------------------------------------------------------------------
+// TYPE-SPECIALIZED COMPARISONS
+// ------------------------------------------------------------------
+
+struct BatchCmpEq  { template <typename V> static inline bool test(V l, V r) { return l == r; } };
+struct BatchCmpNe  { template <typename V> static inline bool test(V l, V r) { return l != r; } };
+struct BatchCmpLt  { template <typename V> static inline bool test(V l, V r) { return l < r; } };
+struct BatchCmpGt  { template <typename V> static inline bool test(V l, V r) { return l > r; } };
+struct BatchCmpLte { template <typename V> static inline bool test(V l, V r) { return l <= r; } };
+struct BatchCmpGte { template <typename V> static inline bool test(V l, V r) { return l >= r; } };
+
+/**
+ * Reads a column value directly out of the row-major tuple storage
+ */
+struct BatchRowReader {
+    char **tuples;
+    uint32_t offset;
+    template <typename T> inline T get(int idx) const {
+        return *reinterpret_cast<const T*>(tuples[idx] + TUPLE_HEADER_SIZE + offset);
+    }
+};
+
+/**
+ * Reads a column value out of a contiguous ColumnarProjection array
+ */
+struct BatchColumnReader {
+    const char *data;
+    int64_t firstRow;
+    template <typename T> inline T get(int idx) const {
+        return reinterpret_cast<const T*>(data)[firstRow + idx];
+    }
+};
+
+/**
+ * Integer columns are widened to int64_t the same way that
+ * NValue::compareAnyIntegerValue() does it, including mapping the
+ * type's NULL marker to INT64_NULL
+ */
+template <typename T, typename C, typename R>
+static inline int filterIntegerColumn(const R &reader, int *selected, int count,
+                                      T nullValue, int64_t value) {
+    int found = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const int idx = selected[ii];
+        const T raw = reader.template get<T>(idx);
+        const int64_t column = (raw == nullValue ? INT64_NULL : static_cast<int64_t>(raw));
+        selected[found] = idx;
+        found += C::test(column, value);
+    } // FOR
+    return (found);
+}
+
+template <typename C, typename R>
+static inline int filterDoubleColumn(const R &reader, int *selected, int count, double value) {
+    int found = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const int idx = selected[ii];
+        const double column = reader.template get<double>(idx);
+        selected[found] = idx;
+        found += C::test(column, value);
+    } // FOR
+    return (found);
+}
+
+template <typename C, typename R>
+static inline int filterColumn(ValueType type, const R &reader, int *selected, int count,
+                               int64_t intValue, double doubleValue) {
+    switch (type) {
+        case VALUE_TYPE_TINYINT:
+            return filterIntegerColumn<int8_t, C>(reader, selected, count, INT8_NULL, intValue);
+        case VALUE_TYPE_SMALLINT:
+            return filterIntegerColumn<int16_t, C>(reader, selected, count, INT16_NULL, intValue);
+        case VALUE_TYPE_INTEGER:
+            return filterIntegerColumn<int32_t, C>(reader, selected, count, INT32_NULL, intValue);
+        case VALUE_TYPE_BIGINT:
+        case VALUE_TYPE_TIMESTAMP:
+            return filterIntegerColumn<int64_t, C>(reader, selected, count, INT64_NULL, intValue);
+        case VALUE_TYPE_DOUBLE:
+            return filterDoubleColumn<C>(reader, selected, count, doubleValue);
+        case VALUE_TYPE_VARCHAR:
+            // Dictionary codes are never negative, so the NULL marker never matches
+            return filterIntegerColumn<int32_t, C>(reader, selected, count, INT32_NULL, intValue);
+        default:
+            throwFatalException("Unexpected column type '%d' in vectorized predicate", type);
+    }
+    return (0);
+}
+
+template <typename R>
+static inline int filterComparison(ExpressionType cmp, ValueType type, const R &reader,
+                                   int *selected, int count, int64_t intValue, double doubleValue) {
+    switch (cmp) {
+        case EXPRESSION_TYPE_COMPARE_EQUAL:
+            return filterColumn<BatchCmpEq>(type, reader, selected, count, intValue, doubleValue);
+        case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+            return filterColumn<BatchCmpNe>(type, reader, selected, count, intValue, doubleValue);
+        case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+            return filterColumn<BatchCmpLt>(type, reader, selected, count, intValue, doubleValue);
+        case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+            return filterColumn<BatchCmpGt>(type, reader, selected, count, intValue, doubleValue);
+        case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+            return filterColumn<BatchCmpLte>(type, reader, selected, count, intValue, doubleValue);
+        case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+            return filterColumn<BatchCmpGte>(type, reader, selected, count, intValue, doubleValue);
+        default:
+            throwFatalException("Unexpected comparison '%d' in vectorized predicate", cmp);
+    }
+    return (0);
+}
+
+static inline bool isIntegerType(ValueType type) {
+    return (type == VALUE_TYPE_TINYINT || type == VALUE_TYPE_SMALLINT ||
+            type == VALUE_TYPE_INTEGER || type == VALUE_TYPE_BIGINT ||
+            type == VALUE_TYPE_TIMESTAMP);
+}
+
+static inline ExpressionType flipComparison(ExpressionType cmp) {
+    switch (cmp) {
+        case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+            return EXPRESSION_TYPE_COMPARE_GREATERTHAN;
+        case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+            return EXPRESSION_TYPE_COMPARE_LESSTHAN;
+        case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+            return EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO;
+        case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+            return EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO;
+        default:
+            return cmp;
+    }
+}
+
+// ------------------------------------------------------------------
+// BATCH PREDICATE
+// ------------------------------------------------------------------
+
+BatchPredicate::BatchPredicate(const AbstractExpression *predicate, const TupleSchema *schema)
+    : m_schema(schema), m_tuple(schema)
+{
+    assert(predicate);
+    assert(schema);
+    addTerms(predicate);
+    VOLT_TRACE("%s", debug().c_str());
+}
+
+void BatchPredicate::addTerms(const AbstractExpression *expr) {
+    if (expr->getExpressionType() == EXPRESSION_TYPE_CONJUNCTION_AND) {
+        addTerms(expr->getLeft());
+        addTerms(expr->getRight());
+        return;
+    }
+    Term term;
+    term.expr = expr;
+    term.vectorized = vectorize(term);
+    m_terms.push_back(term);
+}
+
+bool BatchPredicate::vectorize(Term &term) const {
+    switch (term.expr->getExpressionType()) {
+        case EXPRESSION_TYPE_COMPARE_EQUAL:
+        case EXPRESSION_TYPE_COMPARE_NOTEQUAL:
+        case EXPRESSION_TYPE_COMPARE_LESSTHAN:
+        case EXPRESSION_TYPE_COMPARE_GREATERTHAN:
+        case EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO:
+        case EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO:
+            break;
+        default:
+            return (false);
+    }
+    const AbstractExpression *left = term.expr->getLeft();
+    const AbstractExpression *right = term.expr->getRight();
+    if (left == NULL || right == NULL) return (false);
+
+    // Put the column on the left-hand side
+    term.cmp = term.expr->getExpressionType();
+    if (right->getExpressionType() == EXPRESSION_TYPE_VALUE_TUPLE) {
+        const AbstractExpression *temp = left;
+        left = right;
+        right = temp;
+        term.cmp = flipComparison(term.cmp);
+    }
+    if (left->getExpressionType() != EXPRESSION_TYPE_VALUE_TUPLE ||
+        (right->getExpressionType() != EXPRESSION_TYPE_VALUE_CONSTANT &&
+         right->getExpressionType() != EXPRESSION_TYPE_VALUE_PARAMETER)) {
+        return (false);
+    }
+    const TupleValueExpressionMarker *tve = dynamic_cast<const TupleValueExpressionMarker*>(left);
+    if (tve == NULL) return (false);
+
+    term.column = tve->getColumnId();
+    term.columnType = m_schema->columnType(term.column);
+    term.dictionary = false;
+    if (term.columnType == VALUE_TYPE_VARCHAR) {
+        // Strings can only be compared for (in)equality using the
+        // dictionary codes of a ColumnarProjection
+        if (term.cmp != EXPRESSION_TYPE_COMPARE_EQUAL &&
+            term.cmp != EXPRESSION_TYPE_COMPARE_NOTEQUAL) {
+            return (false);
+        }
+        term.dictionary = true;
+    } else if (isIntegerType(term.columnType) == false && term.columnType != VALUE_TYPE_DOUBLE) {
+        return (false);
+    }
+    term.offset = m_schema->columnOffset(term.column);
+    term.operand = right;
+    term.columnData = NULL;
+    term.intValue = 0;
+    term.doubleValue = 0;
+    return (true);
+}
+
+void BatchPredicate::bind(ColumnarProjection *columns) {
+    for (std::vector<Term>::iterator it = m_terms.begin(); it != m_terms.end(); it++) {
+        Term &term = *it;
+        // Parameters may have a different type for every invocation
+        term.vectorized = vectorize(term);
+        if (term.vectorized == false) continue;
+
+        // Only vectorize the comparison if it will behave exactly like
+        // NValue::compare() would. Everything else goes through eval()
+        const NValue value = term.operand->eval(NULL, NULL);
+        const ValueType valueType = ValuePeeker::peekValueType(value);
+        if (term.dictionary) {
+            if (columns != NULL && valueType == VALUE_TYPE_VARCHAR) {
+                term.columnData = columns->getColumnData(term.column);
+                term.intValue = columns->lookupCode(term.column, value);
+            } else {
+                term.vectorized = false;
+            }
+            continue;
+        }
+        if (isIntegerType(term.columnType) && isIntegerType(valueType)) {
+            term.intValue = ValuePeeker::peekAsBigInt(value);
+        } else if (term.columnType == VALUE_TYPE_DOUBLE && valueType == VALUE_TYPE_DOUBLE &&
+                   value.isNull() == false) {
+            term.doubleValue = ValuePeeker::peekDouble(value);
+        } else {
+            term.vectorized = false;
+            continue;
+        }
+        if (columns != NULL) {
+            term.columnData = columns->getColumnData(term.column);
+        }
+    } // FOR
+}
+
+int BatchPredicate::filterTerm(const Term &term, char **tuples, int *selected, int count) {
+    //
+    // Vectorized Comparison
+    //
+    if (term.vectorized) {
+        BatchRowReader reader;
+        reader.tuples = tuples;
+        reader.offset = term.offset;
+        return filterComparison(term.cmp, term.columnType, reader, selected, count,
+                                term.intValue, term.doubleValue);
+    }
+
+    //
+    // Tuple-at-a-time Fallback
+    //
+    int found = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const int idx = selected[ii];
+        m_tuple.move(tuples[idx]);
+        if (term.expr->eval(&m_tuple, NULL).isTrue()) {
+            selected[found++] = idx;
+        }
+    } // FOR
+    return (found);
+}
+
+int BatchPredicate::filterTerm(const Term &term, const ColumnarProjection *columns,
+                               int64_t firstRow, int *selected, int count) {
+    //
+    // Vectorized Comparison
+    // We only touch the array for the column that this term references
+    //
+    if (term.vectorized) {
+        assert(term.columnData != NULL);
+        BatchColumnReader reader;
+        reader.data = term.columnData;
+        reader.firstRow = firstRow;
+        return filterComparison(term.cmp, term.columnType, reader, selected, count,
+                                term.intValue, term.doubleValue);
+    }
+
+    //
+    // Tuple-at-a-time Fallback
+    //
+    int found = 0;
+    for (int ii = 0; ii < count; ii++) {
+        const int idx = selected[ii];
+        m_tuple.move(columns->getTupleAddress(firstRow + idx));
+        if (term.expr->eval(&m_tuple, NULL).isTrue()) {
+            selected[found++] = idx;
+        }
+    } // FOR
+    return (found);
+}
+
+int BatchPredicate::filter(char **tuples, int count, int *selected) {
+    assert(count <= BATCH_SIZE);
+    for (int ii = 0; ii < count; ii++) {
+        selected[ii] = ii;
+    } // FOR
+    for (std::vector<Term>::const_iterator it = m_terms.begin(); it != m_terms.end() && count > 0; it++) {
+        count = filterTerm(*it, tuples, selected, count);
+    } // FOR
+    return (count);
+}
+
+int BatchPredicate::filter(const ColumnarProjection *columns, int64_t firstRow, int count, int *selected) {
+    assert(count <= BATCH_SIZE);
+    assert(firstRow + count <= columns->getRowCount());
+    for (int ii = 0; ii < count; ii++) {
+        selected[ii] = ii;
+    } // FOR
+    for (std::vector<Term>::const_iterator it = m_terms.begin(); it != m_terms.end() && count > 0; it++) {
+        count = filterTerm(*it, columns, firstRow, selected, count);
+    } // FOR
+    return (count);
+}
+
+int BatchPredicate::getVectorizedTermCount() const {
+    int ctr = 0;
+    for (std::vector<Term>::const_iterator it = m_terms.begin(); it != m_terms.end(); it++) {
+        if (it->vectorized) ctr++;
+    } // FOR
+    return (ctr);
+}
+
+std::string BatchPredicate::debug() const {
+    std::ostringstream buffer;
+    buffer << "BatchPredicate[terms=" << m_terms.size()
+           << ", vectorized=" << getVectorizedTermCount() << "]\n";
+    for (int ii = 0; ii < m_terms.size(); ii++) {
+        const Term &term = m_terms[ii];
+        buffer << "  [" << ii << "] ";
+        if (term.vectorized) {
+            buffer << "column=" << term.column << " "
+                   << expressionutil::getTypeName(term.cmp) << " "
+                   << getTypeName(term.columnType)
+                   << (term.dictionary ? " dictionary" : "") << "\n";
+        } else {
+            buffer << "eval " << term.expr->debug();
+        }
+    } // FOR
+    return (buffer.str());
+}
+
+}
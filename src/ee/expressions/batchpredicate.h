@@ -0,0 +1,125 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREBATCHPREDICATE_H
+#define HSTOREBATCHPREDICATE_H
+
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "expressions/abstractexpression.h"
+
+#include <string>
+#include <vector>
+
+namespace voltdb {
+
+class ColumnarProjection;
+class TupleSchema;
+
+/**
+ * A BatchPredicate evaluates a scan predicate over a whole batch of tuples
+ * at a time instead of calling AbstractExpression::eval() for every tuple.
+ *
+ * The predicate is flattened into its AND-ed terms. Every term that compares
+ * a column of the scanned table against a constant or a parameter is
+ * evaluated with a type-specialized loop that reads the column directly out
+ * of the tuple storage without constructing NValues. All other terms fall back
+ * to the regular expression tree, but are still only applied to the tuples
+ * that survived the previous terms.
+ *
+ * If the scanned table has a ColumnarProjection, the vectorized terms read
+ * their column's contiguous array instead of the tuple storage, and equality
+ * comparisons on VARCHAR columns are evaluated against dictionary codes.
+ */
+class BatchPredicate {
+  public:
+    /** The maximum number of tuples that can be passed to filter() */
+    static const int BATCH_SIZE = 1024;
+
+    BatchPredicate(const AbstractExpression *predicate, const TupleSchema *schema);
+
+    /**
+     * Grab the current values of the constants and parameters that the
+     * vectorized terms compare against. This must be called after the
+     * predicate's substitute() and before filter(). If the tuples will come
+     * from a ColumnarProjection, it must be passed in here after it has been
+     * refreshed
+     */
+    void bind(ColumnarProjection *columns = NULL);
+
+    /**
+     * Evaluate the predicate for tuples[0..count). The offsets (into the
+     * tuples array) of the tuples that satisfy the predicate are written
+     * in order into selected. Returns the number of selected tuples
+     */
+    int filter(char **tuples, int count, int *selected);
+
+    /**
+     * Evaluate the predicate for the rows [firstRow..firstRow+count) of the
+     * projection that was passed to bind(). The offsets (relative to firstRow)
+     * of the rows that satisfy the predicate are written in order into selected.
+     * Returns the number of selected rows
+     */
+    int filter(const ColumnarProjection *columns, int64_t firstRow, int count, int *selected);
+
+    int getTermCount() const { return (int)m_terms.size(); }
+    int getVectorizedTermCount() const;
+
+    std::string debug() const;
+
+  private:
+    struct Term {
+        // The original expression for this term
+        const AbstractExpression *expr;
+        bool vectorized;
+
+        // Vectorized terms only
+        // The comparison is normalized so that the column is on the left
+        ExpressionType cmp;
+        int column;
+        uint32_t offset;
+        ValueType columnType;
+        // VARCHAR equality that compares dictionary codes
+        bool dictionary;
+        // The projection's column array (columnar scans only)
+        const char *columnData;
+        const AbstractExpression *operand;
+        int64_t intValue;
+        double doubleValue;
+    };
+
+    void addTerms(const AbstractExpression *expr);
+    bool vectorize(Term &term) const;
+    int filterTerm(const Term &term, char **tuples, int *selected, int count);
+    int filterTerm(const Term &term, const ColumnarProjection *columns,
+                   int64_t firstRow, int *selected, int count);
+
+    std::vector<Term> m_terms;
+    const TupleSchema *m_schema;
+    TableTuple m_tuple;
+};
+
+}
+#endif
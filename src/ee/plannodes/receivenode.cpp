@@ -53,12 +53,12 @@
 using namespace std;
 using namespace voltdb;
 
-ReceivePlanNode::ReceivePlanNode(CatalogId id) : AbstractPlanNode(id)
+ReceivePlanNode::ReceivePlanNode(CatalogId id) : AbstractPlanNode(id), m_mergeReceive(false)
 {
     // Do nothing
 }
 
-ReceivePlanNode::ReceivePlanNode() : AbstractPlanNode()
+ReceivePlanNode::ReceivePlanNode() : AbstractPlanNode(), m_mergeReceive(false)
 {
     // Do nothing
 }
@@ -129,10 +129,23 @@ ReceivePlanNode::getOutputColumnSizes() const
     return m_outputColumnSizes;
 }
 
+bool
+ReceivePlanNode::isMergeReceive() const
+{
+    return m_mergeReceive;
+}
+
+void
+ReceivePlanNode::setMergeReceive(bool mergeReceive)
+{
+    m_mergeReceive = mergeReceive;
+}
+
 string
 ReceivePlanNode::debugInfo(const string& spacer) const
 {
     ostringstream buffer;
+    buffer << spacer << "MergeReceive[" << (m_mergeReceive ? "true" : "false") << "]\n";
     buffer << spacer << "Incoming Table Columns["
            << m_outputColumnGuids.size() << "]:\n";
     for (int ctr = 0, cnt = (int)m_outputColumnGuids.size(); ctr < cnt; ctr++)
@@ -169,6 +182,14 @@ ReceivePlanNode::loadFromJSONObject(json_spirit::Object& obj,
         m_outputColumnTypes.push_back(outputColumn.getType());
         m_outputColumnSizes.push_back(outputColumn.getSize());
     }
+
+    // Older serialized plans will not have this flag
+    json_spirit::Value mergeReceiveValue =
+        json_spirit::find_value( obj, "MERGE_RECEIVE");
+    if (!(mergeReceiveValue == json_spirit::Value::null))
+    {
+        m_mergeReceive = mergeReceiveValue.get_bool();
+    }
 //     fprintf(stderr, "%s\n--------------------------------\n", this->debug(true).c_str());
 }
 
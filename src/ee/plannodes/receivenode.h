@@ -72,6 +72,14 @@ class ReceivePlanNode : public AbstractPlanNode
     std::vector<int32_t>& getOutputColumnSizes();
     const std::vector<int32_t>& getOutputColumnSizes() const;
 
+    /**
+     * Returns true if the planner determined that every input dependency
+     * arrives already sorted on the keys of this node's parent OrderBy, in
+     * which case the executor can merge them instead of concatenating them
+     */
+    bool isMergeReceive() const;
+    void setMergeReceive(bool mergeReceive);
+
     std::string debugInfo(const std::string& spacer) const;
 
     virtual int getColumnIndexFromGuid(int guid,
@@ -93,6 +101,8 @@ protected:
     std::vector<std::string> m_outputColumnNames;
     std::vector<ValueType> m_outputColumnTypes;
     std::vector<int32_t> m_outputColumnSizes;
+
+    bool m_mergeReceive;
 };
 
 }
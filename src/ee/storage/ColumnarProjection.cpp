@@ -0,0 +1,191 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "storage/ColumnarProjection.h"
+#include "common/debuglog.h"
+#include "common/tabletuple.h"
+#include "common/TupleSchema.h"
+#include "common/ValuePeeker.hpp"
+#include "storage/table.h"
+#include "storage/tableiterator.h"
+
+#include <cstring>
+#include <sstream>
+
+namespace voltdb {
+
+static int columnarWidth(ValueType type) {
+    switch (type) {
+        case VALUE_TYPE_TINYINT:
+            return (sizeof(int8_t));
+        case VALUE_TYPE_SMALLINT:
+            return (sizeof(int16_t));
+        case VALUE_TYPE_INTEGER:
+        case VALUE_TYPE_VARCHAR:
+            return (sizeof(int32_t));
+        case VALUE_TYPE_BIGINT:
+        case VALUE_TYPE_TIMESTAMP:
+            return (sizeof(int64_t));
+        case VALUE_TYPE_DOUBLE:
+            return (sizeof(double));
+        default:
+            return (0);
+    }
+}
+
+ColumnarProjection::ColumnarProjection(Table *table)
+    : m_table(table), m_schema(table->schema()), m_valid(false), m_refreshCount(0)
+{
+    assert(m_schema);
+    m_columns.resize(m_schema->columnCount());
+    for (int ii = 0; ii < m_columns.size(); ii++) {
+        m_columns[ii].materialized = false;
+        m_columns[ii].width = columnarWidth(m_schema->columnType(ii));
+    } // FOR
+}
+
+ColumnarProjection::~ColumnarProjection() {
+    // Nothing to do. We never own the tuples
+}
+
+void ColumnarProjection::refresh() {
+    if (m_valid) return;
+
+    m_tuples.clear();
+    m_tuples.reserve(m_table->activeTupleCount());
+    TableIterator iterator(m_table);
+    TableTuple tuple(m_schema);
+    while (iterator.next(tuple)) {
+        m_tuples.push_back(tuple.address());
+    } // WHILE
+    for (std::vector<Column>::iterator it = m_columns.begin(); it != m_columns.end(); it++) {
+        it->materialized = false;
+        it->data.clear();
+        it->dictionary.clear();
+    } // FOR
+    m_valid = true;
+    m_refreshCount++;
+    VOLT_DEBUG("Refreshed columnar projection of table '%s' [rows=%ld]",
+               m_table->name().c_str(), (long)m_tuples.size());
+}
+
+bool ColumnarProjection::isSupportedColumn(int column) const {
+    return (m_columns[column].width > 0);
+}
+
+bool ColumnarProjection::isDictionaryEncoded(int column) const {
+    return (m_schema->columnType(column) == VALUE_TYPE_VARCHAR);
+}
+
+const char* ColumnarProjection::getColumnData(int column) {
+    assert(m_valid);
+    assert(isSupportedColumn(column));
+    if (m_columns[column].materialized == false) materialize(column);
+    return (m_columns[column].data.empty() ? NULL : &m_columns[column].data[0]);
+}
+
+void ColumnarProjection::materialize(int column) {
+    Column &col = m_columns[column];
+    const size_t rows = m_tuples.size();
+    col.data.resize(rows * col.width);
+
+    if (isDictionaryEncoded(column)) {
+        int32_t *codes = reinterpret_cast<int32_t*>(col.data.empty() ? NULL : &col.data[0]);
+        TableTuple tuple(m_schema);
+        for (size_t ii = 0; ii < rows; ii++) {
+            tuple.move(m_tuples[ii]);
+            const NValue value = tuple.getNValue(column);
+            if (value.isNull()) {
+                codes[ii] = NULL_CODE;
+                continue;
+            }
+            const std::string key(reinterpret_cast<const char*>(ValuePeeker::peekObjectValue(value)),
+                                  ValuePeeker::peekObjectLength(value));
+            Dictionary::const_iterator it = col.dictionary.find(key);
+            if (it == col.dictionary.end()) {
+                // Codes start at one because zero is reserved for NULL
+                const int32_t code = (int32_t)col.dictionary.size() + 1;
+                it = col.dictionary.insert(std::make_pair(key, code)).first;
+            }
+            codes[ii] = it->second;
+        } // FOR
+    } else {
+        const uint32_t offset = TUPLE_HEADER_SIZE + m_schema->columnOffset(column);
+        char *dest = (col.data.empty() ? NULL : &col.data[0]);
+        for (size_t ii = 0; ii < rows; ii++) {
+            ::memcpy(dest + (ii * col.width), m_tuples[ii] + offset, col.width);
+        } // FOR
+    }
+    col.materialized = true;
+}
+
+int32_t ColumnarProjection::lookupCode(int column, const NValue &value) const {
+    assert(isDictionaryEncoded(column));
+    assert(m_columns[column].materialized);
+    if (value.isNull()) return (NULL_CODE);
+
+    const std::string key(reinterpret_cast<const char*>(ValuePeeker::peekObjectValue(value)),
+                          ValuePeeker::peekObjectLength(value));
+    Dictionary::const_iterator it = m_columns[column].dictionary.find(key);
+    return (it != m_columns[column].dictionary.end() ? it->second : MISSING_CODE);
+}
+
+int ColumnarProjection::getMaterializedColumnCount() const {
+    int ctr = 0;
+    for (std::vector<Column>::const_iterator it = m_columns.begin(); it != m_columns.end(); it++) {
+        if (it->materialized) ctr++;
+    } // FOR
+    return (ctr);
+}
+
+int64_t ColumnarProjection::getMemoryUsage() const {
+    int64_t bytes = m_tuples.capacity() * sizeof(char*);
+    for (std::vector<Column>::const_iterator it = m_columns.begin(); it != m_columns.end(); it++) {
+        bytes += it->data.capacity();
+        for (Dictionary::const_iterator d_it = it->dictionary.begin(); d_it != it->dictionary.end(); d_it++) {
+            bytes += d_it->first.size() + sizeof(int32_t);
+        } // FOR
+    } // FOR
+    return (bytes);
+}
+
+std::string ColumnarProjection::debug() const {
+    std::ostringstream buffer;
+    buffer << "ColumnarProjection[table=" << m_table->name()
+           << ", valid=" << (m_valid ? "true" : "false")
+           << ", rows=" << m_tuples.size()
+           << ", refreshes=" << m_refreshCount
+           << ", bytes=" << getMemoryUsage() << "]\n";
+    for (int ii = 0; ii < m_columns.size(); ii++) {
+        const Column &col = m_columns[ii];
+        if (col.materialized == false) continue;
+        buffer << "  [" << ii << "] " << getTypeName(m_schema->columnType(ii));
+        if (isDictionaryEncoded(ii)) buffer << " dictionary=" << col.dictionary.size();
+        buffer << "\n";
+    } // FOR
+    return (buffer.str());
+}
+
+}
@@ -0,0 +1,123 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTORECOLUMNARPROJECTION_H
+#define HSTORECOLUMNARPROJECTION_H
+
+#include "common/common.h"
+#include "common/NValue.hpp"
+
+#include "boost/unordered_map.hpp"
+
+#include <string>
+#include <vector>
+
+namespace voltdb {
+
+class Table;
+class TupleSchema;
+
+/**
+ * A read-optimized columnar copy of a PersistentTable.
+ *
+ * The row-major tuple storage remains the authoritative copy of the data.
+ * The projection keeps the address of every active tuple together with one
+ * contiguous array per column, so that a scan predicate only has to walk the
+ * memory of the columns that it actually references. VARCHAR columns are
+ * dictionary-encoded into int32_t codes, which lets equality comparisons
+ * against a string constant be evaluated as integer comparisons.
+ *
+ * Any modification of the table invalidates the projection. The tuple
+ * addresses are rebuilt by the next refresh(), and each column array is only
+ * materialized again once a scan asks for it.
+ */
+class ColumnarProjection {
+  public:
+    /** The dictionary code for a NULL string */
+    static const int32_t NULL_CODE = 0;
+    /** The dictionary code for a string that is not in the dictionary */
+    static const int32_t MISSING_CODE = -1;
+
+    ColumnarProjection(Table *table);
+    ~ColumnarProjection();
+
+    /** Throw away all of the columnar data. Called whenever the table changes */
+    void invalidate() { m_valid = false; }
+    bool isValid() const { return m_valid; }
+
+    /** Rebuild the tuple addresses if the projection is not valid anymore */
+    void refresh();
+
+    int64_t getRowCount() const { return (int64_t)m_tuples.size(); }
+    char* getTupleAddress(int64_t row) const { return m_tuples[row]; }
+
+    /** Returns true if the column can be stored in the projection */
+    bool isSupportedColumn(int column) const;
+    bool isDictionaryEncoded(int column) const;
+
+    /**
+     * Returns the contiguous array of values for the given column, which
+     * is materialized first if necessary. Integer and floating-point columns
+     * use the same representation as the tuple storage. Dictionary-encoded
+     * columns are arrays of int32_t codes
+     */
+    const char* getColumnData(int column);
+
+    /**
+     * Returns the dictionary code for the given VARCHAR value. The column
+     * must have already been materialized
+     */
+    int32_t lookupCode(int column, const NValue &value) const;
+
+    /** The number of times the tuple addresses were rebuilt */
+    int64_t getRefreshCount() const { return m_refreshCount; }
+    /** The number of column arrays that are currently materialized */
+    int getMaterializedColumnCount() const;
+    int64_t getMemoryUsage() const;
+
+    std::string debug() const;
+
+  private:
+    typedef boost::unordered_map<std::string, int32_t> Dictionary;
+
+    struct Column {
+        bool materialized;
+        int width;
+        std::vector<char> data;
+        Dictionary dictionary;
+    };
+
+    void materialize(int column);
+
+    Table *m_table;
+    const TupleSchema *m_schema;
+    bool m_valid;
+    int64_t m_refreshCount;
+    std::vector<char*> m_tuples;
+    std::vector<Column> m_columns;
+};
+
+}
+#endif
@@ -0,0 +1,111 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "storage/TempTableArena.h"
+#include "common/debuglog.h"
+
+#include <cassert>
+#include <sstream>
+
+namespace voltdb {
+
+TempTableArena::TempTableArena(int64_t maxRetainedBytes)
+    : m_maxRetainedBytes(maxRetainedBytes), m_allocations(0), m_hits(0),
+      m_bytesInUse(0), m_peakBytesInUse(0), m_bytesRetained(0)
+{
+}
+
+TempTableArena::~TempTableArena() {
+    trim();
+}
+
+int TempTableArena::sizeClass(int bytes) {
+    if (bytes <= 0 || (bytes & (bytes - 1)) != 0) return (-1);
+    int sc = 0;
+    while ((1 << sc) < bytes) sc++;
+    if (sc < MIN_SIZE_CLASS || sc > MAX_SIZE_CLASS) return (-1);
+    return (sc);
+}
+
+char* TempTableArena::allocate(int bytes) {
+    m_allocations++;
+    m_bytesInUse += bytes;
+    if (m_bytesInUse > m_peakBytesInUse) m_peakBytesInUse = m_bytesInUse;
+
+    const int sc = sizeClass(bytes);
+    if (sc >= 0 && m_freeBlocks[sc].empty() == false) {
+        char *block = m_freeBlocks[sc].back();
+        m_freeBlocks[sc].pop_back();
+        m_bytesRetained -= bytes;
+        m_hits++;
+        return (block);
+    }
+    return (new char[bytes]);
+}
+
+void TempTableArena::release(char *block, int bytes) {
+    assert(block != NULL);
+    assert(m_bytesInUse >= bytes);
+    m_bytesInUse -= bytes;
+
+    const int sc = sizeClass(bytes);
+    if (sc >= 0 && m_bytesRetained + bytes <= m_maxRetainedBytes) {
+        m_freeBlocks[sc].push_back(block);
+        m_bytesRetained += bytes;
+    } else {
+        delete[] block;
+    }
+}
+
+void TempTableArena::adopt(int bytes) {
+    m_bytesInUse += bytes;
+    if (m_bytesInUse > m_peakBytesInUse) m_peakBytesInUse = m_bytesInUse;
+}
+
+void TempTableArena::trim() {
+    for (int sc = 0; sc <= MAX_SIZE_CLASS; sc++) {
+        for (std::vector<char*>::iterator it = m_freeBlocks[sc].begin(); it != m_freeBlocks[sc].end(); it++) {
+            delete[] *it;
+        } // FOR
+        m_freeBlocks[sc].clear();
+    } // FOR
+    m_bytesRetained = 0;
+}
+
+std::string TempTableArena::debug() const {
+    std::ostringstream buffer;
+    buffer << "TempTableArena[allocations=" << m_allocations
+           << ", hits=" << m_hits
+           << ", inUse=" << m_bytesInUse
+           << ", peak=" << m_peakBytesInUse
+           << ", retained=" << m_bytesRetained << "]";
+    for (int sc = MIN_SIZE_CLASS; sc <= MAX_SIZE_CLASS; sc++) {
+        if (m_freeBlocks[sc].empty()) continue;
+        buffer << "\n  [" << (1 << sc) << " bytes] free=" << m_freeBlocks[sc].size();
+    } // FOR
+    return (buffer.str());
+}
+
+}
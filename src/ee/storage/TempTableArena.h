@@ -0,0 +1,110 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTORETEMPTABLEARENA_H
+#define HSTORETEMPTABLEARENA_H
+
+#include <stdint.h>
+#include <string>
+#include <vector>
+
+namespace voltdb {
+
+/**
+ * A per-EE arena of memory blocks for TempTables.
+ *
+ * Every plan fragment's output TempTable grows by allocating whole blocks and
+ * then gives all but its first block back when it is cleared at the end of the
+ * fragment. Instead of going back to the heap every time, the released blocks
+ * are kept in free lists (one per power-of-two size class) so that the next
+ * fragment can pick them up again. Requests whose size is not exactly one of
+ * the size classes are passed straight through to the heap.
+ *
+ * The arena holds on to at most maxRetainedBytes of free blocks; anything
+ * beyond that goes back to the heap. The arena is not thread-safe, which is
+ * fine because each EE only executes one fragment at a time.
+ */
+class TempTableArena {
+  public:
+    /** The smallest size class is 2^MIN_SIZE_CLASS bytes */
+    static const int MIN_SIZE_CLASS = 12;
+    /** The largest size class is 2^MAX_SIZE_CLASS bytes */
+    static const int MAX_SIZE_CLASS = 24;
+    /** Default upper bound on the amount of free memory that we hold on to */
+    static const int64_t DEFAULT_MAX_RETAINED_BYTES = 67108864;
+
+    TempTableArena(int64_t maxRetainedBytes = DEFAULT_MAX_RETAINED_BYTES);
+    ~TempTableArena();
+
+    /** Returns a block of at least the given number of bytes */
+    char* allocate(int bytes);
+
+    /**
+     * Give back a block that was returned by allocate(). The number of bytes
+     * must be the same value that was passed to allocate()
+     */
+    void release(char *block, int bytes);
+
+    /**
+     * Account for a block that was allocated from the heap before its table
+     * was attached to this arena, so that it can be passed to release() later
+     */
+    void adopt(int bytes);
+
+    /** Return all of the free blocks to the heap */
+    void trim();
+
+    // ------------------------------------------------------------------
+    // STATISTICS
+    // ------------------------------------------------------------------
+    /** Total number of allocate() calls */
+    int64_t getAllocationCount() const { return m_allocations; }
+    /** Number of allocate() calls that were served from a free list */
+    int64_t getHitCount() const { return m_hits; }
+    /** Number of bytes handed out by allocate() that have not been released yet */
+    int64_t getBytesInUse() const { return m_bytesInUse; }
+    /** The highest value that getBytesInUse() has ever had */
+    int64_t getPeakBytesInUse() const { return m_peakBytesInUse; }
+    /** Number of bytes sitting in the free lists */
+    int64_t getBytesRetained() const { return m_bytesRetained; }
+
+    std::string debug() const;
+
+  private:
+    /** Returns the size class for a request, or -1 if it should not be pooled */
+    static int sizeClass(int bytes);
+
+    const int64_t m_maxRetainedBytes;
+    std::vector<char*> m_freeBlocks[MAX_SIZE_CLASS + 1];
+
+    int64_t m_allocations;
+    int64_t m_hits;
+    int64_t m_bytesInUse;
+    int64_t m_peakBytesInUse;
+    int64_t m_bytesRetained;
+};
+
+}
+#endif
@@ -0,0 +1,87 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "storage/TempTableArenaStats.h"
+#include "storage/TempTableArena.h"
+#include "stats/StatsSource.h"
+#include "common/ValueFactory.hpp"
+#include "common/tabletuple.h"
+#include <vector>
+#include <string>
+
+namespace voltdb {
+
+TempTableArenaStats::TempTableArenaStats(voltdb::TempTableArena* arena) : voltdb::StatsSource(), m_arena(arena),
+        m_lastAllocationCount(0), m_lastHitCount(0) {
+}
+
+std::vector<std::string> TempTableArenaStats::generateStatsColumnNames() {
+    std::vector<std::string> columnNames = StatsSource::generateStatsColumnNames();
+    columnNames.push_back("ARENA_ALLOCATIONS");
+    columnNames.push_back("ARENA_HITS");
+    columnNames.push_back("ARENA_BYTES_IN_USE");
+    columnNames.push_back("ARENA_PEAK_BYTES");
+    columnNames.push_back("ARENA_BYTES_RETAINED");
+    return columnNames;
+}
+
+void TempTableArenaStats::updateStatsTuple(voltdb::TableTuple *tuple) {
+    int64_t allocationCount = m_arena->getAllocationCount();
+    int64_t hitCount = m_arena->getHitCount();
+
+    if (interval()) {
+        allocationCount = allocationCount - m_lastAllocationCount;
+        m_lastAllocationCount = m_arena->getAllocationCount();
+
+        hitCount = hitCount - m_lastHitCount;
+        m_lastHitCount = m_arena->getHitCount();
+    }
+
+    tuple->setNValue( StatsSource::m_columnName2Index["ARENA_ALLOCATIONS"],
+            ValueFactory::getBigIntValue(allocationCount));
+    tuple->setNValue( StatsSource::m_columnName2Index["ARENA_HITS"],
+            ValueFactory::getBigIntValue(hitCount));
+    tuple->setNValue( StatsSource::m_columnName2Index["ARENA_BYTES_IN_USE"],
+            ValueFactory::getBigIntValue(m_arena->getBytesInUse()));
+    tuple->setNValue( StatsSource::m_columnName2Index["ARENA_PEAK_BYTES"],
+            ValueFactory::getBigIntValue(m_arena->getPeakBytesInUse()));
+    tuple->setNValue( StatsSource::m_columnName2Index["ARENA_BYTES_RETAINED"],
+            ValueFactory::getBigIntValue(m_arena->getBytesRetained()));
+}
+
+void TempTableArenaStats::populateSchema(
+        std::vector<voltdb::ValueType> &types,
+        std::vector<int32_t> &columnLengths,
+        std::vector<bool> &allowNull) {
+    StatsSource::populateSchema(types, columnLengths, allowNull);
+    for (int ii = 0; ii < 5; ii++) {
+        types.push_back(voltdb::VALUE_TYPE_BIGINT); columnLengths.push_back(NValue::getTupleStorageSize(voltdb::VALUE_TYPE_BIGINT)); allowNull.push_back(false);
+    }
+}
+
+TempTableArenaStats::~TempTableArenaStats() {
+}
+
+}
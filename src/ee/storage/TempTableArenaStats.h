@@ -0,0 +1,78 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTORETEMPTABLEARENASTATS_H
+#define HSTORETEMPTABLEARENASTATS_H
+
+#include "stats/StatsSource.h"
+#include "common/ids.h"
+#include <vector>
+#include <string>
+
+namespace voltdb {
+
+class TempTableArena;
+
+/**
+ * StatsSource extension for the per-EE TempTableArena.
+ */
+class TempTableArenaStats : public voltdb::StatsSource {
+public:
+    /*
+     * Constructor caches reference to the arena that will be generating the statistics
+     */
+    TempTableArenaStats(voltdb::TempTableArena* arena);
+    ~TempTableArenaStats();
+
+protected:
+
+    /**
+     * Update the stats tuple with the latest statistics available to this StatsSource.
+     */
+    virtual void updateStatsTuple(voltdb::TableTuple *tuple);
+
+    /**
+     * Appends the arena's columns to the list of columns contributed by StatsSource.
+     */
+    virtual std::vector<std::string> generateStatsColumnNames();
+
+    /**
+     * Appends the types of the arena's columns to the schema of StatsSource.
+     */
+    virtual void populateSchema(std::vector<voltdb::ValueType> &types, std::vector<int32_t> &columnLengths, std::vector<bool> &allowNull);
+
+private:
+    /**
+     * Arena whose stats are being collected.
+     */
+    voltdb::TempTableArena * m_arena;
+
+    int64_t m_lastAllocationCount;
+    int64_t m_lastHitCount;
+};
+
+}
+
+#endif
@@ -83,7 +83,7 @@ PersistentTable::PersistentTable(ExecutorContext *ctx, bool exportEnabled) :
     Table(TABLE_BLOCKSIZE), m_executorContext(ctx), m_uniqueIndexes(NULL), m_uniqueIndexCount(0), m_allowNulls(NULL),
     m_indexes(NULL), m_indexCount(0), m_pkeyIndex(NULL), m_wrapper(NULL),
     tsSeqNo(0), m_viewCount(0), m_views(NULL), stats_(this), m_exportEnabled(exportEnabled),
-    m_COWContext(NULL)
+    m_COWContext(NULL), m_columnar(NULL)
 {
     if (exportEnabled)
     {
@@ -124,6 +124,7 @@ PersistentTable::~PersistentTable() {
     }
 
     delete m_wrapper;
+    delete m_columnar;
 }
 
 // ------------------------------------------------------------------
@@ -163,6 +164,7 @@ bool PersistentTable::insertTuple(TableTuple &source) {
     //
     nextFreeTuple(&m_tmpTarget1);
     m_tupleCount++;
+    invalidateColumnarProjection();
 
     //
     // Then copy the source into the target
@@ -244,6 +246,7 @@ void PersistentTable::insertTupleForUndo(TableTuple &source, size_t wrapperOffse
     // memory
     nextFreeTuple(&m_tmpTarget1);
     m_tupleCount++;
+    invalidateColumnarProjection();
 
     // Then copy the source into the target
     m_tmpTarget1.copy(source);
@@ -281,6 +284,7 @@ void PersistentTable::insertTupleForUndo(TableTuple &source, size_t wrapperOffse
  */
 bool PersistentTable::updateTuple(TableTuple &source, TableTuple &target, bool updatesIndexes) {
     size_t elMark = 0;
+    invalidateColumnarProjection();
 
     /*
      * Create and register an undo action and then use the copy of
@@ -374,6 +378,8 @@ bool PersistentTable::updateTuple(TableTuple &source, TableTuple &target, bool u
  */
 void PersistentTable::updateTupleForUndo(TableTuple &source, TableTuple &target,
                                          bool revertIndexes, size_t wrapperOffset) {
+    invalidateColumnarProjection();
+
     //Need to back up the updated version of the tuple to provide to
     //the indexes when updating The indexes expect source's data Ptr
     //to point into the table so it is necessary to copy source to
@@ -414,6 +420,7 @@ void PersistentTable::updateTupleForUndo(TableTuple &source, TableTuple &target,
 bool PersistentTable::deleteTuple(TableTuple &target, bool deleteAllocatedStrings) {
     // May not delete an already deleted tuple.
     assert(target.isActive());
+    invalidateColumnarProjection();
 
     // The tempTuple is forever!
     assert(&target != &m_tempTuple);
@@ -465,6 +472,7 @@ bool PersistentTable::deleteTuple(TableTuple &target, bool deleteAllocatedString
  * TODO remove duplication with regular delete. Also no view updates.
  */
 void PersistentTable::deleteTupleForUndo(voltdb::TableTuple &tupleCopy, size_t wrapperOffset) {
+    invalidateColumnarProjection();
     TableTuple target = lookupTuple(tupleCopy);
     if (target.isNullTuple()) {
         throwFatalException("Failed to delete tuple from table %d:"
@@ -689,6 +697,8 @@ void PersistentTable::processLoadedTuple(bool allowELT, TableTuple &tuple) {
  * to do add tuples to indexes
  */
 void PersistentTable::populateIndexes(int tupleCount) {
+    invalidateColumnarProjection();
+
     // populate indexes. walk the contiguous memory in the inner loop.
     for (int i = m_indexCount - 1; i >= 0;--i) {
         TableIndex *index = m_indexes[i];
@@ -761,6 +771,12 @@ bool PersistentTable::activateCopyOnWrite(TupleSerializer *serializer, int32_t p
     return false;
 }
 
+void PersistentTable::enableColumnarProjection() {
+    if (m_columnar == NULL) {
+        m_columnar = new ColumnarProjection(this);
+    }
+}
+
 /**
  * Attempt to serialize more tuples from the table to the provided output stream.
  * Returns true if there are more tuples and false if there are no more tuples waiting to be
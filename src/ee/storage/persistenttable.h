@@ -58,6 +58,7 @@
 #include "storage/TableStats.h"
 #include "storage/PersistentTableStats.h"
 #include "storage/CopyOnWriteContext.h"
+#include "storage/ColumnarProjection.h"
 
 namespace voltdb {
 
@@ -205,6 +206,18 @@ class PersistentTable : public Table {
      */
     void serializeMore(ReferenceSerializeOutput *out);
 
+    /**
+     * Keep a read-optimized columnar copy of this table for scans.
+     * Called at EE setup time for tables that are marked as columnar in the catalog
+     */
+    void enableColumnarProjection();
+
+    /**
+     * Returns the columnar copy of this table, or NULL if this table is not
+     * columnar. The projection may be stale; callers must refresh() it first
+     */
+    ColumnarProjection* columnarProjection() { return m_columnar; }
+
 protected:
     // ------------------------------------------------------------------
     // FROM PIMPL
@@ -218,6 +231,8 @@ protected:
 
     bool checkNulls(TableTuple &tuple) const;
 
+    inline void invalidateColumnarProjection();
+
     size_t appendToELBuffer(TableTuple &tuple, int64_t seqNo, TupleStreamWrapper::Type type);
 
     PersistentTable(ExecutorContext *ctx, bool exportEnabled);
@@ -272,6 +287,9 @@ protected:
 
     // Snapshot stuff
     boost::scoped_ptr<CopyOnWriteContext> m_COWContext;
+
+    // Read-optimized columnar copy (NULL if disabled)
+    ColumnarProjection *m_columnar;
 };
 
 inline TableTuple& PersistentTable::getTempTupleInlined(TableTuple &source) {
@@ -279,6 +297,10 @@ inline TableTuple& PersistentTable::getTempTupleInlined(TableTuple &source) {
     m_tempTuple.copy(source);
     return m_tempTuple;
 }
+
+inline void PersistentTable::invalidateColumnarProjection() {
+    if (m_columnar != NULL) m_columnar->invalidate();
+}
 }
 
 #endif
@@ -76,7 +76,8 @@ Table::Table(int tableAllocationTargetSize) :
     m_name(""),
     m_ownsTupleSchema(true),
     m_tableAllocationTargetSize(tableAllocationTargetSize),
-    m_tempTableMemoryInBytes(NULL)
+    m_tempTableMemoryInBytes(NULL),
+    m_blockArena(NULL)
 {
 }
 
@@ -114,8 +115,13 @@ Table::~Table() {
     m_data.clear();
 #else
     // clear the tuple memory
-    for (std::vector<char*>::iterator iter = m_data.begin(); iter != m_data.end(); ++iter)
-        delete[] reinterpret_cast<char*>(*iter);
+    for (std::vector<char*>::iterator iter = m_data.begin(); iter != m_data.end(); ++iter) {
+        if (m_blockArena != NULL) {
+            m_blockArena->release(*iter, m_tableAllocationTargetSize);
+        } else {
+            delete[] reinterpret_cast<char*>(*iter);
+        }
+    }
 #endif
 
     // clear any cached column serializations
@@ -56,6 +56,7 @@
 #include "common/TupleSchema.h"
 #include "common/Pool.hpp"
 #include "common/tabletuple.h"
+#include "storage/TempTableArena.h"
 
 namespace voltdb {
 
@@ -310,6 +311,10 @@ protected:
     // ptr to global integer tracking temp table memory allocated per frag
     // should be null for persistent tables
     int* m_tempTableMemoryInBytes;
+
+    // if set, blocks are allocated from and given back to this arena
+    // instead of the heap. should be null for persistent tables
+    TempTableArena* m_blockArena;
 };
 
 /**
@@ -347,10 +352,11 @@ inline const std::string& Table::name()     const { return m_name; }
 inline void Table::allocateNextBlock() {
 #ifdef MEMCHECK
     int bytes = m_schema->tupleLength() + TUPLE_HEADER_SIZE;
+    char *memory = (char*)(new char[bytes]);
 #else
     int bytes = m_tableAllocationTargetSize;
+    char *memory = (m_blockArena != NULL ? m_blockArena->allocate(bytes) : new char[bytes]);
 #endif
-    char *memory = (char*)(new char[bytes]);
     m_data.push_back(memory);
 #ifdef MEMCHECK_NOFREELIST
     assert(m_allocatedTuplePointers.insert(memory).second);
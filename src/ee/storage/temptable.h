@@ -87,6 +87,13 @@ class TempTable : public Table {
         bool deleteTuple(TableTuple &tuple, bool); // deleting tuple from temp table is not supported. use deleteAllTuples instead
         void deleteAllTuplesNonVirtual(bool freeAllocatedStrings);
 
+        /**
+         * Allocate this table's blocks from the given arena from now on and
+         * give them back to it when the table is cleared or deleted. The
+         * arena must outlive this table. Ignored in the memcheck build.
+         */
+        void setBlockArena(TempTableArena *arena);
+
         /**
          * Uses the pool to do a deep copy of the tuple including allocations
          * for all uninlined columns. Used by CopyOnWriteContext to back up tuples
@@ -214,12 +221,29 @@ inline void TempTable::deleteAllTuplesNonVirtual(bool freeAllocatedStrings) {
         if (m_tempTableMemoryInBytes)
             (*m_tempTableMemoryInBytes) -= m_tableAllocationTargetSize;
         assert(chunk != NULL);
-        delete[] chunk;
+        if (m_blockArena != NULL) {
+            m_blockArena->release(chunk, m_tableAllocationTargetSize);
+        } else {
+            delete[] chunk;
+        }
 #endif
     }
 
     assert(m_allocatedTuples == m_tuplesPerBlock);
 }
+inline void TempTable::setBlockArena(TempTableArena *arena) {
+#ifndef MEMCHECK
+    if (m_blockArena == arena) return;
+    assert(m_blockArena == NULL);
+    m_blockArena = arena;
+    // the blocks that we already have came from the heap, but they are
+    // the same size so the arena can take them back later on
+    for (size_t i = 0; i < m_data.size(); i++) {
+        m_blockArena->adopt(m_tableAllocationTargetSize);
+    }
+#endif
+}
+
 inline void TempTable::getNextFreeTupleInlined(TableTuple *tuple) {
     // if there are no tuples free, we need to grab another chunk of memory
     // Allocate a new set of tuples
@@ -255,11 +255,14 @@ public abstract class CatalogUtil extends org.voltdb.utils.CatalogUtil {
      */
     private static CatalogUtil.Cache getCatalogCache(CatalogType catalog_item) {
         final Database catalog_db = (catalog_item instanceof Database ? (Database) catalog_item : CatalogUtil.getDatabase(catalog_item));
-        CatalogUtil.Cache ret = CACHE.get(catalog_db);
-        if (ret == null) {
-            ret = new CatalogUtil.Cache();
-            CACHE.put(catalog_db, ret);
-        }
+        CatalogUtil.Cache ret = null;
+        synchronized (CACHE) {
+            ret = CACHE.get(catalog_db);
+            if (ret == null) {
+                ret = new CatalogUtil.Cache();
+                CACHE.put(catalog_db, ret);
+            }
+        } // SYNCH
         assert (ret != null) : "Failed to cache for " + catalog_item.fullName();
         return (ret);
     }
@@ -282,7 +285,9 @@ public abstract class CatalogUtil extends org.voltdb.utils.CatalogUtil {
     public static void clearCache(CatalogType catalog_obj) {
         assert (catalog_obj != null);
         Database catalog_db = CatalogUtil.getDatabase(catalog_obj);
-        CACHE.remove(catalog_db);
+        synchronized (CACHE) {
+            CACHE.remove(catalog_db);
+        } // SYNCH
     }
 
     // ------------------------------------------------------------
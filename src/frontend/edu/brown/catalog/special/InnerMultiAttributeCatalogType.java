@@ -53,7 +53,7 @@ public class InnerMultiAttributeCatalogType<T extends CatalogType> extends Catal
      * @throws Exception
      */
     @SuppressWarnings("unchecked")
-    protected static <T extends CatalogType, U extends MultiAttributeCatalogType<T>> U get(Class<U> clazz, T... attrs) {
+    protected static synchronized <T extends CatalogType, U extends MultiAttributeCatalogType<T>> U get(Class<U> clazz, T... attrs) {
         List<T> attributes = (List<T>) CollectionUtil.addAll(new ArrayList<T>(), attrs);
         CatalogFieldComparator<T> comparator = (CatalogFieldComparator<T>) COMPARATORS.get(clazz);
         if (comparator == null) {
@@ -25,6 +25,7 @@
  ***************************************************************************/
 package edu.brown.costmodel;
 
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -170,6 +171,31 @@ public abstract class AbstractCostModel {
         this.p_estimator = p_estimator;
     }
 
+    /**
+     * Create a new instance of this cost model that will estimate costs for
+     * the given catalog. None of the cached state is copied over, so the new
+     * cost model can be used in another thread with a different copy of the
+     * catalog. The caller is expected to apply its DesignerHints to it.
+     * 
+     * @param catalog_db
+     * @return
+     * @throws CloneNotSupportedException
+     */
+    public AbstractCostModel clone(Database catalog_db) throws CloneNotSupportedException {
+        Class<? extends AbstractCostModel> clazz = this.getClass();
+        Constructor<? extends AbstractCostModel> constructor = null;
+        try {
+            constructor = clazz.getConstructor(Database.class, PartitionEstimator.class);
+        } catch (NoSuchMethodException ex) {
+            throw new CloneNotSupportedException(clazz.getSimpleName() + " does not have a (Database, PartitionEstimator) constructor");
+        }
+        try {
+            return (constructor.newInstance(catalog_db, new PartitionEstimator(catalog_db)));
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to clone " + clazz.getSimpleName(), ex);
+        }
+    }
+
     public final void clear() {
         this.clear(false);
     }
@@ -27,6 +27,12 @@ public class LowerBoundsCostModel extends SingleSitedCostModel {
         this.txn_ctr = 0;
     }
 
+    @Override
+    public boolean isParallelEstimationEnabled() {
+        // Our round-robin partition selection depends on the order of the txns
+        return (false);
+    }
+
     @Override
     public TransactionCacheEntry processTransaction(final Database catalog_db, final TransactionTrace txn_trace, final Filter filter) throws Exception {
         final boolean trace = LOG.isTraceEnabled();
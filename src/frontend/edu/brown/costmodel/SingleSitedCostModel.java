@@ -20,13 +20,17 @@ package edu.brown.costmodel;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
@@ -50,8 +54,10 @@ import edu.brown.statistics.Histogram;
 import edu.brown.utils.ArgumentsParser;
 import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.PartitionSet;
 import edu.brown.utils.ProfileMeasurement;
 import edu.brown.utils.StringUtil;
+import edu.brown.utils.ThreadUtil;
 import edu.brown.workload.AbstractTraceElement;
 import edu.brown.workload.QueryTrace;
 import edu.brown.workload.TransactionTrace;
@@ -74,6 +80,10 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // DEBUG_TRACE_IDS.add(1251416l);
     }
 
+    private static final int EMPTY_INTS[] = new int[0];
+    private static final long EMPTY_LONGS[] = new long[0];
+    private static final PartitionSet EMPTY_PARTITIONSETS[] = new PartitionSet[0];
+
     // ----------------------------------------------------
     // COST WEIGHTS
     // ----------------------------------------------------
@@ -115,6 +125,158 @@ public class SingleSitedCostModel extends AbstractCostModel {
 
     private final Set<Long> last_invalidateTxns = new HashSet<Long>();
 
+    /**
+     * TableKey -> TableId
+     * The QueryCacheEntries store the partitions that they touch for each table
+     * in arrays indexed by these ids instead of in maps keyed by TableKeys
+     */
+    private final Map<String, Integer> table_ids = new ConcurrentHashMap<String, Integer>();
+    /**
+     * TableId -> TableKey
+     */
+    private volatile String table_keys[] = new String[0];
+
+    /**
+     * A histogram of the number of times that a txn touched each partition.
+     * Most txns only touch a handful of partitions, so rather than using a
+     * Histogram<Integer> we keep the partition ids and their counts in sorted
+     * primitive arrays. It supports the subset of Histogram's methods that we
+     * need for TransactionCacheEntry, with the same semantics.
+     */
+    protected static class PartitionCounter implements Cloneable {
+        private int partitions[] = EMPTY_INTS;
+        private long counts[] = EMPTY_LONGS;
+        private int num_values = 0;
+        private long num_samples = 0;
+        private boolean keep_zero_entries = false;
+
+        public void put(int partition, long delta) {
+            this.num_samples += delta;
+            int idx = Arrays.binarySearch(this.partitions, 0, this.num_values, partition);
+            if (idx >= 0) {
+                long count = this.counts[idx] + delta;
+                assert (count >= 0) : "Invalid negative count for partition '" + partition + "' [count=" + count + "]";
+                if (count == 0 && !this.keep_zero_entries) {
+                    System.arraycopy(this.partitions, idx + 1, this.partitions, idx, this.num_values - idx - 1);
+                    System.arraycopy(this.counts, idx + 1, this.counts, idx, this.num_values - idx - 1);
+                    this.num_values--;
+                } else {
+                    this.counts[idx] = count;
+                }
+                return;
+            }
+            assert (delta >= 0) : "Invalid negative count for partition '" + partition + "' [count=" + delta + "]";
+            if (delta == 0 && !this.keep_zero_entries)
+                return;
+
+            idx = -1 * (idx + 1);
+            if (this.num_values == this.partitions.length) {
+                int size = Math.max(2, this.num_values * 2);
+                this.partitions = Arrays.copyOf(this.partitions, size);
+                this.counts = Arrays.copyOf(this.counts, size);
+            }
+            System.arraycopy(this.partitions, idx, this.partitions, idx + 1, this.num_values - idx);
+            System.arraycopy(this.counts, idx, this.counts, idx + 1, this.num_values - idx);
+            this.partitions[idx] = partition;
+            this.counts[idx] = delta;
+            this.num_values++;
+        }
+
+        public void putAll(PartitionSet partitions, long delta) {
+            for (int p = partitions.first(); p != -1; p = partitions.next(p + 1)) {
+                this.put(p, delta);
+            } // FOR
+        }
+
+        public void remove(int partition, long delta) {
+            assert (this.contains(partition)) : "Missing partition " + partition;
+            this.put(partition, -1 * delta);
+        }
+
+        public void removeValues(PartitionSet partitions, long delta) {
+            for (int p = partitions.first(); p != -1; p = partitions.next(p + 1)) {
+                this.put(p, -1 * delta);
+            } // FOR
+        }
+
+        public boolean contains(int partition) {
+            return (Arrays.binarySearch(this.partitions, 0, this.num_values, partition) >= 0);
+        }
+
+        public void setKeepZeroEntries(boolean flag) {
+            // When this option is disabled, we need to remove all of the
+            // zeroed entries
+            if (!flag && this.keep_zero_entries) {
+                int ctr = 0;
+                for (int i = 0; i < this.num_values; i++) {
+                    if (this.counts[i] == 0)
+                        continue;
+                    this.partitions[ctr] = this.partitions[i];
+                    this.counts[ctr] = this.counts[i];
+                    ctr++;
+                } // FOR
+                this.num_values = ctr;
+            }
+            this.keep_zero_entries = flag;
+        }
+
+        /**
+         * Return the partitions that have a zero count. This is only useful if
+         * zero entries are enabled.
+         */
+        public PartitionSet getZeroPartitions() {
+            PartitionSet ret = new PartitionSet();
+            for (int i = 0; i < this.num_values; i++) {
+                if (this.counts[i] == 0)
+                    ret.add(this.partitions[i]);
+            } // FOR
+            return (ret);
+        }
+
+        public PartitionSet values() {
+            PartitionSet ret = new PartitionSet();
+            for (int i = 0; i < this.num_values; i++) {
+                ret.add(this.partitions[i]);
+            } // FOR
+            return (ret);
+        }
+
+        public int getValueCount() {
+            return (this.num_values);
+        }
+
+        public long getSampleCount() {
+            return (this.num_samples);
+        }
+
+        public Histogram<Integer> toHistogram() {
+            Histogram<Integer> h = new Histogram<Integer>();
+            h.setKeepZeroEntries(this.keep_zero_entries);
+            for (int i = 0; i < this.num_values; i++) {
+                h.put(this.partitions[i], this.counts[i]);
+            } // FOR
+            return (h);
+        }
+
+        @Override
+        public PartitionCounter clone() {
+            PartitionCounter clone = null;
+            try {
+                clone = (PartitionCounter) super.clone();
+            } catch (CloneNotSupportedException ex) {
+                throw new RuntimeException(ex);
+            }
+            clone.partitions = Arrays.copyOf(this.partitions, this.num_values);
+            clone.counts = Arrays.copyOf(this.counts, this.num_values);
+            return (clone);
+        }
+
+        @Override
+        public String toString() {
+            return (this.toHistogram().toString());
+        }
+    } // CLASS
+
     /**
      * Cost Estimate Explanation
      */
@@ -130,7 +292,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         private int singlesite_queries = 0;
         private int multisite_queries = 0;
         private int unknown_queries = 0;
-        private Histogram<Integer> touched_partitions = new Histogram<Integer>();
+        private PartitionCounter touched_partitions = new PartitionCounter();
 
         private TransactionCacheEntry(String proc_key, long txn_trace_id, int weight, int total_queries) {
             this.proc_key = proc_key;
@@ -164,24 +326,20 @@ public class SingleSitedCostModel extends AbstractCostModel {
         }
 
         protected void addTouchedPartition(int partition) {
-            this.touched_partitions.put(partition);
+            this.touched_partitions.put(partition, 1);
         }
 
         public Collection<Integer> getAllTouchedPartitions() {
-            Collection<Integer> partitions = this.touched_partitions.values();
-            if (this.base_partition != null && !partitions.contains(this.base_partition)) {
-                partitions = new HashSet<Integer>();
-                for (Object o : this.touched_partitions.values())
-                    partitions.add((Integer) o);
-                partitions.add(this.base_partition);
+            PartitionSet partitions = this.touched_partitions.values();
+            if (this.base_partition != null) {
+                partitions.add(this.base_partition.intValue());
             }
             return (partitions);
         }
 
         public Histogram<Integer> getAllTouchedPartitionsHistogram() {
-            Histogram<Integer> copy = new Histogram<Integer>(this.touched_partitions);
+            Histogram<Integer> copy = this.touched_partitions.toHistogram();
             assert (this.touched_partitions.getValueCount() == copy.getValueCount());
-            assert (this.touched_partitions.getSampleCount() == copy.getSampleCount());
             if (this.base_partition != null && !copy.contains(this.base_partition)) {
                 copy.put(this.base_partition);
             }
@@ -252,7 +410,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         @Override
         public Object clone() throws CloneNotSupportedException {
             TransactionCacheEntry clone = (TransactionCacheEntry) super.clone();
-            clone.touched_partitions = new Histogram<Integer>(this.touched_partitions);
+            clone.touched_partitions = this.touched_partitions.clone();
             return (clone);
         }
 
@@ -288,11 +446,12 @@ public class SingleSitedCostModel extends AbstractCostModel {
         public boolean invalid = false;
         public boolean unknown = false;
 
-        /** Table Key -> Set[PartitionId] **/
-        private Map<String, Set<Integer>> partitions = new HashMap<String, Set<Integer>>(SingleSitedCostModel.this.num_tables);
+        /** TableId -> Set[PartitionId] **/
+        private int table_ids[] = EMPTY_INTS;
+        private PartitionSet table_partitions[] = EMPTY_PARTITIONSETS;
 
         /** All partitions **/
-        private Set<Integer> all_partitions = new HashSet<Integer>(SingleSitedCostModel.this.num_partitions);
+        private PartitionSet all_partitions = new PartitionSet(SingleSitedCostModel.this.num_partitions);
 
         /**
          * Constructor
@@ -331,20 +490,21 @@ public class SingleSitedCostModel extends AbstractCostModel {
         }
 
         public void addPartition(String table_key, int partition) {
-            this.getPartitions(table_key).add(partition);
+            this.getPartitions(getTableId(table_key)).add(partition);
             this.all_partitions.add(partition);
         }
 
         public void removePartition(String table_key, int partition) {
-            this.getPartitions(table_key).remove(partition);
+            int table_id = getTableId(table_key);
+            this.getPartitions(table_id).remove(partition);
 
             // Check whether any other table references this partition
             // If not, then remove it from the all_partitions set
             boolean found = false;
-            for (Entry<String, Set<Integer>> e : this.partitions.entrySet()) {
-                if (e.getKey().equals(table_key))
+            for (int i = 0; i < this.table_ids.length; i++) {
+                if (this.table_ids[i] == table_id)
                     continue;
-                if (e.getValue().contains(partition)) {
+                if (this.table_partitions[i].contains(partition)) {
                     found = true;
                     break;
                 }
@@ -354,17 +514,34 @@ public class SingleSitedCostModel extends AbstractCostModel {
         }
 
         public void addAllPartitions(String table_key, Collection<Integer> partitions) {
-            this.getPartitions(table_key).addAll(partitions);
+            this.addAllPartitions(getTableId(table_key), partitions);
+        }
+
+        private void addAllPartitions(int table_id, Collection<Integer> partitions) {
+            this.getPartitions(table_id).addAll(partitions);
             this.all_partitions.addAll(partitions);
         }
 
-        private Set<Integer> getPartitions(String table_key) {
-            Set<Integer> p = this.partitions.get(table_key);
-            if (p == null) {
-                p = new HashSet<Integer>();
-                this.partitions.put(table_key, p);
-            }
-            return (p);
+        private PartitionSet getPartitions(int table_id) {
+            for (int i = 0; i < this.table_ids.length; i++) {
+                if (this.table_ids[i] == table_id)
+                    return (this.table_partitions[i]);
+            } // FOR
+            // Most queries only touch one or two tables, so we just grow the
+            // arrays by one each time
+            int i = this.table_ids.length;
+            this.table_ids = Arrays.copyOf(this.table_ids, i + 1);
+            this.table_partitions = Arrays.copyOf(this.table_partitions, i + 1);
+            this.table_ids[i] = table_id;
+            this.table_partitions[i] = new PartitionSet(SingleSitedCostModel.this.num_partitions);
+            return (this.table_partitions[i]);
+        }
+
+        private void clearPartitions() {
+            for (PartitionSet p : this.table_partitions) {
+                p.clear();
+            } // FOR
+            this.all_partitions.clear();
         }
 
         public Set<Integer> getAllPartitions() {
@@ -372,20 +549,29 @@ public class SingleSitedCostModel extends AbstractCostModel {
         }
 
         public Set<String> getTableKeys() {
-            return (this.partitions.keySet());
+            Set<String> keys = new HashSet<String>();
+            for (int table_id : this.table_ids) {
+                keys.add(getTableKey(table_id));
+            } // FOR
+            return (keys);
         }
 
         public Map<String, Set<Integer>> getPartitionValues() {
-            return (this.partitions);
+            Map<String, Set<Integer>> m = new HashMap<String, Set<Integer>>();
+            for (int i = 0; i < this.table_ids.length; i++) {
+                m.put(getTableKey(this.table_ids[i]), this.table_partitions[i]);
+            } // FOR
+            return (m);
         }
 
         @Override
         public Object clone() throws CloneNotSupportedException {
             QueryCacheEntry clone = (QueryCacheEntry) super.clone();
-            clone.all_partitions = new HashSet<Integer>(this.all_partitions);
-            clone.partitions = new HashMap<String, Set<Integer>>();
-            for (String key : this.partitions.keySet()) {
-                clone.partitions.put(key, new HashSet<Integer>(this.partitions.get(key)));
+            clone.all_partitions = this.all_partitions.clone();
+            clone.table_ids = this.table_ids.clone();
+            clone.table_partitions = new PartitionSet[this.table_partitions.length];
+            for (int i = 0; i < this.table_partitions.length; i++) {
+                clone.table_partitions[i] = this.table_partitions[i].clone();
             } // FOR
             return (clone);
         }
@@ -401,11 +587,184 @@ public class SingleSitedCostModel extends AbstractCostModel {
             m.put("Is Invalid", this.invalid);
             m.put("Is Unknown", this.unknown);
             m.put("All Partitions", this.all_partitions);
-            m.put("Table Partitions", this.partitions);
+            m.put("Table Partitions", this.getPartitionValues());
             return "QueryCacheEntry:\n" + StringUtil.formatMaps(m);
         }
     } // CLASS
 
+    /**
+     * The caches and histograms that processTransaction() writes into. The
+     * serial shard points directly at this cost model's data structures. Each
+     * parallel shard processes a contiguous range of the workload into its
+     * own private structures so that its worker thread never touches anything
+     * shared except for reading the TransactionCacheEntries that existed
+     * before the estimation started. The shards are then merged back in
+     * workload order by mergeEstimationShards(), which leaves the cost model
+     * in the exact same state as if the txns were processed one at a time.
+     */
+    public class EstimationShard implements Runnable {
+        private final boolean parallel;
+        private final Database catalog_db;
+        private final List<TransactionTrace> txns;
+        private final List<boolean[]> allowed;
+        private final int offset;
+        private final TransactionCacheEntry results[];
+
+        private final Map<Long, TransactionCacheEntry> txn_entries;
+        private final Map<String, Set<TransactionCacheEntry>> cache_procXref;
+        private final Map<String, Set<QueryCacheEntry>> cache_tableXref;
+        private final Map<String, Set<QueryCacheEntry>> cache_stmtXref;
+
+        private final Histogram<Integer> histogram_java_partitions;
+        private final Histogram<String> histogram_procs;
+        private final Histogram<String> histogram_sp_procs;
+        private final Histogram<String> histogram_mp_procs;
+        private final Histogram<Integer> histogram_txn_partitions;
+        private final Histogram<Integer> histogram_query_partitions;
+        /**
+         * Procedures that switched from single- to multi-partition. A parallel
+         * shard can't remove them from its own histogram_sp_procs because the
+         * original put may have been made by a previous estimation
+         */
+        private final Histogram<String> histogram_sp_procs_removed;
+
+        /** Temporary Data Structures */
+        private PartitionSet temp_stmtPartitions[] = EMPTY_PARTITIONSETS;
+        private final PartitionSet temp_stmtTables = new PartitionSet();
+        private final PartitionSet temp_txnOrigPartitions = new PartitionSet();
+        private final PartitionSet temp_txnNewPartitions = new PartitionSet();
+
+        /**
+         * Serial Shard Constructor
+         */
+        private EstimationShard() {
+            SingleSitedCostModel cm = SingleSitedCostModel.this;
+            this.parallel = false;
+            this.catalog_db = null;
+            this.txns = null;
+            this.allowed = null;
+            this.offset = 0;
+            this.results = null;
+
+            this.txn_entries = cm.txn_entries;
+            this.cache_procXref = cm.cache_procXref;
+            this.cache_tableXref = cm.cache_tableXref;
+            this.cache_stmtXref = cm.cache_stmtXref;
+            this.histogram_java_partitions = cm.histogram_java_partitions;
+            this.histogram_procs = cm.histogram_procs;
+            this.histogram_sp_procs = cm.histogram_sp_procs;
+            this.histogram_mp_procs = cm.histogram_mp_procs;
+            this.histogram_txn_partitions = cm.histogram_txn_partitions;
+            this.histogram_query_partitions = cm.histogram_query_partitions;
+            this.histogram_sp_procs_removed = null;
+        }
+
+        /**
+         * Parallel Shard Constructor
+         * 
+         * @param catalog_db
+         * @param txns
+         * @param allowed
+         * @param start
+         * @param stop
+         */
+        private EstimationShard(Database catalog_db, List<TransactionTrace> txns, List<boolean[]> allowed, int start, int stop) {
+            assert (start < stop) : String.format("Invalid shard range [%d, %d)", start, stop);
+            this.parallel = true;
+            this.catalog_db = catalog_db;
+            this.txns = txns;
+            this.allowed = allowed;
+            this.offset = start;
+            this.results = new TransactionCacheEntry[stop - start];
+
+            this.txn_entries = new LinkedHashMap<Long, TransactionCacheEntry>();
+            this.cache_procXref = new LinkedHashMap<String, Set<TransactionCacheEntry>>();
+            this.cache_tableXref = new LinkedHashMap<String, Set<QueryCacheEntry>>();
+            this.cache_stmtXref = new LinkedHashMap<String, Set<QueryCacheEntry>>();
+            this.histogram_java_partitions = new Histogram<Integer>();
+            this.histogram_procs = new Histogram<String>();
+            this.histogram_sp_procs = new Histogram<String>();
+            this.histogram_mp_procs = new Histogram<String>();
+            this.histogram_txn_partitions = new Histogram<Integer>();
+            this.histogram_query_partitions = new Histogram<Integer>();
+            this.histogram_sp_procs_removed = new Histogram<String>();
+        }
+
+        /**
+         * Return the TransactionCacheEntry for the given txn id. A parallel
+         * shard will fall back to the entries that were already in the cost
+         * model before the estimation started.
+         * 
+         * @param txn_id
+         * @return
+         */
+        private TransactionCacheEntry getTransactionCacheEntry(long txn_id) {
+            TransactionCacheEntry txn_entry = this.txn_entries.get(txn_id);
+            if (txn_entry == null && this.parallel) {
+                txn_entry = SingleSitedCostModel.this.txn_entries.get(txn_id);
+            }
+            return (txn_entry);
+        }
+
+        /**
+         * Return the set of partitions that the current txn's queries have
+         * touched for the given table
+         * 
+         * @param table_id
+         * @return
+         */
+        private PartitionSet getStmtPartitions(int table_id) {
+            if (table_id >= this.temp_stmtPartitions.length) {
+                int orig = this.temp_stmtPartitions.length;
+                this.temp_stmtPartitions = Arrays.copyOf(this.temp_stmtPartitions, Math.max(table_id + 1, SingleSitedCostModel.this.table_keys.length));
+                for (int i = orig; i < this.temp_stmtPartitions.length; i++) {
+                    this.temp_stmtPartitions[i] = new PartitionSet(SingleSitedCostModel.this.num_partitions);
+                } // FOR
+            }
+            this.temp_stmtTables.add(table_id);
+            return (this.temp_stmtPartitions[table_id]);
+        }
+
+        private void clearStmtPartitions() {
+            for (int table_id = this.temp_stmtTables.first(); table_id != -1; table_id = this.temp_stmtTables.next(table_id + 1)) {
+                this.temp_stmtPartitions[table_id].clear();
+            } // FOR
+            this.temp_stmtTables.clear();
+        }
+
+        private <E> Set<E> getXref(Map<String, Set<E>> xref, String key) {
+            Set<E> cache = xref.get(key);
+            if (cache == null) {
+                cache = new HashSet<E>();
+                xref.put(key, cache);
+            }
+            return (cache);
+        }
+
+        /**
+         * The TransactionCacheEntries for this shard's txns in workload order
+         * 
+         * @return
+         */
+        public TransactionCacheEntry[] getResults() {
+            return (this.results);
+        }
+
+        @Override
+        public void run() {
+            assert (this.parallel);
+            TransactionTrace txn_trace = null;
+            try {
+                for (int i = 0; i < this.results.length; i++) {
+                    txn_trace = this.txns.get(this.offset + i);
+                    this.results[i] = SingleSitedCostModel.this.processTransaction(this, this.catalog_db, txn_trace, null, this.allowed.get(this.offset + i));
+                } // FOR
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to estimate cost for " + txn_trace, ex);
+            }
+        }
+    } // CLASS
+
     // ----------------------------------------------------
     // CONSTRUCTORS
     // ----------------------------------------------------
@@ -429,6 +788,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         if (catalog_db != null) {
             for (String table_key : CatalogKey.createKeys(catalog_db.getTables())) {
                 this.cache_tableXref.put(table_key, new HashSet<QueryCacheEntry>());
+                this.getTableId(table_key);
             } // FOR
             for (String stmt_key : CatalogKey.createKeys(CatalogUtil.getAllStatements(catalog_db))) {
                 this.cache_stmtXref.put(stmt_key, new HashSet<QueryCacheEntry>());
@@ -476,6 +836,35 @@ public class SingleSitedCostModel extends AbstractCostModel {
         assert (this.histogram_query_partitions.getValueCount() == 0);
     }
 
+    /**
+     * Return the dense id for the given TableKey. The ids for all of the
+     * tables in the catalog are allocated when the cost model is created, so
+     * this only needs to grab a lock for tables that we've never seen before
+     * 
+     * @param table_key
+     * @return
+     */
+    protected int getTableId(String table_key) {
+        Integer table_id = this.table_ids.get(table_key);
+        if (table_id == null) {
+            synchronized (this.table_ids) {
+                table_id = this.table_ids.get(table_key);
+                if (table_id == null) {
+                    String keys[] = Arrays.copyOf(this.table_keys, this.table_keys.length + 1);
+                    table_id = this.table_keys.length;
+                    keys[table_id] = table_key;
+                    this.table_keys = keys;
+                    this.table_ids.put(table_key, table_id);
+                }
+            } // SYNCH
+        }
+        return (table_id.intValue());
+    }
+
+    protected String getTableKey(int table_id) {
+        return (this.table_keys[table_id]);
+    }
+
     public int getWeightedTransactionCount() {
         int ctr = 0;
         for (TransactionCacheEntry txn_entry : this.txn_entries.values()) {
@@ -597,7 +986,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // partitions histogram
         final String debugBefore = txn_entry.debug();
         try {
-            txn_entry.touched_partitions.removeValues(query_entry.getAllPartitions(), query_entry.weight);
+            txn_entry.touched_partitions.removeValues(query_entry.all_partitions, query_entry.weight);
         } catch (Throwable ex) {
             LOG.error(debugBefore, ex);
             throw new RuntimeException(ex);
@@ -614,10 +1003,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         query_entry.invalid = true;
         query_entry.singlesited = true;
         query_entry.unknown = true;
-        for (Set<Integer> q_partitions : query_entry.partitions.values()) {
-            q_partitions.clear();
-        } // FOR
-        query_entry.all_partitions.clear();
+        query_entry.clearPartitions();
 
         this.query_ctr.addAndGet(-1 * query_entry.weight);
         return (invalidate_txn);
@@ -776,7 +1162,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
             // Get the list of partitions that are no longer being touched by
             // this txn
             // We remove these from the costmodel's global txn touched histogram
-            Set<Integer> zero_partitions = txn_entry.touched_partitions.getValuesForCount(0);
+            PartitionSet zero_partitions = txn_entry.touched_partitions.getZeroPartitions();
             if (!zero_partitions.isEmpty()) {
                 if (trace.get())
                     LOG.trace("Removing " + zero_partitions.size() + " partitions for " + txn_entry);
@@ -841,9 +1227,18 @@ public class SingleSitedCostModel extends AbstractCostModel {
     // ESTIMATION METHODS
     // --------------------------------------------------------------------------------------------
 
-    private final Map<String, Set<Integer>> temp_stmtPartitions = new HashMap<String, Set<Integer>>();
-    private final Set<Integer> temp_txnOrigPartitions = new HashSet<Integer>();
-    private final Set<Integer> temp_txnNewPartitions = new HashSet<Integer>();
+    /**
+     * Workloads with fewer txns than this are always estimated serially
+     */
+    public static final int PARALLEL_MIN_TXNS = 1000;
+
+    private boolean use_parallel = true;
+
+    /**
+     * The EstimationShard used when transactions are processed one at a time
+     * on the caller's thread. It writes directly into our data structures.
+     */
+    private final EstimationShard serial_shard = new EstimationShard();
 
     @Override
     public double estimateTransactionCost(Database catalog_db, Workload workload, Filter filter, TransactionTrace txn_trace) throws Exception {
@@ -858,7 +1253,16 @@ public class SingleSitedCostModel extends AbstractCostModel {
         assert (txn_entry != null);
         if (debug.get())
             LOG.debug(txn_trace + ": " + (txn_entry.singlesited ? "Single" : "Multi") + "-Partition");
+        return (this.getTransactionCost(txn_entry));
+    }
 
+    /**
+     * Return the cost of an already processed TransactionCacheEntry
+     * 
+     * @param txn_entry
+     * @return
+     */
+    private double getTransactionCost(TransactionCacheEntry txn_entry) {
         if (!txn_entry.singlesited) {
             return (COST_MULTISITE_QUERY * txn_entry.weight);
         }
@@ -877,16 +1281,16 @@ public class SingleSitedCostModel extends AbstractCostModel {
      * @return
      */
     protected TransactionCacheEntry createTransactionCacheEntry(TransactionTrace txn_trace, String proc_key) {
-        final int txn_weight = (this.use_txn_weights ? txn_trace.getWeight() : 1);
+        return (this.createTransactionCacheEntry(this.serial_shard, txn_trace, proc_key));
+    }
 
-        if (this.use_caching && !this.cache_procXref.containsKey(proc_key)) {
-            this.cache_procXref.put(proc_key, new HashSet<TransactionCacheEntry>());
-        }
+    private TransactionCacheEntry createTransactionCacheEntry(EstimationShard shard, TransactionTrace txn_trace, String proc_key) {
+        final int txn_weight = (this.use_txn_weights ? txn_trace.getWeight() : 1);
 
         TransactionCacheEntry txn_entry = new TransactionCacheEntry(proc_key, txn_trace);
-        this.txn_entries.put(txn_trace.getTransactionId(), txn_entry);
+        shard.txn_entries.put(txn_trace.getTransactionId(), txn_entry);
         if (this.use_caching) {
-            this.cache_procXref.get(proc_key).add(txn_entry);
+            shard.getXref(shard.cache_procXref, proc_key).add(txn_entry);
         }
         if (trace.get())
             LOG.trace("New " + txn_entry);
@@ -895,11 +1299,11 @@ public class SingleSitedCostModel extends AbstractCostModel {
         this.txn_ctr.addAndGet(txn_weight);
 
         // Record that we executed this procedure
-        this.histogram_procs.put(proc_key, txn_weight);
+        shard.histogram_procs.put(proc_key, txn_weight);
 
         // Always record that it was single-partition in the beginning... we can
         // switch later on
-        this.histogram_sp_procs.put(proc_key, txn_weight);
+        shard.histogram_sp_procs.put(proc_key, txn_weight);
 
         return (txn_entry);
     }
@@ -911,6 +1315,10 @@ public class SingleSitedCostModel extends AbstractCostModel {
      * @param proc_param_idx
      */
     protected void setBasePartition(TransactionCacheEntry txn_entry, Integer base_partition) {
+        this.setBasePartition(this.serial_shard, txn_entry, base_partition);
+    }
+
+    private void setBasePartition(EstimationShard shard, TransactionCacheEntry txn_entry, Integer base_partition) {
         txn_entry.base_partition = base_partition;
 
         // If the partition is null, then there's nothing we can do here other
@@ -926,7 +1334,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
         if (this.isJavaExecutionWeightEnabled()) {
             txn_entry.touched_partitions.put(txn_entry.base_partition, Math.round(txn_entry.weight * this.getJavaExecutionWeight()));
         }
-        this.histogram_java_partitions.put(txn_entry.base_partition, txn_entry.weight);
+        shard.histogram_java_partitions.put(txn_entry.base_partition, txn_entry.weight);
     }
 
     /**
@@ -940,6 +1348,24 @@ public class SingleSitedCostModel extends AbstractCostModel {
      * @throws Exception
      */
     protected TransactionCacheEntry processTransaction(Database catalog_db, TransactionTrace txn_trace, Filter filter) throws Exception {
+        return (this.processTransaction(this.serial_shard, catalog_db, txn_trace, filter, null));
+    }
+
+    /**
+     * Process a transaction and write all of the changes into the given
+     * EstimationShard. If query_allowed is not null, then it contains the
+     * pre-computed result of the filter for each of the txn's queries and the
+     * filter will not be invoked.
+     * 
+     * @param shard
+     * @param catalog_db
+     * @param txn_trace
+     * @param filter
+     * @param query_allowed
+     * @return
+     * @throws Exception
+     */
+    private TransactionCacheEntry processTransaction(EstimationShard shard, Database catalog_db, TransactionTrace txn_trace, Filter filter, boolean query_allowed[]) throws Exception {
         final long txn_id = txn_trace.getTransactionId();
         final int txn_weight = (this.use_txn_weights ? txn_trace.getWeight() : 1);
         final boolean debug_txn = DEBUG_TRACE_IDS.contains(txn_id);
@@ -949,12 +1375,8 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // Check whether we have a completed entry for this transaction already
         TransactionCacheEntry txn_entry = null;
         if (this.use_caching) {
-            txn_entry = this.txn_entries.get(txn_id);
-
-            // If we have a TransactionCacheEntry then we need to check that:
-            // (1) It has a base partition
-            // (2) All of its queries have been examined
-            if (txn_entry != null && txn_entry.base_partition != null && txn_entry.examined_queries == txn_trace.getQueries().size()) {
+            txn_entry = shard.getTransactionCacheEntry(txn_id);
+            if (this.isComplete(txn_entry, txn_trace)) {
                 if (trace.get())
                     LOG.trace("Using complete cached entry " + txn_entry);
                 return (txn_entry);
@@ -967,7 +1389,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
 
         // Initialize a new Cache entry for this txn
         if (txn_entry == null) {
-            txn_entry = this.createTransactionCacheEntry(txn_trace, proc_key);
+            txn_entry = this.createTransactionCacheEntry(shard, txn_trace, proc_key);
         }
 
         // We need to keep track of what partitions we have already added into
@@ -976,10 +1398,10 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // duplicate entries
         // Make sure to use a new HashSet, otherwise our set will get updated
         // when the Histogram changes
-        temp_txnOrigPartitions.clear();
-        temp_txnOrigPartitions.addAll(txn_entry.touched_partitions.values());
+        shard.temp_txnOrigPartitions.clear();
+        shard.temp_txnOrigPartitions.addAll(txn_entry.touched_partitions.values());
         if (this.use_caching == false)
-            assert (temp_txnOrigPartitions.isEmpty()) : txn_trace + " already has partitions?? " + temp_txnOrigPartitions;
+            assert (shard.temp_txnOrigPartitions.isEmpty()) : txn_trace + " already has partitions?? " + shard.temp_txnOrigPartitions;
 
         // If the partitioning parameter is set for the StoredProcedure and we
         // haven't gotten the
@@ -996,7 +1418,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
             } catch (Exception ex) {
                 LOG.error("Unexpected error from PartitionEstimator for " + txn_trace, ex);
             }
-            this.setBasePartition(txn_entry, base_partition);
+            this.setBasePartition(shard, txn_entry, base_partition);
             if (trace.get())
                 LOG.trace("Base partition for " + txn_entry + " is '" + txn_entry.base_partition + "' using parameter #" + proc_param_idx);
         }
@@ -1007,8 +1429,8 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // For each table, we need to keep track of the values that was used
         // when accessing their partition columns. This allows us to determine
         // whether we're hitting tables all on the same site
-        // Table Key -> Set<Partition #>
-        temp_stmtPartitions.clear();
+        // TableId -> Set<Partition #>
+        shard.clearStmtPartitions();
 
         // Loop through each query that was executed and look at each table that
         // is referenced to see what attribute it is being looked up on.
@@ -1046,7 +1468,8 @@ public class SingleSitedCostModel extends AbstractCostModel {
 
             // If we have a filter and that filter doesn't want us to look at
             // this query, then we will just skip it and check the other ones
-            if (filter != null && filter.apply(query_trace) != Filter.FilterResult.ALLOW) {
+            boolean allowed = (query_allowed != null ? query_allowed[query_idx] : (filter == null || filter.apply(query_trace) == Filter.FilterResult.ALLOW));
+            if (allowed == false) {
                 if (trace.get())
                     LOG.trace(query_trace + " is filtered. Skipping...");
                 txn_entry.unknown_queries += query_weight;
@@ -1065,11 +1488,8 @@ public class SingleSitedCostModel extends AbstractCostModel {
                 // TransactionCacheEntry
                 // or any histograms because they will have been updated when
                 // the QueryCacheEntry is created
-                for (String table_key : query_entry.getTableKeys()) {
-                    if (!temp_stmtPartitions.containsKey(table_key)) {
-                        temp_stmtPartitions.put(table_key, new HashSet<Integer>());
-                    }
-                    temp_stmtPartitions.get(table_key).addAll(query_entry.getPartitions(table_key));
+                for (int i = 0; i < query_entry.table_ids.length; i++) {
+                    shard.getStmtPartitions(query_entry.table_ids[i]).addAll(query_entry.table_partitions[i]);
                 } // FOR
                 txn_entry.examined_queries += query_weight;
                 query_partitions += query_entry.getAllPartitions().size();
@@ -1088,12 +1508,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
                 if (this.use_caching) {
                     txn_entry.query_entries[query_idx] = query_entry;
                     String stmt_key = CatalogKey.createKey(catalog_stmt);
-                    Set<QueryCacheEntry> cache = this.cache_stmtXref.get(stmt_key);
-                    if (cache == null) {
-                        cache = new HashSet<QueryCacheEntry>();
-                        this.cache_stmtXref.put(stmt_key, cache);
-                    }
-                    cache.add(query_entry);
+                    shard.getXref(shard.cache_stmtXref, stmt_key).add(query_entry);
                 }
 
                 // Give the QueryTrace to the PartitionEstimator to get back a
@@ -1127,26 +1542,18 @@ public class SingleSitedCostModel extends AbstractCostModel {
                     // This will allow us to quickly find the QueryCacheEntry in
                     // invalidate()
                     if (this.use_caching) {
-                        Set<QueryCacheEntry> cache = this.cache_tableXref.get(e.getKey());
-                        if (cache == null) {
-                            cache = new HashSet<QueryCacheEntry>();
-                            this.cache_tableXref.put(e.getKey(), cache);
-                        }
-                        cache.add(query_entry);
+                        shard.getXref(shard.cache_tableXref, e.getKey()).add(query_entry);
                     }
 
                     // Ok, so now update the variables in our QueryCacheEntry
+                    int table_id = this.getTableId(e.getKey());
                     query_entry.singlesited = (query_entry.singlesited && e.getValue().size() == 1);
-                    query_entry.addAllPartitions(e.getKey(), e.getValue());
+                    query_entry.addAllPartitions(table_id, e.getValue());
 
                     // And then update the Statement partitions map to include
                     // all of the partitions
                     // that this query touched
-                    if (!temp_stmtPartitions.containsKey(e.getKey())) {
-                        temp_stmtPartitions.put(e.getKey(), e.getValue());
-                    } else {
-                        temp_stmtPartitions.get(e.getKey()).addAll(e.getValue());
-                    }
+                    shard.getStmtPartitions(table_id).addAll(e.getValue());
                 } // FOR (Entry<TableKey, Set<Partitions>>
                 if (trace.get())
                     LOG.trace(sb.toString() + "\n" + query_trace.debug(catalog_db) + "\n" + StringUtil.SINGLE_LINE.trim());
@@ -1165,8 +1572,8 @@ public class SingleSitedCostModel extends AbstractCostModel {
                 // above, otherwise we will count
                 // the same partition multiple times if the query references
                 // more than one table!
-                this.histogram_query_partitions.putAll(query_entry.getAllPartitions(), query_weight * txn_weight);
-                txn_entry.touched_partitions.putAll(query_entry.getAllPartitions(), query_weight);
+                shard.histogram_query_partitions.putAll(query_entry.getAllPartitions(), query_weight * txn_weight);
+                txn_entry.touched_partitions.putAll(query_entry.all_partitions, query_weight);
                 int query_num_partitions = query_entry.getAllPartitions().size();
                 query_partitions += query_num_partitions;
 
@@ -1222,15 +1629,15 @@ public class SingleSitedCostModel extends AbstractCostModel {
             // all hash to the same value. If they don't, then we know we can't
             // sbe single-partition
         } else {
-            for (Entry<String, Set<Integer>> entry : temp_stmtPartitions.entrySet()) {
-                String table_key = entry.getKey();
+            for (int table_id = shard.temp_stmtTables.first(); table_id != -1; table_id = shard.temp_stmtTables.next(table_id + 1)) {
+                String table_key = this.getTableKey(table_id);
                 Table catalog_tbl = CatalogKey.getFromKey(catalog_db, table_key, Table.class);
                 if (catalog_tbl.getIsreplicated()) {
                     continue;
                 }
 
                 Column table_partition_col = catalog_tbl.getPartitioncolumn();
-                Set<Integer> hashes = entry.getValue();
+                PartitionSet hashes = shard.temp_stmtPartitions[table_id];
 
                 // If there is more than one partition, then we'll never be
                 // multi-partition so we
@@ -1246,7 +1653,7 @@ public class SingleSitedCostModel extends AbstractCostModel {
                     // the same site as the value
                     // used on the partitioning column for this table
                 } else if (!hashes.isEmpty() && txn_entry.base_partition != null) {
-                    int tbl_partition = CollectionUtil.first(hashes);
+                    int tbl_partition = hashes.first();
                     if (txn_entry.base_partition != tbl_partition) {
                         if (trace.get())
                             LOG.trace(txn_trace + " executes on Partition #" + txn_entry.base_partition + " " + "but partitioning column " + CatalogUtil.getDisplayName(table_partition_col) + " "
@@ -1267,8 +1674,12 @@ public class SingleSitedCostModel extends AbstractCostModel {
         if (txn_singlesited_orig && !txn_entry.singlesited) {
             if (trace.get())
                 LOG.trace("Switching " + txn_entry + " histogram info from single- to multi-partition [is_first=" + is_first + "]");
-            this.histogram_sp_procs.remove(proc_key, txn_weight);
-            this.histogram_mp_procs.put(proc_key, txn_weight);
+            if (shard.parallel) {
+                shard.histogram_sp_procs_removed.put(proc_key, txn_weight);
+            } else {
+                shard.histogram_sp_procs.remove(proc_key, txn_weight);
+            }
+            shard.histogram_mp_procs.put(proc_key, txn_weight);
         }
 
         // IMPORTANT: If the number of partitions touched in this txn have
@@ -1276,18 +1687,18 @@ public class SingleSitedCostModel extends AbstractCostModel {
         // a bunch of queries, then we need to update the various histograms and
         // counters
         // This ensures that we do not double count partitions
-        if (txn_entry.touched_partitions.getValueCount() != temp_txnOrigPartitions.size()) {
-            assert (txn_entry.touched_partitions.getValueCount() > temp_txnOrigPartitions.size());
+        if (txn_entry.touched_partitions.getValueCount() != shard.temp_txnOrigPartitions.size()) {
+            assert (txn_entry.touched_partitions.getValueCount() > shard.temp_txnOrigPartitions.size());
             // Remove the partitions that we already know that we touch and then
             // update
             // the histogram keeping track of which partitions our txn touches
-            temp_txnNewPartitions.clear();
-            temp_txnNewPartitions.addAll(txn_entry.touched_partitions.values());
-            temp_txnNewPartitions.removeAll(temp_txnOrigPartitions);
-            this.histogram_txn_partitions.putAll(temp_txnNewPartitions, txn_weight);
+            shard.temp_txnNewPartitions.clear();
+            shard.temp_txnNewPartitions.addAll(txn_entry.touched_partitions.values());
+            shard.temp_txnNewPartitions.removeAll(shard.temp_txnOrigPartitions);
+            shard.histogram_txn_partitions.putAll(shard.temp_txnNewPartitions, txn_weight);
             if (trace.get())
-                LOG.trace(String.format("Updating %s histogram_txn_partitions with %d new partitions [new_sample_count=%d, new_value_count=%d]\n%s", txn_trace, temp_txnNewPartitions.size(),
-                        this.histogram_txn_partitions.getSampleCount(), this.histogram_txn_partitions.getValueCount(), txn_entry.debug()));
+                LOG.trace(String.format("Updating %s histogram_txn_partitions with %d new partitions [new_sample_count=%d, new_value_count=%d]\n%s", txn_trace, shard.temp_txnNewPartitions.size(),
+                        shard.histogram_txn_partitions.getSampleCount(), shard.histogram_txn_partitions.getValueCount(), txn_entry.debug()));
         }
 
         // // Sanity check
@@ -1306,6 +1717,161 @@ public class SingleSitedCostModel extends AbstractCostModel {
         return (txn_entry);
     }
 
+    // --------------------------------------------------------------------------------------------
+    // PARALLEL ESTIMATION METHODS
+    // --------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if we have already examined all of the queries for the txn
+     * and therefore processTransaction() can just return the cached entry
+     * 
+     * @param txn_entry
+     * @param txn_trace
+     * @return
+     */
+    private boolean isComplete(TransactionCacheEntry txn_entry, TransactionTrace txn_trace) {
+        // If we have a TransactionCacheEntry then we need to check that:
+        // (1) It has a base partition
+        // (2) All of its queries have been examined
+        return (txn_entry != null && txn_entry.base_partition != null && txn_entry.examined_queries == txn_trace.getQueries().size());
+    }
+
+    /**
+     * Returns true if this cost model can process a workload with multiple
+     * EstimationShards. Subclasses that override processTransaction() or that
+     * depend on the order that txns are examined in must return false.
+     * 
+     * @return
+     */
+    public boolean isParallelEstimationEnabled() {
+        return (this.use_parallel);
+    }
+
+    public void setParallelEstimationEnabled(boolean val) {
+        this.use_parallel = val;
+    }
+
+    /**
+     * Invoke the filter on all of the queries for the given txn. This must be
+     * called on the same thread that is iterating through the workload and in
+     * the same order, so that stateful filters see the exact same sequence of
+     * elements that they would in the serial path. Returns null if there is no
+     * filter or if the txn already has a complete cache entry (since the
+     * serial path would not invoke the filter on its queries either).
+     * 
+     * @param txn_trace
+     * @param filter
+     * @return
+     */
+    protected boolean[] applyQueryFilter(TransactionTrace txn_trace, Filter filter) {
+        if (filter == null)
+            return (null);
+        if (this.use_caching && this.isComplete(this.txn_entries.get(txn_trace.getTransactionId()), txn_trace))
+            return (null);
+
+        boolean allowed[] = new boolean[txn_trace.getQueryCount()];
+        int query_idx = 0;
+        for (QueryTrace query_trace : txn_trace.getQueries()) {
+            allowed[query_idx++] = (filter.apply(query_trace) == Filter.FilterResult.ALLOW);
+        } // FOR
+        return (allowed);
+    }
+
+    /**
+     * Split the given list of txns into contiguous EstimationShards of at most
+     * shard_size txns each. The shards must be executed and then passed to
+     * mergeEstimationShards() before this cost model is used again.
+     * 
+     * @param catalog_db
+     * @param txns
+     * @param allowed
+     *            the output of applyQueryFilter() for each txn
+     * @param shard_size
+     * @return
+     */
+    protected List<EstimationShard> createEstimationShards(Database catalog_db, List<TransactionTrace> txns, List<boolean[]> allowed, int shard_size) {
+        assert (txns.size() == allowed.size());
+        assert (shard_size > 0) : "Invalid shard size " + shard_size;
+        List<EstimationShard> shards = new ArrayList<EstimationShard>();
+        for (int start = 0, cnt = txns.size(); start < cnt; start += shard_size) {
+            shards.add(new EstimationShard(catalog_db, txns, allowed, start, Math.min(cnt, start + shard_size)));
+        } // FOR
+        return (shards);
+    }
+
+    /**
+     * Merge the parallel EstimationShards back into this cost model. The
+     * shards must be given in the same order as createEstimationShards()
+     * returned them.
+     * 
+     * @param shards
+     */
+    protected void mergeEstimationShards(List<EstimationShard> shards) {
+        for (EstimationShard shard : shards) {
+            assert (shard.parallel);
+            this.txn_entries.putAll(shard.txn_entries);
+            for (Entry<String, Set<TransactionCacheEntry>> e : shard.cache_procXref.entrySet()) {
+                this.serial_shard.getXref(this.cache_procXref, e.getKey()).addAll(e.getValue());
+            } // FOR
+            for (Entry<String, Set<QueryCacheEntry>> e : shard.cache_tableXref.entrySet()) {
+                this.serial_shard.getXref(this.cache_tableXref, e.getKey()).addAll(e.getValue());
+            } // FOR
+            for (Entry<String, Set<QueryCacheEntry>> e : shard.cache_stmtXref.entrySet()) {
+                this.serial_shard.getXref(this.cache_stmtXref, e.getKey()).addAll(e.getValue());
+            } // FOR
+
+            this.histogram_java_partitions.putHistogram(shard.histogram_java_partitions);
+            this.histogram_procs.putHistogram(shard.histogram_procs);
+            this.histogram_sp_procs.putHistogram(shard.histogram_sp_procs);
+            this.histogram_mp_procs.putHistogram(shard.histogram_mp_procs);
+            this.histogram_txn_partitions.putHistogram(shard.histogram_txn_partitions);
+            this.histogram_query_partitions.putHistogram(shard.histogram_query_partitions);
+            this.histogram_sp_procs.removeHistogram(shard.histogram_sp_procs_removed);
+        } // FOR
+    }
+
+    /**
+     * Estimate the workload cost by splitting the txns into contiguous
+     * EstimationShards that are processed in the global thread pool. The
+     * filter is still applied on the caller's thread in workload order, and
+     * the costs are summed in workload order, so the result is identical to
+     * the serial estimation. We fall back to the serial path if there is an
+     * upper bound, because the serial path stops processing txns once it is
+     * exceeded and we want to leave the caches in the same state.
+     */
+    @Override
+    protected double estimateWorkloadCostImpl(Database catalog_db, Workload workload, Filter filter, Double upper_bound) throws Exception {
+        final int num_threads = ThreadUtil.getMaxGlobalThreads();
+        if (upper_bound != null || num_threads <= 1 || this.isParallelEstimationEnabled() == false || workload.getTransactionCount() < PARALLEL_MIN_TXNS) {
+            return (super.estimateWorkloadCostImpl(catalog_db, workload, filter, upper_bound));
+        }
+
+        List<TransactionTrace> txns = new ArrayList<TransactionTrace>();
+        List<boolean[]> allowed = new ArrayList<boolean[]>();
+        Iterator<TransactionTrace> it = workload.iterator(filter);
+        while (it.hasNext()) {
+            TransactionTrace txn_trace = it.next();
+            txns.add(txn_trace);
+            allowed.add(this.applyQueryFilter(txn_trace, filter));
+        } // WHILE
+        if (txns.isEmpty())
+            return (0.0d);
+
+        List<EstimationShard> shards = this.createEstimationShards(catalog_db, txns, allowed, (int) Math.ceil(txns.size() / (double) num_threads));
+        if (debug.get())
+            LOG.debug(String.format("Estimating cost of %d txns using %d shards", txns.size(), shards.size()));
+        ThreadUtil.runGlobalPool(shards); // BLOCKING
+        this.mergeEstimationShards(shards);
+
+        double cost = 0.0d;
+        for (EstimationShard shard : shards) {
+            for (TransactionCacheEntry txn_entry : shard.results) {
+                cost += this.getTransactionCost(txn_entry);
+            } // FOR
+        } // FOR
+        return (cost);
+    }
+
     /**
      * MAIN!
      * 
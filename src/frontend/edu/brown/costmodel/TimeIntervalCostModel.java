@@ -8,8 +8,9 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -19,12 +20,12 @@ import org.apache.log4j.Logger;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
-import org.voltdb.utils.Pair;
 
 import edu.brown.catalog.CatalogKey;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.catalog.ClusterConfiguration;
 import edu.brown.catalog.FixCatalog;
+import edu.brown.costmodel.SingleSitedCostModel.EstimationShard;
 import edu.brown.costmodel.SingleSitedCostModel.QueryCacheEntry;
 import edu.brown.costmodel.SingleSitedCostModel.TransactionCacheEntry;
 import edu.brown.designer.DesignerHints;
@@ -35,10 +36,8 @@ import edu.brown.statistics.Histogram;
 import edu.brown.utils.ArgumentsParser;
 import edu.brown.utils.ClassUtil;
 import edu.brown.utils.CollectionUtil;
-import edu.brown.utils.Consumer;
 import edu.brown.utils.MathUtil;
 import edu.brown.utils.PartitionEstimator;
-import edu.brown.utils.Producer;
 import edu.brown.utils.StringUtil;
 import edu.brown.utils.ThreadUtil;
 import edu.brown.workload.TransactionTrace;
@@ -125,9 +124,6 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
     final ArrayList<Double> tmp_penalties = new ArrayList<Double>();
     final ArrayList<Long> tmp_potential = new ArrayList<Long>();
 
-    /** Temporary mapping from intervals to Consumers */
-    final Map<Integer, Consumer<Pair<TransactionTrace, Integer>>> tmp_consumers = new HashMap<Integer, Consumer<Pair<TransactionTrace, Integer>>>();
-
     /**
      * Constructor
      */
@@ -174,13 +170,13 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
         } // FOR
     }
 
-    // @Override
-    // public AbstractCostModel clone(Database catalog_db) throws
-    // CloneNotSupportedException {
-    // TimeIntervalCostModel<T> clone = new TimeIntervalCostModel<T>(catalog_db,
-    // this.inner_class, this.cost_models.length);
-    // return (clone);
-    // }
+    @SuppressWarnings("unchecked")
+    @Override
+    public AbstractCostModel clone(Database catalog_db) throws CloneNotSupportedException {
+        Class<? extends T> inner_class = (Class<? extends T>) this.cost_models[0].getClass();
+        TimeIntervalCostModel<T> clone = new TimeIntervalCostModel<T>(catalog_db, inner_class, this.cost_models.length);
+        return (clone);
+    }
 
     @Override
     public void applyDesignerHints(DesignerHints hints) {
@@ -317,48 +313,80 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
                 LOG.trace("Workload Filter Chain:       " + StringUtil.join("   ", "\n", filter.getFilters()));
         }
 
-        // QUEUING THREAD
-        tmp_consumers.clear();
-        Producer<TransactionTrace, Pair<TransactionTrace, Integer>> producer = new Producer<TransactionTrace, Pair<TransactionTrace, Integer>>(CollectionUtil.iterable(workload.iterator(filter))) {
-            @Override
-            public Pair<Consumer<Pair<TransactionTrace, Integer>>, Pair<TransactionTrace, Integer>> transform(TransactionTrace txn_trace) {
-                int i = workload.getTimeInterval(txn_trace, num_intervals);
-                assert (i >= 0) : "Invalid time interval '" + i + "'\n" + txn_trace.debug(catalog_db);
-                assert (i < num_intervals) : "Invalid interval: " + i + "\n" + txn_trace.debug(catalog_db);
-                total_txns.incrementAndGet();
-                Pair<TransactionTrace, Integer> p = Pair.of(txn_trace, i);
-                return (Pair.of(tmp_consumers.get(i), p));
+        // Split the txns up by their time interval. The filter is always
+        // invoked here on the caller's thread in workload order so that the
+        // results do not depend on how the work is scheduled below
+        final List<List<TransactionTrace>> interval_txns = new ArrayList<List<TransactionTrace>>();
+        final List<List<boolean[]>> interval_allowed = new ArrayList<List<boolean[]>>();
+        for (int i = 0; i < num_intervals; i++) {
+            interval_txns.add(new ArrayList<TransactionTrace>());
+            interval_allowed.add(new ArrayList<boolean[]>());
+        } // FOR
+        Iterator<TransactionTrace> it = workload.iterator(filter);
+        while (it.hasNext()) {
+            TransactionTrace txn_trace = it.next();
+            int i = workload.getTimeInterval(txn_trace, num_intervals);
+            assert (i >= 0) : "Invalid time interval '" + i + "'\n" + txn_trace.debug(catalog_db);
+            assert (i < num_intervals) : "Invalid interval: " + i + "\n" + txn_trace.debug(catalog_db);
+            total_txns.incrementAndGet();
+            interval_txns.get(i).add(txn_trace);
+
+            SingleSitedCostModel singlesited_cost_model = (SingleSitedCostModel) this.cost_models[i];
+            if (singlesited_cost_model.isParallelEstimationEnabled()) {
+                interval_allowed.get(i).add(singlesited_cost_model.applyQueryFilter(txn_trace, filter));
             }
-        };
+        } // WHILE
 
         // PROCESSING THREADS
+        // Rather than giving each thread a fixed set of intervals, we split
+        // every interval into contiguous shards that are roughly the same
+        // size so that a busy interval doesn't hold up everything else. The
+        // inner cost models that can't be sharded are processed serially by a
+        // single thread. The shards are merged back into their interval's cost
+        // model in workload order after all of the threads have finished.
         final int num_threads = ThreadUtil.getMaxGlobalThreads();
-        int interval_ctr = 0;
-        for (int thread = 0; thread < num_threads; thread++) {
-            // First create a new IntervalProcessor/Consumer
-            IntervalProcessor ip = new IntervalProcessor(catalog_db, workload, filter);
-
-            // Then assign it to some number of intervals
-            for (int i = 0, cnt = (int) Math.ceil(num_intervals / (double) num_threads); i < cnt; i++) {
-                if (interval_ctr > num_intervals)
-                    break;
-                tmp_consumers.put(interval_ctr++, ip);
-                if (trace.get())
-                    LOG.trace(String.format("Interval #%02d => IntervalProcessor #%02d", interval_ctr - 1, thread));
-            } // FOR
-
-            // And make sure that we queue it up too
-            producer.addConsumer(ip);
-        } // FOR (threads)
+        final int shard_size = Math.max(1, (int) Math.ceil(total_txns.get() / (double) num_threads));
+        final List<List<EstimationShard>> interval_shards = new ArrayList<List<EstimationShard>>();
+        final List<Runnable> runnables = new ArrayList<Runnable>();
+        for (int i = 0; i < num_intervals; i++) {
+            final SingleSitedCostModel singlesited_cost_model = (SingleSitedCostModel) this.cost_models[i];
+            final List<TransactionTrace> txns = interval_txns.get(i);
+            if (singlesited_cost_model.isParallelEstimationEnabled()) {
+                List<EstimationShard> shards = singlesited_cost_model.createEstimationShards(catalog_db, txns, interval_allowed.get(i), shard_size);
+                interval_shards.add(shards);
+                runnables.addAll(shards);
+            } else {
+                interval_shards.add(null);
+                if (txns.isEmpty())
+                    continue;
+                final int interval = i;
+                runnables.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (TransactionTrace txn_trace : txns) {
+                            try {
+                                singlesited_cost_model.estimateTransactionCost(catalog_db, workload, filter, txn_trace);
+                            } catch (Exception ex) {
+                                throw new RuntimeException("Failed to estimate cost for " + txn_trace.getCatalogItemName() + " at interval " + interval, ex);
+                            }
+                        } // FOR
+                    }
+                });
+            }
+        } // FOR
+        if (debug.get())
+            LOG.debug(String.format("Estimating cost of %d txns across %d intervals using %d threads", total_txns.get(), num_intervals, runnables.size()));
+        ThreadUtil.runGlobalPool(runnables); // BLOCKING
 
-        ThreadUtil.runGlobalPool(producer.getRunnablesList()); // BLOCKING
-        if (debug.get()) {
-            int processed = 0;
-            for (Consumer<?> c : producer.getConsumers()) {
-                processed += c.getProcessedCounter();
+        IntervalProcessor ip = new IntervalProcessor(catalog_db);
+        for (int i = 0; i < num_intervals; i++) {
+            if (interval_shards.get(i) != null) {
+                ((SingleSitedCostModel) this.cost_models[i]).mergeEstimationShards(interval_shards.get(i));
+            }
+            for (TransactionTrace txn_trace : interval_txns.get(i)) {
+                ip.process(txn_trace, i);
             } // FOR
-            assert (total_txns.get() == processed) : String.format("Expected[%d] != Processed[%d]", total_txns.get(), processed);
-        }
+        } // FOR
 
         // We have to convert all of the costs into the range of [0.0, 1.0]
         // For each interval, divide the number of partitions touched by the
@@ -620,26 +648,19 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
     }
 
     /**
-     * 
+     * Updates the interval counters and histograms for txns that have already
+     * been processed by their interval's inner cost model
      */
-    private class IntervalProcessor extends Consumer<Pair<TransactionTrace, Integer>> {
+    private class IntervalProcessor {
 
         final Set<Integer> tmp_missingPartitions = new HashSet<Integer>();
         final Database catalog_db;
-        final Workload workload;
-        final Filter filter;
 
-        public IntervalProcessor(Database catalog_db, final Workload workload, final Filter filter) {
+        public IntervalProcessor(Database catalog_db) {
             this.catalog_db = catalog_db;
-            this.workload = workload;
-            this.filter = filter;
         }
 
-        @Override
-        public void process(Pair<TransactionTrace, Integer> p) {
-            assert (p != null);
-            final TransactionTrace txn_trace = p.getFirst();
-            final int i = p.getSecond(); // Interval
+        public void process(final TransactionTrace txn_trace, final int i) {
             final int txn_weight = (use_txn_weights ? txn_trace.getWeight() : 1);
             final String proc_key = CatalogKey.createKey(CatalogUtil.DEFAULT_DATABASE_NAME, txn_trace.getCatalogItemName());
 
@@ -654,7 +675,6 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
             histogram_procs.put(proc_key, txn_weight);
 
             try {
-                singlesited_cost_model.estimateTransactionCost(catalog_db, workload, filter, txn_trace);
                 TransactionCacheEntry txn_entry = singlesited_cost_model.getTransactionCacheEntry(txn_trace);
                 assert (txn_entry != null) : "No txn entry for " + txn_trace;
                 Collection<Integer> partitions = txn_entry.getTouchedPartitions();
@@ -744,7 +764,7 @@ public class TimeIntervalCostModel<T extends AbstractCostModel> extends Abstract
                 }
             } catch (Exception ex) {
                 CatalogUtil.saveCatalog(catalog_db.getCatalog(), "catalog.txt");
-                throw new RuntimeException("Failed to estimate cost for " + txn_trace.getCatalogItemName() + " at interval " + i, ex);
+                throw new RuntimeException("Failed to update interval #" + i + " for " + txn_trace.getCatalogItemName(), ex);
             }
         }
     }
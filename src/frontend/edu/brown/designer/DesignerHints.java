@@ -222,6 +222,19 @@ public class DesignerHints implements Cloneable, JSONSerializable {
     public double relaxation_factor_max = 0.5;
     public int relaxation_min_size = 5;
 
+    /**
+     * The number of relaxed neighborhoods that the LNSPartitioner will search
+     * at the same time in each round. Every neighborhood is searched on its own
+     * copy of the catalog.
+     */
+    public int relaxation_parallel_neighborhoods = 1;
+
+    /**
+     * Seed for the random number generator used to select the relaxed tables.
+     * If this is null, then the relaxations will be different for every run.
+     */
+    public Long relaxation_seed = null;
+
     /**
      * If we were given a target PartitionPlan, then we will check whether every
      * new solution equals this plan. If it does, then we will halt. This is
@@ -309,7 +322,7 @@ public class DesignerHints implements Cloneable, JSONSerializable {
      * 
      * @param cost
      */
-    public void logSolutionCost(double cost, double singlep_txns) {
+    public synchronized void logSolutionCost(double cost, double singlep_txns) {
         assert (this.log_solutions_costs != null);
         try {
             if (this.log_solutions_costs_writer == null) {
@@ -131,6 +131,48 @@ public class DesignerInfo {
         this.dgraph = src.dgraph;
     }
 
+    /**
+     * Copy Constructor for a different copy of the same catalog. Everything
+     * that references catalog objects is rebuilt for the new Database, but the
+     * workload and statistics are shared with the original. The cost model is
+     * not copied and must be set by the caller.
+     * 
+     * @param src
+     * @param catalog_db
+     * @throws Exception
+     */
+    public DesignerInfo(DesignerInfo src, Database catalog_db) throws Exception {
+        this.args = src.args;
+        this.catalog_db = catalog_db;
+        this.workload = src.workload;
+        this.stats = src.stats;
+        this.partitioner_class = src.partitioner_class;
+        this.mapper_class = src.mapper_class;
+        this.indexer_class = src.indexer_class;
+        this.num_threads = src.num_threads;
+        this.num_intervals = src.num_intervals;
+        this.num_partitions = src.num_partitions;
+        this.dependencies = DependencyUtil.singleton(this.catalog_db);
+        this.costmodel_class = src.costmodel_class;
+        this.costmodel = null;
+        this.checkpoint = src.checkpoint;
+        this.m_estimator = new MemoryEstimator(this.stats, new DefaultHasher(this.catalog_db, this.num_partitions));
+        this.correlations_file = src.correlations_file;
+        if (this.correlations_file != null) {
+            this.mappings = new ParameterMappingsSet();
+            this.mappings.load(this.correlations_file, this.catalog_db);
+        }
+        synchronized (DesignerInfo.DGRAPH_CACHE) {
+            if (!DesignerInfo.DGRAPH_CACHE.containsKey(this.catalog_db)) {
+                this.dgraph = new DependencyGraph(this.catalog_db);
+                new DependencyGraphGenerator(this).generate(this.dgraph);
+                DesignerInfo.DGRAPH_CACHE.put(this.catalog_db, this.dgraph);
+            } else {
+                this.dgraph = DesignerInfo.DGRAPH_CACHE.get(this.catalog_db);
+            }
+        } // SYNCH
+    }
+
     /**
      * @param catalog_db
      * @param workload
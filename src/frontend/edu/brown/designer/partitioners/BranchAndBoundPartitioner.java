@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections15.CollectionUtils;
 import org.apache.commons.collections15.map.ListOrderedMap;
@@ -240,6 +241,47 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
         }
     } // END CLASS
 
+    /**
+     * Upper bound cost that is shared by several BranchAndBoundPartitioners
+     * that are searching different neighborhoods at the same time. Whenever one
+     * of them finds a new best solution, the other ones can use its cost to
+     * prune their own search trees. The cost is stored as the raw bits of a
+     * double so that we never need to lock.
+     */
+    public static class GlobalUpperBound {
+        private final AtomicLong cost_bits;
+
+        public GlobalUpperBound(double cost) {
+            this.cost_bits = new AtomicLong(Double.doubleToLongBits(cost));
+        }
+
+        public double get() {
+            return (Double.longBitsToDouble(this.cost_bits.get()));
+        }
+
+        /**
+         * Lower the bound to the given cost if it is less than the current
+         * bound
+         * 
+         * @param cost
+         * @return true if the bound was lowered
+         */
+        public boolean offer(double cost) {
+            while (true) {
+                long current = this.cost_bits.get();
+                if (cost >= Double.longBitsToDouble(current))
+                    return (false);
+                if (this.cost_bits.compareAndSet(current, Double.doubleToLongBits(cost)))
+                    return (true);
+            } // WHILE
+        }
+
+        @Override
+        public String toString() {
+            return (String.format("GlobalUpperBound[%.05f]", this.get()));
+        }
+    } // END CLASS
+
     // --------------------------------------------------------------------------------------------
     // DATA MEMBERS
     // --------------------------------------------------------------------------------------------
@@ -247,6 +289,7 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
     protected StateVertex best_vertex = null;
     protected StateVertex upper_bounds_vertex = null;
     protected PartitionPlan upper_bounds_pplan = null;
+    protected GlobalUpperBound global_upper_bound = null;
     protected final Map<CatalogType, WorkloadFilter> traversal_filters = new HashMap<CatalogType, WorkloadFilter>();
     protected TraverseThread thread = null;
 
@@ -299,6 +342,30 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
         return (this.upper_bounds_vertex);
     }
 
+    /**
+     * Share an upper bound with other partitioners that are running at the
+     * same time. We will never traverse down a path whose cost is greater than
+     * this bound. Paths whose cost is equal to the bound are still traversed so
+     * that the best solution that we find does not depend on how our search is
+     * interleaved with the other ones.
+     * 
+     * @param global_upper_bound
+     */
+    public void setGlobalUpperBound(GlobalUpperBound global_upper_bound) {
+        this.global_upper_bound = global_upper_bound;
+    }
+
+    /**
+     * Returns true if the given cost is not greater than the shared upper
+     * bound. If there is no shared upper bound, then this is always true
+     * 
+     * @param cost
+     * @return
+     */
+    protected boolean withinGlobalUpperBound(double cost) {
+        return (this.global_upper_bound == null || cost <= this.global_upper_bound.get());
+    }
+
     // public void setTraversalAttributes(Map<String, List<String>> attributes,
     // int num_tables) {
     // this.base_traversal_attributes.clear();
@@ -1100,6 +1167,8 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
                         LOG.debug("Old Solution:\n" + StringUtil.box(best_vertex.toString()));
                     }
                     BranchAndBoundPartitioner.this.best_vertex = state;
+                    if (global_upper_bound != null)
+                        global_upper_bound.offer(state.cost);
                     if (debug.get()) {
                         LOG.debug("New Best Solution:\n" + StringUtil.box(best_vertex.toString()));
                         if (this.cost_model.hasDebugMessages())
@@ -1159,7 +1228,7 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
                 // exhaustive flag is enabled
                 if (this.halt_search == false
                         && ((last_attribute && is_table && this.hints.greedy_search) || (this.hints.exhaustive_search == true) || (complete_solution == false && is_table
-                                && cost < BranchAndBoundPartitioner.this.best_vertex.cost && cost < BranchAndBoundPartitioner.this.upper_bounds_vertex.cost))) {
+                                && cost < BranchAndBoundPartitioner.this.best_vertex.cost && cost < BranchAndBoundPartitioner.this.upper_bounds_vertex.cost && withinGlobalUpperBound(cost)))) {
 
                     // IMPORTANT: If this is the last table in our traversal,
                     // then we need to switch over
@@ -1226,7 +1295,7 @@ public class BranchAndBoundPartitioner extends AbstractPartitioner {
                 // past our best cost
                 // our upper bounds, then keep going...
                 if (complete_solution == false && hints.enable_procparameter_search && (this.hints.greedy_search == true)
-                        || (local_best_vertex.cost < best_vertex.cost && local_best_vertex.cost < upper_bounds_vertex.cost)) {
+                        || (local_best_vertex.cost < best_vertex.cost && local_best_vertex.cost < upper_bounds_vertex.cost && withinGlobalUpperBound(local_best_vertex.cost))) {
                     this.cp.update(current_proc);
                     this.traverse(local_best_vertex, idx + 1);
                     this.cp.reset(current_proc);
@@ -32,6 +32,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.types.TimestampType;
 import org.voltdb.utils.Pair;
 
+import edu.brown.catalog.CatalogCloner;
 import edu.brown.catalog.CatalogKey;
 import edu.brown.catalog.CatalogUtil;
 import edu.brown.catalog.special.MultiColumn;
@@ -59,6 +60,7 @@ import edu.brown.utils.JSONUtil;
 import edu.brown.utils.MathUtil;
 import edu.brown.utils.ProfileMeasurement;
 import edu.brown.utils.StringUtil;
+import edu.brown.utils.ThreadUtil;
 
 /**
  * Large-Neighborhood Search Partitioner
@@ -149,6 +151,13 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
     private final Set<Table> ignore_tables = new HashSet<Table>();
     private final Set<Procedure> ignore_procs = new HashSet<Procedure>();
 
+    /**
+     * The searchers that we use when exploring several relaxed neighborhoods
+     * at the same time. These are created the first time that we need them and
+     * then reused for every round
+     */
+    protected final transient List<NeighborhoodSearch> neighborhoods = new ArrayList<NeighborhoodSearch>();
+
     /**
      * @param designer
      * @param info
@@ -172,6 +181,8 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
     protected void init(DesignerHints hints) throws Exception {
         assert (hints != null);
         this.init_called = true;
+        if (hints.relaxation_seed != null)
+            this.rng.setSeed(hints.relaxation_seed);
         AccessGraph first = this.generateAccessGraph();
         this.agraph = AccessGraphGenerator.convertToSingleColumnEdges(info.catalog_db, first);
 
@@ -422,6 +433,9 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
 
         final ListOrderedSet<Table> table_attributes = new ListOrderedSet<Table>();
         final ListOrderedSet<Procedure> proc_attributes = new ListOrderedSet<Procedure>();
+        final int num_neighborhoods = Math.max(1, hints.relaxation_parallel_neighborhoods);
+        if (num_neighborhoods > 1)
+            LOG.info(String.format("Searching %d relaxed neighborhoods in parallel", num_neighborhoods));
 
         while (true) {
             // Found search target
@@ -436,21 +450,30 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
             }
 
             this.total_search_time.start();
-            // IMPORTANT: Make sure that we are always start comparing swaps
-            // using the solution
-            // at the beginning of a restart (or the start of the search). We do
-            // *not* want to
-            // compare swaps using the global best cost
-            if (!this.relaxCurrentSolution(hints, this.restart_ctr++, table_attributes, proc_attributes)) {
-                LOG.debug("Halting LNS!");
-                break;
-            }
+            int last_restart_ctr = this.restart_ctr;
+            if (num_neighborhoods > 1) {
+                // Relax and search multiple neighborhoods at once
+                if (!this.parallelLocalSearch(hints, num_neighborhoods)) {
+                    LOG.debug("Halting LNS!");
+                    break;
+                }
+            } else {
+                // IMPORTANT: Make sure that we are always start comparing swaps
+                // using the solution
+                // at the beginning of a restart (or the start of the search).
+                // We do *not* want to
+                // compare swaps using the global best cost
+                if (!this.relaxCurrentSolution(hints, this.restart_ctr++, table_attributes, proc_attributes)) {
+                    LOG.debug("Halting LNS!");
+                    break;
+                }
 
-            // Local Search!
-            this.localSearch(hints, table_attributes.asList(), proc_attributes.asList());
+                // Local Search!
+                this.localSearch(hints, table_attributes.asList(), proc_attributes.asList());
+            }
 
             // Sanity Check!
-            if (this.restart_ctr % 3 == 0) {
+            if (this.restart_ctr / 3 != last_restart_ctr / 3) {
                 LOG.info("Running sanity check on best solution...");
                 this.costmodel.clear(true);
                 double cost2 = this.costmodel.estimateWorkloadCost(info.catalog_db, info.workload);
@@ -703,46 +726,17 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
         // -------------------------------
         // Apply relaxation and invalidate caches!
         // -------------------------------
-        for (Table catalog_tbl : table_attributes) {
-            // catalog_tbl.setPartitioncolumn(null);
-            this.costmodel.invalidateCache(catalog_tbl);
-        } // FOR
-        for (Procedure catalog_proc : proc_attributes) {
-            catalog_proc.setPartitionparameter(NullProcParameter.PARAM_IDX);
-            this.costmodel.invalidateCache(catalog_proc);
-        } // FOR
+        this.applyRelaxation(this.costmodel, table_attributes, proc_attributes);
 
         // Sanity Check: Make sure the non-relaxed tables come back with the
         // same partitioning attribute
-        Map<CatalogType, CatalogType> orig_solution = new HashMap<CatalogType, CatalogType>();
-        for (Table catalog_tbl : info.catalog_db.getTables()) {
-            if (!table_attributes.contains(catalog_tbl))
-                orig_solution.put(catalog_tbl, catalog_tbl.getPartitioncolumn());
-        }
-        for (Procedure catalog_proc : info.catalog_db.getProcedures()) {
-            if (!proc_attributes.contains(catalog_proc)) {
-                ProcParameter catalog_param = catalog_proc.getParameters().get(catalog_proc.getPartitionparameter());
-                orig_solution.put(catalog_proc, catalog_param);
-            }
-        }
+        Map<CatalogType, CatalogType> orig_solution = this.getNonRelaxedSolution(info.catalog_db, table_attributes, proc_attributes);
 
         // -------------------------------
         // Calculate the number of backtracks and the local search time
         // we want to allow in this round.
         // -------------------------------
-        if (hints.enable_local_search_increase) {
-            if (this.last_halt_reason == HaltReason.BACKTRACK_LIMIT && this.last_backtrack_limit != null) {
-                // Give them more backtracks
-                this.last_backtrack_limit = this.last_backtrack_limit * hints.back_tracks_multiplier;
-                LOG.info(String.format("Increasing BackTrack limit from %d to %.02f", hints.limit_back_tracks, this.last_backtrack_limit));
-                hints.limit_back_tracks = (int) Math.round(this.last_backtrack_limit);
-            } else if (this.last_halt_reason == HaltReason.LOCAL_TIME_LIMIT && this.last_localtime_limit != null) {
-                // Give them more time
-                this.last_localtime_limit = this.last_localtime_limit * hints.local_time_multiplier;
-                LOG.info(String.format("Increasing LocalTime limit from %d to %.02f", hints.limit_local_time, this.last_localtime_limit));
-                hints.limit_local_time = (int) Math.round(this.last_localtime_limit);
-            }
-        }
+        this.updateLocalSearchLimits(hints);
 
         // -------------------------------
         // GO GO LOCAL SEARCH!!
@@ -755,13 +749,83 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
         // -------------------------------
         // Validation
         // -------------------------------
-        for (Table catalog_tbl : info.catalog_db.getTables()) {
+        this.validateNonRelaxedSolution(info.catalog_db, orig_solution, result);
+
+        // -------------------------------
+        // Comparison with current best solution
+        // -------------------------------
+        if (state.getCost() < this.best_cost) {
+            LOG.info("New Best Solution Found from Local Search!");
+            this.best_solution = result;
+            this.best_cost = state.getCost();
+            this.best_memory = state.getMemory() / (double) hints.max_memory_per_partition;
+            LOG.info("Best Solution Cost: " + String.format(DEBUG_COST_FORMAT, this.best_cost));
+            LOG.info("Best Solution Memory: " + String.format(DEBUG_COST_FORMAT, this.best_memory));
+            LOG.info("Best Solution:\n" + this.best_solution);
+        }
+        this.best_solution.apply(info.catalog_db);
+        return;
+    }
+
+    /**
+     * Relax the given tables and procedures in the catalog that the cost model
+     * is estimating and invalidate their cache entries
+     * 
+     * @param costmodel
+     * @param table_attributes
+     * @param proc_attributes
+     */
+    protected void applyRelaxation(AbstractCostModel costmodel, Collection<Table> table_attributes, Collection<Procedure> proc_attributes) {
+        for (Table catalog_tbl : table_attributes) {
+            // catalog_tbl.setPartitioncolumn(null);
+            costmodel.invalidateCache(catalog_tbl);
+        } // FOR
+        for (Procedure catalog_proc : proc_attributes) {
+            catalog_proc.setPartitionparameter(NullProcParameter.PARAM_IDX);
+            costmodel.invalidateCache(catalog_proc);
+        } // FOR
+    }
+
+    /**
+     * Return the partitioning attributes of all of the tables and procedures in
+     * the catalog that are not being relaxed
+     * 
+     * @param catalog_db
+     * @param table_attributes
+     * @param proc_attributes
+     * @return
+     */
+    protected Map<CatalogType, CatalogType> getNonRelaxedSolution(Database catalog_db, Collection<Table> table_attributes, Collection<Procedure> proc_attributes) {
+        Map<CatalogType, CatalogType> orig_solution = new HashMap<CatalogType, CatalogType>();
+        for (Table catalog_tbl : catalog_db.getTables()) {
+            if (!table_attributes.contains(catalog_tbl))
+                orig_solution.put(catalog_tbl, catalog_tbl.getPartitioncolumn());
+        }
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            if (!proc_attributes.contains(catalog_proc)) {
+                ProcParameter catalog_param = catalog_proc.getParameters().get(catalog_proc.getPartitionparameter());
+                orig_solution.put(catalog_proc, catalog_param);
+            }
+        }
+        return (orig_solution);
+    }
+
+    /**
+     * Make sure that the local search did not change the partitioning
+     * attributes of anything that was not relaxed
+     * 
+     * @param catalog_db
+     * @param orig_solution
+     * @param result
+     */
+    protected void validateNonRelaxedSolution(Database catalog_db, Map<CatalogType, CatalogType> orig_solution, PartitionPlan result) {
+        for (Table catalog_tbl : catalog_db.getTables()) {
             if (catalog_tbl.getSystable() == false && orig_solution.containsKey(catalog_tbl)) {
                 assert (orig_solution.get(catalog_tbl).equals(catalog_tbl.getPartitioncolumn())) : String.format("%s got changed: %s => %s", catalog_tbl, orig_solution.get(catalog_tbl),
                         catalog_tbl.getPartitioncolumn());
             }
         } // FOR
-        for (Procedure catalog_proc : info.catalog_db.getProcedures()) {
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
             if (orig_solution.containsKey(catalog_proc)) {
                 ProcParameter catalog_param = catalog_proc.getParameters().get(catalog_proc.getPartitionparameter());
                 if (catalog_param == null) {
@@ -771,21 +835,28 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
                 }
             }
         } // FOR
+    }
 
-        // -------------------------------
-        // Comparison with current best solution
-        // -------------------------------
-        if (state.getCost() < this.best_cost) {
-            LOG.info("New Best Solution Found from Local Search!");
-            this.best_solution = result;
-            this.best_cost = state.getCost();
-            this.best_memory = state.getMemory() / (double) hints.max_memory_per_partition;
-            LOG.info("Best Solution Cost: " + String.format(DEBUG_COST_FORMAT, this.best_cost));
-            LOG.info("Best Solution Memory: " + String.format(DEBUG_COST_FORMAT, this.best_memory));
-            LOG.info("Best Solution:\n" + this.best_solution);
+    /**
+     * Calculate the number of backtracks and the local search time that we
+     * want to allow in the next round based on why the last round halted
+     * 
+     * @param hints
+     */
+    protected void updateLocalSearchLimits(final DesignerHints hints) {
+        if (hints.enable_local_search_increase) {
+            if (this.last_halt_reason == HaltReason.BACKTRACK_LIMIT && this.last_backtrack_limit != null) {
+                // Give them more backtracks
+                this.last_backtrack_limit = this.last_backtrack_limit * hints.back_tracks_multiplier;
+                LOG.info(String.format("Increasing BackTrack limit from %d to %.02f", hints.limit_back_tracks, this.last_backtrack_limit));
+                hints.limit_back_tracks = (int) Math.round(this.last_backtrack_limit);
+            } else if (this.last_halt_reason == HaltReason.LOCAL_TIME_LIMIT && this.last_localtime_limit != null) {
+                // Give them more time
+                this.last_localtime_limit = this.last_localtime_limit * hints.local_time_multiplier;
+                LOG.info(String.format("Increasing LocalTime limit from %d to %.02f", hints.limit_local_time, this.last_localtime_limit));
+                hints.limit_local_time = (int) Math.round(this.last_localtime_limit);
+            }
         }
-        this.best_solution.apply(info.catalog_db);
-        return;
     }
 
     /**
@@ -813,6 +884,227 @@ public class LNSPartitioner extends AbstractPartitioner implements JSONSerializa
         return (Pair.of(result, local_search.getBestVertex()));
     }
 
+    // ----------------------------------------------------------------------------
+    // PARALLEL LOCAL SEARCH
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Relax the current best solution several times and then search all of
+     * those neighborhoods at the same time. The relaxations are always selected
+     * in this thread, so the sequence of neighborhoods only depends on the
+     * random seed and not on how the searches get scheduled. The searches share
+     * the cost of the best solution that any of them has found so far in order
+     * to prune their search trees. If more than one neighborhood finds a
+     * solution with the same cost, then the one that was relaxed first wins.
+     * 
+     * @param hints
+     * @param num_neighborhoods
+     * @return false if there are no more neighborhoods left to search
+     * @throws Exception
+     */
+    protected boolean parallelLocalSearch(final DesignerHints hints, int num_neighborhoods) throws Exception {
+        while (this.neighborhoods.size() < num_neighborhoods) {
+            this.neighborhoods.add(new NeighborhoodSearch(this.neighborhoods.size(), hints));
+        } // WHILE
+
+        // -------------------------------
+        // Select the relaxations for this round
+        // -------------------------------
+        final ListOrderedSet<Table> table_attributes = new ListOrderedSet<Table>();
+        final ListOrderedSet<Procedure> proc_attributes = new ListOrderedSet<Procedure>();
+        final BranchAndBoundPartitioner.GlobalUpperBound upper_bound = new BranchAndBoundPartitioner.GlobalUpperBound(this.best_cost);
+        final List<NeighborhoodSearch> round = new ArrayList<NeighborhoodSearch>();
+        for (int i = 0; i < num_neighborhoods; i++) {
+            if (!this.relaxCurrentSolution(hints, this.restart_ctr++, table_attributes, proc_attributes)) {
+                break;
+            }
+            NeighborhoodSearch search = this.neighborhoods.get(i);
+            search.prepare(hints, upper_bound, table_attributes, proc_attributes);
+            round.add(search);
+        } // FOR
+        if (round.isEmpty())
+            return (false);
+        this.updateLocalSearchLimits(hints);
+
+        // -------------------------------
+        // GO GO LOCAL SEARCH!!
+        // -------------------------------
+        if (debug.get())
+            LOG.debug(String.format("Searching %d neighborhoods [upperBound=" + DEBUG_COST_FORMAT + "]", round.size(), upper_bound.get()));
+        ThreadUtil.runGlobalPool(round);
+
+        // -------------------------------
+        // Comparison with current best solution
+        // -------------------------------
+        NeighborhoodSearch best = null;
+        double best_cost = this.best_cost;
+        HaltReason halt_reason = null;
+        long backtracks = 0;
+        int elapsed_time = 0;
+        for (NeighborhoodSearch search : round) {
+            if (search.state.getCost() < best_cost) {
+                best = search;
+                best_cost = search.state.getCost();
+            }
+            // If any of them found the target, then we're done. Otherwise we
+            // only say that we exhausted the search if all of them did, so
+            // that the limits get increased if one of them ran out
+            if (halt_reason != HaltReason.FOUND_TARGET
+                    && (halt_reason == null || halt_reason == HaltReason.EXHAUSTED_SEARCH || search.halt_reason == HaltReason.FOUND_TARGET)) {
+                halt_reason = search.halt_reason;
+            }
+            if (search.backtrack_count != null)
+                backtracks += search.backtrack_count;
+            elapsed_time = Math.max(elapsed_time, search.elapsed_time);
+        } // FOR
+        this.last_halt_reason = halt_reason;
+        this.last_backtrack_count = backtracks;
+        this.last_elapsed_time = elapsed_time;
+
+        if (best != null) {
+            LOG.info(String.format("New Best Solution Found from Local Search in Neighborhood #%02d!", best.id));
+            this.best_solution = copyPartitionPlan(best.result, info.catalog_db);
+            this.best_cost = best.state.getCost();
+            this.best_memory = best.state.getMemory() / (double) hints.max_memory_per_partition;
+            LOG.info("Best Solution Cost: " + String.format(DEBUG_COST_FORMAT, this.best_cost));
+            LOG.info("Best Solution Memory: " + String.format(DEBUG_COST_FORMAT, this.best_memory));
+            LOG.info("Best Solution:\n" + this.best_solution);
+        }
+        this.best_solution.apply(info.catalog_db);
+        return (true);
+    }
+
+    /**
+     * Make a copy of a PartitionPlan that references the catalog objects in a
+     * different copy of the same catalog
+     * 
+     * @param pplan
+     * @param catalog_db
+     * @return
+     * @throws JSONException
+     */
+    protected static PartitionPlan copyPartitionPlan(PartitionPlan pplan, Database catalog_db) throws JSONException {
+        PartitionPlan copy = new PartitionPlan();
+        copy.fromJSON(new JSONObject(pplan.toJSONString()), catalog_db);
+        return (copy);
+    }
+
+    /**
+     * Searches a single relaxed neighborhood of the current best solution with
+     * a BranchAndBoundPartitioner. Each NeighborhoodSearch has its own copy of
+     * the catalog, cost model, and AccessGraph, so several of them can run at
+     * the same time. They are kept around between rounds so that their cost
+     * model caches only need to be invalidated for what has changed.
+     */
+    protected class NeighborhoodSearch implements Runnable {
+        private final int id;
+        protected final Database catalog_db;
+        private final DesignerInfo info;
+        private final AbstractCostModel costmodel;
+        private final AccessGraph agraph;
+
+        private final List<Table> table_attributes = new ArrayList<Table>();
+        private final List<Procedure> proc_attributes = new ArrayList<Procedure>();
+        private DesignerHints hints;
+        private BranchAndBoundPartitioner.GlobalUpperBound upper_bound;
+        private PartitionPlan upper_bounds_pplan;
+        private double upper_bounds_cost;
+        private long upper_bounds_memory;
+        private Map<CatalogType, CatalogType> orig_solution;
+
+        private PartitionPlan result;
+        private BranchAndBoundPartitioner.StateVertex state;
+        private HaltReason halt_reason;
+        private Long backtrack_count;
+        private int elapsed_time;
+
+        public NeighborhoodSearch(int id, DesignerHints hints) throws Exception {
+            this.id = id;
+            this.catalog_db = CatalogCloner.cloneDatabase(LNSPartitioner.this.info.catalog_db);
+            this.info = new DesignerInfo(LNSPartitioner.this.info, this.catalog_db);
+            this.costmodel = LNSPartitioner.this.costmodel.clone(this.catalog_db);
+            this.info.setCostModel(this.costmodel);
+            this.agraph = AccessGraphGenerator.convertToSingleColumnEdges(this.catalog_db, AccessGraphGenerator.generateGlobal(this.info));
+
+            // Run the cost model once from this thread so that all of the
+            // catalog caches for our copy are populated before we start
+            // searching in parallel
+            copyPartitionPlan(LNSPartitioner.this.best_solution, this.catalog_db).apply(this.catalog_db);
+            this.costmodel.applyDesignerHints(hints);
+            this.costmodel.estimateWorkloadCost(this.catalog_db, this.info.workload);
+            if (debug.get())
+                LOG.debug(String.format("Created NeighborhoodSearch #%02d", this.id));
+        }
+
+        /**
+         * Apply the current best solution to our copy of the catalog and then
+         * relax the given tables and procedures. The catalog objects are from
+         * the LNSPartitioner's catalog.
+         * 
+         * @param hints
+         * @param upper_bound
+         * @param table_attributes
+         * @param proc_attributes
+         * @throws Exception
+         */
+        public void prepare(DesignerHints hints, BranchAndBoundPartitioner.GlobalUpperBound upper_bound, Collection<Table> table_attributes, Collection<Procedure> proc_attributes)
+                throws Exception {
+            this.hints = hints;
+            this.upper_bound = upper_bound;
+            this.result = null;
+            this.state = null;
+            this.halt_reason = null;
+            this.backtrack_count = null;
+
+            // Anything that we relaxed in our last search could have been
+            // changed, so we need to invalidate them along with everything
+            // that is different in the new best solution
+            PartitionPlan current = PartitionPlan.createFromCatalog(this.catalog_db);
+            this.upper_bounds_pplan = copyPartitionPlan(LNSPartitioner.this.best_solution, this.catalog_db);
+            this.upper_bounds_pplan.apply(this.catalog_db);
+            this.upper_bounds_cost = best_cost;
+            this.upper_bounds_memory = (long) (best_memory * hints.max_memory_per_partition);
+            for (CatalogType catalog_item : this.upper_bounds_pplan.getChangedEntries(current)) {
+                this.costmodel.invalidateCache(catalog_item);
+            } // FOR
+            for (Table catalog_tbl : this.table_attributes) {
+                this.costmodel.invalidateCache(catalog_tbl);
+            } // FOR
+            for (Procedure catalog_proc : this.proc_attributes) {
+                this.costmodel.invalidateCache(catalog_proc);
+            } // FOR
+
+            this.table_attributes.clear();
+            for (Table catalog_tbl : table_attributes) {
+                this.table_attributes.add(this.catalog_db.getTables().get(catalog_tbl.getName()));
+            } // FOR
+            this.proc_attributes.clear();
+            for (Procedure catalog_proc : proc_attributes) {
+                this.proc_attributes.add(this.catalog_db.getProcedures().get(catalog_proc.getName()));
+            } // FOR
+            applyRelaxation(this.costmodel, this.table_attributes, this.proc_attributes);
+            this.orig_solution = getNonRelaxedSolution(this.catalog_db, this.table_attributes, this.proc_attributes);
+        }
+
+        @Override
+        public void run() {
+            BranchAndBoundPartitioner local_search = new BranchAndBoundPartitioner(designer, this.info, this.agraph, this.table_attributes, this.proc_attributes);
+            long start = System.currentTimeMillis();
+            try {
+                local_search.setUpperBounds(this.hints, this.upper_bounds_pplan, this.upper_bounds_cost, this.upper_bounds_memory);
+                local_search.setGlobalUpperBound(this.upper_bound);
+                this.result = local_search.generate(this.hints);
+            } catch (Exception ex) {
+                throw new RuntimeException("Failed to search neighborhood #" + this.id, ex);
+            }
+            this.elapsed_time = Math.round((System.currentTimeMillis() - start) / 1000);
+            this.halt_reason = local_search.halt_reason;
+            this.backtrack_count = local_search.getLastBackTrackCount();
+            this.state = local_search.getBestVertex();
+            validateNonRelaxedSolution(this.catalog_db, this.orig_solution, this.result);
+        }
+    } // CLASS
+
     /**
      * @param hints
      * @return
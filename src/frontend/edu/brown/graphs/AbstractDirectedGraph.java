@@ -50,6 +50,9 @@ public abstract class AbstractDirectedGraph<V extends AbstractVertex, E extends
     public int getGraphId() {
         return this.inner.getGraphId();
     }
+    protected void setGraphId(int id) {
+        this.inner.setGraphId(id);
+    }
     public Set<V> getDescendants(V vertex) {
         return (this.inner.getDescendants(vertex));
     }
@@ -202,7 +205,7 @@ public abstract class AbstractDirectedGraph<V extends AbstractVertex, E extends
     @Override
     public void fromJSON(JSONObject jsonObject, Database catalog_db) throws JSONException {
         int id = GraphUtil.deserialize(this, catalog_db, jsonObject);
-        this.inner.setGraphId(id);
+        this.setGraphId(id);
     }
 
 }
@@ -78,6 +78,19 @@ public abstract class AbstractGraphElement implements JSONSerializable, Comparab
         return this.element_id;
     }
     
+    /**
+     * Set the element id of an object that is being deserialized. This makes sure that
+     * any new element ids that we hand out afterwards are larger than this one.
+     * @param element_id
+     */
+    protected void setElementId(long element_id) {
+        this.element_id = element_id;
+        long next = NEXT_ELEMENT_ID.get();
+        while (next <= element_id && NEXT_ELEMENT_ID.compareAndSet(next, element_id + 1) == false) {
+            next = NEXT_ELEMENT_ID.get();
+        } // WHILE
+    }
+    
 
     public Set<String> getAttributes(IGraph<?, ?> graph) {
         this.lazyAttributeAllocation();
@@ -54,6 +54,7 @@ import edu.brown.hstore.Hstoreservice.TransactionReduceRequest;
 import edu.brown.hstore.Hstoreservice.TransactionReduceResponse;
 import edu.brown.hstore.Hstoreservice.TransactionWorkRequest;
 import edu.brown.hstore.Hstoreservice.TransactionWorkResponse;
+import edu.brown.hstore.callbacks.SendDataCallback;
 import edu.brown.hstore.callbacks.TransactionFinishCallback;
 import edu.brown.hstore.callbacks.TransactionPrepareCallback;
 import edu.brown.hstore.callbacks.TransactionRedirectResponseCallback;
@@ -818,24 +819,9 @@ public class HStoreCoordinator implements Shutdownable {
                     LOG.warn("No data in " + ts + " for partition " + catalog_part.getId());
                     continue;
                 }
-                ByteString bs = null;
-                byte bytes[] = null;
-                try {
-                    bytes = ByteBuffer.wrap(FastSerializer.serialize(vt)).array();
-                    bs = ByteString.copyFrom(bytes); 
-                    if (debug.get())
-                        LOG.debug(String.format("Outbound data for Partition #%d: RowCount=%d / MD5=%s / Length=%d",
-                                                catalog_part.getId(), vt.getRowCount(), StringUtil.md5sum(bytes), bytes.length));
-                } catch (Exception ex) {
-                    throw new RuntimeException(String.format("Unexpected error when serializing %s data for partition %d",
-                                                             ts, catalog_part.getId()), ex);
-                }
                 if (debug.get()) 
                     LOG.debug("Constructing Dependency for " + catalog_part);
-                builder.addFragments(DataFragment.newBuilder()
-                             .setId(catalog_part.getId())
-                             .addData(bs)
-                             .build());
+                builder.addFragments(this.createDataFragment(ts, catalog_part.getId(), vt));
             } // FOR n partitions in remote_site
             
             if (builder.getFragmentsCount() > 0) {
@@ -868,6 +854,60 @@ public class HStoreCoordinator implements Shutdownable {
         }
     }
     
+    /**
+     * Send a chunk of data for a single partition ahead of the final sendData() call.
+     * If the partition is at this HStoreSite, then the data is stored directly in the
+     * transaction. Otherwise the SendDataCallback is told to wait for one more response
+     * before the chunk is sent to the remote HStoreSite. This allows the SHUFFLE phase
+     * to ship its output as it fills up its buffers. The sendData() call is still needed
+     * afterwards to let the callback know that there is nothing else to send.
+     * @param ts
+     * @param partition
+     * @param vt
+     * @param callback
+     */
+    public void sendDataChunk(LocalTransaction ts, int partition, VoltTable vt, SendDataCallback callback) {
+        if (this.local_partitions.contains(partition)) {
+            if (debug.get()) LOG.debug(String.format("Storing VoltTable chunk directly at local partition %d for %s", partition, ts));
+            ts.storeData(partition, vt);
+            return;
+        }
+        
+        int dest_site_id = hstore_site.getSiteIdForPartitionId(partition);
+        SendDataRequest request = SendDataRequest.newBuilder()
+                                                 .setTransactionId(ts.getTransactionId())
+                                                 .setSenderId(local_site_id)
+                                                 .addFragments(this.createDataFragment(ts, partition, vt))
+                                                 .build();
+        if (debug.get())
+            LOG.debug(String.format("Sending chunk with %d rows for partition %d to HStoreSite %s for %s",
+                                    vt.getRowCount(), partition, HStoreSite.formatSiteName(dest_site_id), ts));
+        callback.incrementCounter(1);
+        this.channels.get(dest_site_id).sendData(new ProtoRpcController(), request, callback);
+    }
+    
+    /**
+     * Serialize the given VoltTable into a DataFragment for the given partition
+     */
+    private DataFragment createDataFragment(LocalTransaction ts, int partition, VoltTable vt) {
+        ByteString bs = null;
+        byte bytes[] = null;
+        try {
+            bytes = ByteBuffer.wrap(FastSerializer.serialize(vt)).array();
+            bs = ByteString.copyFrom(bytes); 
+            if (debug.get())
+                LOG.debug(String.format("Outbound data for Partition #%d: RowCount=%d / MD5=%s / Length=%d",
+                                        partition, vt.getRowCount(), StringUtil.md5sum(bytes), bytes.length));
+        } catch (Exception ex) {
+            throw new RuntimeException(String.format("Unexpected error when serializing %s data for partition %d",
+                                                     ts, partition), ex);
+        }
+        return (DataFragment.newBuilder()
+                            .setId(partition)
+                            .addData(bs)
+                            .build());
+    }
+    
     // ----------------------------------------------------------------------------
     // TIME SYNCHRONZIATION
     // ----------------------------------------------------------------------------
@@ -52,6 +52,7 @@ import org.voltdb.catalog.Site;
 import org.voltdb.exceptions.MispredictionException;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.messaging.WireSchemaRegistry;
 import org.voltdb.utils.Pair;
 
 import com.google.protobuf.RpcCallback;
@@ -79,6 +80,7 @@ import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.hstore.util.MapReduceHelperThread;
 import edu.brown.hstore.util.PartitionExecutorPostProcessor;
+import edu.brown.hstore.util.SampledWorkloadTracer;
 import edu.brown.hstore.util.TxnCounter;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
@@ -86,6 +88,7 @@ import edu.brown.markov.EstimationThresholds;
 import edu.brown.markov.MarkovEdge;
 import edu.brown.markov.MarkovEstimate;
 import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovGraphRefresher;
 import edu.brown.markov.MarkovUtil;
 import edu.brown.markov.MarkovVertex;
 import edu.brown.markov.TransactionEstimator;
@@ -260,6 +263,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private final MapReduceHelperThread mr_helper;
     
+    /**
+     * Recomputes MarkovGraphs in the background
+     */
+    private MarkovGraphRefresher markov_refresher = null;
+    
     /**
      * Estimation Thresholds
      */
@@ -286,6 +294,11 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      */
     private HStoreSiteStatus status_monitor = null;
     
+    /**
+     * Sampled Workload Tracer
+     */
+    private final SampledWorkloadTracer workload_tracer;
+    
     
     /**
      * For whatever...
@@ -376,6 +389,12 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             } // FOR
         }
         
+        if (hstore_conf.site.trace_sample_rate > 0) {
+            this.workload_tracer = new SampledWorkloadTracer(this);
+        } else {
+            this.workload_tracer = null;
+        }
+        
         // Create all of our parameter manglers
         for (Procedure catalog_proc : this.catalog_db.getProcedures()) {
             if (catalog_proc.getSystemproc()) continue;
@@ -461,6 +480,12 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
     public Collection<PartitionExecutorPostProcessor> getExecutionSitePostProcessors() {
         return (this.processors);
     }
+    /**
+     * Return the SampledWorkloadTracer for this site. Will be null if sampled tracing is disabled
+     */
+    public SampledWorkloadTracer getWorkloadTracer() {
+        return (this.workload_tracer);
+    }
     /**
      * Return a new HStoreCoordinator for this HStoreSite. Note that this
      * should only be called by HStoreSite.init(), otherwise the 
@@ -644,6 +669,15 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             } // FOR
         }
         
+        // Start the SampledWorkloadTracer
+        if (this.workload_tracer != null) {
+            t = new Thread(this.workload_tracer);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.setDaemon(true);
+            t.setUncaughtExceptionHandler(handler);
+            t.start();
+        }
+        
         // Start the MapReduceHelperThread
         if (this.mr_helper != null) {
             t = new Thread(this.mr_helper);
@@ -652,6 +686,28 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             t.start();
         }
         
+        // Start the MarkovGraphRefresher
+        if (hstore_conf.site.markov_refresh) {
+            for (int partition : this.local_partitions) {
+                TransactionEstimator t_estimator = this.getPartitionExecutor(partition).getTransactionEstimator();
+                if (t_estimator == null || t_estimator.getMarkovs() == null) continue;
+                if (this.markov_refresher == null) {
+                    this.markov_refresher = new MarkovGraphRefresher(hstore_conf.site.markov_refresh_interval,
+                                                                     hstore_conf.site.markov_refresh_min_txns);
+                }
+                t_estimator.setRefresher(this.markov_refresher);
+            } // FOR
+            if (this.markov_refresher != null) {
+                if (d) LOG.debug("Starting MarkovGraphRefresher thread");
+                t = new Thread(this.markov_refresher);
+                t.setName(HStoreSite.getThreadName(this, "markov"));
+                t.setPriority(Thread.MIN_PRIORITY);
+                t.setDaemon(true);
+                t.setUncaughtExceptionHandler(handler);
+                t.start();
+            }
+        }
+        
         // Schedule the ExecutionSiteHelper
 //        if (d) LOG.debug(String.format("Scheduling ExecutionSiteHelper to run every %.1f seconds", hstore_conf.site.helper_interval / 1000f));
 //        this.helper = new ExecutionSiteHelper(this,
@@ -820,6 +876,8 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         
         if (this.mr_helper != null)
             this.mr_helper.prepareShutdown(error);
+        if (this.markov_refresher != null)
+            this.markov_refresher.prepareShutdown(error);
         
         for (int p : this.local_partitions) {
             this.executors[p].prepareShutdown(error);
@@ -850,11 +908,16 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         }
         // Tell the MapReduceHelperThread to shutdown too
         if (this.mr_helper != null) this.mr_helper.shutdown();
+        // And the MarkovGraphRefresher
+        if (this.markov_refresher != null) this.markov_refresher.shutdown();
         
         for (int p : this.local_partitions) {
             if (t) LOG.trace("Telling the PartitionExecutor for partition " + p + " to shutdown");
             this.executors[p].shutdown();
         } // FOR
+        
+        // Write out any sampled traces that the PartitionExecutors left behind
+        if (this.workload_tracer != null) this.workload_tracer.shutdown();
       
         // Tell anybody that wants to know that we're going down
         if (t) LOG.trace("Notifying " + this.shutdown_observable.countObservers() + " observers that we're shutting down");
@@ -1466,10 +1529,12 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
      * 
      * @param ts
      * @param cresponse
+     * @param schemas if not null, then the response will use the compact wire protocol
      * @return
      */
-    private ByteBuffer serializeClientResponse(LocalTransaction ts, ClientResponseImpl cresponse) {
+    private ByteBuffer serializeClientResponse(LocalTransaction ts, ClientResponseImpl cresponse, WireSchemaRegistry schemas) {
         FastSerializer out = new FastSerializer(PartitionExecutor.buffer_pool);
+        out.setCompact(schemas != null, schemas);
         try {
             out.writeObject(cresponse);
         } catch (IOException e) {
@@ -1484,8 +1549,8 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
         ClientResponseImpl.setThrottleFlag(buffer, throttle);
         ClientResponseImpl.setServerTimestamp(buffer, timestamp);
         
-        if (d) LOG.debug(String.format("Serialized ClientResponse for %s [throttle=%s, timestamp=%d]",
-                                       ts, throttle, timestamp));
+        if (d) LOG.debug(String.format("Serialized ClientResponse for %s [throttle=%s, timestamp=%d, compact=%s]",
+                                       ts, throttle, timestamp, out.isCompact()));
         return (buffer);
     }
     
@@ -1509,7 +1574,18 @@ public class HStoreSite implements VoltProcedureListener.Handler, Shutdownable,
             if (d) LOG.debug(String.format("Sending back ClientResponse for " + ts));
 
             // Send result back to client!
-            ts.getClientCallback().run(this.serializeClientResponse(ts, cresponse).array());
+            // If the client is using the compact protocol, then we have to serialize and write the response
+            // in one step so that a schema id never shows up on the connection before its definition
+            RpcCallback<byte[]> callback = ts.getClientCallback();
+            if (callback instanceof VoltProcedureListener.ClientConnectionHandler &&
+                ((VoltProcedureListener.ClientConnectionHandler)callback).isCompact()) {
+                VoltProcedureListener.ClientConnectionHandler handler = (VoltProcedureListener.ClientConnectionHandler)callback;
+                synchronized (handler) {
+                    handler.run(this.serializeClientResponse(ts, cresponse, handler.getSchemaRegistry()).array());
+                } // SYNCH
+            } else {
+                callback.run(this.serializeClientResponse(ts, cresponse, null).array());
+            }
         }
         // If the txn was mispredicted, then we will pass the information over to the HStoreSite
         // so that it can re-execute the transaction. We want to do this first so that the txn gets re-executed
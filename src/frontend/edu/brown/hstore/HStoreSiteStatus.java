@@ -30,6 +30,7 @@ import edu.brown.hstore.dtxn.TransactionProfile;
 import edu.brown.hstore.dtxn.TransactionQueueManager;
 import edu.brown.hstore.interfaces.Shutdownable;
 import edu.brown.hstore.util.PartitionExecutorPostProcessor;
+import edu.brown.hstore.util.SampledWorkloadTracer;
 import edu.brown.hstore.util.ThrottlingQueue;
 import edu.brown.hstore.util.TxnCounter;
 import edu.brown.logging.LoggerUtil;
@@ -44,6 +45,7 @@ import edu.brown.utils.ProfileMeasurement;
 import edu.brown.utils.StringUtil;
 import edu.brown.utils.TableUtil;
 import edu.brown.utils.TypedPoolableObjectFactory;
+import edu.brown.workload.BinaryTraceWriter;
 
 /**
  * 
@@ -442,8 +444,8 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
             if (first) header[0] = "";
             for (TxnCounter tc : cnts_to_include) {
                 if (first) header[j] = tc.toString().replace("partition", "P");
-                Long cnt = tc.getHistogram().get(proc_name);
-                rows[i][j++] = (cnt != null ? Long.toString(cnt) : "-");
+                long cnt = tc.get(proc_name);
+                rows[i][j++] = (cnt != 0 ? Long.toString(cnt) : "-");
             } // FOR
             first = false;
         } // FOR
@@ -477,6 +479,43 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
         return (TableUtil.tableMap(f, header, rows));
     }
     
+    // ----------------------------------------------------------------------------
+    // SAMPLED WORKLOAD TRACE INFO
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * How many txns each partition has sampled and how much time the partition
+     * threads have spent building traces
+     * @return
+     */
+    protected Map<String, Object> workloadTraceInfo() {
+        SampledWorkloadTracer tracer = hstore_site.getWorkloadTracer();
+        Map<String, Object> m_trace = new ListOrderedMap<String, Object>();
+        m_trace.put("Sampled Tracing", String.format("%.3f of txns / %s", tracer.getSampleRate(), tracer.getOutputPath()));
+        
+        for (SampledWorkloadTracer.PartitionTrace pt : tracer.getPartitionTraces()) {
+            long sampled = pt.getSampledCount();
+            m_trace.put(String.format("    Partition[%02d]", pt.getPartitionId()),
+                        String.format("%d / %d txns sampled / %d dropped / %d pending / %.2fms total / %.3fms avg",
+                                      sampled,
+                                      pt.getTransactionCount(),
+                                      pt.getDroppedCount(),
+                                      pt.getPendingCount(),
+                                      pt.getOverheadMS(),
+                                      (sampled > 0 ? pt.getOverheadMS() / sampled : 0d)));
+        } // FOR
+        
+        BinaryTraceWriter writer = tracer.getWriter();
+        if (writer != null) {
+            m_trace.put("Trace Writer", String.format("%d txns / %d blocks / %d KB raw / %d KB stored",
+                                                      writer.getTransactionCount(),
+                                                      writer.getBlockCount(),
+                                                      writer.getRawBytes() / 1024,
+                                                      writer.getStoredBytes() / 1024));
+        }
+        return (m_trace);
+    }
+    
     // ----------------------------------------------------------------------------
     // BATCH PLANNER INFO
     // ----------------------------------------------------------------------------
@@ -820,6 +859,11 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
         // ----------------------------------------------------------------------------
         Map<String, String> plannerInfo = (hstore_conf.site.planner_profiling ? this.batchPlannerInfo() : null);
         
+        // ----------------------------------------------------------------------------
+        // Sampled Workload Trace Information
+        // ----------------------------------------------------------------------------
+        Map<String, Object> traceInfo = (hstore_site.getWorkloadTracer() != null ? this.workloadTraceInfo() : null);
+        
         // ----------------------------------------------------------------------------
         // Thread Information
         // ----------------------------------------------------------------------------
@@ -848,7 +892,7 @@ public class HStoreSiteStatus implements Runnable, Shutdownable {
         Map<String, Object> poolInfo = null;
         if (show_poolinfo) poolInfo = this.poolInfo();
         
-        String top = StringUtil.formatMaps(header, m_exec, m_txn, threadInfo, cpuThreads, txnProfiles, plannerInfo, poolInfo);
+        String top = StringUtil.formatMaps(header, m_exec, m_txn, traceInfo, threadInfo, cpuThreads, txnProfiles, plannerInfo, poolInfo);
         String bot = "";
         Histogram<Integer> blockedDtxns = hstore_site.getTransactionQueueManager().getBlockedDtxnHistogram(); 
         if (hstore_conf.site.status_show_txn_info && blockedDtxns != null && blockedDtxns.isEmpty() == false) {
@@ -270,6 +270,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     private final ExecutionEngine ee;
     private final HsqlBackend hsql;
     public static final DBBPool buffer_pool = new DBBPool(true, false);
+    
+    /**
+     * Direct buffer pool for the EE's result tables
+     * Only used if ${site.exec_pooled_results} is enabled
+     */
+    private DBBPool result_pool = null;
 
     /**
      * Runtime Estimators
@@ -333,6 +339,10 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     private volatile long lastCommittedTxnId = -1;
     /** The last undoToken that we handed out */
     private long lastUndoToken = 0l;
+    /** The largest undoToken of the committed txns that have not been released in the EE yet */
+    private long pendingReleaseUndoToken = -1l;
+    /** The number of committed txns that have not been released in the EE yet */
+    private int pendingReleaseCount = 0;
     
     /**
      * This is the queue of the list of things that we need to execute.
@@ -651,6 +661,10 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         this.ee = eeTemp;
         this.hsql = hsqlTemp;
         assert(this.ee != null);
+        if (hstore_conf.site.exec_pooled_results) {
+            this.result_pool = new DBBPool(false, false);
+            this.ee.setResultPool(this.result_pool);
+        }
         assert(!(this.ee == null && this.hsql == null)) : "Both execution engine objects are empty. This should never happen";
 //        } else {
 //            this.hsql = null;
@@ -723,6 +737,9 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         this.hstore_coordinator = hstore_site.getCoordinator();
         this.thresholds = (hstore_site != null ? hstore_site.getThresholds() : null);
         this.localPartitionIds = hstore_site.getLocalPartitionIds();
+        if (hstore_site.getWorkloadTracer() != null) {
+            this.workload_trace = hstore_site.getWorkloadTracer().getPartitionTrace(this.partitionId);
+        }
         
         if (hstore_conf.site.exec_profiling) {
             EventObservable<AbstractTransaction> eo = this.hstore_site.getStartWorkloadObservable();
@@ -780,6 +797,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 try {
                     work = this.work_queue.poll();
                     if (work == null) {
+                        // Don't hold on to the undo buffers of committed txns while we're idle
+                        this.releasePendingUndoTokens();
                         if (t) LOG.trace("Partition " + this.partitionId + " queue is empty. Waiting...");
                         if (hstore_conf.site.exec_profiling) this.work_idle_time.start();
                         work = this.work_queue.take();
@@ -955,6 +974,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
     public HStoreSite getHStoreSite() {
         return (this.hstore_site);
     }
+    /**
+     * Return the sampled WorkloadTrace for this partition. Will be null if sampled tracing is disabled
+     */
+    public WorkloadTrace getWorkloadTrace() {
+        return (this.workload_trace);
+    }
     public HStoreConf getHStoreConf() {
         return (this.hstore_conf);
     }
@@ -1930,6 +1955,13 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
             if (needs_profiling) ((LocalTransaction)ts).profiler.stopExecEE();
         }
         
+        // Pooled result tables stay alive until the txn is finished
+        if (result != null && this.result_pool != null) {
+            for (VoltTable vt : result.dependencies) {
+                if (vt != null && vt.isPooled()) ts.addPooledResult(vt);
+            } // FOR
+        }
+        
         // *********************************** DEBUG ***********************************
         if (d) {
             if (result != null) {
@@ -2004,7 +2036,7 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 try {
 //                    if (i > 0) fs.clear();
 //                    fs.writeObjectForMessaging(result.dependencies[i]);
-                    outputBuilder.addData(ByteString.copyFrom(FastSerializer.serialize(result.dependencies[i])));
+                    outputBuilder.addData(ByteString.copyFrom(result.dependencies[i].getSerializedBuffer()));
                 } catch (Exception ex) {
                     throw new RuntimeException(String.format("Failed to serialize output dependency %d for %s", result.depIds[i], ts));
                 }
@@ -2144,7 +2176,6 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 this.getFragmentInputs(ts, ftask, tmp_removeDependenciesMap);
 
 //                if (t) LOG.trace(String.format("%s - Attaching %d dependencies to %s", ts, this.tmp_removeDependenciesMap.size(), ftask));
-                FastSerializer fs = null;
                 for (Entry<Integer, List<VoltTable>> e : tmp_removeDependenciesMap.entrySet()) {
                     if (input_dep_ids.contains(e.getKey())) continue;
 
@@ -2153,12 +2184,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                     DataFragment.Builder dBuilder = DataFragment.newBuilder();
                     dBuilder.setId(e.getKey());                    
                     for (VoltTable vt : e.getValue()) {
-//                        fs = new FastSerializer();
-                        if (fs == null) fs = new FastSerializer(); // buffer_pool);
-                        else fs.clear();
                         try {
-                            fs.writeObject(vt);
-                            dBuilder.addData(ByteString.copyFrom(fs.getBuffer()));
+                            dBuilder.addData(ByteString.copyFrom(vt.getSerializedBuffer()));
                         } catch (Exception ex) {
                             throw new RuntimeException(String.format("Failed to serialize input dependency %d for %s", e.getKey(), ts));
                         }
@@ -2662,7 +2689,12 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 if (commit) {
                     if (d) LOG.debug(String.format("Committing %s at partition=%d [lastTxnId=%d, undoToken=%d, submittedEE=%s]",
                                                    ts, this.partitionId, this.lastCommittedTxnId, undoToken, ts.hasSubmittedEE(this.partitionId)));
-                    this.ee.releaseUndoToken(undoToken);
+                    // Releasing an undoToken in the EE also releases every one before it, so we
+                    // can hold off and then release a run of committed txns with a single call
+                    if (this.pendingReleaseUndoToken < undoToken) this.pendingReleaseUndoToken = undoToken;
+                    if (++this.pendingReleaseCount >= hstore_conf.site.exec_undo_release_batch) {
+                        this.releasePendingUndoTokens();
+                    }
     
                 // Evan says that txns will be aborted LIFO. This means the first txn that
                 // we get in abortWork() will have a the greatest undoToken, which means that 
@@ -2672,6 +2704,8 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
                 } else {
                     if (d) LOG.debug(String.format("Aborting %s at partition=%d [lastTxnId=%d, undoToken=%d, submittedEE=%s]",
                                                    ts, this.partitionId, this.lastCommittedTxnId, undoToken, ts.hasSubmittedEE(this.partitionId)));
+                    // Make sure that everything that was committed before this txn gets released first
+                    this.releasePendingUndoTokens();
                     this.ee.undoUndoToken(undoToken);
                 }
                 if (needs_profiling) ((LocalTransaction)ts).profiler.stopPostEE();
@@ -2683,6 +2717,19 @@ public class PartitionExecutor implements Runnable, Shutdownable, Loggable {
         ts.setFinishedEE(this.partitionId);
     }
     
+    /**
+     * Tell the EE to release the undo buffers of all of the committed txns
+     * that finishWork() has been holding on to
+     */
+    private void releasePendingUndoTokens() {
+        if (this.pendingReleaseCount == 0) return;
+        if (d) LOG.debug(String.format("Releasing undo buffers for %d committed txns at partition %d [undoToken=%d]",
+                                       this.pendingReleaseCount, this.partitionId, this.pendingReleaseUndoToken));
+        this.ee.releaseUndoToken(this.pendingReleaseUndoToken);
+        this.pendingReleaseUndoToken = -1l;
+        this.pendingReleaseCount = 0;
+    }
+    
     /**
      * The coordinator is telling our site to abort/commit the txn with the
      * provided transaction id. This method should only be used for multi-partition transactions, because
@@ -15,6 +15,7 @@ import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.messaging.WireSchemaRegistry;
 
 import com.google.protobuf.RpcCallback;
 
@@ -88,7 +89,7 @@ public class VoltProcedureListener extends AbstractEventHandler {
         public void hackWritePasswordOk() {
             // Write the "connection ok" message
             ByteBuffer output = ByteBuffer.allocate(100);
-            output.put((byte) 0x0);  // unknown. ignored in ConnectionUtil.java
+            output.put(protocolVersion);  // wire protocol version that we agreed to use
             output.put((byte) 0x0);  // login response code. 0 = OK
             output.putInt(0x0);  // hostId
             output.putLong(0x0);  // connectionId
@@ -126,8 +127,24 @@ public class VoltProcedureListener extends AbstractEventHandler {
             }
         }
 
+        /**
+         * Returns true if the client asked for the compact wire protocol. Responses
+         * for this connection must then be serialized with {@link #getSchemaRegistry()}
+         * while holding this handler's lock, so that a schema id is always defined
+         * on the wire before it is used.
+         */
+        public boolean isCompact() {
+            return (protocolVersion == ClientResponseImpl.PROTOCOL_VERSION_COMPACT);
+        }
+
+        public WireSchemaRegistry getSchemaRegistry() {
+            return (schemas);
+        }
+
         private final MessageConnection connection;
         boolean connectionBlocked = false;
+        private volatile byte protocolVersion = ClientResponseImpl.PROTOCOL_VERSION_LEGACY;
+        private final WireSchemaRegistry schemas = new WireSchemaRegistry();
 
         public String user = null;
         public byte[] passwordHash = null;
@@ -148,8 +165,10 @@ public class VoltProcedureListener extends AbstractEventHandler {
                 ByteBuffer input = ByteBuffer.wrap(request);
                 input.order(ByteOrder.BIG_ENDIAN);
                 try {
-                    @SuppressWarnings("unused")
+                    // Use the highest version that we both understand
                     byte version = input.get();
+                    eventLoopCallback.protocolVersion = (byte)Math.max(ClientResponseImpl.PROTOCOL_VERSION_LEGACY,
+                                                                       Math.min(version, ClientResponseImpl.PROTOCOL_VERSION_COMPACT));
                     int length = input.getInt();
                     byte[] m = new byte[length];
                     input.get(m);
@@ -123,6 +123,17 @@ public abstract class BlockingCallback<T, U> implements RpcCallback<U>, Poolable
         }
     }
     
+    /**
+     * This allows you to increase the number of messages that this callback
+     * will wait for. This must be invoked before those messages are sent.
+     */
+    public void incrementCounter(int ctr) {
+        if (debug.get())
+            LOG.debug(String.format("Txn #%d - Incrementing %s counter by %d",
+                                    txn_id, this.getClass().getSimpleName(), ctr));
+        this.counter.addAndGet(ctr);
+    }
+    
     /**
      * The implementation of the run method to process a new entry for this callback
      * This method should return how much we should decrement from the blocking counter
@@ -159,6 +159,28 @@ public final class HStoreConf {
         )
         public boolean exec_no_undo_logging_all;
         
+        @ConfigProperty(
+            description="The maximum number of committed transactions whose undo buffers the PartitionExecutor " +
+                        "will hold on to before it tells the ExecutionEngine to release them. Releasing an " +
+                        "undo token in the EE also releases all of the ones before it, so this lets a partition " +
+                        "release a run of committed transactions with a single call. Any outstanding " +
+                        "undo buffers are always released before an abort or when the partition becomes idle. " +
+                        "Set this to 1 to release every transaction's undo buffers as soon as it commits.",
+            defaultInt=16,
+            experimental=true
+        )
+        public int exec_undo_release_batch;
+        
+        @ConfigProperty(
+            description="If this parameter is set to true, then the result tables that the ExecutionEngine returns " +
+                        "are copied into direct buffers that come from a per-partition DBBPool instead of onto the heap. " +
+                        "These tables are released back to the pool when the transaction that created them is " +
+                        "finished, and are serialized into client responses and WorkResults straight from the pool.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean exec_pooled_results;
+        
         @ConfigProperty(
             description="If this parameter is set to true, then each HStoreSite will not send every transaction request " +
                         "through the Dtxn.Coordinator. Only multi-partition transactions will be sent to the " +
@@ -266,6 +288,40 @@ public final class HStoreConf {
         )
         public boolean mapreduce_reduce_blocking;
         
+        @ConfigProperty(
+                description="The number of threads that each HStoreSite will use to perform the SHUFFLE phase of " +
+                            "MapReduce transactions. The MAP output of each partition is split up by its own task.",
+                defaultInt=4,
+                experimental=true
+        )
+        public int mapreduce_shuffle_threads;
+        
+        @ConfigProperty(
+                description="The number of rows that the SHUFFLE phase of a MapReduce transaction will buffer " +
+                            "for a destination partition before it sends them to that partition.",
+                defaultInt=10000,
+                experimental=true
+        )
+        public int mapreduce_shuffle_chunk_size;
+        
+        @ConfigProperty(
+                description="The amount of REDUCE input (in MB) that each partition will hold in memory for a " +
+                            "MapReduce transaction. Once this is exceeded, the input is sorted and spilled to " +
+                            "temporary files in ${global.temp_dir}/mapreduce that are merged back in the REDUCE phase.",
+                defaultInt=64,
+                experimental=true
+        )
+        public int mapreduce_reduce_memory;
+        
+        @ConfigProperty(
+                description="If this parameter is enabled, then the REDUCE input of a MapReduce transaction is " +
+                            "grouped by key with an in-memory hash table instead of being sorted. The input is " +
+                            "still sorted if it has to be spilled to disk.",
+                defaultBoolean=false,
+                experimental=true
+        )
+        public boolean mapreduce_reduce_hash_grouping;
+        
         // ----------------------------------------------------------------------------
         // Incoming Transaction Queue Options
         // ----------------------------------------------------------------------------
@@ -413,12 +469,41 @@ public final class HStoreConf {
 
         @ConfigProperty(
             description="Recompute a Markov model's execution state probabilities every time a transaction " +
-                        "is aborted due to a misprediction. The Markov model is queued in the PartitionExecutorHelper " +
-                        "for processing rather than being executed directly within the PartitionExecutor's thread.",
+                        "is aborted due to a misprediction. The Markov model is queued in the site's MarkovGraphRefresher " +
+                        "for processing rather than being executed directly within the PartitionExecutor's thread. " +
+                        "This requires ${site.markov_refresh}.",
             defaultBoolean=true,
             experimental=false
         )
         public boolean markov_mispredict_recompute;
+        
+        @ConfigProperty(
+            description="Start a background thread at each site that recomputes the probabilities of Markov models " +
+                        "while transactions keep running. Transactions update the models' counters without locking " +
+                        "them. Each recompute builds the new probability tables while transactions keep using the " +
+                        "previous ones, and then publishes the new tables and a new compiled version of the model " +
+                        "for the TransactionEstimator to use. See ${site.markov_path_compiled}.",
+            defaultBoolean=true,
+            experimental=true
+        )
+        public boolean markov_refresh;
+        
+        @ConfigProperty(
+            description="How often (in ms) the background Markov model refresh thread checks whether any of the " +
+                        "models have been updated by enough transactions that they need to be recomputed. " +
+                        "If this is less than one, then models are only recomputed when a transaction mispredicts.",
+            defaultInt=5000,
+            experimental=true
+        )
+        public int markov_refresh_interval;
+        
+        @ConfigProperty(
+            description="The minimum number of transactions that must have finished using a Markov model since the " +
+                        "last time that it was recomputed before the background refresh thread will recompute it again.",
+            defaultInt=100,
+            experimental=true
+        )
+        public int markov_refresh_min_txns;
 
         
         @ConfigProperty(
@@ -437,6 +522,15 @@ public final class HStoreConf {
             experimental=true
         )
         public double markov_path_caching_threshold;
+
+        @ConfigProperty(
+            description="If this is set to true, TransactionEstimator will estimate paths and follow transactions " +
+                        "using the compiled array-based version of each MarkovGraph that is created whenever the " +
+                        "graph's probabilities are calculated. Otherwise it will walk the MarkovGraph itself.",
+            defaultBoolean=true,
+            experimental=true
+        )
+        public boolean markov_path_compiled;
         
         @ConfigProperty(
             description="The minimum number of queries that must be in a batch for the TransactionEstimator " +
@@ -589,7 +683,31 @@ public final class HStoreConf {
             experimental=false
         )
         public boolean trace_query_output;
-        
+
+        @ConfigProperty(
+            description="The fraction of each stored procedure's transactions that the HStoreSite will always trace " +
+                        "while it is running. Sampled traces are written to a binary trace file in ${site.trace_sample_dir}. " +
+                        "Set this to zero to disable sampled tracing.",
+            defaultDouble=0.0,
+            experimental=true
+        )
+        public double trace_sample_rate;
+
+        @ConfigProperty(
+            description="The directory that the HStoreSite writes its sampled workload trace file to.",
+            defaultString="${global.temp_dir}/traces",
+            experimental=true
+        )
+        public String trace_sample_dir = HStoreConf.this.global.temp_dir + "/traces";
+
+        @ConfigProperty(
+            description="The number of sampled transaction traces that each partition can have waiting to be written out. " +
+                        "Traces are dropped instead of blocking the partition when this is full.",
+            defaultInt=1024,
+            experimental=true
+        )
+        public int trace_sample_buffer;
+
         // ----------------------------------------------------------------------------
         // HSTORESITE STATUS UPDATES
         // ----------------------------------------------------------------------------
@@ -911,6 +1029,69 @@ public final class HStoreConf {
         )
         public int throttle_backoff;
         
+        @ConfigProperty(
+            description="If set to true, then the client will ask each HStoreSite to use the compact wire " +
+                        "protocol for its connection. This uses variable-length integers for procedure " +
+                        "parameters and responses, and sends an id instead of the full schema for result " +
+                        "tables that the site has already sent on that connection. Sites that do not support " +
+                        "it will fall back to the original format.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean compact_protocol;
+        
+        @ConfigProperty(
+            description="If set to true, then the client will not queue each transaction request in the " +
+                        "network layer when it is submitted. Instead, the calling threads hand off the " +
+                        "serialized requests without locking and a separate thread writes them out for each " +
+                        "connection in batches. See ${client.pipeline_flush_interval} and ${client.pipeline_batch_size}.",
+            defaultBoolean=false,
+            experimental=true
+        )
+        public boolean pipeline;
+        
+        @ConfigProperty(
+            description="How often (in microseconds) the client will write out the batches of pipelined " +
+                        "transaction requests. Only used if ${client.pipeline} is enabled.",
+            defaultInt=200,
+            experimental=true
+        )
+        public int pipeline_flush_interval;
+        
+        @ConfigProperty(
+            description="If a connection has this many pipelined transaction requests waiting, then they " +
+                        "will be written out without waiting for the next flush interval. " +
+                        "Only used if ${client.pipeline} is enabled.",
+            defaultInt=64,
+            experimental=true
+        )
+        public int pipeline_batch_size;
+        
+        @ConfigProperty(
+            description="The number of threads the client will use to invoke the callbacks for transaction " +
+                        "responses. If set to zero, then the callbacks are invoked by the network thread " +
+                        "that read the response.",
+            defaultInt=0,
+            experimental=true
+        )
+        public int callback_threads;
+        
+        @ConfigProperty(
+            description="The number of connections that the client will open to each site. Invocations " +
+                        "for a site are sent on whichever of its connections has the fewest outstanding requests.",
+            defaultInt=1,
+            experimental=true
+        )
+        public int connections_per_site;
+        
+        @ConfigProperty(
+            description="If enabled, then invocations that the client cannot route to a single partition " +
+                        "are sent to the site with the fewest outstanding requests instead of round-robin.",
+            defaultBoolean=true,
+            experimental=true
+        )
+        public boolean least_loaded_routing;
+        
         @ConfigProperty(
             description="If this enabled, then each DBMS will dump their entire database contents into " +
                         "CSV files after executing a benchmark run.",
@@ -100,6 +100,12 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
      */
     private ParameterSet attached_parameterSets[];
     
+    /**
+     * Result tables from the EE that were allocated from a DBBPool
+     * They are released when this txn is finished
+     */
+    private final List<VoltTable> pooled_results = new ArrayList<VoltTable>();
+    
     // ----------------------------------------------------------------------------
     // VoltMessage Wrappers
     // ----------------------------------------------------------------------------
@@ -225,6 +231,11 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
         this.attached_inputs.clear();
         this.attached_parameterSets = null;
         
+        for (int i = 0, cnt = this.pooled_results.size(); i < cnt; i++) {
+            this.pooled_results.get(i).release();
+        } // FOR
+        this.pooled_results.clear();
+        
         for (int i = 0; i < this.exec_readOnly.length; i++) {
             this.finished[i] = false;
             this.round_state[i] = null;
@@ -569,6 +580,24 @@ public abstract class AbstractTransaction implements Poolable, Loggable {
         return (this.attached_inputs);
     }
     
+    // ----------------------------------------------------------------------------
+    // Pooled result tables
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Hold on to a result table that was allocated from a DBBPool. The table will
+     * be released when this txn is finished, so it should not be used after that.
+     * @param vt
+     */
+    public void addPooledResult(VoltTable vt) {
+        assert(vt.isPooled());
+        this.pooled_results.add(vt);
+    }
+    
+    public int getPooledResultCount() {
+        return (this.pooled_results.size());
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof AbstractTransaction) {
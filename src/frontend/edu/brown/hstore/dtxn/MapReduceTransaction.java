@@ -1,15 +1,16 @@
 package edu.brown.hstore.dtxn;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 
 import org.apache.log4j.Logger;
 import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
-import org.voltdb.VoltTableRow;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
+import org.voltdb.utils.ReduceInputBuffer;
 
 import com.google.protobuf.RpcCallback;
 
@@ -24,6 +25,7 @@ import edu.brown.hstore.callbacks.TransactionMapCallback;
 import edu.brown.hstore.callbacks.TransactionMapWrapperCallback;
 import edu.brown.hstore.callbacks.TransactionReduceCallback;
 import edu.brown.hstore.callbacks.TransactionReduceWrapperCallback;
+import edu.brown.hstore.conf.HStoreConf;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
 import edu.brown.utils.StringUtil;
@@ -45,7 +47,7 @@ public class MapReduceTransaction extends LocalTransaction {
     public int partitions_size;
     
     private VoltTable mapOutput[];
-    private VoltTable reduceInput[];
+    private ReduceInputBuffer<?> reduceInput[];
     private VoltTable reduceOutput[];
 
     public enum State {
@@ -118,7 +120,7 @@ public class MapReduceTransaction extends LocalTransaction {
         
         // new mapout and reduce output talbes for each partition it wants to touch
         this.mapOutput = new VoltTable[this.partitions_size];
-        this.reduceInput = new VoltTable[this.partitions_size];
+        this.reduceInput = new ReduceInputBuffer<?>[this.partitions_size];
         this.reduceOutput = new VoltTable[this.partitions_size];
                 
         this.map_callback = new TransactionMapCallback(hstore_site);
@@ -151,6 +153,9 @@ public class MapReduceTransaction extends LocalTransaction {
         
         // Get the Table catalog object for the map/reduce outputs
         // For each partition there should be a map/reduce output voltTable
+        HStoreConf hstore_conf = this.hstore_site.getHStoreConf();
+        long reduce_memory = hstore_conf.site.mapreduce_reduce_memory * 1048576l;
+        File spill_dir = new File(hstore_conf.global.temp_dir, "mapreduce");
         for (int partition : this.hstore_site.getAllPartitionIds()) {
             int offset = hstore_site.getLocalPartitionOffset(partition);
             //int offset = partition;
@@ -164,7 +169,9 @@ public class MapReduceTransaction extends LocalTransaction {
             assert(this.mapEmit != null): "mapEmit has not been initialized\n ";
             assert(this.reduceEmit != null): "reduceEmit has not been initialized\n ";
             this.mapOutput[offset] = CatalogUtil.getVoltTable(this.mapEmit);
-            this.reduceInput[offset] = CatalogUtil.getVoltTable(this.mapEmit);
+            this.reduceInput[offset] = new ReduceInputBuffer<Object>(this.mapOutput[offset],
+                                                                     hstore_conf.site.mapreduce_reduce_hash_grouping,
+                                                                     reduce_memory, spill_dir);
             this.reduceOutput[offset] = CatalogUtil.getVoltTable(this.reduceEmit);
             
         } // FOR
@@ -208,17 +215,22 @@ public class MapReduceTransaction extends LocalTransaction {
         this.mapEmit = null;
         this.reduceEmit = null;
         this.mapOutput = null;
-        this.reduceInput = null;
+        for (int i = 0; i < this.partitions_size; i++) {
+            if (this.reduceInput[i] != null) {
+                this.reduceInput[i].close();
+                this.reduceInput[i] = null;
+            }
+        } // FOR
         this.reduceOutput = null;
     }
     /*
-     * Store Data from MapOutput table into reduceInput table
-     * ReduceInput table is the result of all incoming mapOutput table from other partitions
+     * Store Data from MapOutput table into reduceInput buffer
+     * ReduceInput buffer is the result of all incoming mapOutput table from other partitions
      * @see edu.brown.hstore.dtxn.AbstractTransaction#storeData(int, org.voltdb.VoltTable)
      */
     @Override
     public synchronized Hstoreservice.Status storeData(int partition, VoltTable vt) {
-        VoltTable input = this.getReduceInputByPartition(partition);
+        ReduceInputBuffer<?> input = this.getReduceInputByPartition(partition);
         
         assert(input != null);
         if (debug.get())
@@ -227,12 +239,7 @@ public class MapReduceTransaction extends LocalTransaction {
         
         if (debug.get())
             LOG.debug(String.format("<StoreData, change to ReduceInputTable> to Partition:%d>\n %s",partition,vt));
-        while (vt.advanceRow()) {
-            VoltTableRow row = vt.fetchRow(vt.getActiveRowIndex());
-            assert(row != null);
-            input.add(row);
-        }
-        vt.resetRowPosition();
+        input.add(vt);
         
         return Hstoreservice.Status.OK;
     }
@@ -416,9 +423,10 @@ public class MapReduceTransaction extends LocalTransaction {
         this.mapOutput[hstore_site.getLocalPartitionOffset(partition)] = vt;
     }
     
-    public VoltTable getReduceInputByPartition ( int partition ) {
+    @SuppressWarnings("unchecked")
+    public <K> ReduceInputBuffer<K> getReduceInputByPartition ( int partition ) {
         if (debug.get()) LOG.debug("Trying to getReduceInputByPartition: [ " + partition + " ]");
-        return this.reduceInput[hstore_site.getLocalPartitionOffset(partition)];
+        return (ReduceInputBuffer<K>)this.reduceInput[hstore_site.getLocalPartitionOffset(partition)];
         //return this.reduceInput[partition];
     }
     
@@ -17,6 +17,7 @@ import edu.brown.hstore.interfaces.Loggable;
 import edu.brown.hstore.util.TxnCounter;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.statistics.ConcurrentIntHistogram;
 import edu.brown.statistics.Histogram;
 
 public class TransactionQueueManager implements Runnable, Loggable {
@@ -81,8 +82,9 @@ public class TransactionQueueManager implements Runnable, Loggable {
     
     /**
      * This Histogram keeps track of what sites have blocked the most transactions from us
+     * The keys are initiator ids, which are stored in the lower 10 bits of the txn id
      */
-    private Histogram<Integer> blocked_hist = new Histogram<Integer>();
+    private final ConcurrentIntHistogram blocked_hist = new ConcurrentIntHistogram(1 << 10);
     
     /**
      * Constructor
@@ -121,8 +123,12 @@ public class TransactionQueueManager implements Runnable, Loggable {
         t = trace.get();
     }
     
+    /**
+     * Returns a snapshot of the number of blocked dtxns per initiator id
+     * @return
+     */
     public Histogram<Integer> getBlockedDtxnHistogram() {
-        return this.blocked_hist;
+        return this.blocked_hist.snapshot();
     }
     
     /**
@@ -1,9 +1,18 @@
 package edu.brown.hstore.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 import org.voltdb.BackendTarget;
@@ -40,6 +49,7 @@ public class MapReduceHelperThread implements Runnable, Shutdownable {
     private final PartitionEstimator p_estimator;
     private Thread self = null;
     private boolean stop = false;
+    private ExecutorService shuffle_pool = null;
 
     private PartitionExecutor executor;
 
@@ -117,24 +127,72 @@ public class MapReduceHelperThread implements Runnable, Shutdownable {
          *      partitioned table data to each of the partitions. Once that is
          *      all done, clean things up and invoke the network-outbound
          *      callback stored in the TransactionMapWrapperCallback
+         *
+         * Each partition's MAP output is split up by its own ShuffleTask in
+         * our shuffle pool. The tasks send their buffers off to the
+         * destination partitions whenever they fill up, so we never
+         * have to hold the entire output of the SHUFFLE phase in memory.
          */
 
-        // create a table for each partition
+        // The SendDataCallback should invoke the TransactionMapCallback to tell
+        // it that the SHUFFLE phase is complete and that we need to send a message
+        // back to the transaction's base partition to let it know that the MAP
+        // phase is complete. It has to be initialized before the tasks start
+        // sending their chunks.
+        SendDataCallback sendData_callback = ts.getSendDataCallback();
+        sendData_callback.init(ts, new RpcCallback<AbstractTransaction>() {
+            @Override
+            public void run(AbstractTransaction parameter) {
+                ts.getTransactionMapWrapperCallback().runOrigCallback();
+            }
+        });
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int partition : this.hstore_site.getAllPartitionIds()) {
+            tasks.add(Executors.callable(new ShuffleTask(ts, partition)));
+        } // FOR
+        if (debug.get())
+            LOG.debug(String.format("Submitting %d ShuffleTasks for SHUFFLE phase of %s", tasks.size(), ts));
+        try {
+            for (Future<Object> f : this.getShufflePool().invokeAll(tasks)) {
+                f.get();
+            } // FOR
+        } catch (InterruptedException ex) {
+            throw new RuntimeException("Interrupted while waiting for the SHUFFLE phase of " + ts, ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Failed to execute the SHUFFLE phase of " + ts, ex.getCause());
+        }
+
+        // Everything has already been sent, so we just need to let every
+        // HStoreSite know that the SHUFFLE phase is over
         Map<Integer, VoltTable> partitionedTables = new HashMap<Integer, VoltTable>();
         for (int partition : hstore_site.getAllPartitionIds()) {
             partitionedTables.put(partition, CatalogUtil.getVoltTable(ts.getMapEmit()));
         } // FOR
-        if (debug.get())
-            LOG.debug(String.format("Created %d VoltTables for SHUFFLE phase of %s", partitionedTables.size(), ts));
+        this.hstore_site.getCoordinator().sendData(ts, partitionedTables, sendData_callback);
+    }
 
-        VoltTable table = null;
-        int rp = -1;
-        for (int partition : this.hstore_site.getAllPartitionIds()) {
+    /**
+     * Splits up the MAP output of a single partition and sends each
+     * destination partition's rows off in chunks of at most
+     * ${site.mapreduce_shuffle_chunk_size} rows
+     */
+    private class ShuffleTask implements Runnable {
+        private final MapReduceTransaction ts;
+        private final int partition;
 
-            table = ts.getMapOutputByPartition(partition);
+        public ShuffleTask(MapReduceTransaction ts, int partition) {
+            this.ts = ts;
+            this.partition = partition;
+        }
 
+        @Override
+        public void run() {
+            VoltTable table = ts.getMapOutputByPartition(this.partition);
             assert (table != null) : String.format("Missing MapOutput table for txn #%d", ts.getTransactionId());
 
+            final int chunk_size = hstore_conf.site.mapreduce_shuffle_chunk_size;
+            Map<Integer, VoltTable> buffers = new HashMap<Integer, VoltTable>();
             while (table.advanceRow()) {
                 VoltTableRow row = table.fetchRow(table.getActiveRowIndex());
                 int rowPartition = -1;
@@ -147,30 +205,48 @@ public class MapReduceHelperThread implements Runnable, Shutdownable {
                 if (trace.get())
                     LOG.trace(Arrays.toString(table.getRowArray()) + " => " + rowPartition);
                 assert (rowPartition >= 0);
+
+                VoltTable buffer = buffers.get(rowPartition);
+                if (buffer == null) {
+                    buffer = CatalogUtil.getVoltTable(ts.getMapEmit());
+                    buffers.put(rowPartition, buffer);
+                }
                 // this adds the active row from table
-                partitionedTables.get(rowPartition).add(row);
-                rp = rowPartition;
+                buffer.add(row);
+                if (buffer.getRowCount() >= chunk_size) {
+                    this.send(rowPartition, buffer);
+                    buffers.remove(rowPartition);
+                }
             } // WHILE
-            if (debug.get())
-                LOG.debug(String.format("<SendTable to Dest Partition>:%d\n %s", rp, partitionedTables.get(rp)));
-
-        } // FOR
 
-        // The SendDataCallback should invoke the TransactionMapCallback to tell
-        // it that
-        // the SHUFFLE phase is complete and that we need to send a message back
-        // to the
-        // transaction's base partition to let it know that the MAP phase is
-        // complete
-        SendDataCallback sendData_callback = ts.getSendDataCallback();
-        sendData_callback.init(ts, new RpcCallback<AbstractTransaction>() {
-            @Override
-            public void run(AbstractTransaction parameter) {
-                ts.getTransactionMapWrapperCallback().runOrigCallback();
-            }
-        });
+            for (Entry<Integer, VoltTable> e : buffers.entrySet()) {
+                this.send(e.getKey(), e.getValue());
+            } // FOR
+        }
 
-        this.hstore_site.getCoordinator().sendData(ts, partitionedTables, sendData_callback);
+        private void send(int dest, VoltTable buffer) {
+            if (debug.get())
+                LOG.debug(String.format("<SendTable to Dest Partition>:%d from Partition %d [rows=%d]",
+                                        dest, this.partition, buffer.getRowCount()));
+            hstore_site.getCoordinator().sendDataChunk(ts, dest, buffer, ts.getSendDataCallback());
+        }
+    } // END CLASS
+
+    private synchronized ExecutorService getShufflePool() {
+        if (this.shuffle_pool == null) {
+            int num_threads = Math.max(1, hstore_conf.site.mapreduce_shuffle_threads);
+            this.shuffle_pool = Executors.newFixedThreadPool(num_threads, new ThreadFactory() {
+                private int ctr = 0;
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r);
+                    t.setName(HStoreSite.getThreadName(hstore_site, String.format("MR%02d", ctr++)));
+                    t.setDaemon(true);
+                    return (t);
+                }
+            });
+        }
+        return (this.shuffle_pool);
     }
 
     public void reduce(final MapReduceTransaction mr_ts) {
@@ -225,6 +301,10 @@ public class MapReduceHelperThread implements Runnable, Shutdownable {
         this.stop = true;
         if (this.self != null)
             this.self.interrupt();
+        synchronized (this) {
+            if (this.shuffle_pool != null)
+                this.shuffle_pool.shutdownNow();
+        } // SYNCH
     }
 
 }
@@ -0,0 +1,403 @@
+package edu.brown.hstore.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltTable;
+import org.voltdb.WorkloadTrace;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.hstore.HStoreSite;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.hstore.interfaces.Shutdownable;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.utils.FileUtil;
+import edu.brown.workload.BinaryTraceWriter;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+
+/**
+ * Always-on workload tracing that only records a fraction of the txns that each
+ * partition executes. The sampling is stratified by procedure, so every procedure
+ * ends up in the trace at the same rate no matter how rare it is. Each partition
+ * hands its finished TransactionTraces to a {@link TraceRingBuffer}, and this
+ * thread drains all of the buffers into a binary trace file. If the buffer for a
+ * partition is full, then the trace is dropped rather than blocking the partition.
+ * @see BinaryTraceWriter
+ */
+public class SampledWorkloadTracer implements Runnable, Shutdownable {
+    private static final Logger LOG = Logger.getLogger(SampledWorkloadTracer.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /** How long to sleep when all of the buffers are empty (ms) */
+    private static final int DRAIN_INTERVAL = 100;
+    /** How often to flush the partial block to the file so that it can be read while we're running (ms) */
+    private static final int FLUSH_INTERVAL = 10000;
+
+    private final HStoreSite hstore_site;
+    private final Database catalog_db;
+    private final double rate;
+    private final File output_path;
+    private final Map<Integer, PartitionTrace> partitions = new TreeMap<Integer, PartitionTrace>();
+    private BinaryTraceWriter writer;
+
+    private volatile boolean stop = false;
+    /** Set if the traces could not be written out. The partitions stop sampling once this is set */
+    private volatile Throwable error = null;
+    private Thread self = null;
+
+    /**
+     * A WorkloadTrace for a single partition. All of the methods (other than the
+     * counter getters) must only be called from that partition's thread.
+     * startTransaction() returns a null handle for txns that are not sampled,
+     * which VoltProcedure then ignores for the rest of the txn.
+     */
+    public class PartitionTrace implements WorkloadTrace {
+        private final int partition;
+        private final TraceRingBuffer<TransactionTrace> buffer;
+
+        /** The number of times that each Procedure has been invoked at this partition */
+        private final long proc_counters[];
+        /** Procedures that are never sampled at this partition, just like sysprocs */
+        private final boolean proc_ignored[];
+
+        // These are only ever updated by the partition's thread
+        private volatile long txn_ctr = 0;
+        private volatile long sampled_ctr = 0;
+        private volatile long dropped_ctr = 0;
+        private volatile long overhead = 0;
+
+        private PartitionTrace(int partition, int buffer_size, int max_proc_id) {
+            this.partition = partition;
+            this.buffer = new TraceRingBuffer<TransactionTrace>(buffer_size);
+            this.proc_counters = new long[max_proc_id + 1];
+            this.proc_ignored = new boolean[max_proc_id + 1];
+        }
+
+        /**
+         * Returns true if the next invocation of the given Procedure should be sampled.
+         * We take the first invocation of each procedure and then one out of every
+         * 1/rate invocations after that.
+         */
+        private boolean sample(Procedure catalog_proc) {
+            int id = catalog_proc.getId();
+            if (id >= this.proc_counters.length) return (false);
+            long n = ++this.proc_counters[id];
+            return (Math.ceil(n * rate) > Math.ceil((n - 1) * rate));
+        }
+
+        private void finish(TransactionTrace txn_trace) {
+            if (this.buffer.offer(txn_trace) == false) {
+                this.dropped_ctr++;
+                if (trace.get()) LOG.trace(String.format("Dropped %s at partition %d because the buffer is full",
+                                                         txn_trace, this.partition));
+            }
+        }
+
+        @Override
+        public Object startTransaction(long txn_id, Procedure catalog_proc, Object[] args) {
+            if (catalog_proc.getSystemproc() || error != null) return (null);
+            int id = catalog_proc.getId();
+            if (id < this.proc_ignored.length && this.proc_ignored[id]) return (null);
+            this.txn_ctr++;
+            if (this.sample(catalog_proc) == false) return (null);
+
+            long start = System.nanoTime();
+            TransactionTrace txn_trace = new TransactionTrace(txn_id, catalog_proc, args);
+            this.sampled_ctr++;
+            this.overhead += System.nanoTime() - start;
+            return (txn_trace);
+        }
+
+        @Override
+        public void stopTransaction(Object xact_handle, VoltTable... result) {
+            long start = System.nanoTime();
+            TransactionTrace txn_trace = (TransactionTrace)xact_handle;
+            for (QueryTrace query_trace : txn_trace.getQueries()) {
+                if (query_trace.isStopped() == false) query_trace.abort();
+            } // FOR
+            txn_trace.stop();
+            if (result != null && result.length > 0) txn_trace.setOutput(result);
+            this.finish(txn_trace);
+            this.overhead += System.nanoTime() - start;
+        }
+
+        @Override
+        public void abortTransaction(Object xact_handle) {
+            long start = System.nanoTime();
+            TransactionTrace txn_trace = (TransactionTrace)xact_handle;
+            for (QueryTrace query_trace : txn_trace.getQueries()) {
+                if (query_trace.isStopped() == false) query_trace.abort();
+            } // FOR
+            txn_trace.abort();
+            this.finish(txn_trace);
+            this.overhead += System.nanoTime() - start;
+        }
+
+        @Override
+        public Object startQuery(Object xact_handle, Statement catalog_statement, Object[] args, int batch_id) {
+            long start = System.nanoTime();
+            QueryTrace query_trace = new QueryTrace(catalog_statement, args, batch_id);
+            ((TransactionTrace)xact_handle).addQuery(query_trace);
+            this.overhead += System.nanoTime() - start;
+            return (query_trace);
+        }
+
+        @Override
+        public void stopQuery(Object query_handle, VoltTable result) {
+            long start = System.nanoTime();
+            QueryTrace query_trace = (QueryTrace)query_handle;
+            query_trace.stop();
+            if (result != null) query_trace.setOutput(result);
+            this.overhead += System.nanoTime() - start;
+        }
+
+        @Override
+        public int getNextBatchId(Object xact_handle) {
+            return (((TransactionTrace)xact_handle).getBatchCount());
+        }
+
+        @Override
+        public void setCatalog(Catalog catalog) {
+            // Nothing to do. We always use the tracer's Database
+        }
+        @Override
+        public void setOutputPath(String path) {
+            // Nothing to do. All of the partitions are written out by the tracer
+            // to the file that it was given when it was created
+            if (debug.get()) LOG.debug(String.format("Ignoring output path '%s' for partition %d. Writing to '%s'",
+                                                     path, this.partition, output_path));
+        }
+        @Override
+        public void addIgnoredProcedure(String name) {
+            Procedure catalog_proc = catalog_db.getProcedures().getIgnoreCase(name);
+            if (catalog_proc == null) {
+                LOG.warn(String.format("Unable to ignore unknown procedure '%s' at partition %d", name, this.partition));
+                return;
+            }
+            int id = catalog_proc.getId();
+            if (id < this.proc_ignored.length) this.proc_ignored[id] = true;
+        }
+
+        public int getPartitionId() {
+            return (this.partition);
+        }
+        /** The number of non-sysproc txns that this partition has seen */
+        public long getTransactionCount() {
+            return (this.txn_ctr);
+        }
+        public long getSampledCount() {
+            return (this.sampled_ctr);
+        }
+        /** The number of sampled txns that were thrown away because the buffer was full */
+        public long getDroppedCount() {
+            return (this.dropped_ctr);
+        }
+        /** The total time that the partition's thread spent building traces (ms) */
+        public double getOverheadMS() {
+            return (this.overhead / 1000000d);
+        }
+        /** The number of traces waiting to be written out */
+        public int getPendingCount() {
+            return (this.buffer.size());
+        }
+    } // END CLASS
+
+    /**
+     * Constructor
+     * @param catalog_db
+     * @param partitions the local partitions to create a PartitionTrace for
+     * @param rate the fraction of each procedure's txns to sample
+     * @param buffer_size the number of traces that each partition can have waiting to be written
+     * @param output_path the binary trace file to write to
+     */
+    public SampledWorkloadTracer(Database catalog_db, Collection<Integer> partitions, double rate, int buffer_size, File output_path) {
+        this(null, catalog_db, partitions, rate, buffer_size, output_path);
+    }
+
+    public SampledWorkloadTracer(HStoreSite hstore_site) {
+        this(hstore_site,
+             hstore_site.getDatabase(),
+             hstore_site.getLocalPartitionIds(),
+             hstore_site.getHStoreConf().site.trace_sample_rate,
+             hstore_site.getHStoreConf().site.trace_sample_buffer,
+             new File(String.format("%s/%s.%s", hstore_site.getHStoreConf().site.trace_sample_dir,
+                                                hstore_site.getSiteName(), BinaryTraceWriter.EXTENSION)));
+    }
+
+    private SampledWorkloadTracer(HStoreSite hstore_site, Database catalog_db, Collection<Integer> partitions,
+                                  double rate, int buffer_size, File output_path) {
+        assert(rate > 0) : "Invalid sampling rate " + rate;
+        this.hstore_site = hstore_site;
+        this.catalog_db = catalog_db;
+        this.rate = Math.min(1.0, rate);
+        this.output_path = output_path;
+
+        int max_proc_id = 0;
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            max_proc_id = Math.max(max_proc_id, catalog_proc.getId());
+        } // FOR
+        for (Integer partition : partitions) {
+            this.partitions.put(partition, new PartitionTrace(partition, buffer_size, max_proc_id));
+        } // FOR
+        if (debug.get()) LOG.debug(String.format("Sampling %.3f of txns at partitions %s into '%s'",
+                                                 this.rate, this.partitions.keySet(), this.output_path));
+    }
+
+    public PartitionTrace getPartitionTrace(int partition) {
+        return (this.partitions.get(partition));
+    }
+
+    public Collection<PartitionTrace> getPartitionTraces() {
+        return (this.partitions.values());
+    }
+
+    public double getSampleRate() {
+        return (this.rate);
+    }
+
+    public File getOutputPath() {
+        return (this.output_path);
+    }
+
+    /**
+     * Returns the error that made the tracer give up on writing out traces,
+     * or null if tracing is still enabled
+     */
+    public Throwable getError() {
+        return (this.error);
+    }
+
+    /**
+     * Return the BinaryTraceWriter that the traces are written to. This will be null
+     * until the first trace is drained.
+     */
+    public BinaryTraceWriter getWriter() {
+        return (this.writer);
+    }
+
+    // ----------------------------------------------------------------------------
+    // DRAINING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write out every trace that is waiting in the partition buffers.
+     * This must only be called from a single thread.
+     * @return the number of traces written
+     * @throws IOException
+     */
+    public int drain() throws IOException {
+        int ctr = 0;
+        for (PartitionTrace pt : this.partitions.values()) {
+            TransactionTrace txn_trace = null;
+            while ((txn_trace = pt.buffer.poll()) != null) {
+                if (this.writer == null) {
+                    FileUtil.makeDirIfNotExists(this.output_path.getParent());
+                    this.writer = new BinaryTraceWriter(new FileOutputStream(this.output_path), this.catalog_db,
+                                                        true, BinaryTraceWriter.DEFAULT_BLOCK_SIZE);
+                    LOG.info("Writing sampled workload trace to '" + this.output_path + "'");
+                }
+                this.writer.write(txn_trace);
+                ctr++;
+            } // WHILE
+        } // FOR
+        if (trace.get() && ctr > 0) LOG.trace("Wrote " + ctr + " sampled txn traces");
+        return (ctr);
+    }
+
+    @Override
+    public void run() {
+        this.self = Thread.currentThread();
+        if (this.hstore_site != null) {
+            this.self.setName(HStoreSite.getThreadName(this.hstore_site, "trace"));
+            HStoreConf hstore_conf = this.hstore_site.getHStoreConf();
+            if (hstore_conf.site.cpu_affinity) {
+                this.hstore_site.getThreadManager().registerProcessingThread();
+            }
+        }
+        if (debug.get()) LOG.debug("Starting sampled workload trace thread");
+
+        long last_flush = System.currentTimeMillis();
+        try {
+            while (this.stop == false) {
+                if (this.drain() == 0) {
+                    if (this.writer != null && System.currentTimeMillis() - last_flush > FLUSH_INTERVAL) {
+                        this.writer.flush();
+                        last_flush = System.currentTimeMillis();
+                    }
+                    try {
+                        Thread.sleep(DRAIN_INTERVAL);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+            } // WHILE
+
+            // Write out whatever is left before we go down
+            this.drain();
+            if (this.writer != null) this.writer.close();
+        } catch (IOException ex) {
+            // Tracing is best effort, so we don't want to take down the site. But we
+            // have to stop the partitions from sampling txns that nobody will ever write
+            LOG.error("Failed to write sampled workload trace to '" + this.output_path + "'. Tracing is disabled", ex);
+            this.disable(ex);
+        }
+    }
+
+    /**
+     * Stop all of the partitions from sampling and throw away whatever is
+     * still waiting to be written
+     */
+    private void disable(Throwable ex) {
+        this.error = ex;
+        this.stop = true;
+        for (PartitionTrace pt : this.partitions.values()) {
+            while (pt.buffer.poll() != null) {
+                // Drop it
+            } // WHILE
+        } // FOR
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException ex2) {
+                // Ignore
+            }
+        }
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return (this.stop);
+    }
+
+    @Override
+    public void prepareShutdown(boolean error) {
+        // Nothing to do...
+    }
+
+    @Override
+    public void shutdown() {
+        this.stop = true;
+        if (this.self != null) {
+            this.self.interrupt();
+            try {
+                this.self.join(DRAIN_INTERVAL * 10);
+            } catch (InterruptedException ex) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.brown.hstore.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer with a single producer and a single consumer.
+ * The producer is a PartitionExecutor thread, so {@link #offer(Object)} never blocks
+ * and never allocates: if the consumer has fallen behind, the element is rejected
+ * and the caller is expected to count it as dropped.
+ * @param <T>
+ */
+public class TraceRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+
+    /** The next slot to read. Only written by the consumer */
+    private final AtomicLong head = new AtomicLong(0);
+    /** The next slot to write. Only written by the producer */
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * Constructor
+     * @param capacity rounded up to the next power of two
+     */
+    public TraceRingBuffer(int capacity) {
+        assert(capacity > 0) : "Invalid capacity " + capacity;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.slots = new AtomicReferenceArray<T>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an element to the buffer. Must only be called by the producer thread.
+     * @param element
+     * @return false if the buffer is full
+     */
+    public boolean offer(T element) {
+        assert(element != null);
+        long t = this.tail.get();
+        if (t - this.head.get() > this.mask) return (false);
+        this.slots.lazySet((int)(t & this.mask), element);
+        this.tail.lazySet(t + 1);
+        return (true);
+    }
+
+    /**
+     * Remove the oldest element in the buffer. Must only be called by the consumer thread.
+     * @return null if the buffer is empty
+     */
+    public T poll() {
+        long h = this.head.get();
+        if (h >= this.tail.get()) return (null);
+        int idx = (int)(h & this.mask);
+        T element = this.slots.get(idx);
+        this.slots.lazySet(idx, null);
+        this.head.lazySet(h + 1);
+        return (element);
+    }
+
+    public int size() {
+        // Read the head first so that we never see it past the tail
+        long h = this.head.get();
+        return ((int)(this.tail.get() - h));
+    }
+
+    public boolean isEmpty() {
+        return (this.size() == 0);
+    }
+
+    public int getCapacity() {
+        return (this.mask + 1);
+    }
+}
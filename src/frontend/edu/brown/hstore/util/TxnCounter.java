@@ -3,11 +3,15 @@
  */
 package edu.brown.hstore.util;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.voltdb.catalog.Procedure;
 
+import edu.brown.statistics.ConcurrentIntHistogram;
 import edu.brown.statistics.Histogram;
 import edu.brown.utils.StringUtil;
 
@@ -46,7 +50,20 @@ public enum TxnCounter {
     BLOCKED_REMOTE,
     ;
     
-    private final Histogram<String> h = new Histogram<String>();
+    /**
+     * The number of distinct procedure names that we expect to count.
+     * The histograms grow if there are more than this.
+     */
+    private static final int MAX_PROCEDURES = 4096;
+    
+    /**
+     * Procedure name -> Procedure Id
+     * These ids are only used internally by the counters
+     */
+    private static final Map<String, Integer> PROC_IDS = new ConcurrentHashMap<String, Integer>();
+    private static volatile String PROC_NAMES[] = new String[0];
+    
+    private final ConcurrentIntHistogram h = new ConcurrentIntHistogram(MAX_PROCEDURES);
     private final String name;
     private TxnCounter() {
         this.name = StringUtil.title(this.name().replace("_", "-"));
@@ -55,28 +72,65 @@ public enum TxnCounter {
     public String toString() {
         return (this.name);
     }
+    
+    private static int getProcedureId(String procName) {
+        Integer proc_id = PROC_IDS.get(procName);
+        if (proc_id == null) {
+            synchronized (PROC_IDS) {
+                proc_id = PROC_IDS.get(procName);
+                if (proc_id == null) {
+                    String names[] = Arrays.copyOf(PROC_NAMES, PROC_NAMES.length + 1);
+                    proc_id = PROC_NAMES.length;
+                    names[proc_id] = procName;
+                    PROC_NAMES = names;
+                    PROC_IDS.put(procName, proc_id);
+                }
+            } // SYNCH
+        }
+        return (proc_id.intValue());
+    }
+    
+    /**
+     * Returns a snapshot of the per-procedure counts for this counter.
+     * Changes to the returned Histogram are not reflected back in the counter.
+     */
     public Histogram<String> getHistogram() {
-        return (this.h);
+        Histogram<String> ret = new Histogram<String>();
+        String names[] = PROC_NAMES;
+        for (int i = 0; i < names.length; i++) {
+            long cnt = this.h.get(i);
+            if (cnt != 0) ret.put(names[i], cnt);
+        } // FOR
+        return (ret);
     }
     public int get() {
         return ((int)this.h.getSampleCount());
     }
+    public long get(String procName) {
+        Integer proc_id = PROC_IDS.get(procName);
+        return (proc_id != null ? this.h.get(proc_id.intValue()) : 0l);
+    }
     public int inc(String procName) {
-        this.h.put(procName);
+        this.h.put(getProcedureId(procName));
         return (this.get());
     }
     public int inc(Procedure catalog_proc) {
-        this.h.put(catalog_proc.getName());
-        return (this.get());
+        return (this.inc(catalog_proc.getName()));
     }
     public int dec(Procedure catalog_proc) {
-        this.h.remove(catalog_proc.getName());
+        this.h.remove(getProcedureId(catalog_proc.getName()));
         return (this.get());
     }
+    public void clear() {
+        this.h.clear();
+    }
     public static Set<String> getAllProcedures() {
         Set<String> ret = new TreeSet<String>();
+        String names[] = PROC_NAMES;
         for (TxnCounter tc : TxnCounter.values()) {
-            ret.addAll(tc.h.values());
+            for (int i = 0; i < names.length; i++) {
+                if (tc.h.get(i) != 0) ret.add(names[i]);
+            } // FOR
         }
         return (ret);
     }
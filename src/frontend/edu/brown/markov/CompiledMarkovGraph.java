@@ -0,0 +1,499 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.types.QueryType;
+
+import edu.brown.catalog.CatalogUtil;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * A frozen, array-based copy of a MarkovGraph that is used at runtime to estimate the path
+ * of a transaction without going through the graph library. Every vertex is given an int id
+ * and the outgoing edges of each vertex are stored in compressed sparse row (CSR) form:
+ * the edges for vertex <i>v</i> are at the offsets [edge_offsets[v], edge_offsets[v+1])
+ * and are sorted by their probability in descending order. The partitions and past partitions
+ * of each vertex are stored the same way.
+ * <p>
+ * All of the probabilities are copied out of the MarkovGraph when it is compiled, so a
+ * CompiledMarkovGraph never changes once it is created and can be read by multiple threads
+ * without any locking. The MarkovGraph compiles a new one every time that its probabilities
+ * are recalculated. Vertices and edges that get added to the MarkovGraph afterwards will not
+ * be in the compiled form until the next time.
+ */
+public class CompiledMarkovGraph {
+    private static final Logger LOG = Logger.getLogger(CompiledMarkovGraph.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /** The start vertex always has the first id */
+    public static final int START_VERTEX_ID = 0;
+    /** Returned when a vertex or edge does not exist in the compiled graph */
+    public static final int NULL_ID = -1;
+
+    private static final MarkovVertex.Type VERTEX_TYPES[] = MarkovVertex.Type.values();
+
+    /**
+     * Sort edges by their probability (highest first) and then by their element id
+     * so that the order is the same every time that the graph is compiled
+     */
+    private static final Comparator<MarkovEdge> EDGE_COMPARATOR = new Comparator<MarkovEdge>() {
+        @Override
+        public int compare(MarkovEdge e0, MarkovEdge e1) {
+            int cmp = Float.compare(e1.getProbability(), e0.getProbability());
+            if (cmp == 0) cmp = (e0.getElementId() < e1.getElementId() ? -1 : (e0.getElementId() == e1.getElementId() ? 0 : 1));
+            return (cmp);
+        }
+    };
+
+    private final MarkovGraph markov;
+    private final int num_partitions;
+    private final int version;
+
+    // ----------------------------------------------------------------------------
+    // VERTICES
+    // ----------------------------------------------------------------------------
+
+    private final MarkovVertex vertices[];
+    private final Map<MarkovVertex, Integer> vertex_ids;
+    private final byte vertex_types[];
+    private final int vertex_stmts[];
+    private final int vertex_stmt_indexes[];
+    private final float vertex_abort_probs[];
+    private final int partition_offsets[];
+    private final int partition_ids[];
+    private final int past_offsets[];
+    private final int past_ids[];
+
+    // ----------------------------------------------------------------------------
+    // EDGES
+    // ----------------------------------------------------------------------------
+
+    private final int edge_offsets[];
+    private final int edge_dests[];
+    private final float edge_probs[];
+    private final MarkovEdge edges[];
+
+    // ----------------------------------------------------------------------------
+    // STATEMENTS
+    // ----------------------------------------------------------------------------
+
+    private final Statement statements[];
+    private final StmtParameter stmt_params[][];
+    private final boolean stmt_readonly[];
+
+    // ----------------------------------------------------------------------------
+    // START VERTEX
+    // ----------------------------------------------------------------------------
+
+    private final long start_hits;
+    private final float start_readonly_probs[];
+    private final float start_write_probs[];
+    private final float start_done_probs[];
+
+    /**
+     * Constructor
+     * The caller needs to make sure that the MarkovGraph is not modified while it is being compiled
+     * @param markov
+     */
+    protected CompiledMarkovGraph(MarkovGraph markov) {
+        this.markov = markov;
+        this.num_partitions = CatalogUtil.getNumberOfPartitions(markov.getDatabase());
+        this.version = markov.getRecomputeCount();
+
+        // Assign the vertex ids. The special vertices always go first and then
+        // the query vertices are sorted by their element ids
+        List<MarkovVertex> ordered = new ArrayList<MarkovVertex>();
+        for (MarkovVertex v : markov.getVertices()) {
+            if (v.isQueryVertex()) ordered.add(v);
+        } // FOR
+        Collections.sort(ordered);
+        ordered.add(0, markov.getStartVertex());
+        ordered.add(1, markov.getCommitVertex());
+        ordered.add(2, markov.getAbortVertex());
+        assert(ordered.get(START_VERTEX_ID).isStartVertex());
+
+        int num_vertices = ordered.size();
+        this.vertices = ordered.toArray(new MarkovVertex[num_vertices]);
+        this.vertex_ids = new IdentityHashMap<MarkovVertex, Integer>(num_vertices);
+        this.vertex_types = new byte[num_vertices];
+        this.vertex_stmts = new int[num_vertices];
+        this.vertex_stmt_indexes = new int[num_vertices];
+        this.vertex_abort_probs = new float[num_vertices];
+        this.partition_offsets = new int[num_vertices + 1];
+        this.past_offsets = new int[num_vertices + 1];
+        this.edge_offsets = new int[num_vertices + 1];
+
+        Map<Statement, Integer> stmt_ids = new HashMap<Statement, Integer>();
+        List<Statement> stmts = new ArrayList<Statement>();
+        int num_partition_ids = 0;
+        int num_past_ids = 0;
+        int num_edges = 0;
+        for (int id = 0; id < num_vertices; id++) {
+            MarkovVertex v = this.vertices[id];
+            this.vertex_ids.put(v, id);
+            this.vertex_types[id] = (byte)v.getType().ordinal();
+            this.vertex_stmt_indexes[id] = v.getQueryInstanceIndex();
+            this.vertex_abort_probs[id] = (v.isQueryVertex() ? v.getAbortProbability() : 0f);
+
+            Statement catalog_stmt = v.getCatalogItem();
+            Integer stmt_id = stmt_ids.get(catalog_stmt);
+            if (stmt_id == null) {
+                stmt_id = stmts.size();
+                stmt_ids.put(catalog_stmt, stmt_id);
+                stmts.add(catalog_stmt);
+            }
+            this.vertex_stmts[id] = stmt_id.intValue();
+
+            num_partition_ids += v.getPartitions().size();
+            num_past_ids += v.getPastPartitions().size();
+            Collection<MarkovEdge> out_edges = markov.getOutEdges(v);
+            if (out_edges != null) num_edges += out_edges.size();
+        } // FOR
+
+        // Statements
+        this.statements = stmts.toArray(new Statement[stmts.size()]);
+        this.stmt_params = new StmtParameter[this.statements.length][];
+        this.stmt_readonly = new boolean[this.statements.length];
+        for (int i = 0; i < this.statements.length; i++) {
+            Statement catalog_stmt = this.statements[i];
+            // The special vertices' placeholder Statements do not have any parameters
+            CatalogMap<StmtParameter> catalog_params = catalog_stmt.getParameters();
+            this.stmt_params[i] = new StmtParameter[catalog_params != null ? catalog_params.size() : 0];
+            if (catalog_params != null) {
+                for (StmtParameter catalog_param : catalog_params) {
+                    this.stmt_params[i][catalog_param.getIndex()] = catalog_param;
+                } // FOR
+            }
+            this.stmt_readonly[i] = (catalog_stmt.getQuerytype() == QueryType.SELECT.getValue());
+        } // FOR
+
+        // Partitions + Edges
+        this.partition_ids = new int[num_partition_ids];
+        this.past_ids = new int[num_past_ids];
+        this.edge_dests = new int[num_edges];
+        this.edge_probs = new float[num_edges];
+        this.edges = new MarkovEdge[num_edges];
+        List<MarkovEdge> sorted = new ArrayList<MarkovEdge>();
+        int partition_idx = 0;
+        int past_idx = 0;
+        int edge_idx = 0;
+        for (int id = 0; id < num_vertices; id++) {
+            MarkovVertex v = this.vertices[id];
+            this.partition_offsets[id] = partition_idx;
+            for (Integer p : v.getPartitions()) {
+                this.partition_ids[partition_idx++] = p.intValue();
+            } // FOR
+            this.past_offsets[id] = past_idx;
+            for (Integer p : v.getPastPartitions()) {
+                this.past_ids[past_idx++] = p.intValue();
+            } // FOR
+
+            this.edge_offsets[id] = edge_idx;
+            Collection<MarkovEdge> out_edges = markov.getOutEdges(v);
+            if (out_edges == null || out_edges.isEmpty()) continue;
+            sorted.clear();
+            sorted.addAll(out_edges);
+            Collections.sort(sorted, EDGE_COMPARATOR);
+            for (MarkovEdge e : sorted) {
+                Integer dest_id = this.vertex_ids.get(markov.getDest(e));
+                assert(dest_id != null) : "Unexpected destination vertex for " + e;
+                this.edge_dests[edge_idx] = dest_id.intValue();
+                this.edge_probs[edge_idx] = e.getProbability();
+                this.edges[edge_idx] = e;
+                edge_idx++;
+            } // FOR
+        } // FOR
+        this.partition_offsets[num_vertices] = partition_idx;
+        this.past_offsets[num_vertices] = past_idx;
+        this.edge_offsets[num_vertices] = edge_idx;
+        assert(edge_idx == num_edges);
+
+        // We only need the full partition probability tables for the start vertex
+        MarkovVertex start = this.vertices[START_VERTEX_ID];
+        this.start_hits = start.getTotalHits();
+        this.start_readonly_probs = new float[this.num_partitions];
+        this.start_write_probs = new float[this.num_partitions];
+        this.start_done_probs = new float[this.num_partitions];
+        for (int p = 0; p < this.num_partitions; p++) {
+            this.start_readonly_probs[p] = start.getReadOnlyProbability(p);
+            this.start_write_probs[p] = start.getWriteProbability(p);
+            this.start_done_probs[p] = start.getDoneProbability(p);
+        } // FOR
+
+        if (debug.get()) LOG.debug(String.format("Compiled %s [version=%d, vertices=%d, edges=%d]",
+                                                 markov, this.version, num_vertices, num_edges));
+    }
+
+    // ----------------------------------------------------------------------------
+    // GRAPH METHODS
+    // ----------------------------------------------------------------------------
+
+    public MarkovGraph getMarkovGraph() {
+        return (this.markov);
+    }
+    /**
+     * The number of times that the MarkovGraph's probabilities were calculated before it was compiled
+     * @return
+     */
+    public int getVersion() {
+        return (this.version);
+    }
+    public int getNumPartitions() {
+        return (this.num_partitions);
+    }
+    public int getVertexCount() {
+        return (this.vertices.length);
+    }
+    public int getEdgeCount() {
+        return (this.edges.length);
+    }
+
+    // ----------------------------------------------------------------------------
+    // VERTEX METHODS
+    // ----------------------------------------------------------------------------
+
+    public MarkovVertex getVertex(int v) {
+        return (this.vertices[v]);
+    }
+    /**
+     * Return the compiled id for the given MarkovVertex. Returns NULL_ID if the vertex
+     * was added to the MarkovGraph after it was compiled.
+     * @param v
+     * @return
+     */
+    public int getVertexId(MarkovVertex v) {
+        Integer id = this.vertex_ids.get(v);
+        return (id != null ? id.intValue() : NULL_ID);
+    }
+    public MarkovVertex.Type getVertexType(int v) {
+        return (VERTEX_TYPES[this.vertex_types[v]]);
+    }
+    public boolean isQueryVertex(int v) {
+        return (this.vertex_types[v] == MarkovVertex.Type.QUERY.ordinal());
+    }
+    public boolean isCommitVertex(int v) {
+        return (this.vertex_types[v] == MarkovVertex.Type.COMMIT.ordinal());
+    }
+    public boolean isAbortVertex(int v) {
+        return (this.vertex_types[v] == MarkovVertex.Type.ABORT.ordinal());
+    }
+    public Statement getStatement(int v) {
+        return (this.statements[this.vertex_stmts[v]]);
+    }
+    /**
+     * Return the StmtParameters for the vertex's Statement, sorted by their index
+     * @param v
+     * @return
+     */
+    public StmtParameter[] getStatementParameters(int v) {
+        return (this.stmt_params[this.vertex_stmts[v]]);
+    }
+    /**
+     * Returns true if the vertex is a query vertex for a SELECT statement
+     * @param v
+     * @return
+     */
+    public boolean isReadOnly(int v) {
+        return (this.isQueryVertex(v) && this.stmt_readonly[this.vertex_stmts[v]]);
+    }
+    public int getQueryInstanceIndex(int v) {
+        return (this.vertex_stmt_indexes[v]);
+    }
+    public float getAbortProbability(int v) {
+        return (this.vertex_abort_probs[v]);
+    }
+    /**
+     * Returns true if both vertices are for the same Statement and query instance index
+     * @param v0
+     * @param v1
+     * @return
+     */
+    public boolean isSameQuery(int v0, int v1) {
+        return (this.vertex_stmts[v0] == this.vertex_stmts[v1] &&
+                this.vertex_stmt_indexes[v0] == this.vertex_stmt_indexes[v1]);
+    }
+
+    // ----------------------------------------------------------------------------
+    // PARTITION METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * The offset of the first partition id for the given vertex
+     * @param v
+     * @return
+     */
+    public int getPartitionStart(int v) {
+        return (this.partition_offsets[v]);
+    }
+    /**
+     * The offset after the last partition id for the given vertex
+     * @param v
+     * @return
+     */
+    public int getPartitionEnd(int v) {
+        return (this.partition_offsets[v+1]);
+    }
+    public int getPartition(int offset) {
+        return (this.partition_ids[offset]);
+    }
+
+    /**
+     * Returns true if the vertex's partitions are exactly the ones marked in the given flags
+     * @param v
+     * @param flags
+     * @param count the number of partitions marked in flags
+     * @return
+     */
+    public boolean hasPartitions(int v, boolean flags[], int count) {
+        return (matches(this.partition_ids, this.partition_offsets[v], this.partition_offsets[v+1], flags, count));
+    }
+    /**
+     * Returns true if the vertex's past partitions are exactly the ones marked in the given flags
+     * @param v
+     * @param flags
+     * @param count the number of partitions marked in flags
+     * @return
+     */
+    public boolean hasPastPartitions(int v, boolean flags[], int count) {
+        return (matches(this.past_ids, this.past_offsets[v], this.past_offsets[v+1], flags, count));
+    }
+
+    private static boolean matches(int ids[], int start, int end, boolean flags[], int count) {
+        if (end - start != count) return (false);
+        for (int i = start; i < end; i++) {
+            if (flags[ids[i]] == false) return (false);
+        } // FOR
+        return (true);
+    }
+
+    private static boolean matches(int ids[], int start, int end, Collection<Integer> partitions) {
+        if (end - start != partitions.size()) return (false);
+        for (int i = start; i < end; i++) {
+            if (partitions.contains(ids[i]) == false) return (false);
+        } // FOR
+        return (true);
+    }
+
+    /**
+     * Compiled version of MarkovVertex.isEqual()
+     * @param v
+     * @param catalog_stmt
+     * @param partitions
+     * @param past_partitions
+     * @param queryInstanceIndex
+     * @return
+     */
+    public boolean isEqual(int v, Statement catalog_stmt, Collection<Integer> partitions, Collection<Integer> past_partitions, int queryInstanceIndex) {
+        return (this.vertex_stmt_indexes[v] == queryInstanceIndex &&
+                this.statements[this.vertex_stmts[v]].equals(catalog_stmt) &&
+                matches(this.partition_ids, this.partition_offsets[v], this.partition_offsets[v+1], partitions) &&
+                (MarkovGraph.USE_PAST_PARTITIONS == false ||
+                 matches(this.past_ids, this.past_offsets[v], this.past_offsets[v+1], past_partitions)));
+    }
+
+    // ----------------------------------------------------------------------------
+    // EDGE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * The offset of the first outgoing edge for the given vertex.
+     * This is the edge with the greatest probability.
+     * @param v
+     * @return
+     */
+    public int getEdgeStart(int v) {
+        return (this.edge_offsets[v]);
+    }
+    /**
+     * The offset after the last outgoing edge for the given vertex
+     * @param v
+     * @return
+     */
+    public int getEdgeEnd(int v) {
+        return (this.edge_offsets[v+1]);
+    }
+    public int getEdgeDest(int e) {
+        return (this.edge_dests[e]);
+    }
+    public float getEdgeProbability(int e) {
+        return (this.edge_probs[e]);
+    }
+    public MarkovEdge getEdge(int e) {
+        return (this.edges[e]);
+    }
+
+    /**
+     * Find the outgoing edge from the given vertex to the query vertex that matches
+     * the given Statement invocation. Returns NULL_ID if there is no such edge.
+     * @param v
+     * @param catalog_stmt
+     * @param partitions
+     * @param past_partitions
+     * @param queryInstanceIndex
+     * @return
+     */
+    public int findEdge(int v, Statement catalog_stmt, Collection<Integer> partitions, Collection<Integer> past_partitions, int queryInstanceIndex) {
+        for (int e = this.edge_offsets[v], end = this.edge_offsets[v+1]; e < end; e++) {
+            int dest = this.edge_dests[e];
+            if (this.isQueryVertex(dest) && this.isEqual(dest, catalog_stmt, partitions, past_partitions, queryInstanceIndex)) {
+                return (e);
+            }
+        } // FOR
+        return (NULL_ID);
+    }
+
+    /**
+     * Find the outgoing edge from the given vertex to the special vertex for the given type.
+     * Returns NULL_ID if there was no such edge when the graph was compiled.
+     * @param v
+     * @param vtype
+     * @return
+     */
+    public int findEdge(int v, MarkovVertex.Type vtype) {
+        assert(vtype != MarkovVertex.Type.QUERY);
+        for (int e = this.edge_offsets[v], end = this.edge_offsets[v+1]; e < end; e++) {
+            if (this.vertex_types[this.edge_dests[e]] == vtype.ordinal()) {
+                return (e);
+            }
+        } // FOR
+        return (NULL_ID);
+    }
+
+    // ----------------------------------------------------------------------------
+    // START VERTEX PROBABILITIES
+    // ----------------------------------------------------------------------------
+
+    public long getStartTotalHits() {
+        return (this.start_hits);
+    }
+    public float getStartReadOnlyProbability(int partition) {
+        return (this.start_readonly_probs[partition]);
+    }
+    public float getStartWriteProbability(int partition) {
+        return (this.start_write_probs[partition]);
+    }
+    public float getStartDoneProbability(int partition) {
+        return (this.start_done_probs[partition]);
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("%s<%s, version=%d>", this.getClass().getSimpleName(), this.markov, this.version));
+    }
+}
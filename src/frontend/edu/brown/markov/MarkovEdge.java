@@ -1,9 +1,14 @@
 package edu.brown.markov;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 
 import edu.brown.graphs.AbstractEdge;
 import edu.brown.graphs.AbstractGraphElement;
@@ -42,8 +47,10 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
      * This is the temporary number of times that we have traversed over this edge in the current "period" of the
      * MarkovGraph. This will eventually get folded into the global hits count, but we need to keep it separate so that
      * we can determine whether the current workload is deviating from the training set
+     * This is only updated through INSTANCEHITS_UPDATER so that txns do not need to lock the graph
      */
-    public transient int instancehits = 0;
+    public transient volatile int instancehits = 0;
+    private static final AtomicIntegerFieldUpdater<MarkovEdge> INSTANCEHITS_UPDATER = AtomicIntegerFieldUpdater.newUpdater(MarkovEdge.class, "instancehits");
 
     /**
      * Constructor
@@ -132,8 +139,9 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
     
     @Override
     public void applyInstanceHitsToTotalHits() {
-        this.totalhits += this.instancehits;
-        this.instancehits = 0;
+        // Swap the counter out so that we don't lose any hits from txns that
+        // are finishing while the probabilities are getting recomputed
+        this.totalhits += INSTANCEHITS_UPDATER.getAndSet(this, 0);
     }
     @Override
     public void incrementTotalHits() {
@@ -145,7 +153,7 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
     }
     @Override
     public void setInstanceHits(int instancehits) {
-        this.instancehits = instancehits;
+        INSTANCEHITS_UPDATER.set(this, instancehits);
     }
     @Override
     public int getInstanceHits() {
@@ -153,7 +161,7 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
     }
     @Override
     public int incrementInstanceHits() {
-        return (++this.instancehits);
+        return (INSTANCEHITS_UPDATER.incrementAndGet(this));
     }
     
     
@@ -186,4 +194,28 @@ public class MarkovEdge extends AbstractEdge implements MarkovHitTrackable {
         super.fieldsFromJSONObject(object, catalog_db, MarkovEdge.class, Members.values());
     }
 
-}
\ No newline at end of file
+    /**
+     * Write this edge's counters out for a binary MarkovGraph model file.
+     * The graph is responsible for writing out the edge's vertices.
+     * @param out
+     * @throws IOException
+     */
+    public void writeBinary(FastSerializer out) throws IOException {
+        out.writeVarLong(this.getElementId());
+        out.writeFloat(this.probability);
+        out.writeVarLong(this.totalhits);
+        out.writeVarLong(this.instancehits);
+    }
+
+    /**
+     * Read in an edge that was written out by writeBinary()
+     * @param in
+     * @throws IOException
+     */
+    public void readBinary(FastDeserializer in) throws IOException {
+        this.setElementId(in.readVarLong());
+        this.probability = in.readFloat();
+        this.totalhits = in.readVarInt();
+        this.instancehits = in.readVarInt();
+    }
+}
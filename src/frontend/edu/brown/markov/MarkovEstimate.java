@@ -74,13 +74,9 @@ public class MarkovEstimate implements Poolable, Estimation {
         this.vertex = v;
         
         if (this.vertex.isStartVertex() == false) {
-            this.setSingleSitedProbability(v.getSingleSitedProbability());
-            this.setAbortProbability(v.getAbortProbability());
-            for (int i = 0; i < this.touched.length; i++) {
-                this.setDoneProbability(i, v.getDoneProbability(i));
-                this.setReadOnlyProbability(i, v.getReadOnlyProbability(i));
-                this.setWriteProbability(i, v.getWriteProbability(i));
-            } // FOR
+            // The vertex's probabilities may be getting recomputed in the background,
+            // so we have to use the last version of them that was published
+            v.copyPublishedProbabilities(this, this.touched.length);
             this.time = v.getExecutionTime();
         }
         return (this);
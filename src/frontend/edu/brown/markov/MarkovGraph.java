@@ -1,6 +1,7 @@
 package edu.brown.markov;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -18,6 +19,8 @@ import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Statement;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 import org.voltdb.utils.Pair;
 
 import edu.brown.catalog.CatalogKey;
@@ -37,6 +40,8 @@ import edu.brown.utils.ArgumentsParser;
 import edu.brown.utils.MathUtil;
 import edu.brown.utils.PartitionEstimator;
 import edu.brown.utils.ProjectType;
+import edu.brown.utils.ThreadUtil;
+import edu.brown.workload.BinaryTraceReader;
 import edu.brown.workload.QueryTrace;
 import edu.brown.workload.TransactionTrace;
 
@@ -85,6 +90,10 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     private transient double xact_accuracy = 1.0;
     /** How many times have we recomputed the probabilities for this graph */
     private transient int recompute_count = 0;
+    /** The frozen version of this graph from the last time that it was compiled */
+    private transient volatile CompiledMarkovGraph compiled = null;
+    /** How many txns have updated the instance hit counters since we last calculated the probabilities */
+    private final transient AtomicInteger pending_updates = new AtomicInteger(0);
 
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
@@ -390,7 +399,8 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
     /**
      * Calculate the probabilities for this graph.
      * First we will reset all of the existing probabilities and then apply the instancehits to 
-     * the totalhits for each graph element
+     * the totalhits for each graph element. The new probabilities are not used by
+     * MarkovEstimates until they are published at the end.
      */
     public synchronized void calculateProbabilities() {
         // Reset all probabilities
@@ -399,12 +409,17 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         } // FOR
         
         this.normalizeTimes();
-        for (MarkovVertex v : this.getVertices()) {
-            v.applyInstanceHitsToTotalHits();
-        }
+        this.pending_updates.set(0);
+        
+        // Txns that finish while we are in here increment the hits for the vertices
+        // in their path before the edges, so we have to apply the edges' hits first.
+        // That way an edge can never have more hits than the vertex that it comes from
         for (MarkovEdge e : this.getEdges()) {
             e.applyInstanceHitsToTotalHits();
         }
+        for (MarkovVertex v : this.getVertices()) {
+            v.applyInstanceHitsToTotalHits();
+        }
         
         // We first need to calculate the edge probabilities because the probabilities
         // at each vertex are going to be derived from these
@@ -413,7 +428,32 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         // Then traverse the graph and calculate the vertex probability tables
         this.calculateVertexProbabilities();
         
+        // Running txns only see the new tables once all of them have been calculated
+        for (MarkovVertex v : this.getVertices()) {
+            v.publishProbabilities();
+        } // FOR
+        
         this.recompute_count++;
+        this.compile();
+    }
+
+    /**
+     * Create a new CompiledMarkovGraph from the current state of this graph. Any
+     * thread that calls getCompiledGraph() afterwards will get the new version.
+     * @return
+     */
+    public synchronized CompiledMarkovGraph compile() {
+        this.compiled = new CompiledMarkovGraph(this);
+        return (this.compiled);
+    }
+
+    /**
+     * Return the CompiledMarkovGraph from the last time that this graph's probabilities
+     * were calculated. This will be null if the graph has never been compiled.
+     * @return
+     */
+    public CompiledMarkovGraph getCompiledGraph() {
+        return (this.compiled);
     }
 
     /**
@@ -682,6 +722,7 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         for (MarkovEdge e : this.getEdges()) {
             e.setInstanceHits(0);
         }
+        this.pending_updates.set(0);
     }
     
     /**
@@ -714,6 +755,23 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         return (this.recompute_count);
     }
     
+    /**
+     * Record that a txn has updated the instance hit counters for this graph 
+     * @return the number of updates since the last time the probabilities were calculated
+     */
+    public int incrementPendingUpdates() {
+        return (this.pending_updates.incrementAndGet());
+    }
+    
+    /**
+     * Return the number of txns that have updated the instance hit counters
+     * since the last time the probabilities were calculated
+     * @return
+     */
+    public int getPendingUpdates() {
+        return (this.pending_updates.get());
+    }
+    
     // ----------------------------------------------------------------------------
     // SERIALIZATION METHODS
     // ----------------------------------------------------------------------------
@@ -728,6 +786,82 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
         GraphUtil.serialize(this, ignore, null, stringer);
     }
     
+    /**
+     * Write this graph out for a binary MarkovGraph model file. Like toJSON(), this
+     * skips any query vertices that have never been hit. 
+     * @param out
+     * @throws IOException
+     */
+    public void writeBinary(FastSerializer out) throws IOException {
+        List<MarkovVertex> vertices = new ArrayList<MarkovVertex>();
+        Set<MarkovVertex> included = new HashSet<MarkovVertex>();
+        Map<String, Integer> key_idxs = new HashMap<String, Integer>();
+        List<String> keys = new ArrayList<String>();
+        for (MarkovVertex v : this.getVertices()) {
+            if (v.isQueryVertex() && (v.instancehits == 0 && v.totalhits == 0)) continue;
+            vertices.add(v);
+            included.add(v);
+            if (key_idxs.containsKey(v.getCatalogKey()) == false) {
+                key_idxs.put(v.getCatalogKey(), keys.size());
+                keys.add(v.getCatalogKey());
+            }
+        } // FOR
+        List<MarkovEdge> edges = new ArrayList<MarkovEdge>();
+        for (MarkovEdge e : this.getEdges()) {
+            if (included.contains(this.getSource(e)) && included.contains(this.getDest(e))) edges.add(e);
+        } // FOR
+        
+        out.writeInt(this.getGraphId());
+        out.writeVarLong(keys.size());
+        for (String key : keys) {
+            out.writeVarString(key);
+        } // FOR
+        out.writeVarLong(vertices.size());
+        for (MarkovVertex v : vertices) {
+            v.writeBinary(out, key_idxs.get(v.getCatalogKey()));
+        } // FOR
+        out.writeVarLong(edges.size());
+        for (MarkovEdge e : edges) {
+            out.writeVarLong(this.getSource(e).getElementId());
+            out.writeVarLong(this.getDest(e).getElementId());
+            e.writeBinary(out);
+        } // FOR
+    }
+    
+    /**
+     * Populate this empty graph from the output of writeBinary()
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public MarkovGraph readBinary(FastDeserializer in) throws IOException {
+        assert(this.vertices.isEmpty()) : "Trying to load into a non-empty " + this;
+        Database catalog_db = this.getDatabase();
+        this.setGraphId(in.readInt());
+        String keys[] = new String[in.readVarInt()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = in.readVarString();
+        } // FOR
+        for (int i = 0, cnt = in.readVarInt(); i < cnt; i++) {
+            MarkovVertex v = new MarkovVertex();
+            v.readBinary(in, catalog_db, keys);
+            this.addVertex(v);
+        } // FOR
+        for (int i = 0, cnt = in.readVarInt(); i < cnt; i++) {
+            long v0_id = in.readVarLong();
+            long v1_id = in.readVarLong();
+            MarkovVertex v0 = this.getVertex(v0_id);
+            MarkovVertex v1 = this.getVertex(v1_id);
+            if (v0 == null || v1 == null) {
+                throw new IOException(String.format("Invalid edge %d -> %d in %s MarkovGraph", v0_id, v1_id, this.catalog_proc.getName()));
+            }
+            MarkovEdge e = new MarkovEdge(this);
+            e.readBinary(in);
+            this.addEdge(e, v0, v1);
+        } // FOR
+        return (this);
+    }
+    
     // ----------------------------------------------------------------------------
     // YE OLDE MAIN METHOD
     // ----------------------------------------------------------------------------
@@ -764,7 +898,23 @@ public class MarkovGraph extends AbstractDirectedGraph<MarkovVertex, MarkovEdge>
             containerClass = AuctionMarkMarkovGraphsContainer.class;
         }
         assert(containerClass != null);
-        Map<Integer, MarkovGraphsContainer> markovs_map = MarkovGraphContainersUtil.createMarkovGraphsContainers(args.catalog_db, args.workload, p_estimator, containerClass);
+        Map<Integer, MarkovGraphsContainer> markovs_map = null;
+        
+        // Stream the txns out of a binary trace without loading it
+        if (args.workload == null) {
+            BinaryTraceReader reader = new BinaryTraceReader(new File(args.workload_path), args.catalog_db, args.workload_filter);
+            int num_threads = ThreadUtil.getMaxGlobalThreads();
+            if (args.hasIntParam(ArgumentsParser.PARAM_MARKOV_THREADS)) {
+                num_threads = args.getIntParam(ArgumentsParser.PARAM_MARKOV_THREADS);
+            }
+            try {
+                markovs_map = MarkovGraphContainersUtil.createMarkovGraphsContainers(args.catalog_db, reader, p_estimator, containerClass, num_threads);
+            } finally {
+                reader.close();
+            }
+        } else {
+            markovs_map = MarkovGraphContainersUtil.createMarkovGraphsContainers(args.catalog_db, args.workload, p_estimator, containerClass);
+        }
         
         // Save the graphs
         assert(markovs_map != null);
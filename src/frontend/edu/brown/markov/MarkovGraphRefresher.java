@@ -0,0 +1,188 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.brown.hstore.interfaces.Shutdownable;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+
+/**
+ * Background thread that recalculates the probabilities of MarkovGraphs while
+ * transactions are still using them. The TransactionEstimator only updates the
+ * instance hit counters when a txn finishes, and it only ever reads the graph's
+ * CompiledMarkovGraph when it estimates paths. Every time that we recalculate a
+ * graph here, MarkovGraph.calculateProbabilities() swaps in a new compiled version
+ * of it, so estimators never have to wait for us.
+ * <B>Note:</B> A graph is refreshed either because somebody queued it (e.g., a txn
+ * mispredicted) or because it had enough pending updates when we checked all of
+ * the graphs at the end of the last interval.
+ */
+public class MarkovGraphRefresher implements Runnable, Shutdownable {
+    private static final Logger LOG = Logger.getLogger(MarkovGraphRefresher.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * How often (in ms) we check all of the MarkovGraphs for pending updates
+     */
+    private final int interval;
+    /**
+     * The minimum number of txns that must have updated a MarkovGraph since the
+     * last time it was refreshed before we will refresh it when checking all the graphs
+     */
+    private final int min_updates;
+    /**
+     * The MarkovGraphsContainers that we check at the end of each interval
+     */
+    private final List<MarkovGraphsContainer> containers = new ArrayList<MarkovGraphsContainer>();
+    /**
+     * MarkovGraphs that need to be refreshed as soon as possible
+     */
+    private final LinkedBlockingQueue<MarkovGraph> queue = new LinkedBlockingQueue<MarkovGraph>();
+    /**
+     * The MarkovGraphs that are currently in the queue. We use this so that a
+     * graph is never in there more than once.
+     */
+    private final Map<MarkovGraph, Boolean> queued = new ConcurrentHashMap<MarkovGraph, Boolean>();
+    private final AtomicInteger refresh_count = new AtomicInteger(0);
+
+    private Thread self = null;
+    private boolean stop = false;
+
+    /**
+     * Constructor
+     * @param interval how often (in ms) to check for graphs with pending updates. Disabled if less than one.
+     * @param min_updates how many updates a graph needs to have before it is refreshed at the end of an interval
+     */
+    public MarkovGraphRefresher(int interval, int min_updates) {
+        this.interval = interval;
+        this.min_updates = Math.max(1, min_updates);
+    }
+
+    /**
+     * Include all of the MarkovGraphs in the given container when we check
+     * for graphs with pending updates
+     * @param markovs
+     */
+    public synchronized void addMarkovs(MarkovGraphsContainer markovs) {
+        for (MarkovGraphsContainer m : this.containers) {
+            if (m == markovs) return;
+        } // FOR
+        this.containers.add(markovs);
+    }
+
+    /**
+     * Queue the given MarkovGraph to be refreshed. Returns false if it is already queued.
+     * @param markov
+     * @return
+     */
+    public boolean queue(MarkovGraph markov) {
+        if (this.queued.put(markov, Boolean.TRUE) != null) return (false);
+        if (debug.get()) LOG.debug(String.format("Queued %s to be refreshed [pending=%d]", markov, markov.getPendingUpdates()));
+        this.queue.offer(markov);
+        return (true);
+    }
+
+    /**
+     * Recalculate the probabilities for the given MarkovGraph if any txns
+     * have updated it since the last time.
+     * @param markov
+     * @return true if the graph was refreshed
+     */
+    public boolean refresh(MarkovGraph markov) {
+        int pending = markov.getPendingUpdates();
+        if (pending == 0) return (false);
+        if (debug.get()) LOG.debug(String.format("Refreshing %s [pending=%d, recomputed=%d]", markov, pending, markov.getRecomputeCount()));
+        markov.calculateProbabilities();
+        this.refresh_count.incrementAndGet();
+        return (true);
+    }
+
+    /**
+     * Refresh all of the loaded MarkovGraphs that have at least min_updates pending updates.
+     * This does not deserialize any MarkovGraphs that have not been used yet.
+     * @return the number of graphs that were refreshed
+     */
+    public int refreshAll() {
+        List<MarkovGraphsContainer> containers = null;
+        synchronized (this) {
+            containers = new ArrayList<MarkovGraphsContainer>(this.containers);
+        } // SYNCH
+        int ctr = 0;
+        for (MarkovGraphsContainer markovs : containers) {
+            for (MarkovGraph markov : markovs.getLoaded()) {
+                if (markov.getPendingUpdates() >= this.min_updates && this.refresh(markov)) ctr++;
+            } // FOR
+        } // FOR
+        if (debug.get() && ctr > 0) LOG.debug(String.format("Refreshed %d MarkovGraphs with at least %d pending updates", ctr, this.min_updates));
+        return (ctr);
+    }
+
+    /**
+     * Return the total number of times that a MarkovGraph has been refreshed
+     * @return
+     */
+    public int getRefreshCount() {
+        return (this.refresh_count.get());
+    }
+
+    @Override
+    public void run() {
+        this.self = Thread.currentThread();
+        if (debug.get()) LOG.debug(String.format("Starting MarkovGraph refresh thread [interval=%d, min_updates=%d]",
+                                                 this.interval, this.min_updates));
+
+        long next_check = System.currentTimeMillis() + this.interval;
+        MarkovGraph markov = null;
+        while (this.stop == false && this.self.isInterrupted() == false) {
+            try {
+                if (this.interval > 0) {
+                    markov = this.queue.poll(Math.max(1, next_check - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } else {
+                    markov = this.queue.take();
+                }
+            } catch (InterruptedException ex) {
+                // Ignore!
+                break;
+            }
+            if (markov != null) {
+                this.queued.remove(markov);
+                this.refresh(markov);
+            }
+            if (this.interval > 0 && System.currentTimeMillis() >= next_check) {
+                this.refreshAll();
+                next_check = System.currentTimeMillis() + this.interval;
+            }
+        } // WHILE
+    }
+
+    @Override
+    public void prepareShutdown(boolean error) {
+        this.queue.clear();
+        this.queued.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        if (debug.get()) LOG.debug("MarkovGraph refresh thread should be shutdown now ...");
+        this.stop = true;
+        if (this.self != null) this.self.interrupt();
+    }
+
+    @Override
+    public boolean isShuttingDown() {
+        return (this.stop);
+    }
+}
@@ -135,6 +135,25 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
     
     private final transient Map<Statement, Object[]> stmt_param_arrays = new HashMap<Statement, Object[]>();
     
+    // ----------------------------------------------------------------------------
+    // COMPILED TRAVERSAL MEMBERS
+    // ----------------------------------------------------------------------------
+    
+    /** Returned by selectEdge() when the traversal has to be stopped */
+    private static final int STOP_TRAVERSAL = -2;
+    
+    /** The CompiledMarkovGraph that we used to estimate the path (if any) */
+    private transient CompiledMarkovGraph compiled;
+    
+    private transient double compiled_total_probability;
+    private final transient boolean touched_flags[];
+    private final transient boolean read_flags[];
+    private final transient boolean write_flags[];
+    private final transient boolean past_flags[];
+    private final transient boolean stmt_flags[];
+    private transient int touched_count = 0;
+    private transient int past_count = 0;
+    
     // ----------------------------------------------------------------------------
     // CONSTRUCTORS
     // ----------------------------------------------------------------------------
@@ -151,6 +170,12 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         for (int p = 0; p < this.num_partitions; p++) {
             this.all_partitions.add(p);
         } // FOR
+        
+        this.touched_flags = new boolean[this.num_partitions];
+        this.read_flags = new boolean[this.num_partitions];
+        this.write_flags = new boolean[this.num_partitions];
+        this.past_flags = new boolean[this.num_partitions];
+        this.stmt_flags = new boolean[this.num_partitions];
     }
     
     /**
@@ -165,6 +190,12 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.num_partitions = CatalogUtil.getNumberOfPartitions(markov.getDatabase());
         this.estimate = new MarkovEstimate(this.num_partitions);
         this.all_partitions = CatalogUtil.getAllPartitionIds(markov.getDatabase());
+        
+        this.touched_flags = new boolean[this.num_partitions];
+        this.read_flags = new boolean[this.num_partitions];
+        this.write_flags = new boolean[this.num_partitions];
+        this.past_flags = new boolean[this.num_partitions];
+        this.stmt_flags = new boolean[this.num_partitions];
 
         this.init(markov, t_estimator, base_partition, args);
     }
@@ -222,6 +253,16 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         this.write_partitions.clear();
         this.past_partitions.clear();
         this.forced_vertices.clear();
+        
+        if (this.compiled != null) {
+            Arrays.fill(this.touched_flags, false);
+            Arrays.fill(this.read_flags, false);
+            Arrays.fill(this.write_flags, false);
+            Arrays.fill(this.past_flags, false);
+            this.touched_count = 0;
+            this.past_count = 0;
+            this.compiled = null;
+        }
     }
     
     public void setCached(boolean val) {
@@ -282,22 +323,100 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             for (StmtParameter catalog_param : catalog_stmt.getParameters()) {
                 arr[catalog_param.getIndex()] = catalog_param;
             }
+            this.stmt_params.put(catalog_stmt, arr);
+        }
+        return (arr);
+    }
+    
+    private Object[] getStatementParamsArray(Statement catalog_stmt) {
+        Object arr[] = this.stmt_param_arrays.get(catalog_stmt);
+        int size = catalog_stmt.getParameters().size();
+        if (arr == null) {
+            arr = new Object[size];
             this.stmt_param_arrays.put(catalog_stmt, arr);
+        } else {
+            for (int i = 0; i < size; i++) arr[i] = null;
         }
         return (arr);
     }
     
-//    private Object[] getStatementParamsArray(Statement catalog_stmt) {
-//        Object arr[] = this.stmt_param_arrays.get(catalog_stmt);
-//        int size = catalog_stmt.getParameters().size();
-//        if (arr == null) {
-//            arr = new Object[size];
-//            this.stmt_param_arrays.put(catalog_stmt, arr);
-//        } else {
-//            for (int i = 0; i < size; i++) arr[i] = null;
-//        }
-//        return (arr);
-//    }
+    /**
+     * Use the ParameterMappings for the given Statement invocation to fill in its
+     * StmtParameters with values from the procedure's arguments.
+     * Returns true if we were able to map at least one of them.
+     * @param catalog_stmt
+     * @param catalog_stmt_index
+     * @param stmt_params
+     * @param stmt_args
+     * @return
+     */
+    private boolean mapStatementParameters(Statement catalog_stmt, int catalog_stmt_index, StmtParameter stmt_params[], Object stmt_args[]) {
+        // Get the correlation objects (if any) for next
+        // This is the only way we can predict what partitions we will touch
+        SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
+        if (param_correlations == null) {
+            if (t) {
+                LOG.warn(String.format("No parameter correlations for %s #%d", catalog_stmt.fullName(), catalog_stmt_index));
+                LOG.trace(this.correlations.debug(catalog_stmt));
+            }
+            return (false);
+        }
+        
+        // Go through the StmtParameters and map values from ProcParameters
+        boolean stmt_args_set = false;
+        for (int i = 0; i < stmt_args.length; i++) {
+            StmtParameter catalog_stmt_param = stmt_params[i];
+            assert(catalog_stmt_param != null);
+            if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+            
+            SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
+            if (correlations == null || correlations.isEmpty()) {
+                if (t) LOG.trace(String.format("No parameter correlations for %s from %s #%d",
+                                               CatalogUtil.getDisplayName(catalog_stmt_param, true), catalog_stmt.fullName(), catalog_stmt_index));
+                continue;
+            }
+            if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+            
+            // Special Case:
+            // If the number of possible Statements we could execute next is greater than one,
+            // then we need to prune our list by removing those Statements who have a StmtParameter
+            // that are correlated to a ProcParameter that doesn't exist (such as referencing an
+            // array element that is greater than the size of that current array)
+            // TODO: For now we are just going always pick the first Correlation 
+            // that comes back. Is there any choice that we would need to make in order
+            // to have a better prediction about what the transaction might do?
+            if (correlations.size() > 1) {
+                if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
+                if (t) {
+                    int ctr = 0;
+                    for (ParameterMapping c : correlations) {
+                        LOG.trace("[" + (ctr++) + "] Correlation: " + c);
+                    } // FOR
+                }
+            }
+            for (ParameterMapping c : correlations) {
+                if (t) LOG.trace("Correlation: " + c);
+                ProcParameter catalog_proc_param = c.getProcParameter();
+                if (catalog_proc_param.getIsarray()) {
+                    Object proc_inner_args[] = (Object[])args[catalog_proc_param.getIndex()];
+                    if (proc_inner_args.length <= c.getProcParameterIndex()) {
+                        if (t) LOG.trace("Unable to map parameters: " +
+                                         "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
+                                         "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
+                        continue;
+                    }
+                    stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
+                } else {
+                    stmt_args[i] = args[catalog_proc_param.getIndex()];
+                }
+                stmt_args_set = true;
+                if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(catalog_proc_param) + " to " +
+                                 CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
+                break;
+            } // FOR (Correlation)
+        } // FOR (StmtParameter)
+        return (stmt_args_set);
+    }
     
     /**
      * This is the main part of where we figure out the path that this transaction will take
@@ -364,78 +483,10 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
             Integer catalog_stmt_index = pair.getSecond();
             if (t) LOG.trace("Examining " + pair);
             
-            // Get the correlation objects (if any) for next
-            // This is the only way we can predict what partitions we will touch
-            SortedMap<StmtParameter, SortedSet<ParameterMapping>> param_correlations = this.correlations.get(catalog_stmt, catalog_stmt_index);
-            if (param_correlations == null) {
-                if (t) {
-                    LOG.warn("No parameter correlations for " + pair);
-                    LOG.trace(this.correlations.debug(catalog_stmt));
-                }
-                continue;
-            }
-            
             // Go through the StmtParameters and map values from ProcParameters
             StmtParameter stmt_params[] = this.getStatementParams(catalog_stmt);
-            Object stmt_args[] = new Object[stmt_params.length]; // this.getStatementParamsArray(catalog_stmt);
-            boolean stmt_args_set = false;
-            for (int i = 0; i < stmt_args.length; i++) {
-                StmtParameter catalog_stmt_param = stmt_params[i];
-                assert(catalog_stmt_param != null);
-                if (t) LOG.trace("Examining " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-                
-                SortedSet<ParameterMapping> correlations = param_correlations.get(catalog_stmt_param);
-                if (correlations == null || correlations.isEmpty()) {
-                    if (t) LOG.trace("No parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true) + " from " + pair);
-                    continue;
-                }
-                if (t) LOG.trace("Found " + correlations.size() + " correlation(s) for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-        
-                // Special Case:
-                // If the number of possible Statements we could execute next is greater than one,
-                // then we need to prune our list by removing those Statements who have a StmtParameter
-                // that are correlated to a ProcParameter that doesn't exist (such as referencing an
-                // array element that is greater than the size of that current array)
-                // TODO: For now we are just going always pick the first Correlation 
-                // that comes back. Is there any choice that we would need to make in order
-                // to have a better prediction about what the transaction might do?
-                if (correlations.size() > 1) {
-                    if (d) LOG.warn("Multiple parameter correlations for " + CatalogUtil.getDisplayName(catalog_stmt_param, true));
-                    if (t) {
-                        int ctr = 0;
-                        for (ParameterMapping c : correlations) {
-                            LOG.trace("[" + (ctr++) + "] Correlation: " + c);
-                        } // FOR
-                    }
-                }
-                for (ParameterMapping c : correlations) {
-                    if (t) LOG.trace("Correlation: " + c);
-                    ProcParameter catalog_proc_param = c.getProcParameter();
-                    if (catalog_proc_param.getIsarray()) {
-                        Object proc_inner_args[] = (Object[])args[c.getProcParameter().getIndex()];
-                        if (t) LOG.trace(CatalogUtil.getDisplayName(c.getProcParameter(), true) + " is an array: " + Arrays.toString(proc_inner_args));
-                        
-                        // TODO: If this Correlation references an array element that is not available for this
-                        // current transaction, should we just skip this correlation or skip the entire query?
-                        if (proc_inner_args.length <= c.getProcParameterIndex()) {
-                            if (t) LOG.trace("Unable to map parameters: " +
-                                                 "proc_inner_args.length[" + proc_inner_args.length + "] <= " +
-                                                 "c.getProcParameterIndex[" + c.getProcParameterIndex() + "]"); 
-                            continue;
-                        }
-                        stmt_args[i] = proc_inner_args[c.getProcParameterIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + "[" + c.getProcParameterIndex() + "] to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]");
-                    } else {
-                        stmt_args[i] = args[c.getProcParameter().getIndex()];
-                        stmt_args_set = true;
-                        if (t) LOG.trace("Mapped " + CatalogUtil.getDisplayName(c.getProcParameter()) + " to " +
-                                             CatalogUtil.getDisplayName(catalog_stmt_param) + " [value=" + stmt_args[i] + "]"); 
-                    }
-                    break;
-                } // FOR (Correlation)
-            } // FOR (StmtParameter)
+            Object stmt_args[] = new Object[stmt_params.length];
+            boolean stmt_args_set = this.mapStatementParameters(catalog_stmt, catalog_stmt_index, stmt_params, stmt_args);
                 
             // If we set any of the stmt_args in the previous step, then we can throw it
             // to our good old friend the PartitionEstimator and see whether we can figure
@@ -593,6 +644,224 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         }
     }
     
+    // ----------------------------------------------------------------------------
+    // COMPILED TRAVERSAL
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Estimate the transaction's path using the given CompiledMarkovGraph instead of walking the
+     * MarkovGraph. This makes the same choices as populate_children(), but it only uses the
+     * compiled graph's arrays and this estimator's reusable buffers. That means that the
+     * MarkovGraph does not need to be locked and nothing gets allocated for each vertex
+     * that we visit. The compiled graph must be for the MarkovGraph that this estimator
+     * was initialized with.
+     * @param compiled
+     */
+    public void traverse(CompiledMarkovGraph compiled) {
+        assert(compiled.getMarkovGraph() == this.getGraph()) :
+            "Trying to use " + compiled + " to estimate path for " + this.getGraph();
+        assert(this.compiled == null) : "Trying to traverse " + compiled + " twice";
+        this.compiled = compiled;
+        
+        int v = CompiledMarkovGraph.START_VERTEX_ID;
+        this.markAsVisited(compiled.getVertex(v));
+        boolean stop = false;
+        
+        // The graph is acyclic, so we can never visit more vertices than it has
+        for (int depth = 0, cnt = compiled.getVertexCount(); depth < cnt; depth++) {
+            if (compiled.isCommitVertex(v) || compiled.isAbortVertex(v)) {
+                if (t) LOG.trace("Reached " + compiled.getVertexType(v) + ". Stopping...");
+                stop = true;
+                break;
+            }
+            int next_e = this.selectEdge(compiled, v);
+            if (next_e == STOP_TRAVERSAL) {
+                stop = true;
+                break;
+            } else if (next_e == CompiledMarkovGraph.NULL_ID) {
+                if (t) LOG.trace("No matching children found. We have to stop...");
+                break;
+            }
+            
+            // Our confidence is based on the total sum of the probabilities for all of the
+            // edges that we could have taken in comparison to the one that we did take
+            int next = compiled.getEdgeDest(next_e);
+            this.confidence *= compiled.getEdgeProbability(next_e) / this.compiled_total_probability;
+            float inverse_prob = 1.0f - this.confidence;
+            
+            // Update our list of partitions touched by this transaction
+            boolean readonly = compiled.isReadOnly(next);
+            int p_start = compiled.getPartitionStart(next);
+            int p_end = compiled.getPartitionEnd(next);
+            for (int i = p_start; i < p_end; i++) {
+                int p = compiled.getPartition(i);
+                // READ
+                if (readonly) {
+                    if (this.read_flags[p] == false) {
+                        this.estimate.setReadOnlyProbability(p, this.confidence);
+                        if (this.touched_flags[p] == false) {
+                            this.estimate.setDoneProbability(p, inverse_prob);
+                        }
+                        this.read_flags[p] = true;
+                        this.read_partitions.add(p);
+                    }
+                // WRITE
+                } else if (this.write_flags[p] == false) {
+                    this.estimate.setReadOnlyProbability(p, inverse_prob);
+                    this.estimate.setWriteProbability(p, this.confidence);
+                    if (this.touched_flags[p] == false) {
+                        this.estimate.setDoneProbability(p, inverse_prob);
+                    }
+                    this.write_flags[p] = true;
+                    this.write_partitions.add(p);
+                }
+                this.estimate.incrementTouchedCounter(p);
+            } // FOR
+            for (int i = p_start; i < p_end; i++) {
+                int p = compiled.getPartition(i);
+                if (this.touched_flags[p] == false) {
+                    this.touched_flags[p] = true;
+                    this.touched_partitions.add(p);
+                    this.touched_count++;
+                }
+            } // FOR
+            
+            // If this is the first time that the path touched more than one partition, then we need to set the single-partition
+            // probability to be the confidence coefficient thus far
+            if (this.touched_count > 1 && this.estimate.isSingleSitedProbabilitySet() == false) {
+                this.estimate.setSingleSitedProbability(inverse_prob);
+            }
+            
+            // Keep track of the highest abort probability that we've seen thus far
+            if (compiled.isQueryVertex(next) && compiled.getAbortProbability(next) > this.greatest_abort) {
+                this.greatest_abort = compiled.getAbortProbability(next);
+            }
+            
+            if (d) LOG.debug("SELECTED: " + compiled.getVertex(next) + " [confidence=" + this.confidence + "]");
+            this.markAsVisited(compiled.getVertex(next));
+            v = next;
+        } // FOR
+        if (stop) this.stop();
+    }
+    
+    /**
+     * Pick the next edge to take from the given vertex in the compiled graph.
+     * This is the compiled version of populate_children().
+     * Returns STOP_TRAVERSAL if the traversal needs to stop or NULL_ID if there
+     * are no candidate edges. The sum of the probabilities of all the candidate edges
+     * is stored in compiled_total_probability.
+     * @param compiled
+     * @param v
+     * @return
+     */
+    private int selectEdge(CompiledMarkovGraph compiled, int v) {
+        for (int i = compiled.getPartitionStart(v), end = compiled.getPartitionEnd(v); i < end; i++) {
+            int p = compiled.getPartition(i);
+            if (this.past_flags[p] == false) {
+                this.past_flags[p] = true;
+                this.past_count++;
+            }
+        } // FOR
+        
+        // The edges are sorted by their probability, so the candidate with the
+        // lowest offset is the one that we are going to take
+        int start = compiled.getEdgeStart(v);
+        int end = compiled.getEdgeEnd(v);
+        int selected = CompiledMarkovGraph.NULL_ID;
+        double total_probability = 0.0;
+        for (int e = start; e < end; e++) {
+            int next = compiled.getEdgeDest(e);
+            int candidate = e;
+            
+            // COMMIT/ABORT are always candidates. For queries, we only need to look
+            // at each unique Statement+StatementInstanceIndex pair once
+            if (compiled.isQueryVertex(next)) {
+                assert(compiled.isQueryVertex(v) == false ||
+                       compiled.getStatement(next).equals(compiled.getStatement(v)) == false ||
+                       compiled.getQueryInstanceIndex(next) > compiled.getQueryInstanceIndex(v)) :
+                    String.format("%s[#%d] > %s[#%d]",
+                                  compiled.getStatement(next).fullName(), compiled.getQueryInstanceIndex(next),
+                                  compiled.getStatement(v).fullName(), compiled.getQueryInstanceIndex(v));
+                boolean seen = false;
+                for (int e0 = start; e0 < e && seen == false; e0++) {
+                    int prev = compiled.getEdgeDest(e0);
+                    seen = compiled.isQueryVertex(prev) && compiled.isSameQuery(prev, next);
+                } // FOR
+                if (seen) continue;
+                
+                candidate = this.findCandidateEdge(compiled, v, next);
+                if (candidate == STOP_TRAVERSAL) return (STOP_TRAVERSAL);
+                if (candidate == CompiledMarkovGraph.NULL_ID) continue;
+            }
+            total_probability += compiled.getEdgeProbability(candidate);
+            if (selected == CompiledMarkovGraph.NULL_ID || candidate < selected) selected = candidate;
+        } // FOR
+        
+        // If we don't have any candidate edges and the FORCE TRAVERSAL flag is set,
+        // then we'll just take all of the edges from our current vertex
+        if (selected == CompiledMarkovGraph.NULL_ID && this.force_traversal && start < end) {
+            if (t) LOG.trace("No candidate edges were found. Force travesal flag is set, so taking all");
+            for (int e = start; e < end; e++) {
+                total_probability += compiled.getEdgeProbability(e);
+            } // FOR
+            selected = start;
+            this.forced_vertices.add(compiled.getVertex(compiled.getEdgeDest(selected)));
+        }
+        this.compiled_total_probability = total_probability;
+        return (selected);
+    }
+    
+    /**
+     * Figure out what partitions the Statement invocation for the given query vertex will
+     * touch and return the edge from the current vertex to the vertex that matches it.
+     * @param compiled
+     * @param v the current vertex
+     * @param next a query vertex for the Statement invocation
+     * @return the matching edge, NULL_ID if there isn't one, or STOP_TRAVERSAL
+     */
+    private int findCandidateEdge(CompiledMarkovGraph compiled, int v, int next) {
+        Statement catalog_stmt = compiled.getStatement(next);
+        int catalog_stmt_index = compiled.getQueryInstanceIndex(next);
+        Object stmt_args[] = this.getStatementParamsArray(catalog_stmt);
+        if (this.mapStatementParameters(catalog_stmt, catalog_stmt_index, compiled.getStatementParameters(next), stmt_args) == false) {
+            if (t) LOG.trace(String.format("No stmt_args for %s #%d. Skipping...", catalog_stmt.fullName(), catalog_stmt_index));
+            return (CompiledMarkovGraph.NULL_ID);
+        }
+        
+        this.stmt_partitions.clear();
+        try {
+            this.p_estimator.getAllPartitions(this.stmt_partitions, catalog_stmt, stmt_args, this.base_partition);
+        } catch (Exception ex) {
+            String msg = "Failed to calculate partitions for " + catalog_stmt + " using parameters " + Arrays.toString(stmt_args);
+            LOG.error(msg, ex);
+            return (STOP_TRAVERSAL);
+        }
+        if (this.stmt_partitions.isEmpty()) return (CompiledMarkovGraph.NULL_ID);
+        
+        int stmt_count = 0;
+        for (Integer p : this.stmt_partitions) {
+            this.stmt_flags[p.intValue()] = true;
+            stmt_count++;
+        } // FOR
+        int found = CompiledMarkovGraph.NULL_ID;
+        for (int e = compiled.getEdgeStart(v), end = compiled.getEdgeEnd(v); e < end; e++) {
+            int dest = compiled.getEdgeDest(e);
+            if (compiled.isQueryVertex(dest) &&
+                compiled.isSameQuery(dest, next) &&
+                compiled.hasPartitions(dest, this.stmt_flags, stmt_count) &&
+                (MarkovGraph.USE_PAST_PARTITIONS == false || compiled.hasPastPartitions(dest, this.past_flags, this.past_count))) {
+                found = e;
+                break;
+            }
+        } // FOR
+        for (Integer p : this.stmt_partitions) {
+            this.stmt_flags[p.intValue()] = false;
+        } // FOR
+        if (found == CompiledMarkovGraph.NULL_ID && t)
+            LOG.trace(String.format("Failed to find candidate edge from %s to %s #%d", compiled.getVertex(v), catalog_stmt.fullName(), catalog_stmt_index));
+        return (found);
+    }
+    
     @Override
     protected void callback(MarkovVertex element) {
         if (element.isQueryVertex() == false) {
@@ -612,6 +881,7 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         if (d) LOG.debug("Callback Stop! Last Element = " + last_v);
         MarkovGraph markov = (MarkovGraph)this.getGraph();
         MarkovVertex first_v = markov.getStartVertex();
+        CompiledMarkovGraph compiled = this.compiled;
         
         // Confidence
         this.estimate.setConfidenceProbability(this.confidence);
@@ -622,10 +892,16 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         float untouched_finish = 1.0f;
         for (int p : this.all_partitions) {
             if (this.touched_partitions.contains(p) == false) {
-                this.estimate.setReadOnlyProbability(p, first_v.getReadOnlyProbability(p));
-                this.estimate.setWriteProbability(p, first_v.getWriteProbability(p));
+                // The compiled graph has its own copy of the start vertex's probabilities
+                if (compiled != null) {
+                    this.estimate.setReadOnlyProbability(p, compiled.getStartReadOnlyProbability(p));
+                    this.estimate.setWriteProbability(p, compiled.getStartWriteProbability(p));
+                } else {
+                    this.estimate.setReadOnlyProbability(p, first_v.getReadOnlyProbability(p));
+                    this.estimate.setWriteProbability(p, first_v.getWriteProbability(p));
+                }
                 
-                float finished_prob = first_v.getDoneProbability(p);
+                float finished_prob = (compiled != null ? compiled.getStartDoneProbability(p) : first_v.getDoneProbability(p));
                 this.estimate.setDoneProbability(p, finished_prob);
                 if (is_singlepartition) untouched_finish = Math.min(untouched_finish, finished_prob);
             } else if (this.estimate.isWriteProbabilitySet(p) == false) {
@@ -641,7 +917,8 @@ public class MarkovPathEstimator extends VertexTreeWalker<MarkovVertex, MarkovEd
         
         // Abort Probability
         // Only use the abort probability if we have seen at least ABORT_MIN_TXNS
-        if (markov.getStartVertex().getTotalHits() >= MarkovGraph.MIN_HITS_FOR_NO_ABORT) {
+        long start_hits = (compiled != null ? compiled.getStartTotalHits() : first_v.getTotalHits());
+        if (start_hits >= MarkovGraph.MIN_HITS_FOR_NO_ABORT) {
             this.estimate.setAbortProbability(this.greatest_abort);
         } else {
             this.estimate.setAbortProbability(1.0f);
@@ -1,5 +1,6 @@
 package edu.brown.markov;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,6 +15,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
@@ -24,6 +26,8 @@ import org.json.JSONStringer;
 import org.voltdb.catalog.CatalogType;
 import org.voltdb.catalog.Database;
 import org.voltdb.catalog.Statement;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
 
 import edu.brown.catalog.CatalogKey;
 import edu.brown.catalog.CatalogUtil;
@@ -157,14 +161,24 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
      */
     public float probabilities[][];
     
+    /**
+     * A copy of the probability tables from the last time that they were published.
+     * The tables above get reset and recomputed in place whenever the graph's probabilities
+     * are calculated, so running txns only ever read from this copy.
+     * @see MarkovVertex#publishProbabilities()
+     */
+    private transient volatile float published[][];
+    
     // ----------------------------------------------------------------------------
     // TRANSIENT DATA MEMBERS
     // ----------------------------------------------------------------------------
 
     /**
      * The number of times this vertex has been touched in the current on-line run
+     * This is only updated through INSTANCEHITS_UPDATER so that txns do not need to lock the graph
      */
-    public transient int instancehits = 0;
+    public transient volatile int instancehits = 0;
+    private static final AtomicIntegerFieldUpdater<MarkovVertex> INSTANCEHITS_UPDATER = AtomicIntegerFieldUpdater.newUpdater(MarkovVertex.class, "instancehits");
     
     /**
      * The execution times of the transactions in the on-line run
@@ -250,6 +264,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
                 this.probabilities[i][j] = v.probabilities[i][j];
             } // FOR
         } // FOR
+        this.publishProbabilities();
     }
     
     /**
@@ -263,6 +278,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
             this.probabilities[ptype.ordinal()] = new float[inner_len];
         } // FOR
         this.resetAllProbabilities();
+        this.publishProbabilities();
     }
     
     public boolean isValid(MarkovGraph markov) {
@@ -534,7 +550,11 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
      * @return
      */
     private float getSpecificProbability(MarkovVertex.Probability ptype, int partition) {
-        float value = this.probabilities[ptype.ordinal()][partition];
+        return (getSpecificProbability(this.probabilities, ptype, partition));
+    }
+    
+    private static float getSpecificProbability(float tables[][], MarkovVertex.Probability ptype, int partition) {
+        float value = tables[ptype.ordinal()][partition];
         if (value == MarkovUtil.NULL_MARKER) value = ptype.default_value;
         
         // Handle funky rounding error that I think is due to casting
@@ -571,6 +591,37 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
         this.probabilities[ptype.ordinal()][partition] = probability;
     }
 
+    /**
+     * Make a copy of the current probability tables and use it for all of the
+     * estimates that are created from this vertex from now on. This must be called
+     * after the probabilities are recomputed, otherwise txns will keep getting the old ones.
+     */
+    public void publishProbabilities() {
+        float copy[][] = new float[this.probabilities.length][];
+        for (int i = 0; i < copy.length; i++) {
+            if (this.probabilities[i] != null) copy[i] = this.probabilities[i].clone();
+        } // FOR
+        this.published = copy;
+    }
+    
+    /**
+     * Copy the last published probabilities for this vertex into the given estimate.
+     * All of the values come from the same version of the tables, even if somebody
+     * is recalculating this vertex's probabilities right now.
+     * @param est
+     * @param num_partitions
+     */
+    public void copyPublishedProbabilities(MarkovEstimate est, int num_partitions) {
+        final float tables[][] = this.published;
+        est.setSingleSitedProbability(getSpecificProbability(tables, Probability.SINGLE_SITED, DEFAULT_PARTITION_ID));
+        est.setAbortProbability(getSpecificProbability(tables, Probability.ABORT, DEFAULT_PARTITION_ID));
+        for (int i = 0; i < num_partitions; i++) {
+            est.setDoneProbability(i, getSpecificProbability(tables, Probability.DONE, i));
+            est.setReadOnlyProbability(i, getSpecificProbability(tables, Probability.READ_ONLY, i));
+            est.setWriteProbability(i, getSpecificProbability(tables, Probability.WRITE, i));
+        } // FOR
+    }
+
     /**
      * Reset all probabilities. Keeps partitions in maps
      */
@@ -756,8 +807,9 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
    
     @Override
     public void applyInstanceHitsToTotalHits() {
-        this.totalhits += this.instancehits;
-        this.instancehits = 0;
+        // Swap the counter out so that we don't lose any hits from txns that
+        // are finishing while the probabilities are getting recomputed
+        this.totalhits += INSTANCEHITS_UPDATER.getAndSet(this, 0);
     }
     @Override
     public void incrementTotalHits() {
@@ -769,7 +821,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
     }
     @Override
     public void setInstanceHits(int instancehits) {
-        this.instancehits = instancehits;
+        INSTANCEHITS_UPDATER.set(this, instancehits);
     }
     @Override
     public int getInstanceHits() {
@@ -777,7 +829,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
     }
     @Override
     public int incrementInstanceHits() {
-        return (++this.instancehits);
+        return (INSTANCEHITS_UPDATER.incrementAndGet(this));
     }
     
     // ----------------------------------------------------------------------------
@@ -835,6 +887,7 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
                 this.probabilities[i][j] = (float)json_arr.getDouble(j);
             } // FOR
         } // WHILE
+        this.publishProbabilities();
         
         // I'm lazy...
         String s = object.getString(Members.TYPE.name());
@@ -864,5 +917,88 @@ public class MarkovVertex extends AbstractVertex implements MarkovHitTrackable,
         } // SWITCH
     }
 
-
+    // ----------------------------------------------------------------------------
+    // BINARY SERIALIZATION METHODS
+    // ----------------------------------------------------------------------------
+    
+    /**
+     * Write this vertex out for a binary MarkovGraph model file
+     * @param out
+     * @param catalog_key_idx the offset of this vertex's catalog key in the graph's key table
+     * @throws IOException
+     */
+    public void writeBinary(FastSerializer out, int catalog_key_idx) throws IOException {
+        out.writeVarLong(this.getElementId());
+        out.writeByte(this.type.ordinal());
+        out.writeVarLong(catalog_key_idx);
+        out.writeVarLong(this.counter);
+        out.writeVarLong(this.totalhits);
+        out.writeVarLong(this.instancehits);
+        out.writeSignedVarLong(this.execution_time);
+        writePartitions(out, this.partitions);
+        writePartitions(out, this.past_partitions);
+        for (int i = 0; i < this.probabilities.length; i++) {
+            out.writeVarLong(this.probabilities[i].length);
+            for (int j = 0, cnt = this.probabilities[i].length; j < cnt; j++) {
+                out.writeFloat(this.probabilities[i][j]);
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * Read in a vertex that was written out by writeBinary()
+     * @param in
+     * @param catalog_db
+     * @param catalog_keys the graph's key table
+     * @throws IOException
+     */
+    public void readBinary(FastDeserializer in, Database catalog_db, String catalog_keys[]) throws IOException {
+        this.setElementId(in.readVarLong());
+        this.type = Type.values()[in.readByte()];
+        this.catalog_key = catalog_keys[in.readVarInt()];
+        this.catalog_class = Statement.class;
+        this.counter = in.readVarInt();
+        this.totalhits = in.readVarInt();
+        this.instancehits = in.readVarInt();
+        this.execution_time = in.readSignedVarLong();
+        this.partitions = Collections.unmodifiableSet(readPartitions(in));
+        this.past_partitions = Collections.unmodifiableSet(readPartitions(in));
+        for (int i = 0; i < this.probabilities.length; i++) {
+            this.probabilities[i] = new float[in.readVarInt()];
+            for (int j = 0, cnt = this.probabilities[i].length; j < cnt; j++) {
+                this.probabilities[i][j] = in.readFloat();
+            } // FOR
+        } // FOR
+        this.publishProbabilities();
+        
+        switch (this.type) {
+            case START:
+            case COMMIT:
+            case ABORT:
+                this.catalog_item = MarkovUtil.getSpecialStatement(catalog_db, this.type);
+                break;
+            default:
+                this.catalog_item = CatalogKey.getFromKey(catalog_db, this.catalog_key, Statement.class);
+                break;
+        } // SWITCH
+        if (this.catalog_item == null) {
+            throw new IOException("Invalid catalog key '" + this.catalog_key + "' for " + this.type + " vertex");
+        }
+    }
+    
+    private static void writePartitions(FastSerializer out, Set<Integer> partitions) throws IOException {
+        out.writeVarLong(partitions.size());
+        for (Integer p : partitions) {
+            out.writeVarLong(p.intValue());
+        } // FOR
+    }
+    
+    private static Set<Integer> readPartitions(FastDeserializer in) throws IOException {
+        int cnt = in.readVarInt();
+        Set<Integer> partitions = new HashSet<Integer>();
+        for (int i = 0; i < cnt; i++) {
+            partitions.add(in.readVarInt());
+        } // FOR
+        return (partitions);
+    }
 }
@@ -88,6 +88,12 @@ public class TransactionEstimator implements Loggable {
     
     private transient boolean enable_recomputes = false;
     
+    /**
+     * If this is set, then MarkovGraphs will be recomputed in the background
+     * instead of in the thread that is executing the transaction
+     */
+    private transient MarkovGraphRefresher refresher = null;
+    
     // ----------------------------------------------------------------------------
     // TRANSACTION STATE
     // ----------------------------------------------------------------------------
@@ -107,11 +113,14 @@ public class TransactionEstimator implements Loggable {
         private int base_partition;
         private long start_time;
         private MarkovGraph markov;
+        private CompiledMarkovGraph compiled;
         private MarkovPathEstimator initial_estimator;
         private MarkovEstimate initial_estimate;
         private int num_estimates;
         
         private transient MarkovVertex current;
+        /** The id of the current vertex in the CompiledMarkovGraph (if it's in there) */
+        private transient int current_id = CompiledMarkovGraph.NULL_ID;
         private transient final Set<Integer> cache_past_partitions = new TreeSet<Integer>();
         private transient final Set<Integer> cache_last_partitions = new TreeSet<Integer>();
         
@@ -141,10 +150,12 @@ public class TransactionEstimator implements Loggable {
             this.num_partitions = num_partitions;
         }
         
-        public void init(long txn_id, int base_partition, MarkovGraph markov, MarkovPathEstimator initial_estimator, long start_time) {
+        public void init(long txn_id, int base_partition, MarkovGraph markov, CompiledMarkovGraph compiled, MarkovPathEstimator initial_estimator, long start_time) {
+            assert(compiled == null || compiled.getMarkovGraph() == markov);
             this.txn_id = txn_id;
             this.base_partition = base_partition;
             this.markov = markov;
+            this.compiled = compiled;
             this.start_time = start_time;
             this.initial_estimator = initial_estimator;
             this.initial_estimate = initial_estimator.getEstimate();
@@ -189,6 +200,8 @@ public class TransactionEstimator implements Loggable {
             this.touched_partitions.clear();
             this.query_instance_cnts.clear();
             this.current = null;
+            this.current_id = CompiledMarkovGraph.NULL_ID;
+            this.compiled = null;
             this.initial_estimator = null;
             this.initial_estimate = null;
         }
@@ -218,6 +231,14 @@ public class TransactionEstimator implements Loggable {
         public MarkovGraph getMarkovGraph() {
             return (this.markov);
         }
+        /**
+         * Return the CompiledMarkovGraph that this txn is using to follow its path.
+         * This will be null if the MarkovGraph was not compiled when the txn started.
+         * @return
+         */
+        public CompiledMarkovGraph getCompiledGraph() {
+            return (this.compiled);
+        }
         public int getBasePartition() {
             return (this.base_partition);
         }
@@ -246,10 +267,15 @@ public class TransactionEstimator implements Loggable {
          * @param current
          */
         public void setCurrent(MarkovVertex current, MarkovEdge e) {
+            this.setCurrent(current, e, (this.compiled != null ? this.compiled.getVertexId(current) : CompiledMarkovGraph.NULL_ID));
+        }
+        
+        private void setCurrent(MarkovVertex current, MarkovEdge e, int current_id) {
             if (this.current != null) assert(this.current.equals(current) == false);
             this.actual_path.add(current);
             if (e != null) this.actual_path_edges.add(e);
             this.current = current;
+            this.current_id = current_id;
         }
         
         /**
@@ -378,6 +404,31 @@ public class TransactionEstimator implements Loggable {
        this.enable_recomputes = true;
     }
     
+    /**
+     * Recompute MarkovGraphs using the given MarkovGraphRefresher instead of
+     * in the thread that is executing the transaction
+     * @param refresher
+     */
+    public void setRefresher(MarkovGraphRefresher refresher) {
+        this.refresher = refresher;
+        if (refresher != null && this.markovs != null) refresher.addMarkovs(this.markovs);
+    }
+    
+    public MarkovGraphRefresher getRefresher() {
+        return (this.refresher);
+    }
+    
+    /**
+     * Queue the given MarkovGraph to have its probabilities recomputed in the background.
+     * Returns false if there is no MarkovGraphRefresher or the graph is already queued.
+     * @param markov
+     * @return
+     */
+    public boolean queueRecompute(MarkovGraph markov) {
+        if (this.refresher == null) return (false);
+        return (this.refresher.queue(markov));
+    }
+    
     public ParameterMappingsSet getCorrelations() {
         return this.correlations;
     }
@@ -477,6 +528,7 @@ public class TransactionEstimator implements Loggable {
         
         MarkovVertex start = markov.getStartVertex();
         assert(start != null) : "The start vertex is null. This should never happen!";
+        CompiledMarkovGraph compiled = (hstore_conf.site.markov_path_compiled ? markov.getCompiledGraph() : null);
         MarkovPathEstimator estimator = null;
         
         // We'll reuse the last MarkovPathEstimator (and it's path) if the graph has been accurate for
@@ -501,7 +553,16 @@ public class TransactionEstimator implements Loggable {
             // Calculate initial path estimate
             if (t) LOG.trace("Estimating initial execution path for " + AbstractTransaction.formatTxnName(catalog_proc, txn_id));
             start.addInstanceTime(txn_id, start_time);
-            synchronized (markov) {
+            
+            // The compiled graph never changes, so we don't need to lock the MarkovGraph
+            if (compiled != null) {
+                try {
+                    estimator.traverse(compiled);
+                } catch (Throwable e) {
+                    throw new RuntimeException("Failed to estimate path for " + AbstractTransaction.formatTxnName(catalog_proc, txn_id) +
+                                               " using " + compiled, e);
+                }
+            } else synchronized (markov) {
                 try {
                     estimator.traverse(start);
                     // if (catalog_proc.getName().equalsIgnoreCase("NewBid")) throw new Exception ("Fake!");
@@ -543,7 +604,7 @@ public class TransactionEstimator implements Loggable {
             throw new RuntimeException(ex);
         }
         // Calling init() will set the initial MarkovEstimate for the State
-        state.init(txn_id, base_partition, markov, estimator, start_time);
+        state.init(txn_id, base_partition, markov, compiled, estimator, start_time);
         State old = this.txn_states.put(txn_id, state);
         assert(old == null) : "Duplicate transaction id " + AbstractTransaction.formatTxnName(catalog_proc, txn_id);
 
@@ -641,7 +702,8 @@ public class TransactionEstimator implements Loggable {
         // Once the workload shifts we detect it and trigger this method. Recomputes
         // the graph with the data we collected with the current workload method.
         if (this.enable_recomputes && markov.shouldRecompute(this.txn_count.get(), RECOMPUTE_TOLERANCE)) {
-            markov.calculateProbabilities();
+            if (this.refresher != null) this.refresher.queue(markov);
+            else markov.calculateProbabilities();
         }
         return (estimate);
     }
@@ -700,18 +762,28 @@ public class TransactionEstimator implements Loggable {
         assert(next_v != null) : "Missing " + vtype;
         
         // If no edge exists to the next vertex, then we need to create one
-        synchronized (g) {
-            MarkovEdge next_e = g.findEdge(current, next_v);
-            if (next_e == null) next_e = g.addToEdge(current, next_v);
-            s.setCurrent(next_v, next_e); // For post-txn processing...
-
-            // Update counters
-            // We want to update the counters for the entire path right here so that
-            // nobody gets incomplete numbers if they recompute probabilities
-            for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
-            for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
-            next_v.addInstanceTime(txn_id, s.getExecutionTimeOffset(timestamp));
-        } // SYNCH
+        // We only need to lock the graph when we are changing it
+        MarkovEdge next_e = null;
+        CompiledMarkovGraph compiled = s.compiled;
+        if (compiled != null && s.current_id != CompiledMarkovGraph.NULL_ID) {
+            int e = compiled.findEdge(s.current_id, vtype);
+            if (e != CompiledMarkovGraph.NULL_ID) next_e = compiled.getEdge(e);
+        }
+        if (next_e == null) {
+            synchronized (g) {
+                next_e = g.addToEdge(current, next_v);
+            } // SYNCH
+        }
+        s.setCurrent(next_v, next_e); // For post-txn processing...
+
+        // Update counters
+        // The counters are atomic, so we don't need to lock anything here. We always
+        // update all of the vertices before the edges so that somebody recomputing 
+        // the probabilities never sees more hits for an edge than for its source vertex
+        for (MarkovVertex v : s.actual_path) v.incrementInstanceHits();
+        for (MarkovEdge e : s.actual_path_edges) e.incrementInstanceHits();
+        next_v.addInstanceTime(txn_id, s.getExecutionTimeOffset(timestamp));
+        g.incrementPendingUpdates();
         
         // Store this as the last accurate MarkovPathEstimator for this graph
         if (hstore_conf.site.markov_path_caching && this.cached_estimators.containsKey(s.markov) == false && s.initial_estimate.isValid()) {
@@ -754,35 +826,52 @@ public class TransactionEstimator implements Loggable {
         assert(current != null);
         MarkovVertex next_v = null;
         MarkovEdge next_e = null;
+        
+        // If our current vertex is in the compiled graph, then we can look for the next one
+        // there first without needing to lock anything
+        CompiledMarkovGraph compiled = state.compiled;
+        if (compiled != null && state.current_id != CompiledMarkovGraph.NULL_ID) {
+            int e = compiled.findEdge(state.current_id, catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex);
+            if (e != CompiledMarkovGraph.NULL_ID) {
+                next_v = compiled.getVertex(compiled.getEdgeDest(e));
+                next_e = compiled.getEdge(e);
+                if (t) LOG.trace("Found next vertex " + next_v + " in compiled graph for Txn #" + state.txn_id);
+                
+                next_v.addInstanceTime(state.txn_id, state.getExecutionTimeOffset());
+                state.setCurrent(next_v, next_e, compiled.getEdgeDest(e));
+                return;
+            }
+        }
 
         // Synchronize on the single vertex so that it's more fine-grained than the entire graph
         synchronized (current) {
-            Collection<MarkovEdge> edges = markov.getOutEdges(current); 
-            if (t) LOG.trace("Examining " + edges.size() + " edges from " + current + " for Txn #" + state.txn_id);
-            for (MarkovEdge e : edges) {
-                MarkovVertex v = markov.getDest(e);
-                if (v.isEqual(catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex)) {
-                    if (t) LOG.trace("Found next vertex " + v + " for Txn #" + state.txn_id);
-                    next_v = v;
-                    next_e = e;
-                    break;
-                }
-            } // FOR
-        
-            // If we fail to find the next vertex, that means we have to dynamically create a new 
-            // one. The graph is self-managed, so we don't need to worry about whether 
-            // we need to recompute probabilities.
-            if (next_v == null) {
-                next_v = new MarkovVertex(catalog_stmt,
-                                    MarkovVertex.Type.QUERY,
-                                    queryInstanceIndex,
-                                    partitions,
-                                    state.touched_partitions);
-                markov.addVertex(next_v);
-                next_e = markov.addToEdge(current, next_v);
-                if (t) LOG.trace("Created new edge/vertex from " + state.getCurrent() + " for Txn #" + state.txn_id);
-            }
+            next_e = this.findNextEdge(state, markov, current, catalog_stmt, partitions, queryInstanceIndex);
+            if (next_e != null) next_v = markov.getDest(next_e);
         } // SYNCH
+        
+        // If we fail to find the next vertex, that means we have to dynamically create a new 
+        // one. The graph is self-managed, so we don't need to worry about whether 
+        // we need to recompute probabilities. We have to lock the entire graph while we 
+        // change it so that we don't pull the rug out from under anybody recomputing it.
+        if (next_e == null) {
+            synchronized (markov) {
+                synchronized (current) {
+                    next_e = this.findNextEdge(state, markov, current, catalog_stmt, partitions, queryInstanceIndex);
+                    if (next_e != null) {
+                        next_v = markov.getDest(next_e);
+                    } else {
+                        next_v = new MarkovVertex(catalog_stmt,
+                                            MarkovVertex.Type.QUERY,
+                                            queryInstanceIndex,
+                                            partitions,
+                                            state.touched_partitions);
+                        markov.addVertex(next_v);
+                        next_e = markov.addToEdge(current, next_v);
+                        if (t) LOG.trace("Created new edge/vertex from " + state.getCurrent() + " for Txn #" + state.txn_id);
+                    }
+                } // SYNCH
+            } // SYNCH
+        }
 
         // Update the counters and other info for the next vertex and edge
         next_v.addInstanceTime(state.txn_id, state.getExecutionTimeOffset());
@@ -793,6 +882,30 @@ public class TransactionEstimator implements Loggable {
 //        CONSUME.stop();
     }
 
+    /**
+     * Find the edge from the given vertex to the vertex for the next Statement invocation.
+     * Returns null if there is no such edge. The caller must be synchronized on the current vertex.
+     * @param state
+     * @param markov
+     * @param current
+     * @param catalog_stmt
+     * @param partitions
+     * @param queryInstanceIndex
+     * @return
+     */
+    private MarkovEdge findNextEdge(State state, MarkovGraph markov, MarkovVertex current, Statement catalog_stmt, Collection<Integer> partitions, int queryInstanceIndex) {
+        Collection<MarkovEdge> edges = markov.getOutEdges(current); 
+        if (t) LOG.trace("Examining " + edges.size() + " edges from " + current + " for Txn #" + state.txn_id);
+        for (MarkovEdge e : edges) {
+            MarkovVertex v = markov.getDest(e);
+            if (v.isEqual(catalog_stmt, partitions, state.touched_partitions, queryInstanceIndex)) {
+                if (t) LOG.trace("Found next vertex " + v + " for Txn #" + state.txn_id);
+                return (e);
+            }
+        } // FOR
+        return (null);
+    }
+
     // ----------------------------------------------------------------------------
     // HELPER METHODS
     // ----------------------------------------------------------------------------
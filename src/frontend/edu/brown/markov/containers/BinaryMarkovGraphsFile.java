@@ -0,0 +1,255 @@
+package edu.brown.markov.containers;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.messaging.FastDeserializer;
+
+import edu.brown.catalog.CatalogKey;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovUtil;
+import edu.brown.utils.ClassUtil;
+
+/**
+ * A binary MarkovGraph model file that was written by BinaryMarkovGraphsWriter.
+ * Opening the file only reads its index. Each MarkovGraph is memory-mapped and
+ * deserialized the first time that its MarkovGraphsContainer is asked for it.
+ * The file is closed once all of the graphs that were registered with a container
+ * have been loaded.
+ * @see BinaryMarkovGraphsWriter
+ */
+public class BinaryMarkovGraphsFile {
+    private static final Logger LOG = Logger.getLogger(BinaryMarkovGraphsFile.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * A MarkovGraph in the file that has not been loaded yet
+     */
+    public class LazyMarkovGraph {
+        private final Procedure catalog_proc;
+        private final long offset;
+        private final int length;
+        /** Set once this graph no longer needs the file (loaded or discarded) */
+        private boolean released = false;
+
+        private LazyMarkovGraph(Procedure catalog_proc, long offset, int length) {
+            this.catalog_proc = catalog_proc;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public Procedure getProcedure() {
+            return (this.catalog_proc);
+        }
+
+        /**
+         * Map this graph's bytes from the file and deserialize them into a new MarkovGraph.
+         * This should only be called once per LazyMarkovGraph.
+         * @return
+         */
+        public synchronized MarkovGraph load() {
+            if (this.released) {
+                throw new IllegalStateException(String.format("The %s MarkovGraph from '%s' was already released",
+                                                              this.catalog_proc.getName(), file.getName()));
+            }
+            this.released = true;
+            MarkovGraph markov = new MarkovGraph(this.catalog_proc);
+            try {
+                ByteBuffer buffer = BinaryMarkovGraphsFile.this.map(this.offset, this.length);
+                markov.readBinary(new FastDeserializer(buffer));
+            } catch (IOException ex) {
+                throw new RuntimeException(String.format("Failed to load %s MarkovGraph from '%s' [offset=%d]",
+                                                         this.catalog_proc.getName(), file.getName(), this.offset), ex);
+            } finally {
+                BinaryMarkovGraphsFile.this.finished();
+            }
+            if (trace.get()) LOG.trace(String.format("Loaded %s MarkovGraph from '%s' [vertices=%d, edges=%d]",
+                                                     this.catalog_proc.getName(), file.getName(),
+                                                     markov.getVertexCount(), markov.getEdgeCount()));
+            return (markov);
+        }
+
+        /**
+         * Give up on loading this graph. The file is closed once all of its
+         * graphs have either been loaded or discarded.
+         */
+        public synchronized void discard() {
+            if (this.released) return;
+            this.released = true;
+            BinaryMarkovGraphsFile.this.finished();
+        }
+
+        public synchronized boolean isReleased() {
+            return (this.released);
+        }
+
+        BinaryMarkovGraphsFile getFile() {
+            return (BinaryMarkovGraphsFile.this);
+        }
+    }
+
+    private final File file;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    private BinaryMarkovGraphsFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = this.raf.getChannel();
+    }
+
+    private synchronized ByteBuffer map(long offset, int length) throws IOException {
+        if (this.channel == null) {
+            throw new IOException("The file '" + this.file + "' was already closed");
+        }
+        return (this.channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * Close the file once there are no more graphs left to load. The buffers
+     * that were already mapped remain valid after the channel is closed.
+     */
+    private synchronized void finished() {
+        if (this.pending.decrementAndGet() == 0 && this.channel != null) {
+            if (debug.get()) LOG.debug("Loaded all MarkovGraphs from '" + this.file.getName() + "'. Closing file");
+            try {
+                this.raf.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close '" + this.file + "'", ex);
+            }
+            this.raf = null;
+            this.channel = null;
+        }
+    }
+
+    public int getPendingCount() {
+        return (this.pending.get());
+    }
+
+    /**
+     * Returns true if the file has not been closed yet
+     */
+    public synchronized boolean isOpen() {
+        return (this.channel != null);
+    }
+
+    // ----------------------------------------------------------------------------
+    // STATIC METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given file starts with the binary MarkovGraph model file's magic number
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryFile(File file) {
+        if (file.isFile() == false || file.length() < BinaryMarkovGraphsWriter.HEADER_SIZE) return (false);
+        boolean ret = false;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                ret = (in.readInt() == BinaryMarkovGraphsWriter.MAGIC);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            // Not ours...
+        }
+        return (ret);
+    }
+
+    /**
+     * Create the MarkovGraphsContainers stored in the given binary model file. None of the
+     * MarkovGraphs are deserialized until they are retrieved from their container.
+     * @param catalog_db
+     * @param file
+     * @param procedures the procedures to load graphs for. If null, then load all of them.
+     * @param ids the container ids to load. If null, then load all of them.
+     * @return
+     * @throws IOException
+     */
+    public static Map<Integer, MarkovGraphsContainer> load(Database catalog_db, File file, Collection<Procedure> procedures, Collection<Integer> ids) throws IOException {
+        final Map<Integer, MarkovGraphsContainer> ret = new HashMap<Integer, MarkovGraphsContainer>();
+        final BinaryMarkovGraphsFile bfile = new BinaryMarkovGraphsFile(file);
+        int graph_ctr = 0;
+        try {
+            ByteBuffer header = bfile.map(0, BinaryMarkovGraphsWriter.HEADER_SIZE);
+            if (header.getInt() != BinaryMarkovGraphsWriter.MAGIC) {
+                throw new IOException("'" + file + "' is not a binary MarkovGraph model file");
+            }
+            byte version = header.get();
+            if (version != BinaryMarkovGraphsWriter.VERSION) {
+                throw new IOException(String.format("Unsupported binary MarkovGraph model file version %d in '%s'", version, file));
+            }
+            long index_offset = header.getLong();
+            if (index_offset < BinaryMarkovGraphsWriter.HEADER_SIZE || index_offset >= file.length()) {
+                throw new IOException("The binary MarkovGraph model file '" + file + "' is incomplete");
+            }
+
+            FastDeserializer in = new FastDeserializer(bfile.map(index_offset, (int)(file.length() - index_offset)));
+            int num_containers = in.readInt();
+            for (int i = 0; i < num_containers; i++) {
+                Integer id = in.readInt();
+                String className = in.readString();
+                int num_graphs = in.readInt();
+
+                // Same rules as MarkovGraphContainersUtil.load() for which containers we want
+                MarkovGraphsContainer markovs = null;
+                if (id.equals(MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID) || ids == null || ids.contains(id)) {
+                    markovs = ClassUtil.newInstance(className, new Object[]{ procedures }, new Class<?>[]{ Collection.class });
+                    assert(markovs != null);
+                    ret.put(id, markovs);
+                }
+                for (int j = 0; j < num_graphs; j++) {
+                    int graph_id = in.readInt();
+                    String proc_key = in.readString();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if (markovs == null) continue;
+
+                    Procedure catalog_proc = CatalogKey.getFromKey(catalog_db, proc_key, Procedure.class);
+                    if (catalog_proc == null) {
+                        throw new IOException("Invalid Procedure key '" + proc_key + "' in '" + file + "'");
+                    }
+                    // Count it before we give it to the container so that the file can't
+                    // get closed underneath us if another thread loads a graph at the same time
+                    bfile.pending.incrementAndGet();
+                    if (markovs.putLazy(graph_id, bfile.new LazyMarkovGraph(catalog_proc, offset, length))) {
+                        graph_ctr++;
+                    } else {
+                        bfile.pending.decrementAndGet();
+                    }
+                } // FOR
+            } // FOR
+        } catch (IOException ex) {
+            bfile.pending.set(1);
+            bfile.finished();
+            throw ex;
+        }
+
+        // Close the file right away if there is nothing to load
+        bfile.pending.incrementAndGet();
+        bfile.finished();
+        LOG.info(String.format("Opened %d MarkovGraphs for %d ids from '%s'", graph_ctr, ret.size(), file.getName()));
+        return (ret);
+    }
+}
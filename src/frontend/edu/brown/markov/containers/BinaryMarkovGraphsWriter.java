@@ -0,0 +1,203 @@
+package edu.brown.markov.containers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.messaging.FastSerializer;
+
+import edu.brown.catalog.CatalogKey;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.markov.MarkovGraph;
+
+/**
+ * Writes MarkovGraphsContainers out into a binary model file that can be memory-mapped
+ * and loaded lazily one MarkovGraph at a time.
+ * <B>File Layout:</B>
+ * <pre>
+ * Header:  MAGIC (int), VERSION (byte), index offset (long)
+ * Graphs:  each MarkovGraph's binary encoding, one after another
+ * Index:   # of containers (int), and then for each container its id (int),
+ *          class name (string), # of graphs (int), and then each graph's
+ *          id within the container (int), Procedure key (string), offset (long),
+ *          and length (int)
+ * </pre>
+ * The graphs are streamed out as each container is added, so only the index
+ * has to be kept in memory until the file is closed.
+ * @see BinaryMarkovGraphsFile
+ */
+public class BinaryMarkovGraphsWriter {
+    private static final Logger LOG = Logger.getLogger(BinaryMarkovGraphsWriter.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    public static final int MAGIC = 0x484D4B56; // "HMKV"
+    public static final byte VERSION = 1;
+    public static final String EXTENSION = "bmarkovs";
+
+    /** The byte offset of the index offset in the header */
+    static final int INDEX_OFFSET_POSITION = 5;
+    static final int HEADER_SIZE = INDEX_OFFSET_POSITION + 8;
+
+    /**
+     * Index entry for a single MarkovGraph in the file
+     */
+    static class GraphEntry {
+        final int id;
+        final String proc_key;
+        final long offset;
+        final int length;
+
+        GraphEntry(int id, String proc_key, long offset, int length) {
+            this.id = id;
+            this.proc_key = proc_key;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Index entry for a single MarkovGraphsContainer in the file
+     */
+    static class ContainerEntry {
+        final String className;
+        final List<GraphEntry> graphs = new ArrayList<GraphEntry>();
+
+        ContainerEntry(String className) {
+            this.className = className;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final FastSerializer fs = new FastSerializer();
+    private final Map<Integer, ContainerEntry> index = new TreeMap<Integer, ContainerEntry>();
+    private long position;
+    private int graph_ctr = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor
+     * @param file the output file. Any existing file will be overwritten.
+     * @throws IOException
+     */
+    public BinaryMarkovGraphsWriter(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.raf.setLength(0);
+        this.channel = this.raf.getChannel();
+
+        this.fs.writeInt(MAGIC);
+        this.fs.writeByte(VERSION);
+        this.fs.writeLong(0l); // Filled in by close()
+        assert(this.fs.getPosition() == HEADER_SIZE);
+        this.position = this.flush(0);
+    }
+
+    /**
+     * Write the contents of the serializer into the file at the given position
+     * and then clear it
+     * @return the position after the written bytes
+     */
+    private long flush(long position) throws IOException {
+        ByteBuffer buffer = this.fs.getBuffer();
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        } // WHILE
+        this.fs.clear();
+        return (position);
+    }
+
+    /**
+     * Write out all of the MarkovGraphs for the given container
+     * @param id
+     * @param markovs
+     * @throws IOException
+     */
+    public void add(int id, MarkovGraphsContainer markovs) throws IOException {
+        assert(this.closed == false) : "Trying to add to a closed writer for " + this.file;
+        if (this.index.containsKey(id)) {
+            throw new IOException(String.format("Duplicate MarkovGraphsContainer id %d for '%s'", id, this.file.getName()));
+        }
+        ContainerEntry entry = new ContainerEntry(markovs.getClass().getName());
+        this.index.put(id, entry);
+
+        // Some containers (e.g., TPCCMarkovGraphsContainer) store their graphs
+        // under ids that are different from the id of the container itself
+        for (Entry<Integer, Map<Procedure, MarkovGraph>> e : markovs.entrySet()) {
+            for (MarkovGraph markov : e.getValue().values()) {
+                markov.writeBinary(this.fs);
+                long offset = this.position;
+                this.position = this.flush(offset);
+                entry.graphs.add(new GraphEntry(e.getKey(), CatalogKey.createKey(markov.getProcedure()), offset, (int)(this.position - offset)));
+                this.graph_ctr++;
+                if (trace.get()) LOG.trace(String.format("Wrote %s MarkovGraph %d for id %d [offset=%d, length=%d]",
+                                                         markov.getProcedure().getName(), e.getKey(), id, offset, this.position - offset));
+            } // FOR
+        } // FOR
+        if (debug.get()) LOG.debug(String.format("Wrote %d MarkovGraphs for id %d", entry.graphs.size(), id));
+    }
+
+    public int getGraphCount() {
+        return (this.graph_ctr);
+    }
+
+    /**
+     * Write out the index and close the file
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+
+        long index_offset = this.position;
+        this.fs.writeInt(this.index.size());
+        for (Entry<Integer, ContainerEntry> e : this.index.entrySet()) {
+            this.fs.writeInt(e.getKey());
+            this.fs.writeString(e.getValue().className);
+            this.fs.writeInt(e.getValue().graphs.size());
+            for (GraphEntry g : e.getValue().graphs) {
+                this.fs.writeInt(g.id);
+                this.fs.writeString(g.proc_key);
+                this.fs.writeLong(g.offset);
+                this.fs.writeInt(g.length);
+            } // FOR
+        } // FOR
+        this.position = this.flush(index_offset);
+
+        this.fs.writeLong(index_offset);
+        this.flush(INDEX_OFFSET_POSITION);
+        this.channel.force(false);
+        this.raf.close();
+        LOG.info(String.format("Wrote %d MarkovGraphs for %d ids to '%s' [bytes=%d]",
+                               this.graph_ctr, this.index.size(), this.file.getName(), this.position));
+    }
+
+    /**
+     * Write the given MarkovGraphsContainers out to a binary model file
+     * @param markovs
+     * @param output
+     * @throws IOException
+     */
+    public static void save(Map<Integer, ? extends MarkovGraphsContainer> markovs, File output) throws IOException {
+        BinaryMarkovGraphsWriter writer = new BinaryMarkovGraphsWriter(output);
+        for (Entry<Integer, ? extends MarkovGraphsContainer> e : new TreeMap<Integer, MarkovGraphsContainer>(markovs).entrySet()) {
+            writer.add(e.getKey(), e.getValue());
+        } // FOR
+        writer.close();
+    }
+}
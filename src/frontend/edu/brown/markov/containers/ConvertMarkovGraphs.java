@@ -0,0 +1,99 @@
+package edu.brown.markov.containers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+import org.voltdb.catalog.Database;
+
+import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
+
+/**
+ * Convert a JSON MarkovGraph model file into a binary model file, or a binary model
+ * file back into JSON. The direction is based on what the input file is. Going from
+ * JSON to binary only has one partition's MarkovGraphsContainer in memory at a time.
+ * @see BinaryMarkovGraphsWriter
+ */
+public class ConvertMarkovGraphs {
+    private static final Logger LOG = Logger.getLogger(ConvertMarkovGraphs.class);
+
+    /**
+     * Convert each MarkovGraphsContainer in a JSON model file and write it to a binary model file
+     * @param catalog_db
+     * @param input
+     * @param output
+     * @return the number of MarkovGraphs written
+     * @throws Exception
+     */
+    public static int jsonToBinary(Database catalog_db, File input, File output) throws Exception {
+        BinaryMarkovGraphsWriter writer = new BinaryMarkovGraphsWriter(output);
+        BufferedReader in = FileUtil.getReader(input);
+
+        // The first line is the index of Line# -> Partition#
+        String line = in.readLine();
+        if (line == null) throw new IOException("The MarkovGraphsContainer file '" + input + "' is empty");
+        Map<Integer, Integer> line_xref = new HashMap<Integer, Integer>();
+        JSONObject json_index = new JSONObject(line);
+        for (String key : CollectionUtil.iterable(json_index.keys())) {
+            line_xref.put(json_index.getInt(key), Integer.valueOf(key));
+        } // FOR
+
+        int line_ctr = 1;
+        while ((line = in.readLine()) != null) {
+            Integer partition = line_xref.get(line_ctr++);
+            if (partition == null) continue;
+            JSONObject json_object = new JSONObject(line).getJSONObject(partition.toString());
+            MarkovGraphsContainer markovs = MarkovGraphContainersUtil.createMarkovGraphsContainer(json_object, null, catalog_db);
+            writer.add(partition, markovs);
+            LOG.info(String.format("Converted %d MarkovGraphs for partition %d", markovs.getAll().size(), partition));
+        } // WHILE
+        in.close();
+        writer.close();
+        return (writer.getGraphCount());
+    }
+
+    /**
+     * Load all of the MarkovGraphs from a binary model file and write them to a JSON model file
+     * @param catalog_db
+     * @param input
+     * @param output
+     * @return the number of MarkovGraphs written
+     * @throws Exception
+     */
+    public static int binaryToJSON(Database catalog_db, File input, File output) throws Exception {
+        Map<Integer, MarkovGraphsContainer> markovs = BinaryMarkovGraphsFile.load(catalog_db, input, null, null);
+        int ctr = 0;
+        for (MarkovGraphsContainer m : markovs.values()) {
+            ctr += m.getAll().size();
+        } // FOR
+        MarkovGraphContainersUtil.save(markovs, output.getAbsolutePath());
+        return (ctr);
+    }
+
+    public static void main(String[] vargs) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG,
+                     ArgumentsParser.PARAM_MARKOV,
+                     ArgumentsParser.PARAM_MARKOV_OUTPUT);
+
+        File input_path = new File(args.getParam(ArgumentsParser.PARAM_MARKOV));
+        File output_path = args.getFileParam(ArgumentsParser.PARAM_MARKOV_OUTPUT);
+        if (output_path.getParent() != null) FileUtil.makeDirIfNotExists(output_path.getParent());
+
+        int ctr;
+        if (BinaryMarkovGraphsFile.isBinaryFile(input_path)) {
+            LOG.info("Converting binary MarkovGraphs '" + input_path + "' to JSON file '" + output_path + "'");
+            ctr = binaryToJSON(args.catalog_db, input_path, output_path);
+        } else {
+            LOG.info("Converting JSON MarkovGraphs '" + input_path + "' to binary file '" + output_path + "'");
+            ctr = jsonToBinary(args.catalog_db, input_path, output_path);
+        }
+        LOG.info(String.format("Converted %d MarkovGraphs", ctr));
+    }
+}
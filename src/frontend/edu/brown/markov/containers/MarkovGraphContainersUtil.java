@@ -7,18 +7,21 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.json.JSONException;
@@ -55,145 +58,198 @@ public abstract class MarkovGraphContainersUtil {
     // INSTANTATION METHODS
     // ----------------------------------------------------------------------------
     
+    /**
+     * The maximum number of TransactionTraces that can be waiting to be processed
+     * by each thread when we build MarkovGraphs from a stream of txns
+     */
+    public static final int STREAM_QUEUE_SIZE = 1000;
+    
+    /**
+     * Marker that tells a processing thread that there are no more txns in the stream
+     */
+    private static final Pair<MarkovGraph, TransactionTrace> STREAM_STOP = Pair.of(null, null);
+    
     /**
      * Create the MarkovGraphsContainers for the given workload
      * @param args
      * @throws Exception
      */
-    @SuppressWarnings("unchecked")
     public static <T extends MarkovGraphsContainer> Map<Integer, MarkovGraphsContainer> createMarkovGraphsContainers(final Database catalog_db, final Workload workload, final PartitionEstimator p_estimator, final Class<T> containerClass) throws Exception {
+        return (createMarkovGraphsContainers(catalog_db, workload.iterator(), p_estimator, containerClass, ThreadUtil.getMaxGlobalThreads()));
+    }
+    
+    /**
+     * Create the MarkovGraphsContainers from a stream of TransactionTraces (e.g., a BinaryTraceReader).
+     * We only go through the iterator once, and each txn is handed off to the thread
+     * that owns the MarkovGraph for its (id, Procedure) pair. Every graph is only ever updated
+     * by one thread, so they don't need to be locked and each graph sees its txns in the same
+     * order that they came out of the iterator. Each thread has a bounded queue, so the most
+     * number of txns that we will hold in memory is num_threads * STREAM_QUEUE_SIZE.
+     * @param catalog_db
+     * @param txn_traces
+     * @param p_estimator
+     * @param containerClass
+     * @param num_threads
+     * @return
+     * @throws Exception
+     */
+    public static <T extends MarkovGraphsContainer> Map<Integer, MarkovGraphsContainer> createMarkovGraphsContainers(final Database catalog_db, final Iterator<TransactionTrace> txn_traces, final PartitionEstimator p_estimator, final Class<T> containerClass, int num_threads) throws Exception {
+        return (createMarkovGraphsContainers(catalog_db, txn_traces, p_estimator, containerClass, num_threads, STREAM_QUEUE_SIZE));
+    }
+    
+    /**
+     * Create the MarkovGraphsContainers from a stream of TransactionTraces where each
+     * processing thread can have at most queue_size txns waiting for it
+     * @param catalog_db
+     * @param txn_traces
+     * @param p_estimator
+     * @param containerClass
+     * @param num_threads
+     * @param queue_size
+     * @return
+     * @throws Exception
+     */
+    public static <T extends MarkovGraphsContainer> Map<Integer, MarkovGraphsContainer> createMarkovGraphsContainers(final Database catalog_db, final Iterator<TransactionTrace> txn_traces, final PartitionEstimator p_estimator, final Class<T> containerClass, int num_threads, int queue_size) throws Exception {
+        assert(num_threads > 0) : "Invalid number of threads " + num_threads;
+        assert(queue_size > 0) : "Invalid queue size " + queue_size;
         final String className = containerClass.getSimpleName();
         
         final Map<Integer, MarkovGraphsContainer> markovs_map = new ConcurrentHashMap<Integer, MarkovGraphsContainer>();
-        final List<Runnable> runnables = new ArrayList<Runnable>();
-        final Set<Procedure> procedures = workload.getProcedures(catalog_db);
         final Histogram<Procedure> proc_h = new Histogram<Procedure>();
-        final int num_transactions = workload.getTransactionCount();
-        final int marker = Math.max(1, (int)(num_transactions * 0.10));
-        final AtomicInteger finished_ctr = new AtomicInteger(0);
         final AtomicInteger txn_ctr = new AtomicInteger(0);
-        final int num_threads = ThreadUtil.getMaxGlobalThreads();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
         
         final Constructor<T> constructor = ClassUtil.getConstructor(containerClass, new Class<?>[]{Collection.class});
         final boolean is_global = containerClass.equals(GlobalMarkovGraphsContainer.class);
         
-        final List<Thread> processing_threads = new ArrayList<Thread>();
-        final LinkedBlockingDeque<Pair<Integer, TransactionTrace>> queues[] = (LinkedBlockingDeque<Pair<Integer, TransactionTrace>>[])new LinkedBlockingDeque<?>[num_threads];
+        final List<BlockingQueue<Pair<MarkovGraph, TransactionTrace>>> queues = new ArrayList<BlockingQueue<Pair<MarkovGraph, TransactionTrace>>>();
         for (int i = 0; i < num_threads; i++) {
-            queues[i] = new LinkedBlockingDeque<Pair<Integer, TransactionTrace>>();
+            queues.add(new ArrayBlockingQueue<Pair<MarkovGraph, TransactionTrace>>(queue_size));
         } // FOR
+        final List<Runnable> runnables = new ArrayList<Runnable>();
         
         // QUEUING THREAD
-        final AtomicBoolean queued_all = new AtomicBoolean(false);
         runnables.add(new Runnable() {
             @Override
             public void run() {
-                List<TransactionTrace> all_txns = new ArrayList<TransactionTrace>(workload.getTransactions());
-                Collections.shuffle(all_txns);
+                // MarkovGraph -> Processing Thread Offset
+                Map<MarkovGraph, Integer> owners = new IdentityHashMap<MarkovGraph, Integer>();
                 int ctr = 0;
-                for (TransactionTrace txn_trace : all_txns) {
-                    // Make sure it goes to the right base partition
-                    Integer partition = null;
-                    try {
-                        partition = p_estimator.getBasePartition(txn_trace);
-                    } catch (Exception ex) {
-                        throw new RuntimeException(ex);
-                    }
-                    assert(partition != null) : "Failed to get base partition for " + txn_trace + "\n" + txn_trace.debug(catalog_db);
-                    queues[ctr % num_threads].add(Pair.of(partition, txn_trace));
-                    if (++ctr % marker == 0) LOG.info(String.format("Queued %d/%d transactions", ctr, num_transactions));
-                } // FOR
-                queued_all.set(true);
-                
-                // Poke all our threads just in case they finished
-                for (Thread t : processing_threads) t.interrupt();
+                try {
+                    while (error.get() == null && txn_traces.hasNext()) {
+                        TransactionTrace txn_trace = txn_traces.next();
+                        Procedure catalog_proc = txn_trace.getCatalogItem(catalog_db);
+                        
+                        // Make sure it goes to the right base partition
+                        Integer partition = null;
+                        try {
+                            partition = p_estimator.getBasePartition(txn_trace);
+                        } catch (Exception ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        assert(partition != null) : "Failed to get base partition for " + txn_trace + "\n" + txn_trace.debug(catalog_db);
+                        int map_id = (is_global ? MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID : partition);
+                        
+                        // We're the only thread that creates containers and graphs, so we don't need to lock anything here
+                        MarkovGraphsContainer markovs = markovs_map.get(map_id);
+                        if (markovs == null) {
+                            try {
+                                markovs = constructor.newInstance(new Object[]{ null });
+                            } catch (Exception ex) {
+                                throw new RuntimeException("Failed to create new " + className, ex);
+                            }
+                            markovs.setHasher(p_estimator.getHasher());
+                            markovs_map.put(map_id, markovs);
+                        }
+                        MarkovGraph markov = markovs.getFromParams(txn_trace.getTransactionId(), map_id, txn_trace.getParams(), catalog_proc);
+                        Integer offset = owners.get(markov);
+                        if (offset == null) {
+                            offset = owners.size() % queues.size();
+                            owners.put(markov, offset);
+                        }
+                        proc_h.put(catalog_proc);
+                        
+                        // This will block if the thread has fallen too far behind 
+                        BlockingQueue<Pair<MarkovGraph, TransactionTrace>> queue = queues.get(offset);
+                        Pair<MarkovGraph, TransactionTrace> pair = Pair.of(markov, txn_trace);
+                        while (error.get() == null && queue.offer(pair, 100, TimeUnit.MILLISECONDS) == false) {
+                            // Keep trying...
+                        } // WHILE
+                        if (++ctr % 100000 == 0) LOG.info(String.format("Queued %d transactions", ctr));
+                    } // WHILE
+                } catch (Throwable ex) {
+                    LOG.fatal("Failed to queue transactions", ex);
+                    error.compareAndSet(null, ex);
+                } finally {
+                    // Let all of our threads know that there is nothing else coming. We may have to
+                    // wait here if a queue is full, but the threads always drain their queues
+                    // until they get the marker, even after an error.
+                    for (BlockingQueue<Pair<MarkovGraph, TransactionTrace>> queue : queues) {
+                        boolean added = false;
+                        while (added == false) {
+                            try {
+                                queue.put(STREAM_STOP);
+                                added = true;
+                            } catch (InterruptedException ex) {
+                                error.compareAndSet(null, ex);
+                            }
+                        } // WHILE
+                    } // FOR
+                }
+                LOG.info(String.format("Queued %d transactions for %d MarkovGraphs", ctr, owners.size()));
             }
         });
         
         // PROCESSING THREADS
         for (int i = 0; i < num_threads; i++) {
-            final int thread_id = i;
+            final BlockingQueue<Pair<MarkovGraph, TransactionTrace>> queue = queues.get(i);
             runnables.add(new Runnable() {
                 @Override
                 public void run() {
-                    Thread self = Thread.currentThread();
-                    processing_threads.add(self);
-
-                    MarkovGraphsContainer markovs = null;
-                    Pair<Integer, TransactionTrace> pair = null;
-                    
+                    Pair<MarkovGraph, TransactionTrace> pair = null;
                     while (true) {
                         try {
-                            if (queued_all.get()) {
-                                pair = queues[thread_id].poll();
-                            } else {
-                                pair = queues[thread_id].take();
-                                
-                                // Steal work
-                                if (pair == null) {
-                                    for (int i = 0; i < num_threads; i++) {
-                                        if (i == thread_id) continue;
-                                        pair = queues[i].take();
-                                        if (pair != null) break;
-                                    } // FOR
-                                }
-                            }
+                            pair = queue.take();
                         } catch (InterruptedException ex) {
+                            error.compareAndSet(null, ex);
                             continue;
                         }
-                        if (pair == null) break;
+                        if (pair == STREAM_STOP) break;
+                        
+                        // If somebody else failed, then we just need to drain our queue
+                        // so that the queuing thread doesn't get stuck 
+                        if (error.get() != null) continue;
                         
-                        int partition = pair.getFirst();
                         TransactionTrace txn_trace = pair.getSecond();
-                        Procedure catalog_proc = txn_trace.getCatalogItem(catalog_db);
-                        long txn_id = txn_trace.getTransactionId();
                         try {
-                            int map_id = (is_global ? MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID : partition);
-                            Object params[] = txn_trace.getParams();
-                            
-                            markovs = markovs_map.get(map_id);
-                            if (markovs == null) {
-                                synchronized (markovs_map) {
-                                    markovs = markovs_map.get(map_id);
-                                    if (markovs == null) {
-                                        markovs = constructor.newInstance(new Object[]{procedures});
-                                        markovs.setHasher(p_estimator.getHasher());
-                                        markovs_map.put(map_id, markovs);
-                                    }
-                                } // SYNCH
-                            }
-                            
-                            MarkovGraph markov = markovs.getFromParams(txn_id, map_id, params, catalog_proc);
-                            synchronized (markov) {
-                                markov.processTransaction(txn_trace, p_estimator);
-                            } // SYNCH
-                        } catch (Exception ex) {
+                            pair.getFirst().processTransaction(txn_trace, p_estimator);
+                        } catch (Throwable ex) {
                             LOG.fatal("Failed to process " + txn_trace, ex);
-                            throw new RuntimeException(ex);
+                            error.compareAndSet(null, ex);
+                            continue;
                         }
-                        proc_h.put(catalog_proc);
-                        
                         int global_ctr = txn_ctr.incrementAndGet();
-                        if (debug.get() && global_ctr % marker == 0) {
-                            LOG.debug(String.format("Processed %d/%d transactions",
-                                                    global_ctr, num_transactions));
+                        if (debug.get() && global_ctr % 10000 == 0) {
+                            LOG.debug(String.format("Processed %d transactions", global_ctr));
                         }
-                    } // FOR
-                    LOG.info(String.format("Processing thread finished creating %s [%d/%d]",
-                                            className, finished_ctr.incrementAndGet(), num_threads));
+                    } // WHILE
                 }
             });
         } // FOR
         LOG.info(String.format("Generating %s for %d partitions using %d threads",
                                className, CatalogUtil.getNumberOfPartitions(catalog_db), num_threads));
-        ThreadUtil.runGlobalPool(runnables);
+        ThreadUtil.runNewPool(runnables, runnables.size());
+        if (error.get() != null) {
+            throw new Exception("Failed to generate " + className, error.get());
+        }
     
+        LOG.info(String.format("Processed %d transactions", txn_ctr.get()));
         LOG.info("Procedure Histogram:\n" + proc_h);
         MarkovGraphContainersUtil.calculateProbabilities(markovs_map);
         
         return (markovs_map);
     }
-
+    
     /**
      * Construct all of the Markov graphs for a workload+catalog split by the txn's base partition
      * @param catalog_db
@@ -367,6 +423,11 @@ public abstract class MarkovGraphContainersUtil {
         LOG.info(String.format("Loading in MarkovGraphContainers from '%s' [procedures=%s, ids=%s]",
                                file.getName(), (procedures == null ? "*ALL*" : CatalogUtil.debug(procedures)), (ids == null ? "*ALL*" : ids)));
         
+        // Binary model files are memory-mapped and each graph is only loaded when it is first used
+        if (BinaryMarkovGraphsFile.isBinaryFile(file)) {
+            return (BinaryMarkovGraphsFile.load(catalog_db, file, procedures, ids));
+        }
+        
         try {
             // File Format: One PartitionId per line, each with its own MarkovGraphsContainer 
             BufferedReader in = FileUtil.getReader(file);
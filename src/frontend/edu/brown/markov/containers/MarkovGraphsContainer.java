@@ -62,6 +62,12 @@ public class MarkovGraphsContainer implements JSONSerializable {
      */
     private final Map<Integer, Map<Procedure, MarkovGraph>> markovs = Collections.synchronizedMap(new TreeMap<Integer, Map<Procedure, MarkovGraph>>());
     
+    /**
+     * MarkovGraphs from a binary model file that have not been deserialized yet
+     * <Id> -> <Procedure> -> <LazyMarkovGraph>
+     */
+    private final Map<Integer, Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph>> lazy_markovs = new ConcurrentHashMap<Integer, Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph>>();
+    
     /**
      * The procedures that we actually want to load. If this is null, then we will load everything
      */
@@ -115,11 +121,122 @@ public class MarkovGraphsContainer implements JSONSerializable {
     
     public void clear() {
         this.markovs.clear();
+        // Let go of the binary model files of the graphs that were never loaded
+        for (Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner : this.lazy_markovs.values()) {
+            for (BinaryMarkovGraphsFile.LazyMarkovGraph lazy : inner.values()) {
+                lazy.discard();
+            } // FOR
+        } // FOR
+        this.lazy_markovs.clear();
     }
     
     public MarkovGraph get(Integer id, Procedure catalog_proc) {
         Map<Procedure, MarkovGraph> inner = this.markovs.get(id);
-        return (inner != null ? inner.get(catalog_proc) : null);
+        MarkovGraph markov = (inner != null ? inner.get(catalog_proc) : null);
+        if (markov == null && this.lazy_markovs.isEmpty() == false) {
+            markov = this.loadLazy(id, catalog_proc);
+        }
+        return (markov);
+    }
+    
+    // -----------------------------------------------------------------
+    // LAZY LOADING METHODS
+    // -----------------------------------------------------------------
+    
+    /**
+     * Register a MarkovGraph from a binary model file that will only be
+     * deserialized the first time that somebody asks for it
+     * @param id
+     * @param lazy
+     * @return false if the graph's Procedure is not one that we want to load
+     */
+    boolean putLazy(Integer id, BinaryMarkovGraphsFile.LazyMarkovGraph lazy) {
+        Procedure catalog_proc = lazy.getProcedure();
+        if (this.load_procedures != null && this.load_procedures.contains(catalog_proc) == false) {
+            if (debug) LOG.debug(String.format("Skipping MarkovGraph [id=%d, proc=%s]", id, catalog_proc.getName()));
+            return (false);
+        }
+        Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner = this.lazy_markovs.get(id);
+        if (inner == null) {
+            inner = new ConcurrentHashMap<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph>();
+            this.lazy_markovs.put(id, inner);
+        }
+        inner.put(catalog_proc, lazy);
+        
+        // Make sure that the id shows up in keySet() and size()
+        if (this.markovs.containsKey(id) == false) {
+            this.markovs.put(id, new ConcurrentHashMap<Procedure, MarkovGraph>());
+        }
+        return (true);
+    }
+    
+    /**
+     * Deserialize the lazy MarkovGraph for the given id/procedure pair if there is one
+     * @param id
+     * @param catalog_proc
+     * @return
+     */
+    private MarkovGraph loadLazy(Integer id, Procedure catalog_proc) {
+        Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner = this.lazy_markovs.get(id);
+        BinaryMarkovGraphsFile.LazyMarkovGraph lazy = (inner != null ? inner.get(catalog_proc) : null);
+        MarkovGraph markov = null;
+        if (lazy != null) {
+            synchronized (lazy) {
+                Map<Procedure, MarkovGraph> loaded = this.markovs.get(id);
+                markov = (loaded != null ? loaded.get(catalog_proc) : null);
+                if (markov == null && lazy.isReleased() == false) {
+                    if (debug) LOG.debug(String.format("Loading MarkovGraph [id=%d, proc=%s]", id, catalog_proc.getName()));
+                    markov = lazy.load();
+                    markov.buildCache();
+                    markov.compile();
+                    this.put(id, markov);
+                }
+                inner.remove(catalog_proc);
+            } // SYNCH
+            if (inner.isEmpty()) this.lazy_markovs.remove(id);
+        } else {
+            // Another thread may have loaded it after we first checked
+            Map<Procedure, MarkovGraph> loaded = this.markovs.get(id);
+            if (loaded != null) markov = loaded.get(catalog_proc);
+        }
+        return (markov);
+    }
+    
+    /**
+     * Deserialize all of the lazy MarkovGraphs that have not been loaded yet
+     */
+    protected void loadAll() {
+        for (Integer id : this.lazy_markovs.keySet()) {
+            Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner = this.lazy_markovs.get(id);
+            if (inner == null) continue;
+            for (Procedure catalog_proc : inner.keySet()) {
+                this.loadLazy(id, catalog_proc);
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * Returns the number of MarkovGraphs that have not been deserialized yet
+     * @return
+     */
+    public int getLazyCount() {
+        int ctr = 0;
+        for (Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner : this.lazy_markovs.values()) {
+            ctr += inner.size();
+        } // FOR
+        return (ctr);
+    }
+    
+    /**
+     * Returns the MarkovGraphs that have not been deserialized yet
+     * @return
+     */
+    Collection<BinaryMarkovGraphsFile.LazyMarkovGraph> getLazy() {
+        List<BinaryMarkovGraphsFile.LazyMarkovGraph> ret = new ArrayList<BinaryMarkovGraphsFile.LazyMarkovGraph>();
+        for (Map<Procedure, BinaryMarkovGraphsFile.LazyMarkovGraph> inner : this.lazy_markovs.values()) {
+            ret.addAll(inner.values());
+        } // FOR
+        return (ret);
     }
     
     /**
@@ -196,6 +313,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * Invoke MarkovGraph.calculateProbabilities() for all of the graphs stored within this container 
      */
     public void calculateProbabilities() {
+        this.loadAll();
         for (Map<Procedure, MarkovGraph> inner : this.markovs.values()) {
             for (Entry<Procedure, MarkovGraph> e : inner.entrySet()) {
                 MarkovGraph m = e.getValue();
@@ -217,10 +335,12 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     protected Map<Procedure, MarkovGraph> getAll(Integer id) {
+        this.loadAll();
         return (this.markovs.get(id));
     }
     
     public Map<Integer, MarkovGraph> getAll(Procedure catalog_proc) {
+        this.loadAll();
         Map<Integer, MarkovGraph> ret = new HashMap<Integer, MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             MarkovGraph m = this.markovs.get(id).get(catalog_proc);
@@ -234,6 +354,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
      * @return
      */
     public Set<MarkovGraph> getAll() {
+        this.loadAll();
         Set<MarkovGraph> ret = new HashSet<MarkovGraph>();
         for (Integer id : this.markovs.keySet()) {
             Map<Procedure, MarkovGraph> m = this.markovs.get(id);
@@ -242,7 +363,23 @@ public class MarkovGraphsContainer implements JSONSerializable {
         return (ret);
     }
     
+    /**
+     * Get all the MarkovGraphs contained within this object that have already been
+     * loaded. Unlike getAll(), this will not deserialize any lazy MarkovGraphs
+     * @return
+     */
+    public Collection<MarkovGraph> getLoaded() {
+        List<MarkovGraph> ret = new ArrayList<MarkovGraph>();
+        synchronized (this.markovs) {
+            for (Map<Procedure, MarkovGraph> m : this.markovs.values()) {
+                ret.addAll(m.values());
+            } // FOR
+        } // SYNCH
+        return (ret);
+    }
+
     public void copy(MarkovGraphsContainer other) {
+        other.loadAll();
         this.markovs.putAll(other.markovs);
     }
     
@@ -251,6 +388,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
     }
     
     public Set<Entry<Integer, Map<Procedure, MarkovGraph>>> entrySet() {
+        this.loadAll();
         return this.markovs.entrySet();
     }
     
@@ -261,6 +399,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
     @Override
     @SuppressWarnings("unchecked")
     public String toString() {
+        this.loadAll();
         int num_ids = this.markovs.size();
         Map<String, Object> maps[] = (Map<String, Object>[])new Map<?, ?>[num_ids+1];
         int i = 0;
@@ -306,6 +445,8 @@ public class MarkovGraphsContainer implements JSONSerializable {
 
     @Override
     public void toJSON(JSONStringer stringer) throws JSONException {
+        this.loadAll();
+        
         // CLASSNAME
         stringer.key(Members.CLASSNAME.name()).value(this.getClass().getCanonicalName());
         
@@ -363,6 +504,7 @@ public class MarkovGraphsContainer implements JSONSerializable {
                             markov.fromJSON(json_graph, catalog_db);
                             MarkovGraphsContainer.this.put(id, markov);
                             markov.buildCache();
+                            markov.compile();
                         } catch (Throwable ex) {
                             throw new RuntimeException("Failed to load MarkovGraph " + id + " for " + catalog_proc.getName(), ex);
                         }
@@ -96,6 +96,18 @@ public class LimitOrderByPushdownOptimization extends AbstractOptimization {
         if (debug.get())
             LOG.debug("PLANOPT - Added " + limit_node + "+" + orderby_node + " after " + scan_node);
 
+        // Every partition now sends back its tuples already sorted, so if the
+        // ORDER BY on the coordinator sits right on top of the ReceivePlanNode,
+        // then we can tell the EE to merge the incoming dependencies instead
+        // of sorting all of them again
+        AbstractPlanNode parent_node = send_node.getParent(0);
+        if (parent_node instanceof ReceivePlanNode && parent_node.getParentPlanNodeCount() == 1 &&
+            parent_node.getParent(0) == CollectionUtil.first(orderby_nodes)) {
+            ((ReceivePlanNode) parent_node).setMergeReceive(true);
+            if (debug.get())
+                LOG.debug("PLANOPT - Enabled sorted merge for " + parent_node);
+        }
+
         return (Pair.of(true, root));
     }
 
@@ -0,0 +1,246 @@
+package edu.brown.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread-safe histogram for small non-negative integer keys that can be
+ * updated from the hot path without taking a lock. Every key has one counter
+ * per stripe and each thread always updates the stripe that its id maps to, so
+ * concurrent writers almost never touch the same cache line. Reads have to sum
+ * up the stripes, which makes them more expensive than writes. Use snapshot()
+ * to get a regular Histogram for printing or serialization. The histogram
+ * grows if it is given a key that is larger than its capacity.
+ */
+public class ConcurrentIntHistogram {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Extra cells between stripes so that two stripes never share a cache line
+     */
+    private static final int PADDING = 8;
+    private static final int STRIDE = SEGMENT_SIZE + PADDING;
+
+    private volatile int capacity;
+    private final int stripe_mask;
+
+    /**
+     * Each segment holds the counters for SEGMENT_SIZE consecutive keys.
+     * Segments are only allocated the first time that one of their keys is
+     * updated. Segments are only ever added to this array (or a larger copy
+     * of it) while holding the histogram's lock.
+     */
+    private volatile AtomicReferenceArray<AtomicLongArray> segments;
+
+    /**
+     * The total number of samples per stripe
+     */
+    private final AtomicLongArray totals;
+
+    /**
+     * Constructor
+     * @param capacity the largest expected key + 1
+     */
+    public ConcurrentIntHistogram(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param capacity the largest expected key + 1
+     * @param num_stripes the number of threads that should be able to update
+     *        the histogram without contention. Rounded up to a power of two.
+     */
+    public ConcurrentIntHistogram(int capacity, int num_stripes) {
+        assert (capacity > 0) : "Invalid capacity " + capacity;
+        assert (num_stripes > 0) : "Invalid number of stripes " + num_stripes;
+        int stripes = Integer.highestOneBit(num_stripes);
+        if (stripes < num_stripes) stripes <<= 1;
+
+        this.capacity = capacity;
+        this.stripe_mask = stripes - 1;
+        this.segments = new AtomicReferenceArray<AtomicLongArray>(((capacity - 1) >> SEGMENT_BITS) + 1);
+        this.totals = new AtomicLongArray(stripes * PADDING);
+    }
+
+    public int getCapacity() {
+        return (this.capacity);
+    }
+
+    public int getStripeCount() {
+        return (this.stripe_mask + 1);
+    }
+
+    private int getStripe() {
+        long id = Thread.currentThread().getId();
+        return ((int) (id ^ (id >>> 16)) & this.stripe_mask);
+    }
+
+    private AtomicLongArray getSegment(int idx) {
+        AtomicReferenceArray<AtomicLongArray> segments = this.segments;
+        AtomicLongArray segment = (idx < segments.length() ? segments.get(idx) : null);
+        if (segment == null) {
+            segment = this.createSegment(idx);
+        }
+        return (segment);
+    }
+
+    /**
+     * Allocate the segment at the given offset, growing the histogram first
+     * if the offset is past the end of it
+     */
+    private synchronized AtomicLongArray createSegment(int idx) {
+        AtomicReferenceArray<AtomicLongArray> segments = this.segments;
+        if (idx >= segments.length()) {
+            AtomicReferenceArray<AtomicLongArray> new_segments =
+                new AtomicReferenceArray<AtomicLongArray>(Math.max(idx + 1, segments.length() * 2));
+            for (int i = 0, cnt = segments.length(); i < cnt; i++) {
+                new_segments.set(i, segments.get(i));
+            } // FOR
+            this.segments = segments = new_segments;
+            this.capacity = new_segments.length() << SEGMENT_BITS;
+        }
+        AtomicLongArray segment = segments.get(idx);
+        if (segment == null) {
+            segment = new AtomicLongArray(this.getStripeCount() * STRIDE);
+            segments.set(idx, segment);
+        }
+        return (segment);
+    }
+
+    // ----------------------------------------------------------------------------
+    // UPDATE METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Increment the number of occurrences of the given key by one
+     * @param value
+     */
+    public void put(int value) {
+        this.put(value, 1);
+    }
+
+    /**
+     * Increment the number of occurrences of the given key by the given amount
+     * @param value
+     * @param delta
+     */
+    public void put(int value, long delta) {
+        if (value < 0) {
+            throw new IllegalArgumentException(String.format("Invalid key %d [capacity=%d]", value, this.capacity));
+        }
+        int stripe = this.getStripe();
+        AtomicLongArray segment = this.getSegment(value >> SEGMENT_BITS);
+        segment.addAndGet(stripe * STRIDE + (value & SEGMENT_MASK), delta);
+        this.totals.addAndGet(stripe * PADDING, delta);
+    }
+
+    /**
+     * Decrement the number of occurrences of the given key by one
+     * @param value
+     */
+    public void remove(int value) {
+        this.put(value, -1);
+    }
+
+    /**
+     * Decrement the number of occurrences of the given key by the given amount
+     * @param value
+     * @param delta
+     */
+    public void remove(int value, long delta) {
+        this.put(value, -delta);
+    }
+
+    /**
+     * Reset all of the counters back to zero. Updates that are made at the
+     * same time as this may or may not be lost.
+     */
+    public void clear() {
+        AtomicReferenceArray<AtomicLongArray> segments = this.segments;
+        for (int i = 0, cnt = segments.length(); i < cnt; i++) {
+            AtomicLongArray segment = segments.get(i);
+            if (segment == null) continue;
+            for (int j = 0, len = segment.length(); j < len; j++) {
+                segment.set(j, 0l);
+            } // FOR
+        } // FOR
+        for (int i = 0, cnt = this.totals.length(); i < cnt; i++) {
+            this.totals.set(i, 0l);
+        } // FOR
+    }
+
+    // ----------------------------------------------------------------------------
+    // READ METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns the number of occurrences of the given key
+     * @param value
+     * @return
+     */
+    public long get(int value) {
+        if (value < 0) return (0l);
+        AtomicReferenceArray<AtomicLongArray> segments = this.segments;
+        int idx = value >> SEGMENT_BITS;
+        if (idx >= segments.length()) return (0l);
+        AtomicLongArray segment = segments.get(idx);
+        if (segment == null) return (0l);
+        long ctr = 0;
+        for (int i = value & SEGMENT_MASK, len = segment.length(); i < len; i += STRIDE) {
+            ctr += segment.get(i);
+        } // FOR
+        return (ctr);
+    }
+
+    /**
+     * Returns the total number of samples across all keys
+     * @return
+     */
+    public long getSampleCount() {
+        long ctr = 0;
+        for (int i = 0, cnt = this.totals.length(); i < cnt; i += PADDING) {
+            ctr += this.totals.get(i);
+        } // FOR
+        return (ctr);
+    }
+
+    public boolean isEmpty() {
+        return (this.getSampleCount() == 0);
+    }
+
+    /**
+     * Copy the current non-zero counts into a new Histogram. The snapshot is
+     * not atomic if other threads are updating the counters at the same time.
+     * @return
+     */
+    public Histogram<Integer> snapshot() {
+        return (this.snapshot(new Histogram<Integer>()));
+    }
+
+    /**
+     * Add the current non-zero counts into the given Histogram
+     * @param h
+     * @return the given Histogram
+     */
+    public Histogram<Integer> snapshot(Histogram<Integer> h) {
+        AtomicReferenceArray<AtomicLongArray> segments = this.segments;
+        for (int i = 0, cnt = segments.length(); i < cnt; i++) {
+            if (segments.get(i) == null) continue;
+            int base = i << SEGMENT_BITS;
+            for (int j = 0; j < SEGMENT_SIZE; j++) {
+                long ctr = this.get(base + j);
+                if (ctr != 0) h.put(base + j, ctr);
+            } // FOR
+        } // FOR
+        return (h);
+    }
+
+    @Override
+    public String toString() {
+        return (this.snapshot().toString());
+    }
+}
@@ -106,6 +106,7 @@ public class ArgumentsParser {
     public static final String PARAM_WORKLOAD_RANDOM_PARTITIONS = PARAM_WORKLOAD + ".randompartitions";
     public static final String PARAM_WORKLOAD_BASE_PARTITIONS = PARAM_WORKLOAD + ".basepartitions";
     public static final String PARAM_WORKLOAD_OUTPUT = PARAM_WORKLOAD + ".output";
+    public static final String PARAM_WORKLOAD_STREAM = PARAM_WORKLOAD + ".stream";
 
     public static final String PARAM_STATS = "stats";
     public static final String PARAM_STATS_OUTPUT = PARAM_STATS + ".output";
@@ -664,11 +665,17 @@ public class ArgumentsParser {
 
             if (this.workload_filter != null && debug)
                 LOG.debug("Workload Filters: " + this.workload_filter.toString());
-            this.workload = new Workload(this.catalog);
-            this.workload.load(path, this.catalog_db, this.workload_filter);
+            // Binary traces can be streamed through a BinaryTraceReader by whoever
+            // needs them, so we don't have to hold the whole thing in memory
+            if (this.getBooleanParam(PARAM_WORKLOAD_STREAM, false) && BinaryTraceReader.isBinaryTrace(new File(path))) {
+                LOG.info("Not loading binary workload trace '" + path + "' because it will be streamed");
+            } else {
+                this.workload = new Workload(this.catalog);
+                this.workload.load(path, this.catalog_db, this.workload_filter);
+                if (this.workload_filter != null)
+                    this.workload_filter.reset();
+            }
             this.workload_path = new File(path).getAbsolutePath();
-            if (this.workload_filter != null)
-                this.workload_filter.reset();
         }
 
         // Workload Statistics
@@ -0,0 +1,250 @@
+package edu.brown.utils;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact Set of partition ids that is backed by a bitmap instead of boxed
+ * Integers in a HashSet. Iteration is always in ascending partition order.
+ * This is not thread-safe.
+ */
+public class PartitionSet extends AbstractSet<Integer> implements Cloneable {
+
+    private static final long EMPTY[] = new long[0];
+
+    private long words[];
+    private int size = 0;
+
+    public PartitionSet() {
+        this.words = EMPTY;
+    }
+
+    /**
+     * Constructor
+     * @param num_partitions the expected largest partition id + 1
+     */
+    public PartitionSet(int num_partitions) {
+        this.words = (num_partitions > 0 ? new long[((num_partitions - 1) >> 6) + 1] : EMPTY);
+    }
+
+    public PartitionSet(Collection<Integer> partitions) {
+        this();
+        this.addAll(partitions);
+    }
+
+    // ----------------------------------------------------------------------------
+    // PRIMITIVE METHODS
+    // ----------------------------------------------------------------------------
+
+    public boolean add(int partition) {
+        assert (partition >= 0) : "Invalid partition id " + partition;
+        int idx = partition >> 6;
+        if (idx >= this.words.length) {
+            this.words = Arrays.copyOf(this.words, Math.max(idx + 1, this.words.length * 2));
+        }
+        long mask = 1l << partition;
+        if ((this.words[idx] & mask) != 0)
+            return (false);
+        this.words[idx] |= mask;
+        this.size++;
+        return (true);
+    }
+
+    public boolean remove(int partition) {
+        int idx = partition >> 6;
+        if (partition < 0 || idx >= this.words.length)
+            return (false);
+        long mask = 1l << partition;
+        if ((this.words[idx] & mask) == 0)
+            return (false);
+        this.words[idx] &= ~mask;
+        this.size--;
+        return (true);
+    }
+
+    public boolean contains(int partition) {
+        int idx = partition >> 6;
+        return (partition >= 0 && idx < this.words.length && (this.words[idx] & (1l << partition)) != 0);
+    }
+
+    /**
+     * Returns the first partition id that is greater than or equal to the
+     * given partition id, or -1 if there isn't one
+     * @param partition
+     * @return
+     */
+    public int next(int partition) {
+        int idx = partition >> 6;
+        if (idx >= this.words.length)
+            return (-1);
+        long word = this.words[idx] & (-1l << partition);
+        while (true) {
+            if (word != 0)
+                return ((idx << 6) + Long.numberOfTrailingZeros(word));
+            if (++idx == this.words.length)
+                return (-1);
+            word = this.words[idx];
+        } // WHILE
+    }
+
+    /**
+     * Returns the smallest partition id in this set, or -1 if it is empty
+     * @return
+     */
+    public int first() {
+        return (this.size == 0 ? -1 : this.next(0));
+    }
+
+    /**
+     * Returns true if this set and the given set have at least one partition
+     * in common
+     * @param other
+     * @return
+     */
+    public boolean intersects(PartitionSet other) {
+        for (int i = 0, cnt = Math.min(this.words.length, other.words.length); i < cnt; i++) {
+            if ((this.words[i] & other.words[i]) != 0)
+                return (true);
+        } // FOR
+        return (false);
+    }
+
+    private void updateSize() {
+        int ctr = 0;
+        for (long word : this.words) {
+            ctr += Long.bitCount(word);
+        } // FOR
+        this.size = ctr;
+    }
+
+    // ----------------------------------------------------------------------------
+    // SET METHODS
+    // ----------------------------------------------------------------------------
+
+    @Override
+    public boolean add(Integer partition) {
+        return (this.add(partition.intValue()));
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return (o instanceof Integer && this.remove(((Integer) o).intValue()));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Integer && this.contains(((Integer) o).intValue()));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Integer> c) {
+        if ((c instanceof PartitionSet) == false)
+            return (super.addAll(c));
+        PartitionSet other = (PartitionSet) c;
+        if (other.words.length > this.words.length) {
+            this.words = Arrays.copyOf(this.words, other.words.length);
+        }
+        int orig_size = this.size;
+        for (int i = 0; i < other.words.length; i++) {
+            this.words[i] |= other.words[i];
+        } // FOR
+        this.updateSize();
+        return (orig_size != this.size);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if ((c instanceof PartitionSet) == false)
+            return (super.removeAll(c));
+        PartitionSet other = (PartitionSet) c;
+        int orig_size = this.size;
+        for (int i = 0, cnt = Math.min(this.words.length, other.words.length); i < cnt; i++) {
+            this.words[i] &= ~other.words[i];
+        } // FOR
+        this.updateSize();
+        return (orig_size != this.size);
+    }
+
+    @Override
+    public int size() {
+        return (this.size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return (this.size == 0);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.words, 0l);
+        this.size = 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = PartitionSet.this.first();
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return (this.next != -1);
+            }
+
+            @Override
+            public Integer next() {
+                if (this.next == -1)
+                    throw new NoSuchElementException();
+                this.last = this.next;
+                this.next = PartitionSet.this.next(this.last + 1);
+                return (this.last);
+            }
+
+            @Override
+            public void remove() {
+                if (this.last == -1)
+                    throw new IllegalStateException();
+                PartitionSet.this.remove(this.last);
+                this.last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof PartitionSet) {
+            PartitionSet other = (PartitionSet) o;
+            if (this.size != other.size)
+                return (false);
+            for (int i = 0, cnt = Math.min(this.words.length, other.words.length); i < cnt; i++) {
+                if (this.words[i] != other.words[i])
+                    return (false);
+            } // FOR
+            return (true);
+        }
+        return (super.equals(o));
+    }
+
+    @Override
+    public int hashCode() {
+        // Has to match AbstractSet.hashCode() so that we can be compared
+        // with other types of Sets
+        return (super.hashCode());
+    }
+
+    @Override
+    public PartitionSet clone() {
+        PartitionSet clone = null;
+        try {
+            clone = (PartitionSet) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new RuntimeException(ex);
+        }
+        clone.words = (this.words.length == 0 ? EMPTY : this.words.clone());
+        return (clone);
+    }
+}
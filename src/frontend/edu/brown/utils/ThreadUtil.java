@@ -196,15 +196,35 @@ public abstract class ThreadUtil {
         OVERRIDE_NUM_THREADS = max_threads;
     }
 
+    /**
+     * Returns true if the current thread belongs to the global thread pool
+     * 
+     * @return
+     */
+    public static boolean isGlobalPoolThread() {
+        return (Thread.currentThread() instanceof GlobalPoolThread);
+    }
+
     /**
      * Execute the given collection of Runnables in the global thread pool. The
-     * calling thread will block until all of the threads finish
+     * calling thread will block until all of the threads finish. If the caller
+     * is itself running in the global pool, then the Runnables are executed
+     * one after another on the caller's thread, since otherwise we could
+     * deadlock waiting for a pool thread that will never become free.
      * 
      * @param <R>
      * @param runnables
      */
     public static <R extends Runnable> void runGlobalPool(final Collection<R> runnables) {
         final boolean d = LOG.isDebugEnabled();
+        if (isGlobalPoolThread()) {
+            if (d)
+                LOG.debug(String.format("Executing %d threads inline from global pool thread", runnables.size()));
+            for (R r : runnables) {
+                r.run();
+            } // FOR
+            return;
+        }
 
         // Initialize the thread pool the first time that we run
         synchronized (ThreadUtil.lock) {
@@ -212,7 +232,7 @@ public abstract class ThreadUtil {
                 int max_threads = ThreadUtil.getMaxGlobalThreads();
                 if (d)
                     LOG.debug("Creating new fixed thread pool [num_threads=" + max_threads + "]");
-                ThreadUtil.pool = Executors.newFixedThreadPool(max_threads, factory);
+                ThreadUtil.pool = Executors.newFixedThreadPool(max_threads, global_factory);
             }
         } // SYNCHRONIZED
 
@@ -290,6 +310,21 @@ public abstract class ThreadUtil {
         }
     };
 
+    private static final ThreadFactory global_factory = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new GlobalPoolThread(r);
+            t.setDaemon(true);
+            return (t);
+        }
+    };
+
+    private static class GlobalPoolThread extends Thread {
+        public GlobalPoolThread(Runnable r) {
+            super(r);
+        }
+    }
+
     private static class LatchRunnable implements Runnable {
         private final Runnable r;
         private final CountDownLatch latch;
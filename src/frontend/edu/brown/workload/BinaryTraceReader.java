@@ -0,0 +1,455 @@
+/***************************************************************************
+ *   Copyright (C) 2012 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.workload;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.types.TimestampType;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.catalog.CatalogKey;
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.Filter.FilterResult;
+
+/**
+ * Streams TransactionTraces out of a binary workload trace file that was written by
+ * a BinaryTraceWriter. Only one block is decoded at a time, so this can walk through
+ * traces that are much larger than the heap. If a Filter is given, then only the txns
+ * that it allows are returned, and the iterator stops as soon as the Filter halts.
+ * @see BinaryTraceWriter
+ */
+public class BinaryTraceReader implements Iterator<TransactionTrace>, Iterable<TransactionTrace> {
+    private static final Logger LOG = Logger.getLogger(BinaryTraceReader.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    private final DataInputStream in;
+    private final Filter filter;
+    private final Inflater inflater = new Inflater();
+
+    /** ProcedureId -> Procedure */
+    private final Map<Integer, Procedure> procedures = new HashMap<Integer, Procedure>();
+    /** ProcedureId -> StatementId -> Statement */
+    private final Map<Integer, Map<Integer, Statement>> statements = new HashMap<Integer, Map<Integer, Statement>>();
+    /** Statement -> CatalogKey, so that we don't have to build it for every query */
+    private final Map<Statement, String> statement_keys = new HashMap<Statement, String>();
+
+    private byte stored[] = new byte[0];
+    private byte raw[] = new byte[0];
+    private ByteBuffer block = null;
+    private int block_txns = 0;
+    private long last_txn_id = 0;
+    private long last_start = 0;
+
+    private TransactionTrace peek = null;
+    private boolean halted = false;
+    private long txn_ctr = 0;
+    private long skip_ctr = 0;
+
+    /**
+     * Constructor
+     * @param input the stream to read the trace from. It is closed once it is exhausted
+     * @param catalog_db the catalog that the trace was written against
+     * @param filter optional
+     * @throws IOException if the stream is not a binary trace or if its procedures do not match the catalog
+     */
+    public BinaryTraceReader(InputStream input, Database catalog_db, Filter filter) throws IOException {
+        this.filter = filter;
+        this.in = new DataInputStream(new BufferedInputStream(input, 65536));
+
+        int magic = this.in.readInt();
+        if (magic != BinaryTraceWriter.MAGIC) {
+            this.in.close();
+            throw new IOException(String.format("Invalid binary workload trace [magic=%08x]", magic));
+        }
+        byte version = this.in.readByte();
+        if (version != BinaryTraceWriter.VERSION) {
+            this.in.close();
+            throw new IOException("Unsupported binary workload trace version " + version);
+        }
+
+        // Make sure that the catalog ids mean the same thing as when the trace was written
+        Map<Integer, Procedure> by_id = new HashMap<Integer, Procedure>();
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            by_id.put(catalog_proc.getId(), catalog_proc);
+        } // FOR
+        int num_procs = this.in.readInt();
+        for (int i = 0; i < num_procs; i++) {
+            int proc_id = this.in.readInt();
+            String proc_name = this.in.readUTF();
+            Procedure catalog_proc = by_id.get(proc_id);
+            if (catalog_proc == null || catalog_proc.getName().equals(proc_name) == false) {
+                this.in.close();
+                throw new IOException(String.format("Procedure #%d '%s' in binary workload trace does not match the catalog",
+                                                    proc_id, proc_name));
+            }
+            Map<Integer, Statement> stmts = new HashMap<Integer, Statement>();
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                stmts.put(catalog_stmt.getId(), catalog_stmt);
+                this.statement_keys.put(catalog_stmt, CatalogKey.createKey(catalog_stmt));
+            } // FOR
+            this.procedures.put(proc_id, catalog_proc);
+            this.statements.put(proc_id, stmts);
+        } // FOR
+    }
+
+    public BinaryTraceReader(File input, Database catalog_db, Filter filter) throws IOException {
+        this(new FileInputStream(input), catalog_db, filter);
+    }
+
+    /**
+     * Returns true if the given file starts with the magic number of a binary workload trace
+     * @param file
+     * @return
+     */
+    public static boolean isBinaryTrace(File file) {
+        if (file.isFile() == false || file.length() < 4) return (false);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return (in.readInt() == BinaryTraceWriter.MAGIC);
+        } catch (IOException ex) {
+            return (false);
+        } finally {
+            if (in != null) try { in.close(); } catch (IOException ex) { }
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // ITERATOR
+    // ----------------------------------------------------------------------------
+
+    @Override
+    public Iterator<TransactionTrace> iterator() {
+        return (this);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.peek != null) return (true);
+        try {
+            while (this.halted == false) {
+                TransactionTrace txn_trace = this.readTransaction();
+                if (txn_trace == null) break;
+                if (this.filter != null) {
+                    FilterResult result = this.filter.apply(txn_trace);
+                    if (result == FilterResult.HALT) {
+                        if (debug.get()) LOG.debug("Got HALT response from filter after " + this.txn_ctr + " txns");
+                        this.close();
+                        break;
+                    } else if (result == FilterResult.SKIP) {
+                        this.skip_ctr++;
+                        continue;
+                    }
+                }
+                this.peek = txn_trace;
+                break;
+            } // WHILE
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read binary workload trace", ex);
+        }
+        return (this.peek != null);
+    }
+
+    @Override
+    public TransactionTrace next() {
+        if (this.hasNext() == false) throw new NoSuchElementException();
+        TransactionTrace ret = this.peek;
+        this.peek = null;
+        this.txn_ctr++;
+        return (ret);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading and release the underlying stream
+     */
+    public void close() {
+        if (this.halted) return;
+        this.halted = true;
+        this.block = null;
+        this.inflater.end();
+        try {
+            this.in.close();
+        } catch (IOException ex) {
+            // IGNORE
+        }
+    }
+
+    /** The number of txns that have been returned by next() */
+    public long getTransactionCount() {
+        return (this.txn_ctr);
+    }
+
+    /** The number of txns that the Filter skipped */
+    public long getSkippedCount() {
+        return (this.skip_ctr);
+    }
+
+    // ----------------------------------------------------------------------------
+    // DECODING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Load the next block from the stream. Returns false if there are no more blocks.
+     */
+    private boolean readBlock() throws IOException {
+        byte encoding;
+        try {
+            encoding = this.in.readByte();
+        } catch (EOFException ex) {
+            return (false);
+        }
+        int num_txns = this.in.readInt();
+        int raw_length = this.in.readInt();
+        int stored_length = this.in.readInt();
+        if (this.stored.length < stored_length) this.stored = new byte[stored_length];
+        this.in.readFully(this.stored, 0, stored_length);
+
+        if (encoding == BinaryTraceWriter.BLOCK_DEFLATE) {
+            if (this.raw.length < raw_length) this.raw = new byte[raw_length];
+            this.inflater.reset();
+            this.inflater.setInput(this.stored, 0, stored_length);
+            try {
+                int length = this.inflater.inflate(this.raw, 0, raw_length);
+                if (length != raw_length) {
+                    throw new IOException(String.format("Expected %d bytes in block but inflated %d", raw_length, length));
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Corrupt block in binary workload trace", ex);
+            }
+            this.block = ByteBuffer.wrap(this.raw, 0, raw_length);
+        } else if (encoding == BinaryTraceWriter.BLOCK_RAW) {
+            this.block = ByteBuffer.wrap(this.stored, 0, stored_length);
+        } else {
+            throw new IOException("Unknown block encoding " + encoding);
+        }
+        if (trace.get())
+            LOG.trace(String.format("Read block [txns=%d, raw=%d, stored=%d]", num_txns, raw_length, stored_length));
+        this.block_txns = num_txns;
+        this.last_txn_id = 0;
+        this.last_start = 0;
+        return (true);
+    }
+
+    /**
+     * Decode the next txn, reading in a new block if the current one is used up.
+     * Returns null if there are no more txns.
+     */
+    private TransactionTrace readTransaction() throws IOException {
+        while (this.block_txns == 0) {
+            if (this.readBlock() == false) {
+                this.close();
+                return (null);
+            }
+        } // WHILE
+        ByteBuffer b = this.block;
+        this.block_txns--;
+
+        int proc_id = (int)readVarLong(b);
+        Procedure catalog_proc = this.procedures.get(proc_id);
+        if (catalog_proc == null) {
+            throw new IOException("Unexpected Procedure #" + proc_id + " in binary workload trace");
+        }
+        Map<Integer, Statement> stmts = this.statements.get(proc_id);
+        long txn_id = this.last_txn_id + readSignedVarLong(b);
+        long start = this.last_start + readSignedVarLong(b);
+        this.last_txn_id = txn_id;
+        this.last_start = start;
+
+        TransactionTrace txn_trace = new TransactionTrace(txn_id, catalog_proc, null);
+        this.readElement(b, txn_trace, start);
+        txn_trace.params = this.readParams(b, catalog_proc.getParameters(), "type");
+
+        int num_queries = (int)readVarLong(b);
+        for (int i = 0; i < num_queries; i++) {
+            int stmt_id = (int)readVarLong(b);
+            Statement catalog_stmt = stmts.get(stmt_id);
+            if (catalog_stmt == null) {
+                throw new IOException(String.format("Unexpected Statement #%d for %s in binary workload trace",
+                                                    stmt_id, catalog_proc.getName()));
+            }
+            int batch_id = (int)readVarLong(b);
+            long query_start = start + readSignedVarLong(b);
+            QueryTrace query_trace = new QueryTrace(this.statement_keys.get(catalog_stmt), null, batch_id);
+            this.readElement(b, query_trace, query_start);
+            query_trace.params = this.readParams(b, catalog_stmt.getParameters(), "javatype");
+            txn_trace.addQuery(query_trace);
+        } // FOR
+        return (txn_trace);
+    }
+
+    private void readElement(ByteBuffer b, AbstractTraceElement<?> element, long start) throws IOException {
+        int flags = b.get();
+        element.start_timestamp = start;
+        element.stop_timestamp = null;
+        element.aborted = (flags & BinaryTraceWriter.FLAG_ABORTED) != 0;
+        if ((flags & BinaryTraceWriter.FLAG_STOPPED) != 0) {
+            element.stop_timestamp = start + readSignedVarLong(b);
+        }
+        if ((flags & BinaryTraceWriter.FLAG_WEIGHT) != 0) {
+            element.weight = (short)readSignedVarLong(b);
+        }
+        if ((flags & BinaryTraceWriter.FLAG_OUTPUT) != 0) {
+            int num_tables = (int)readVarLong(b);
+            element.output = new Object[num_tables][][];
+            element.output_types = new VoltType[num_tables][];
+            for (int i = 0; i < num_tables; i++) {
+                int num_cols = (int)readVarLong(b);
+                VoltType types[] = new VoltType[num_cols];
+                for (int k = 0; k < num_cols; k++) {
+                    types[k] = VoltType.get(b.get());
+                } // FOR
+                int num_rows = (int)readVarLong(b);
+                Object data[][] = new Object[num_rows][num_cols];
+                for (int j = 0; j < num_rows; j++) {
+                    for (int k = 0; k < num_cols; k++) {
+                        if (b.get() != BinaryTraceWriter.PARAM_NULL) {
+                            data[j][k] = readValue(b, types[k]);
+                        }
+                    } // FOR (columns)
+                } // FOR (rows)
+                element.output_types[i] = types;
+                element.output[i] = data;
+            } // FOR (tables)
+        }
+    }
+
+    private <T extends CatalogType> Object[] readParams(ByteBuffer b, CatalogMap<T> catalog_params, String type_field) throws IOException {
+        int num_params = (int)readVarLong(b);
+        Object params[] = new Object[Math.max(num_params, catalog_params.size())];
+        for (int i = 0; i < num_params; i++) {
+            byte marker = b.get();
+            if (marker == BinaryTraceWriter.PARAM_NULL) continue;
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            switch (marker) {
+                case BinaryTraceWriter.PARAM_SCALAR:
+                    params[i] = readValue(b, type);
+                    break;
+                case BinaryTraceWriter.PARAM_ARRAY: {
+                    Object inner[] = new Object[(int)readVarLong(b)];
+                    for (int j = 0; j < inner.length; j++) {
+                        inner[j] = readValue(b, type);
+                    } // FOR
+                    params[i] = inner;
+                    break;
+                }
+                case BinaryTraceWriter.PARAM_STRING:
+                    params[i] = readString(b);
+                    break;
+                default:
+                    throw new IOException("Unexpected parameter marker " + marker + " for " + catalog_param);
+            } // SWITCH
+        } // FOR
+        return (params);
+    }
+
+    /**
+     * Read a value that was written with BinaryTraceWriter.writeValue(). This returns
+     * the same type of object that loading the value from a JSON trace would.
+     * @see VoltTypeUtil#getObjectFromString
+     */
+    static Object readValue(ByteBuffer b, VoltType type) throws IOException {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return (Long.valueOf(readSignedVarLong(b)));
+            case FLOAT:
+            case DECIMAL:
+                return (Double.valueOf(b.getDouble()));
+            case TIMESTAMP:
+                return (new TimestampType(readSignedVarLong(b)));
+            case BOOLEAN:
+                return (Boolean.valueOf(b.get() != 0));
+            case STRING:
+                return (readString(b));
+            default: {
+                String val = readString(b);
+                try {
+                    return (VoltTypeUtil.getObjectFromString(type, val));
+                } catch (Exception ex) {
+                    throw new IOException("Failed to convert '" + val + "' to " + type, ex);
+                }
+            }
+        } // SWITCH
+    }
+
+    static String readString(ByteBuffer b) throws IOException {
+        int length = (int)readVarLong(b);
+        String s = new String(b.array(), b.arrayOffset() + b.position(), length, "UTF-8");
+        b.position(b.position() + length);
+        return (s);
+    }
+
+    static long readVarLong(ByteBuffer b) {
+        long value = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = b.get();
+            value |= (long)(next & 0x7F) << shift;
+            shift += 7;
+        } while ((next & 0x80) != 0);
+        return (value);
+    }
+
+    static long readSignedVarLong(ByteBuffer b) {
+        long raw = readVarLong(b);
+        return ((raw >>> 1) ^ -(raw & 1));
+    }
+}
@@ -0,0 +1,444 @@
+/***************************************************************************
+ *   Copyright (C) 2012 by H-Store Project                                 *
+ *   Brown University                                                      *
+ *   Massachusetts Institute of Technology                                 *
+ *   Yale University                                                       *
+ *                                                                         *
+ *   Permission is hereby granted, free of charge, to any person obtaining *
+ *   a copy of this software and associated documentation files (the       *
+ *   "Software"), to deal in the Software without restriction, including   *
+ *   without limitation the rights to use, copy, modify, merge, publish,   *
+ *   distribute, sublicense, and/or sell copies of the Software, and to    *
+ *   permit persons to whom the Software is furnished to do so, subject to *
+ *   the following conditions:                                             *
+ *                                                                         *
+ *   The above copyright notice and this permission notice shall be        *
+ *   included in all copies or substantial portions of the Software.       *
+ *                                                                         *
+ *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,       *
+ *   EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF    *
+ *   MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.*
+ *   IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR     *
+ *   OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, *
+ *   ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR *
+ *   OTHER DEALINGS IN THE SOFTWARE.                                       *
+ ***************************************************************************/
+package edu.brown.workload;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.zip.Deflater;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.types.TimestampType;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Writes TransactionTraces into a compact binary workload trace file.
+ * Procedures and Statements are referenced by their catalog ids and parameters are
+ * encoded using the type that the catalog declares for them, so nothing is
+ * written as text and nothing has to be parsed when the trace is read back.
+ * <B>File Layout:</B>
+ * <pre>
+ * Header:  MAGIC (int), VERSION (byte), # of procedures (int),
+ *          and then each Procedure's id (int) and name (UTF)
+ * Blocks:  encoding (byte), # of txns (int), raw length (int), stored length (int),
+ *          and then stored length bytes of (optionally deflated) txn records
+ * </pre>
+ * Within a block, txn ids and start timestamps are delta-encoded against the previous
+ * txn, and query timestamps are relative to their txn's start. All integers are
+ * variable-length.
+ * @see BinaryTraceReader
+ */
+public class BinaryTraceWriter {
+    private static final Logger LOG = Logger.getLogger(BinaryTraceWriter.class);
+    private static final LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private static final LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    public static final int MAGIC = 0x48575442; // "HWTB"
+    public static final byte VERSION = 1;
+    public static final String EXTENSION = "btrace";
+
+    public static final byte BLOCK_RAW = 0;
+    public static final byte BLOCK_DEFLATE = 1;
+
+    /** The default number of txns per block */
+    public static final int DEFAULT_BLOCK_SIZE = 1000;
+
+    // Trace element flags
+    static final int FLAG_ABORTED = 0x01;
+    static final int FLAG_STOPPED = 0x02;
+    static final int FLAG_WEIGHT  = 0x04;
+    static final int FLAG_OUTPUT  = 0x08;
+
+    // Parameter markers
+    static final byte PARAM_NULL   = 0;
+    static final byte PARAM_SCALAR = 1;
+    static final byte PARAM_ARRAY  = 2;
+    /** The catalog says that it's an array but it was recorded as a single string */
+    static final byte PARAM_STRING = 3;
+
+    private final Database catalog_db;
+    private final DataOutputStream out;
+    private final int block_size;
+    private final Deflater deflater;
+    private byte compressed[] = new byte[0];
+
+    /** The current block */
+    private final ByteArrayOutputStream block_bytes = new ByteArrayOutputStream(65536);
+    private final DataOutputStream block = new DataOutputStream(this.block_bytes);
+    private int block_txns = 0;
+    /** The txn being written. It is only copied into the block once all of it was encoded */
+    private final ByteArrayOutputStream txn_bytes = new ByteArrayOutputStream(4096);
+    private final DataOutputStream txn_block = new DataOutputStream(this.txn_bytes);
+    private long last_txn_id = 0;
+    private long last_start = 0;
+
+    private long txn_ctr = 0;
+    private long block_ctr = 0;
+    private long raw_bytes = 0;
+    private long stored_bytes = 0;
+
+    /**
+     * Constructor
+     * @param output the stream to write the trace to. It is closed when this writer is closed
+     * @param catalog_db
+     * @param compress whether to deflate each block
+     * @param block_size the number of txns to put in each block
+     * @throws IOException
+     */
+    public BinaryTraceWriter(OutputStream output, Database catalog_db, boolean compress, int block_size) throws IOException {
+        assert(block_size > 0) : "Invalid block size " + block_size;
+        this.catalog_db = catalog_db;
+        this.block_size = block_size;
+        this.deflater = (compress ? new Deflater(Deflater.BEST_SPEED) : null);
+        this.out = new DataOutputStream(new BufferedOutputStream(output, 65536));
+
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeInt(catalog_db.getProcedures().size());
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            this.out.writeInt(catalog_proc.getId());
+            this.out.writeUTF(catalog_proc.getName());
+        } // FOR
+    }
+
+    public BinaryTraceWriter(File output, Database catalog_db) throws IOException {
+        this(new FileOutputStream(output), catalog_db, true, DEFAULT_BLOCK_SIZE);
+    }
+
+    // ----------------------------------------------------------------------------
+    // WRITING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Add a TransactionTrace to the current block. The block is written out
+     * once it has block_size txns in it. If the txn can't be encoded, then
+     * nothing is added to the block.
+     * @param txn_trace
+     * @throws IOException
+     */
+    public synchronized void write(TransactionTrace txn_trace) throws IOException {
+        Procedure catalog_proc = txn_trace.getCatalogItem(this.catalog_db);
+        if (catalog_proc == null) {
+            throw new IOException("Unknown procedure '" + txn_trace.getCatalogItemName() + "' for " + txn_trace);
+        }
+        if (this.block_txns == 0) {
+            this.last_txn_id = 0;
+            this.last_start = 0;
+        }
+
+        DataOutputStream b = this.txn_block;
+        this.txn_bytes.reset();
+        writeVarLong(b, catalog_proc.getId());
+        writeSignedVarLong(b, txn_trace.getTransactionId() - this.last_txn_id);
+        writeSignedVarLong(b, txn_trace.start_timestamp - this.last_start);
+
+        this.writeElement(b, txn_trace, txn_trace.start_timestamp);
+        this.writeParams(b, txn_trace.params, catalog_proc.getParameters(), "type");
+
+        writeVarLong(b, txn_trace.getQueryCount());
+        for (QueryTrace query_trace : txn_trace.getQueries()) {
+            Statement catalog_stmt = query_trace.getCatalogItem(this.catalog_db);
+            if (catalog_stmt == null) {
+                throw new IOException("Unknown statement '" + query_trace.catalog_item_name + "' in " + txn_trace);
+            }
+            writeVarLong(b, catalog_stmt.getId());
+            writeVarLong(b, query_trace.getBatchId());
+            writeSignedVarLong(b, query_trace.start_timestamp - txn_trace.start_timestamp);
+            this.writeElement(b, query_trace, query_trace.start_timestamp);
+            this.writeParams(b, query_trace.params, catalog_stmt.getParameters(), "javatype");
+        } // FOR
+
+        b.flush();
+        this.txn_bytes.writeTo(this.block);
+        this.last_txn_id = txn_trace.getTransactionId();
+        this.last_start = txn_trace.start_timestamp;
+        this.txn_ctr++;
+        if (++this.block_txns >= this.block_size) {
+            this.flushBlock();
+        }
+    }
+
+    /**
+     * Write the flags, stop timestamp, weight, and output of a trace element
+     */
+    private void writeElement(DataOutputStream b, AbstractTraceElement<?> element, long start) throws IOException {
+        int flags = 0;
+        if (element.aborted) flags |= FLAG_ABORTED;
+        if (element.stop_timestamp != null) flags |= FLAG_STOPPED;
+        if (element.weight != 1) flags |= FLAG_WEIGHT;
+        if (element.output != null) flags |= FLAG_OUTPUT;
+        b.writeByte(flags);
+
+        if (element.stop_timestamp != null) writeSignedVarLong(b, element.stop_timestamp - start);
+        if (element.weight != 1) writeSignedVarLong(b, element.weight);
+        if (element.output != null) {
+            writeVarLong(b, element.output.length);
+            for (int i = 0; i < element.output.length; i++) {
+                VoltType types[] = element.output_types[i];
+                Object data[][] = element.output[i];
+                if (types == null || data == null) {
+                    writeVarLong(b, 0);
+                    writeVarLong(b, 0);
+                    continue;
+                }
+                writeVarLong(b, types.length);
+                for (VoltType type : types) {
+                    b.writeByte((type == null ? VoltType.NULL : type).getValue());
+                } // FOR
+                writeVarLong(b, data.length);
+                for (Object row[] : data) {
+                    for (int k = 0; k < types.length; k++) {
+                        Object val = (row != null ? row[k] : null);
+                        if (val == null || types[k] == null || types[k] == VoltType.NULL) {
+                            b.writeByte(PARAM_NULL);
+                        } else {
+                            b.writeByte(PARAM_SCALAR);
+                            writeValue(b, types[k], val);
+                        }
+                    } // FOR (columns)
+                } // FOR (rows)
+            } // FOR (tables)
+        }
+    }
+
+    /**
+     * Write each parameter using the type from its catalog object
+     */
+    private <T extends CatalogType> void writeParams(DataOutputStream b, Object params[], CatalogMap<T> catalog_params, String type_field) throws IOException {
+        writeVarLong(b, params.length);
+        for (int i = 0; i < params.length; i++) {
+            Object param = params[i];
+            if (param == null) {
+                b.writeByte(PARAM_NULL);
+                continue;
+            }
+            T catalog_param = catalog_params.get(i);
+            if (catalog_param == null) {
+                throw new IOException("Unexpected parameter #" + i + " [numParams=" + catalog_params.size() + "]");
+            }
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object _isarray = catalog_param.getField("isarray");
+            boolean isarray = (_isarray != null && (Boolean)_isarray);
+
+            if (isarray && param.getClass().isArray()) {
+                b.writeByte(PARAM_ARRAY);
+                if (param instanceof long[]) {
+                    long arr[] = (long[])param;
+                    writeVarLong(b, arr.length);
+                    for (long v : arr) writeValue(b, type, v);
+                } else if (param instanceof int[]) {
+                    int arr[] = (int[])param;
+                    writeVarLong(b, arr.length);
+                    for (int v : arr) writeValue(b, type, v);
+                } else if (param instanceof short[]) {
+                    short arr[] = (short[])param;
+                    writeVarLong(b, arr.length);
+                    for (short v : arr) writeValue(b, type, v);
+                } else if (param instanceof byte[]) {
+                    byte arr[] = (byte[])param;
+                    writeVarLong(b, arr.length);
+                    for (byte v : arr) writeValue(b, type, v);
+                } else {
+                    Object arr[] = (Object[])param;
+                    writeVarLong(b, arr.length);
+                    for (Object v : arr) writeValue(b, type, v);
+                }
+            } else if (isarray) {
+                b.writeByte(PARAM_STRING);
+                writeString(b, param.toString());
+            } else {
+                b.writeByte(PARAM_SCALAR);
+                writeValue(b, type, param);
+            }
+        } // FOR
+    }
+
+    private synchronized void flushBlock() throws IOException {
+        if (this.block_txns == 0) return;
+        this.block.flush();
+
+        final int length = this.block_bytes.size();
+        byte raw[] = this.block_bytes.toByteArray();
+        byte encoding = BLOCK_RAW;
+        byte stored[] = raw;
+        int stored_length = length;
+        if (this.deflater != null) {
+            if (this.compressed.length < length) {
+                this.compressed = new byte[length];
+            }
+            this.deflater.reset();
+            this.deflater.setInput(raw, 0, length);
+            this.deflater.finish();
+            int compressed_length = this.deflater.deflate(this.compressed, 0, this.compressed.length);
+            // Only keep the compressed block if it actually fit in a smaller buffer
+            if (this.deflater.finished() && compressed_length < length) {
+                encoding = BLOCK_DEFLATE;
+                stored = this.compressed;
+                stored_length = compressed_length;
+            }
+        }
+
+        this.out.writeByte(encoding);
+        this.out.writeInt(this.block_txns);
+        this.out.writeInt(length);
+        this.out.writeInt(stored_length);
+        this.out.write(stored, 0, stored_length);
+        if (trace.get())
+            LOG.trace(String.format("Wrote block #%d [txns=%d, raw=%d, stored=%d]",
+                                    this.block_ctr, this.block_txns, length, stored_length));
+
+        this.block_ctr++;
+        this.raw_bytes += length;
+        this.stored_bytes += stored_length;
+        this.block_bytes.reset();
+        this.block_txns = 0;
+    }
+
+    /**
+     * Write out the current partial block and flush the output stream
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        this.flushBlock();
+        this.out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        this.flushBlock();
+        this.out.close();
+        if (this.deflater != null) this.deflater.end();
+        if (debug.get())
+            LOG.debug(String.format("Wrote %d txns in %d blocks [raw=%d, stored=%d]",
+                                    this.txn_ctr, this.block_ctr, this.raw_bytes, this.stored_bytes));
+    }
+
+    public long getTransactionCount() {
+        return (this.txn_ctr);
+    }
+    public long getBlockCount() {
+        return (this.block_ctr);
+    }
+    /** The number of bytes of txn records written, before compression */
+    public long getRawBytes() {
+        return (this.raw_bytes);
+    }
+    /** The number of bytes of txn records written, after compression */
+    public long getStoredBytes() {
+        return (this.stored_bytes);
+    }
+
+    // ----------------------------------------------------------------------------
+    // ENCODING
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Write a non-null value as the given type. The value is converted the same way
+     * that it would be if it was written out to a JSON trace and read back in.
+     * @see BinaryTraceReader#readValue
+     */
+    static void writeValue(DataOutputStream b, VoltType type, Object value) throws IOException {
+        switch (type) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                if (value instanceof Number) {
+                    writeSignedVarLong(b, ((Number)value).longValue());
+                } else {
+                    writeSignedVarLong(b, Long.valueOf(value.toString()));
+                }
+                break;
+            case FLOAT:
+            case DECIMAL:
+                if (value instanceof Double) {
+                    b.writeDouble((Double)value);
+                } else {
+                    // Floats and BigDecimals go through their string forms, just like JSON
+                    b.writeDouble(Double.valueOf(value.toString()));
+                }
+                break;
+            case TIMESTAMP:
+                if (value instanceof TimestampType) {
+                    writeSignedVarLong(b, ((TimestampType)value).getTime());
+                } else if (value instanceof Date) {
+                    writeSignedVarLong(b, ((Date)value).getTime() * 1000);
+                } else {
+                    writeSignedVarLong(b, ((Number)value).longValue());
+                }
+                break;
+            case BOOLEAN:
+                b.writeBoolean(value instanceof Boolean ? (Boolean)value : Boolean.parseBoolean(value.toString()));
+                break;
+            case STRING:
+                writeString(b, (value instanceof byte[] ? new String((byte[])value) : value.toString()));
+                break;
+            default:
+                // Anything else is stored as a string and parsed when it is read back in
+                writeString(b, value.toString());
+        } // SWITCH
+    }
+
+    static void writeString(DataOutputStream b, String s) throws IOException {
+        byte bytes[] = s.getBytes("UTF-8");
+        writeVarLong(b, bytes.length);
+        b.write(bytes);
+    }
+
+    /**
+     * Write a long in groups of seven bits, low-order group first. Negative values
+     * always take ten bytes, so use writeSignedVarLong() if they are expected
+     */
+    static void writeVarLong(DataOutputStream b, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            b.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        } // WHILE
+        b.writeByte((int)value);
+    }
+
+    /**
+     * Zig-zag encode a long so that small negative values are also small
+     */
+    static void writeSignedVarLong(DataOutputStream b, long value) throws IOException {
+        writeVarLong(b, (value << 1) ^ (value >> 63));
+    }
+}
@@ -0,0 +1,96 @@
+package edu.brown.workload;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+import org.voltdb.catalog.Database;
+
+import edu.brown.utils.ArgumentsParser;
+import edu.brown.utils.FileUtil;
+
+/**
+ * Convert a JSON workload trace into a binary trace, or a binary trace back into JSON.
+ * The direction is based on what the input file is. Both sides are streamed, so the
+ * whole trace never has to fit in memory.
+ * @see BinaryTraceWriter
+ */
+public class ConvertWorkloadTrace {
+    private static final Logger LOG = Logger.getLogger(ConvertWorkloadTrace.class);
+
+    /**
+     * Convert each txn in a JSON trace and write it to a binary trace
+     * @param catalog_db
+     * @param input
+     * @param output
+     * @return the number of txns written
+     * @throws Exception
+     */
+    public static long jsonToBinary(Database catalog_db, File input, OutputStream output) throws Exception {
+        BinaryTraceWriter writer = new BinaryTraceWriter(output, catalog_db, true, BinaryTraceWriter.DEFAULT_BLOCK_SIZE);
+        BufferedReader in = FileUtil.getReader(input);
+        int line_ctr = 0;
+        String line = null;
+        while ((line = in.readLine()) != null) {
+            line_ctr++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            TransactionTrace txn_trace = null;
+            try {
+                txn_trace = TransactionTrace.loadFromJSONObject(new JSONObject(line), catalog_db);
+            } catch (Exception ex) {
+                throw new IOException("Failed to load txn on line " + line_ctr + " of '" + input + "'", ex);
+            }
+            writer.write(txn_trace);
+        } // WHILE
+        in.close();
+        writer.close();
+        LOG.info(String.format("Converted %d txns from '%s' [raw=%d, stored=%d]",
+                               writer.getTransactionCount(), input.getName(), writer.getRawBytes(), writer.getStoredBytes()));
+        return (writer.getTransactionCount());
+    }
+
+    /**
+     * Convert each txn in a binary trace and write it to a JSON trace
+     * @param catalog_db
+     * @param input
+     * @param output
+     * @return the number of txns written
+     * @throws Exception
+     */
+    public static long binaryToJSON(Database catalog_db, File input, OutputStream output) throws Exception {
+        BinaryTraceReader reader = new BinaryTraceReader(input, catalog_db, null);
+        for (TransactionTrace txn_trace : reader) {
+            output.write(txn_trace.toJSONString(catalog_db).getBytes());
+            output.write('\n');
+        } // FOR
+        reader.close();
+        output.close();
+        LOG.info(String.format("Converted %d txns from '%s'", reader.getTransactionCount(), input.getName()));
+        return (reader.getTransactionCount());
+    }
+
+    public static void main(String[] vargs) throws Exception {
+        ArgumentsParser args = ArgumentsParser.load(vargs);
+        args.require(ArgumentsParser.PARAM_CATALOG, ArgumentsParser.PARAM_WORKLOAD_OUTPUT);
+        assert(args.getOptParamCount() > 0) : "Missing input workload trace";
+
+        File input_path = new File(args.getOptParam(0));
+        File output_path = new File(args.getParam(ArgumentsParser.PARAM_WORKLOAD_OUTPUT));
+        FileUtil.makeDirIfNotExists(output_path.getParent());
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(output_path), 65536);
+
+        if (BinaryTraceReader.isBinaryTrace(input_path)) {
+            LOG.info("Converting binary trace '" + input_path + "' to JSON trace '" + output_path + "'");
+            binaryToJSON(args.catalog_db, input_path, output);
+        } else {
+            LOG.info("Converting JSON trace '" + input_path + "' to binary trace '" + output_path + "'");
+            jsonToBinary(args.catalog_db, input_path, output);
+        }
+    }
+}
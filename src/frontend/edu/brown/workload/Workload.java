@@ -350,6 +350,12 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
         this.input_path = new File(input_path);
         long start = System.currentTimeMillis();
         
+        // Binary traces don't need to be parsed, so we can just stream them in
+        if (BinaryTraceReader.isBinaryTrace(this.input_path)) {
+            this.loadBinary(catalog_db, filter, start);
+            return;
+        }
+        
         // HACK: Throw out traces unless they have the procedures that we're looking for
         Pattern temp_pattern = null;
         if (filter != null) {
@@ -409,6 +415,25 @@ public class Workload implements WorkloadTrace, Iterable<TransactionTrace> {
     
 
     
+    /**
+     * Load all of the txns from a binary workload trace that the filter allows
+     * @see BinaryTraceReader
+     */
+    private void loadBinary(Database catalog_db, Filter filter, long start) throws Exception {
+        BinaryTraceReader reader = new BinaryTraceReader(this.input_path, catalog_db, filter);
+        int num_queries = 0;
+        for (TransactionTrace txn_trace : reader) {
+            this.addTransaction(txn_trace.getCatalogItem(catalog_db), txn_trace, true);
+            num_queries += txn_trace.getQueryCount();
+        } // FOR
+        reader.close();
+        VerifyWorkload.verify(catalog_db, this);
+        
+        long stop = System.currentTimeMillis();
+        LOG.info(String.format("Loaded %d txns / %d queries from binary trace '%s' in %.1f seconds",
+                               this.xact_trace.size(), num_queries, this.input_path.getName(), (stop - start) / 1000d));
+    }
+    
     // ----------------------------------------------------------
     // ITERATORS METHODS
     // ----------------------------------------------------------
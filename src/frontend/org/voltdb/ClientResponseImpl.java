@@ -36,6 +36,16 @@ import edu.brown.utils.StringUtil;
  *
  */
 public class ClientResponseImpl implements FastSerializable, ClientResponse {
+    
+    /** The original fixed-width wire format */
+    public static final byte PROTOCOL_VERSION_LEGACY = 0;
+    /**
+     * Variable-length integers and table schema ids. The fixed header at the front
+     * of the response is the same in both versions so that the raw ByteBuffer
+     * modifiers below work on either one.
+     */
+    public static final byte PROTOCOL_VERSION_COMPACT = 1;
+    
     private boolean setProperly = false;
     private Status status;
     private String statusString = null;
@@ -253,41 +263,51 @@ public class ClientResponseImpl implements FastSerializable, ClientResponse {
     
     @Override
     public void readExternal(FastDeserializer in) throws IOException {
-        in.readByte();//Skip version byte
+        final byte version = in.readByte();
         timestamp = in.readInt();
         txn_id = in.readLong();
         clientHandle = in.readLong();
         singlepartition = in.readBoolean();
         throttle = in.readBoolean();
         basePartition = in.readInt();
+        final boolean compact = (version == PROTOCOL_VERSION_COMPACT);
         
         byte presentFields = in.readByte();
         status = Status.valueOf(in.readByte());
         if ((presentFields & (1 << 5)) != 0) {
-            statusString = in.readString();
+            statusString = (compact ? in.readVarString() : in.readString());
         } else {
             statusString = null;
         }
         appStatus = in.readByte();
         if ((presentFields & (1 << 7)) != 0) {
-            appStatusString = in.readString();
+            appStatusString = (compact ? in.readVarString() : in.readString());
         } else {
             appStatusString = null;
         }
-        clusterRoundTripTime = in.readInt();
+        clusterRoundTripTime = (compact ? (int)in.readSignedVarLong() : in.readInt());
         if ((presentFields & (1 << 6)) != 0) {
             m_exception = SerializableException.deserializeFromBuffer(in.buffer());
         } else {
             m_exception = null;
         }
-        results = (VoltTable[]) in.readArray(VoltTable.class);
+        if (compact) {
+            results = new VoltTable[in.readVarInt()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = PrivateVoltTableFactory.createUninitializedVoltTable();
+                results[i].readCompact(in);
+            } // FOR
+        } else {
+            results = (VoltTable[]) in.readArray(VoltTable.class);
+        }
         setProperly = true;
     }
 
     @Override
     public void writeExternal(FastSerializer out) throws IOException {
         assert setProperly;
-        out.writeByte(0);//version
+        final boolean compact = out.isCompact();
+        out.writeByte(compact ? PROTOCOL_VERSION_COMPACT : PROTOCOL_VERSION_LEGACY);
         out.writeInt(timestamp);
         out.writeLong(txn_id);
         out.writeLong(clientHandle);
@@ -308,19 +328,29 @@ public class ClientResponseImpl implements FastSerializable, ClientResponse {
         out.writeByte(presentFields);
         out.write((byte)status.ordinal());
         if (statusString != null) {
-            out.writeString(statusString);
+            if (compact) out.writeVarString(statusString);
+            else out.writeString(statusString);
         }
         out.write(appStatus);
         if (appStatusString != null) {
-            out.writeString(appStatusString);
+            if (compact) out.writeVarString(appStatusString);
+            else out.writeString(appStatusString);
         }
-        out.writeInt(clusterRoundTripTime);
+        if (compact) out.writeSignedVarLong(clusterRoundTripTime);
+        else out.writeInt(clusterRoundTripTime);
         if (m_exception != null) {
             final ByteBuffer b = ByteBuffer.allocate(m_exception.getSerializedSize());
             m_exception.serializeToBuffer(b);
             out.write(b.array());
         }
-        out.writeArray(results);
+        if (compact) {
+            out.writeVarLong(results.length);
+            for (VoltTable vt : results) {
+                vt.writeCompact(out);
+            } // FOR
+        } else {
+            out.writeArray(results);
+        }
     }
     
     @Override
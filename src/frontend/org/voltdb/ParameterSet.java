@@ -35,6 +35,13 @@ import org.voltdb.types.VoltDecimalHelper;
  public class ParameterSet implements FastSerializable {
 
     static final byte ARRAY = -99;
+    
+    // Type tags for the compact wire encoding. These are only written when the
+    // FastSerializer is in compact mode, but they can always be read back.
+    static final byte COMPACT_INTEGER = -100;
+    static final byte COMPACT_BIGINT = -101;
+    static final byte COMPACT_TIMESTAMP = -102;
+    static final byte COMPACT_STRING = -103;
     public static final ParameterSet EMPTY = new ParameterSet();
     
     private final boolean m_serializingToEE;
@@ -103,6 +110,8 @@ import org.voltdb.types.VoltDecimalHelper;
 
     @Override
     public void writeExternal(FastSerializer out) throws IOException {
+        // The EE only understands the fixed-width format
+        final boolean compact = (out.isCompact() && m_serializingToEE == false);
         out.writeShort(m_params.length);
 
         for (Object obj : m_params) {
@@ -188,6 +197,9 @@ import org.voltdb.types.VoltDecimalHelper;
             }
 
             VoltType type = VoltType.typeFromClass(cls);
+            if (compact && writeCompactParameter(out, type, obj)) {
+                continue;
+            }
             out.writeByte(type.getValue());
             switch (type) {
                 case TINYINT:
@@ -226,6 +238,33 @@ import org.voltdb.types.VoltDecimalHelper;
         }
     }
 
+    /**
+     * Write a variable-length version of the parameter if there is one for its type
+     * @return true if the parameter was written
+     */
+    private static boolean writeCompactParameter(FastSerializer out, VoltType type, Object obj) throws IOException {
+        switch (type) {
+            case INTEGER:
+                out.writeByte(COMPACT_INTEGER);
+                out.writeSignedVarLong((Integer)obj);
+                return (true);
+            case BIGINT:
+                out.writeByte(COMPACT_BIGINT);
+                out.writeSignedVarLong((Long)obj);
+                return (true);
+            case TIMESTAMP:
+                out.writeByte(COMPACT_TIMESTAMP);
+                out.writeSignedVarLong(((TimestampType)obj).getTime());
+                return (true);
+            case STRING:
+                out.writeByte(COMPACT_STRING);
+                out.writeVarString((String)obj);
+                return (true);
+            default:
+                return (false);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuffer b = new StringBuffer();
@@ -248,6 +287,20 @@ import org.voltdb.types.VoltDecimalHelper;
             if (nextType == null) return null;
             return in.readArray(nextType.classFromType());
         }
+        else if (nextTypeByte <= COMPACT_INTEGER) {
+            switch (nextTypeByte) {
+                case COMPACT_INTEGER:
+                    return (int)in.readSignedVarLong();
+                case COMPACT_BIGINT:
+                    return in.readSignedVarLong();
+                case COMPACT_TIMESTAMP:
+                    return new TimestampType(in.readSignedVarLong());
+                case COMPACT_STRING:
+                    return in.readVarString();
+                default:
+                    throw new RuntimeException("ParameterSet doesn't support compact type " + nextTypeByte);
+            }
+        }
         else {
             VoltType nextType = VoltType.get(nextTypeByte);
             switch (nextType) {
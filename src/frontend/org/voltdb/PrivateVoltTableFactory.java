@@ -19,6 +19,8 @@ package org.voltdb;
 
 import java.nio.ByteBuffer;
 
+import org.voltdb.utils.DBBPool;
+
 /**
  * Deliberately awkward access to package-private constructors of
  * VoltTable. End users shouldn't call the constructors, but VoltDB
@@ -35,4 +37,13 @@ public abstract class PrivateVoltTableFactory {
     public static VoltTable createVoltTableFromBuffer(ByteBuffer backing, boolean readOnly) {
         return new VoltTable(backing, readOnly);
     }
+
+    /**
+     * Copy the serialized table in the source buffer into a read-only table
+     * backed by a buffer from the given pool. The caller owns the table's only
+     * reference and must call {@link VoltTable#release()} when it is done with it.
+     */
+    public static VoltTable createPooledVoltTable(DBBPool pool, ByteBuffer source) {
+        return new VoltTable(pool, source);
+    }
 }
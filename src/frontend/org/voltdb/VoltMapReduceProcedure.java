@@ -8,6 +8,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.types.SortDirectionType;
 import org.voltdb.utils.Pair;
+import org.voltdb.utils.ReduceInputBuffer;
 import org.voltdb.utils.ReduceInputIterator;
 import org.voltdb.utils.VoltTableUtil;
 
@@ -35,12 +36,15 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
     
     // This reduceInputQuery is prepared to executed REDUCE by internal system instead of Java code
     private SQLStmt reduceInputQuery;
+    
+    // Whether this procedure wants its MAP output to be combined
+    private boolean has_combine;
 
     // Thread-local data
     private MapReduceTransaction mr_ts;
     private VoltTable map_output;
     
-    private VoltTable reduce_input;
+    private ReduceInputBuffer<K> reduce_input;
     private VoltTable reduce_output;
     
     // -----------------------------------------------------------------
@@ -68,6 +72,29 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
      */
     public abstract void reduce(K key, Iterator<VoltTableRow> rows);
     
+    /**
+     * Optional map-side combiner. If hasCombine() returns true, then the MAP output
+     * at each partition is grouped by key and passed to combine() before it is shuffled
+     * to the REDUCE partitions. The combiner must emit rows with combineEmit() that use
+     * the MapOutput schema, since the REDUCE phase will see them exactly as if they came
+     * from map(). By default all of the rows are emitted unchanged.
+     * @param key
+     * @param rows
+     */
+    public void combine(K key, Iterator<VoltTableRow> rows) {
+        while (rows.hasNext()) {
+            this.map_output.add(rows.next());
+        } // WHILE
+    }
+    
+    /**
+     * Procedures that define a map-side combiner must override this to return true
+     * @return
+     */
+    public boolean hasCombine() {
+        return (false);
+    }
+    
     // -----------------------------------------------------------------
     // INTERNAL METHODS
     // -----------------------------------------------------------------
@@ -81,6 +108,10 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
         this.mapInputQuery = this.getSQLStmt(catalogProc.getMapinputquery());
         assert (this.mapInputQuery != null) : "Missing MapInputQuery " + catalogProc.getMapinputquery();
         this.reduceInputQuery = this.getSQLStmt(catalogProc.getReduceinputquery());
+        
+        this.has_combine = this.hasCombine();
+        if (debug.get() && this.has_combine)
+            LOG.debug(String.format("%s has a map-side combiner", catalogProc.getName()));
     }
     
     /**
@@ -145,6 +176,11 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
             if (debug.get())
                 LOG.debug(String.format("<MapOutputTable> Partition:%d\n %s", this.partitionId,this.map_output));
             
+            // Run the combiner over the MAP output before it gets shuffled
+            if (this.has_combine) {
+                this.combineMapOutput(this.map_output);
+            }
+            
             result = mr_ts.getMapOutputByPartition(this.partitionId);
 
             // Always invoke the TransactionMapWrapperCallback to let somebody know that
@@ -168,32 +204,24 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
             assert(this.reduce_input != null);
             if(debug.get()) 
                 LOG.debug("__FILE__:__LINE__ " + String.format("TXN: %s, [Stage] \n<VoltMapReduceProcedure.run> is executing <Reduce>..",mr_ts)); 
-            if (debug.get())
-                LOG.debug(String.format("<ReduceInputTable> Partition:%d\n %s", this.partitionId,this.reduce_input));
-            
-            
-            // Sort the the MAP_OUTPUT table
-            // Build an "smart" iterator that loops through the MAP_OUTPUT table key-by-key
-            VoltTable sorted = VoltTableUtil.sort(this.reduce_input, Pair.of(0, SortDirectionType.ASC));
-            //VoltTable sorted = VoltTableUtil.sort(mr_ts.getReduceInputByPartition(this.partitionId), Pair.of(0, SortDirectionType.ASC));
-            assert(sorted != null);
-            if (debug.get())
-                LOG.debug(String.format("<Sorted_ReduceInputTable> Partition:%d\n %s", this.partitionId,sorted));
             
             this.reduce_output = mr_ts.getReduceOutputByPartition(this.partitionId);
             assert(this.reduce_output != null);
   
-            // Make a Hstore.PartitionResult
-            ReduceInputIterator<K> rows = new ReduceInputIterator<K>(sorted);
-
-            // Loop over that iterator and call runReduce
+            // The ReduceInputBuffer groups the REDUCE input key-by-key for us, either
+            // in memory or by merging the sorted runs that it spilled to disk
             if (debug.get())
-                LOG.debug(String.format("REDUCE: About to process %d records for %s on partition %d",
-                          sorted.getRowCount(), this.m_localTxnState, this.partitionId));
+                LOG.debug(String.format("REDUCE: About to process %d records for %s on partition %d [spilledRuns=%d]",
+                          this.reduce_input.getRowCount(), this.m_localTxnState, this.partitionId,
+                          this.reduce_input.getSpillCount()));
             
-            while (rows.hasNext()) {
-                K key = rows.getKey();
-                this.reduce(key, rows); 
+            try {
+                while (this.reduce_input.nextKey()) {
+                    K key = this.reduce_input.getKey();
+                    this.reduce(key, this.reduce_input.getRows());
+                } // WHILE
+            } finally {
+                this.reduce_input.close();
             }
             
             if (debug.get())
@@ -225,6 +253,31 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
         return (result);
     }
     
+    /**
+     * Group the MAP output at this partition by key and replace it with
+     * whatever the combiner emits for each group.
+     * @param map_output
+     */
+    void combineMapOutput(VoltTable map_output) {
+        this.map_output = map_output;
+        int orig_size = this.map_output.getRowCount();
+        VoltTable sorted = VoltTableUtil.sort(this.map_output, Pair.of(0, SortDirectionType.ASC));
+        assert(sorted != null);
+        
+        // The shuffle reads the MAP output from the MapReduceTransaction, so we
+        // need to refill the same table instead of swapping in a new one
+        this.map_output.clearRowData();
+        ReduceInputIterator<K> rows = new ReduceInputIterator<K>(sorted);
+        while (rows.hasNext()) {
+            K key = rows.getKey();
+            this.combine(key, rows);
+        } // WHILE
+        
+        if (debug.get())
+            LOG.debug(String.format("COMBINE: %s reduced %d MAP records to %d on partition %d",
+                      this.m_localTxnState, orig_size, this.map_output.getRowCount(), this.partitionId));
+    }
+    
     /**
      * 
      * @param key
@@ -235,6 +288,16 @@ public abstract class VoltMapReduceProcedure<K> extends VoltProcedure {
         this.map_output.addRow(row);       
     }
 
+    /**
+     * Emit a combined row into the MAP output. The row must use the MapOutput schema.
+     * @param key
+     * @param row
+     */
+    public final void combineEmit(K key, Object row[]) {
+        assert(key == row[0]);
+        this.map_output.addRow(row);
+    }
+
     /**
      * 
      * @param row
@@ -172,6 +172,7 @@ public abstract class VoltProcedure implements Poolable, Loggable {
     // ----------------------------------------------------------------------------
     
     private boolean enable_tracing = false;
+    private WorkloadTrace m_workloadTrace = null;
     private Object m_workloadXactHandle = null;
     private Integer m_workloadBatchId = null;
     private final List<Object> m_workloadQueryHandles = new ArrayList<Object>();
@@ -266,8 +267,13 @@ public abstract class VoltProcedure implements Poolable, Loggable {
         this.batchQueryArgs = new Object[hstore_conf.site.planner_max_batch_size][];
         this.batchQueryStmts = new SQLStmt[hstore_conf.site.planner_max_batch_size];
         
-        this.enable_tracing = (ProcedureProfiler.profilingLevel == ProcedureProfiler.Level.INTRUSIVE) &&
-                              (ProcedureProfiler.workloadTrace != null);
+        // The full workload trace takes precedence over the PartitionExecutor's sampled trace
+        if (ProcedureProfiler.profilingLevel == ProcedureProfiler.Level.INTRUSIVE && ProcedureProfiler.workloadTrace != null) {
+            this.m_workloadTrace = ProcedureProfiler.workloadTrace;
+        } else {
+            this.m_workloadTrace = this.executor.getWorkloadTrace();
+        }
+        this.enable_tracing = (this.m_workloadTrace != null);
         
         this.t_estimator = this.executor.getTransactionEstimator();
         this.p_estimator = p_estimator;
@@ -616,7 +622,7 @@ public abstract class VoltProcedure implements Poolable, Loggable {
         // a handle that we need to pass to the trace manager when we want to register a new query
         if (this.enable_tracing) {
             this.m_workloadQueryHandles.clear();
-            this.m_workloadXactHandle = ProcedureProfiler.workloadTrace.startTransaction(this.m_currentTxnState.getTransactionId(), catalog_proc, this.procParams);
+            this.m_workloadXactHandle = this.m_workloadTrace.startTransaction(this.m_currentTxnState.getTransactionId(), catalog_proc, this.procParams);
         }
 
         // Fix to make no-Java procedures work
@@ -670,7 +676,7 @@ public abstract class VoltProcedure implements Poolable, Loggable {
                 this.status_msg = "USER ABORT: " + ex.getMessage();
                 
                 if (this.enable_tracing && m_workloadXactHandle != null) {
-                    ProcedureProfiler.workloadTrace.abortTransaction(m_workloadXactHandle);
+                    this.m_workloadTrace.abortTransaction(m_workloadXactHandle);
                 }
             // -------------------------------
             // MispredictionException
@@ -730,9 +736,9 @@ public abstract class VoltProcedure implements Poolable, Loggable {
         // Workload Trace - Stop the transaction trace record.
         if (this.enable_tracing && m_workloadXactHandle != null && this.status == Hstoreservice.Status.OK) {
             if (hstore_conf.site.trace_txn_output) {
-                ProcedureProfiler.workloadTrace.stopTransaction(m_workloadXactHandle, this.results);
+                this.m_workloadTrace.stopTransaction(m_workloadXactHandle, this.results);
             } else {
-                ProcedureProfiler.workloadTrace.stopTransaction(m_workloadXactHandle);
+                this.m_workloadTrace.stopTransaction(m_workloadXactHandle);
             }
         }
         
@@ -1030,10 +1036,10 @@ public abstract class VoltProcedure implements Poolable, Loggable {
 
         // Workload Trace - Start Query
         if (this.enable_tracing && m_workloadXactHandle != null) {
-            m_workloadBatchId = ProcedureProfiler.workloadTrace.getNextBatchId(m_workloadXactHandle);
+            m_workloadBatchId = this.m_workloadTrace.getNextBatchId(m_workloadXactHandle);
             m_workloadQueryHandles.clear();
             for (int i = 0; i < batchQueryStmtIndex; i++) {
-                Object queryHandle = ProcedureProfiler.workloadTrace.startQuery(m_workloadXactHandle,
+                Object queryHandle = this.m_workloadTrace.startQuery(m_workloadXactHandle,
                                                                                 batchQueryStmts[i].catStmt,
                                                                                 batchQueryArgs[i],
                                                                                 m_workloadBatchId);
@@ -1052,9 +1058,9 @@ public abstract class VoltProcedure implements Poolable, Loggable {
                 Object handle = m_workloadQueryHandles.get(i);
                 if (handle != null) {
                     if (hstore_conf.site.trace_query_output) {
-                        ProcedureProfiler.workloadTrace.stopQuery(handle, retval[i]);
+                        this.m_workloadTrace.stopQuery(handle, retval[i]);
                     } else {
-                        ProcedureProfiler.workloadTrace.stopQuery(handle, null);
+                        this.m_workloadTrace.stopQuery(handle, null);
                     }
                 }
             } // FOR
@@ -1149,7 +1155,7 @@ public abstract class VoltProcedure implements Poolable, Loggable {
             MarkovGraph markov = (s != null ? s.getMarkovGraph() : null); 
             if (hstore_conf.site.markov_mispredict_recompute && markov != null) {
                 if (d) LOG.debug("Recomputing MarkovGraph probabilities because " + m_localTxnState + " mispredicted");
-                // FIXME this.executor.helper.queueMarkovToRecompute(markov);
+                this.t_estimator.queueRecompute(markov);
             }
             
             // Print Misprediction Debug
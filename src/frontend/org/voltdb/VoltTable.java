@@ -23,13 +23,17 @@ import java.math.BigDecimal;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializable;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.messaging.WireSchemaRegistry;
 import org.voltdb.types.TimestampType;
 import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.DBBPool;
+import org.voltdb.utils.DBBPool.BBContainer;
 
 /*
  * The primary representation of a result set (of tuples) or a temporary
@@ -125,6 +129,23 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
     int m_rowCount = -1;
     int m_colCount = -1;
 
+    /**
+     * If this table was allocated from a DBBPool, this is the pooled buffer that backs it.
+     * The pooled buffer holds the table's serialized length followed by the table itself,
+     * so that it can be handed off as a complete serialized table without a copy.
+     */
+    private BBContainer m_container = null;
+    private AtomicInteger m_refCount = null;
+
+    /**
+     * The schema is decoded out of the buffer the first time that it is needed
+     * and then cached here. The name to index map also remembers any other
+     * spellings of the column names that it has been asked for.
+     */
+    private VoltType m_columnTypes[] = null;
+    private String m_columnNames[] = null;
+    private HashMap<String, Integer> m_columnIndexes = null;
+
     /**
      * <p>Object that represents the name and schema for a {@link VoltTable} column.
      * Primarily used to construct in the constructor {@link VoltTable#VoltTable(ColumnInfo...)}
@@ -188,6 +209,35 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
      * @param readOnly Can this table be changed?
      */
     public VoltTable(ByteBuffer backing, boolean readOnly) {
+        initFromBuffer(backing, readOnly);
+    }
+
+    /**
+     * Create a read-only table in a buffer acquired from the given pool and copy
+     * the serialized table in the source buffer into it. If the pool allocates
+     * direct buffers, then the table's data never touches the heap.
+     * The table holds one reference that must be given back with {@link #release()}.
+     *
+     * @param pool The pool to acquire the backing buffer from.
+     * @param source The serialized table (without a length prefix) between
+     * its position and limit. The source's position is not changed.
+     */
+    VoltTable(DBBPool pool, ByteBuffer source) {
+        final int size = source.remaining();
+        m_container = pool.acquire(size + 4);
+        m_refCount = new AtomicInteger(1);
+
+        final ByteBuffer b = m_container.b;
+        b.clear();
+        b.putInt(size);
+        b.put(source.duplicate());
+        b.flip();
+        b.position(4);
+        initFromBuffer(b.slice(), true);
+    }
+
+    private void initFromBuffer(ByteBuffer backing, boolean readOnly) {
+        resetSchemaCache();
         m_buffer = backing;
 
         // rowstart represents and offset to the start of row data,
@@ -247,6 +297,7 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
     }
 
     private void initializeFromColumns(ColumnInfo[] columns, int columnCount) {
+        resetSchemaCache();
         // allocate a 1K table backing for starters
         int allocationSize = 1024;
         m_buffer = ByteBuffer.allocate(allocationSize);
@@ -320,6 +371,66 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         return buf;
     }
 
+    /**
+     * Returns true if this table is backed by a buffer that was acquired from
+     * a DBBPool and has not been released yet.
+     */
+    public boolean isPooled() {
+        return (m_container != null);
+    }
+
+    /**
+     * Add a reference to a pooled table. Every call must be matched by a call
+     * to {@link #release()}. Does nothing for tables that are not pooled.
+     * @return this table
+     */
+    public VoltTable retain() {
+        if (m_container != null) {
+            int refs = m_refCount.incrementAndGet();
+            assert(refs > 1) : "Retained a VoltTable that was already released";
+        }
+        return (this);
+    }
+
+    /**
+     * Give back a reference to a pooled table. Once the last reference is released,
+     * the backing buffer is returned to its pool and the table can no longer be used.
+     * Does nothing for tables that are not pooled.
+     */
+    public void release() {
+        final BBContainer c = m_container;
+        if (c == null) return;
+        if (m_refCount.decrementAndGet() == 0) {
+            m_container = null;
+            m_buffer = null;
+            c.discard();
+        }
+    }
+
+    /**
+     * End users should not call this method.
+     * Returns the table in the same form that {@link #writeExternal(FastSerializer)}
+     * writes it: the length of the table followed by the table data. For pooled tables
+     * this is a read-only view of the pooled buffer, otherwise it is a copy.
+     */
+    public ByteBuffer getSerializedBuffer() {
+        if (m_container != null) {
+            final ByteBuffer buf = m_container.b.asReadOnlyBuffer();
+            buf.position(0);
+            buf.limit(4 + m_buffer.limit());
+            return (buf);
+        }
+        final int pos = m_buffer.position();
+        final ByteBuffer buf = ByteBuffer.allocate(4 + pos);
+        final ByteBuffer data = m_buffer.duplicate();
+        data.position(0);
+        data.limit(pos);
+        buf.putInt(pos);
+        buf.put(data);
+        buf.flip();
+        return (buf);
+    }
+
     /**
      * Delete all row data. Column data is preserved.
      * Useful for reusing an <tt>VoltTable</tt>.
@@ -409,6 +520,11 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         public int getRowSize() {
             return VoltTable.this.getRowSize();
         }
+
+        @Override
+        protected int[] getFixedOffsets() {
+            return VoltTable.this.getFixedOffsets();
+        }
         
         @Override
         public VoltTableRow cloneRow() {
@@ -422,6 +538,19 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         }
     }
 
+    /**
+     * Throw away everything that we have cached about the schema
+     * because we are about to get a new one.
+     */
+    private void resetSchemaCache() {
+        m_columnTypes = null;
+        m_columnNames = null;
+        m_columnIndexes = null;
+        m_fixedOffsets = null;
+        m_offsets = null;
+        m_hasCalculatedOffsets = false;
+    }
+
     /**
      * Return the name of the column with the specified index.
      * @param index Index of the column
@@ -432,18 +561,18 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         if ((index < 0) || (index >= m_colCount))
             throw new IllegalArgumentException("Not a valid column index.");
 
-        // move to the start of the list of column names
-        // (this could be done faster by just reading the string lengths
-        //  and skipping ahead)
-        int pos = 4 + 1 + 2 + m_colCount;//headerLength + status code + column count + (m_colCount * colTypeByte)
-        String name = null;
-        for (int i = 0; i < index; i++)
-            pos += m_buffer.getInt(pos) + 4;
-        name = readString(pos, METADATA_ENCODING);
-        assert(name != null);
-
-        assert(verifyTableInvariants());
-        return name;
+        if (m_columnNames == null) {
+            // walk the list of column names once and remember them all
+            String names[] = new String[m_colCount];
+            int pos = 4 + 1 + 2 + m_colCount;//headerLength + status code + column count + (m_colCount * colTypeByte)
+            for (int i = 0; i < m_colCount; i++) {
+                names[i] = readString(pos, METADATA_ENCODING);
+                assert(names[i] != null);
+                pos += m_buffer.getInt(pos) + 4;
+            }
+            m_columnNames = names;
+        }
+        return m_columnNames[index];
     }
     
     protected final String[] getColumnNames() {
@@ -456,21 +585,46 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
 
     @Override
     public final VoltType getColumnType(int index) {
-        assert(verifyTableInvariants());
         assert(index < m_colCount);
-        // move to the right place
-        VoltType retval = VoltType.get(m_buffer.get(4 + 1 + 2 + index));//headerLength + status code + column count
-        assert(verifyTableInvariants());
-        return retval;
+        if (m_columnTypes == null) {
+            VoltType types[] = new VoltType[m_colCount];
+            for (int i = 0; i < m_colCount; i++) {
+                types[i] = VoltType.get(m_buffer.get(4 + 1 + 2 + i));//headerLength + status code + column count
+            }
+            m_columnTypes = types;
+        }
+        return m_columnTypes[index];
     }
 
-    @Override
-    public final int getColumnIndex(String name) {
-        assert(verifyTableInvariants());
+    /**
+     * Returns the index of the column with the given name (ignoring case),
+     * or -1 if there is no such column.
+     */
+    private int findColumnIndex(String name) {
+        if (m_columnIndexes == null) {
+            HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+            for (int i = m_colCount - 1; i >= 0; i--) {
+                indexes.put(getColumnName(i), i);
+            }
+            m_columnIndexes = indexes;
+        }
+        Integer index = m_columnIndexes.get(name);
+        if (index != null)
+            return index.intValue();
         for (int i = 0; i < m_colCount; i++) {
-            if (getColumnName(i).equalsIgnoreCase(name))
+            if (getColumnName(i).equalsIgnoreCase(name)) {
+                m_columnIndexes.put(name, i);
                 return i;
+            }
         }
+        return -1;
+    }
+
+    @Override
+    public final int getColumnIndex(String name) {
+        int index = findColumnIndex(name);
+        if (index >= 0)
+            return index;
         String msg = "No Column named '" + name + "'. Existing columns are:";
         for (int i = 0; i < m_colCount; i++) {
             msg += "[" + i + "]" + getColumnName(i) + ",";
@@ -480,12 +634,23 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
     
     @Override
     public boolean hasColumn(String name) {
-        assert(verifyTableInvariants());
-        for (int i = 0; i < m_colCount; i++) {
-            if (getColumnName(i).equalsIgnoreCase(name))
-                return (true);
+        return (findColumnIndex(name) >= 0);
+    }
+
+    @Override
+    protected final int[] getFixedOffsets() {
+        if (m_fixedOffsets == null) {
+            // Every column up to and including the first string is at a fixed offset
+            int count = 1;
+            while (count < m_colCount && getColumnType(count - 1) != VoltType.STRING)
+                count++;
+            int offsets[] = new int[count];
+            for (int i = 1; i < count; i++) {
+                offsets[i] = offsets[i - 1] + getColumnType(i - 1).getLengthInBytesForFixedTypes();
+            }
+            m_fixedOffsets = offsets;
         }
-        return false;
+        return m_fixedOffsets;
     }
 
     /**
@@ -864,6 +1029,7 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         // Note: some of the snapshot and save/restore code makes assumptions
         // about the binary layout of tables.
 
+        resetSchemaCache();
         final int len = in.readInt();
         // smallest table is 4-bytes with zero value
         // indicating rowcount is 0
@@ -901,6 +1067,80 @@ public final class VoltTable extends VoltTableRow implements FastSerializable {
         assert(verifyTableInvariants());
     }
 
+    /**
+     * Write this VoltTable in the compact wire encoding. The schema (column count,
+     * types, and names) is replaced by an id if the serializer has a
+     * {@link WireSchemaRegistry} that has already sent it. The counts are written as
+     * variable-length values and the row data is copied as is.
+     */
+    final void writeCompact(FastSerializer out) throws IOException {
+        assert(verifyTableInvariants());
+        final ByteBuffer schema = m_buffer.duplicate();
+        schema.limit(m_rowStart);
+        schema.position(5);
+
+        // The low bit of the tag says whether the schema follows inline.
+        // An inline schema with id zero is not registered
+        final WireSchemaRegistry schemas = out.getSchemaRegistry();
+        final int id = (schemas != null ? schemas.getSchemaId(schema) : 0);
+        if (id > 0) {
+            out.writeVarLong(id << 1);
+        } else {
+            out.writeVarLong((-id << 1) | 1);
+            out.writeVarLong(schema.remaining());
+            out.write(schema);
+        }
+        out.writeByte(getStatusCode());
+
+        final ByteBuffer rows = m_buffer.duplicate();
+        rows.limit(m_buffer.position());
+        rows.position(m_rowStart + 4);
+        out.writeVarLong(m_rowCount);
+        out.writeVarLong(rows.remaining());
+        out.write(rows);
+    }
+
+    /**
+     * Read a VoltTable written by {@link #writeCompact(FastSerializer)} into this
+     * object. The result has the same layout as if it was read by
+     * {@link #readExternal(FastDeserializer)}.
+     */
+    final void readCompact(FastDeserializer in) throws IOException {
+        resetSchemaCache();
+        final long tag = in.readVarLong();
+        final int id = (int)(tag >>> 1);
+        byte schema[] = null;
+        if ((tag & 1) != 0) {
+            schema = new byte[in.readVarInt()];
+            in.readFully(schema);
+            if (id > 0 && in.getSchemaRegistry() != null) {
+                in.getSchemaRegistry().defineSchema(id, schema);
+            }
+        } else if (in.getSchemaRegistry() != null) {
+            schema = in.getSchemaRegistry().getSchema(id);
+        }
+        if (schema == null) {
+            throw new IOException("Unknown table schema id " + id);
+        }
+        final byte status = in.readByte();
+        final int rowCount = in.readVarInt();
+        final int rowBytes = in.readVarInt();
+
+        m_buffer = ByteBuffer.allocate(4 + 1 + schema.length + 4 + rowBytes);
+        m_buffer.putInt(1 + schema.length);
+        m_buffer.put(status);
+        m_buffer.put(schema);
+        m_rowStart = m_buffer.position();
+        m_buffer.putInt(rowCount);
+        in.readFully(m_buffer.array(), m_buffer.position(), rowBytes);
+        m_buffer.position(m_buffer.limit());
+
+        m_colCount = m_buffer.getShort(5);
+        m_rowCount = rowCount;
+
+        assert(verifyTableInvariants());
+    }
+
     /**
      * Returns a {@link java.lang.String String} representation of this table.
      * Resulting string will contain schema and all data and will be formatted.
@@ -82,6 +82,10 @@ public abstract class VoltTableRow {
     protected int[] m_offsets;
     /** Have the offsets been calculated */
     protected boolean m_hasCalculatedOffsets = false;
+    /** Offsets of the leading fixed-width columns from the start of any row's data */
+    protected int[] m_fixedOffsets;
+    /** Reused by {@link #getStringView(int)} */
+    private StringView m_stringView;
 
     protected int m_activeRowIndex = INVALID_ROW_INDEX;
 
@@ -118,6 +122,15 @@ public abstract class VoltTableRow {
     protected abstract int getRowStart();
 
     public abstract int getRowSize();
+
+    /**
+     * Returns the offsets of the columns at the start of the schema whose position
+     * within a row never changes, relative to the start of the row's data. This is
+     * every column up to and including the first variable-length column, so it covers
+     * every column if the rows are fixed-width. The first entry is always zero.
+     * @return Offsets of the fixed-position columns. Must not be modified.
+     */
+    protected abstract int[] getFixedOffsets();
     
     /**
      * Clone a row. The new instance returned will have an independent
@@ -130,8 +143,13 @@ public abstract class VoltTableRow {
         if (m_hasCalculatedOffsets == true)
             return;
 
-        m_offsets[0] = m_position;
-        for (int i = 1; i < getColumnCount(); i++) {
+        // The leading columns are always in the same place in the row, so we
+        // only have to walk the rows from the first variable-length column on
+        final int fixed[] = getFixedOffsetsCached();
+        for (int i = 0; i < fixed.length; i++) {
+            m_offsets[i] = m_position + fixed[i];
+        }
+        for (int i = fixed.length; i < getColumnCount(); i++) {
             final VoltType type = getColumnType(i - 1);
             // handle variable length types specially
             if (type == VoltType.STRING) {
@@ -150,9 +168,18 @@ public abstract class VoltTableRow {
         m_hasCalculatedOffsets = true;
     }
 
+    private final int[] getFixedOffsetsCached() {
+        if (m_fixedOffsets == null)
+            m_fixedOffsets = getFixedOffsets();
+        return m_fixedOffsets;
+    }
+
     protected final int getOffset(int index) {
-        ensureCalculatedOffsets();
         assert(index >= 0);
+        final int fixed[] = getFixedOffsetsCached();
+        if (index < fixed.length)
+            return m_position + fixed[index];
+        ensureCalculatedOffsets();
         assert(index < m_offsets.length);
         return m_offsets[index];
     }
@@ -461,6 +488,62 @@ public abstract class VoltTableRow {
         return getString(colIndex);
     }
 
+    /**
+     * Retrieve the <tt>string</tt> value stored in the column specified by index as
+     * a {@link StringView} over the row data. Unlike {@link #getString(int)}, this
+     * does not allocate anything. The returned view is owned by this row and is
+     * only valid until the next call to this method or until the row is advanced.
+     * Returns <tt>null</tt> if the value is <tt>null</tt>.
+     * @param columnIndex Index of the column
+     * @return {@link StringView} of the value stored in the specified column
+     * @see #wasNull()
+     */
+    public final StringView getStringView(int columnIndex) {
+        if (m_stringView == null)
+            m_stringView = new StringView();
+        return getStringView(columnIndex, m_stringView);
+    }
+
+    /**
+     * Retrieve the <tt>string</tt> value stored in the column specified by index
+     * into the given {@link StringView}. The view is only valid as long as
+     * the table's data is not modified.
+     * Returns <tt>null</tt> if the value is <tt>null</tt>.
+     * @param columnIndex Index of the column
+     * @param view The view to point at the value
+     * @return The given view, or <tt>null</tt>
+     * @see #wasNull()
+     */
+    public final StringView getStringView(int columnIndex, StringView view) {
+        validateColumnType(columnIndex, VoltType.STRING);
+        final int offset = getOffset(columnIndex);
+        final int len = m_buffer.getInt(offset);
+        if (len == VoltTable.NULL_STRING_INDICATOR) {
+            m_wasNull = true;
+            return null;
+        }
+        if (len < 0) {
+            throw new RuntimeException("Invalid object length.");
+        }
+        m_wasNull = false;
+        view.set(m_buffer, offset + STRING_LEN_SIZE, len);
+        return view;
+    }
+
+    /**
+     * Retrieve the <tt>string</tt> value stored in the column specified by name
+     * as a {@link StringView}. Avoid retrieving via this method as it is slower
+     * than specifying the column by index. Use {@link #getStringView(int)} instead.
+     * @param columnName Name of the column
+     * @return {@link StringView} of the value stored in the specified column
+     * @see #wasNull()
+     * @see #getStringView(int)
+     */
+    public final StringView getStringView(String columnName) {
+        final int colIndex = getColumnIndex(columnName);
+        return getStringView(colIndex);
+    }
+
     /**
      * Retrieve the <tt>string</tt> value stored in the column specified by index as
      * an array of bytes. Assume UTF-8 encoding for all string values in VoltDB.
@@ -606,8 +689,11 @@ public abstract class VoltTableRow {
         return getDecimalAsBigDecimal(colIndex);
     }
 
-    /** Validates that type and columnIndex match and are valid. */
-    protected final void validateColumnType(int columnIndex, VoltType... types) {
+    /**
+     * Validates that type and columnIndex match and are valid.
+     * This is not varargs so that the getters don't allocate an array on every call.
+     */
+    protected final void validateColumnType(int columnIndex, VoltType type) {
         if (m_position < 0)
             throw new RuntimeException("VoltTableRow is in an invalid state. Consider calling advanceRow().");
 
@@ -615,10 +701,8 @@ public abstract class VoltTableRow {
             throw new IndexOutOfBoundsException("Column index " + columnIndex + " is type greater than the number of columns");
         }
         final VoltType columnType = getColumnType(columnIndex);
-        for (VoltType type : types)
-            if (columnType == type)
-                return;
-        throw new IllegalArgumentException("Column index " + columnIndex + " is type " + columnType);
+        if (columnType != type)
+            throw new IllegalArgumentException("Column index " + columnIndex + " is type " + columnType);
     }
 
     /** Reads a string from a buffer with a specific encoding. */
@@ -650,4 +734,124 @@ public abstract class VoltTableRow {
         }
         return retval;
     }
+
+    /**
+     * A reusable {@link java.lang.CharSequence CharSequence} that points at a
+     * UTF-8 encoded string value inside of a table's buffer. The bytes are only
+     * decoded when the characters are asked for, and only into an array that is
+     * reused every time that the view is pointed at a new value.
+     */
+    public static final class StringView implements CharSequence {
+        private ByteBuffer m_buffer;
+        private int m_offset;
+        private int m_byteLength;
+        private char[] m_chars = new char[32];
+        private int m_charLength = -1;
+
+        public StringView() {}
+
+        final void set(ByteBuffer buffer, int offset, int byteLength) {
+            m_buffer = buffer;
+            m_offset = offset;
+            m_byteLength = byteLength;
+            m_charLength = -1;
+        }
+
+        /**
+         * Returns the length of the UTF-8 encoded value in bytes
+         */
+        public int byteLength() {
+            return m_byteLength;
+        }
+
+        /**
+         * Returns the byte at the given index of the UTF-8 encoded value
+         */
+        public byte byteAt(int index) {
+            if (index < 0 || index >= m_byteLength)
+                throw new IndexOutOfBoundsException("index = " + index + "; length = " + m_byteLength);
+            return m_buffer.get(m_offset + index);
+        }
+
+        /**
+         * Copy the UTF-8 encoded value into the given array
+         * @param dest The destination array
+         * @param destOffset Where in the destination array to start writing
+         */
+        public void getBytes(byte[] dest, int destOffset) {
+            for (int i = 0; i < m_byteLength; i++) {
+                dest[destOffset + i] = m_buffer.get(m_offset + i);
+            }
+        }
+
+        private void decode() {
+            if (m_charLength >= 0)
+                return;
+            // A UTF-8 string never has more chars than bytes
+            if (m_chars.length < m_byteLength)
+                m_chars = new char[m_byteLength];
+            final ByteBuffer b = m_buffer;
+            final int end = m_offset + m_byteLength;
+            int pos = m_offset;
+            int n = 0;
+            while (pos < end) {
+                final int c = b.get(pos++) & 0xFF;
+                if (c < 0x80) {
+                    m_chars[n++] = (char)c;
+                } else if ((c & 0xE0) == 0xC0) {
+                    m_chars[n++] = (char)(((c & 0x1F) << 6) | (b.get(pos++) & 0x3F));
+                } else if ((c & 0xF0) == 0xE0) {
+                    m_chars[n++] = (char)(((c & 0x0F) << 12) | ((b.get(pos++) & 0x3F) << 6) | (b.get(pos++) & 0x3F));
+                } else {
+                    final int cp = ((c & 0x07) << 18) | ((b.get(pos++) & 0x3F) << 12) |
+                                   ((b.get(pos++) & 0x3F) << 6) | (b.get(pos++) & 0x3F);
+                    n += Character.toChars(cp, m_chars, n);
+                }
+            }
+            m_charLength = n;
+        }
+
+        @Override
+        public int length() {
+            decode();
+            return m_charLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            decode();
+            if (index < 0 || index >= m_charLength)
+                throw new IndexOutOfBoundsException("index = " + index + "; length = " + m_charLength);
+            return m_chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            decode();
+            if (start < 0 || end > m_charLength || start > end)
+                throw new IndexOutOfBoundsException("start = " + start + "; end = " + end + "; length = " + m_charLength);
+            return new String(m_chars, start, end - start);
+        }
+
+        /**
+         * Returns true if this view has the same characters as the given sequence.
+         * Does not allocate anything.
+         */
+        public boolean contentEquals(CharSequence other) {
+            decode();
+            if (other.length() != m_charLength)
+                return false;
+            for (int i = 0; i < m_charLength; i++) {
+                if (m_chars[i] != other.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            decode();
+            return new String(m_chars, 0, m_charLength);
+        }
+    }
 }
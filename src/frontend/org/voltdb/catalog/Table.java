@@ -34,6 +34,7 @@ public class Table extends CatalogType {
     CatalogMap<MaterializedViewInfo> m_views;
     boolean m_systable;
     boolean m_mapreduce;
+    boolean m_columnar;
 
     void setBaseValues(Catalog catalog, CatalogType parent, String path, String name) {
         super.setBaseValues(catalog, parent, path, name);
@@ -51,6 +52,7 @@ public class Table extends CatalogType {
         this.addField("materializer", null);
         this.addField("systable", m_systable);
         this.addField("mapreduce", m_mapreduce);
+        this.addField("columnar", m_columnar);
     }
 
     public void update() {
@@ -58,6 +60,7 @@ public class Table extends CatalogType {
         m_estimatedtuplecount = (Integer) m_fields.get("estimatedtuplecount");
         m_systable = (Boolean) m_fields.get("systable");
         m_mapreduce = (Boolean) m_fields.get("mapreduce");
+        m_columnar = (Boolean) m_fields.get("columnar");
     }
 
     /** GETTER: The set of columns in the table */
@@ -126,6 +129,11 @@ public class Table extends CatalogType {
         return m_mapreduce;
     }
 
+    /** GETTER: Is this table stored in a read-optimized columnar layout? */
+    public boolean getColumnar() {
+        return m_columnar;
+    }
+
     /** SETTER: Is the table replicated? */
     public void setIsreplicated(boolean value) {
         m_isreplicated = value; m_fields.put("isreplicated", value);
@@ -156,4 +164,9 @@ public class Table extends CatalogType {
         m_mapreduce = value; m_fields.put("mapreduce", value);
     }
 
+    /** SETTER: Is this table stored in a read-optimized columnar layout? */
+    public void setColumnar(boolean value) {
+        m_columnar = value; m_fields.put("columnar", value);
+    }
+
 }
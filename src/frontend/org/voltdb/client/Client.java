@@ -211,6 +211,13 @@ public interface Client {
     
     public ProfileMeasurement getQueueTime();
 
+    /**
+     * Get the live client-side latency, backpressure, and routing counters. These can be
+     * sampled at any time without blocking the threads that are invoking procedures.
+     * @return Counters that are updated for as long as this client is open
+     */
+    public ClientStats getClientStats();
+
     /**
      * Get an identifier for the cluster that this client is currently connected to.
      * Will be null if the client has not been connected
@@ -130,7 +130,16 @@ final class ClientImpl implements Client {
                 maxArenaSizes,
                 heavyweight,
                 statsSettings,
-                m_backpressureWait);
+                m_backpressureWait,
+                m_hstoreConf.client.compact_protocol);
+        if (m_hstoreConf.client.pipeline) {
+            m_distributer.enablePipelining(m_hstoreConf.client.pipeline_flush_interval,
+                                           m_hstoreConf.client.pipeline_batch_size);
+        }
+        if (m_hstoreConf.client.callback_threads > 0) {
+            m_distributer.setCallbackThreads(m_hstoreConf.client.callback_threads);
+        }
+        m_distributer.setLeastLoadedRouting(m_hstoreConf.client.least_loaded_routing);
         m_distributer.addClientStatusListener(new CSL());
     }
 
@@ -150,7 +159,12 @@ final class ClientImpl implements Client {
         }
         final String subProgram = (program == null) ? "" : program;
         final String subPassword = (password == null) ? "" : password;
-        m_distributer.createConnection(site_id, host, port, subProgram, subPassword);
+        // Open multiple connections to the same site so that no single connection's
+        // network thread becomes the bottleneck. The Distributer balances between them
+        int num_connections = (site_id != null ? Math.max(1, m_hstoreConf.client.connections_per_site) : 1);
+        for (int i = 0; i < num_connections; i++) {
+            m_distributer.createConnection(site_id, host, port, subProgram, subPassword);
+        } // FOR
     }
     
     /**
@@ -176,6 +190,7 @@ final class ClientImpl implements Client {
         if (m_catalog != null && procName.startsWith("@") == false) {
             try {
                 Integer partition = m_pEstimator.getBasePartition(invocation);
+                m_distributer.getClientStats().recordRouting(partition);
                 if (partition != null) {
                     site_id = m_partitionSiteXref.get(partition);
                     invocation.setBasePartition(partition.intValue());
@@ -260,6 +275,7 @@ final class ClientImpl implements Client {
         if (m_catalog != null && procName.startsWith("@") == false) {
             try {
                 Integer partition = m_pEstimator.getBasePartition(invocation);
+                m_distributer.getClientStats().recordRouting(partition);
                 if (partition != null) {
                     site_id = m_partitionSiteXref.get(partition);
                     invocation.setBasePartition(partition.intValue());
@@ -326,7 +342,9 @@ final class ClientImpl implements Client {
 //                    if (debug.get())
                         LOG.info(String.format("Blocking client due to backup pressure [backPressure=%s, #connections=%d]",
                                                 m_backpressure, m_distributer.getConnectionCount()));
+                    long start = System.currentTimeMillis();
                     m_backpressureLock.wait(m_backpressureWait);
+                    m_distributer.getClientStats().recordBlocked(System.currentTimeMillis() - start);
                     m_backpressure = false;
                     if (debug.get())
                         LOG.debug(String.format("Unblocking client [m_backpressure=%s]", m_backpressure));
@@ -407,6 +425,11 @@ final class ClientImpl implements Client {
         return m_distributer.getProcedureStats(false);
     }
 
+    @Override
+    public ClientStats getClientStats() {
+        return m_distributer.getClientStats();
+    }
+
     @Override
     public String getBuildString() {
         return m_distributer.getBuildString();
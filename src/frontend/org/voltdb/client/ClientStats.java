@@ -0,0 +1,337 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONString;
+import org.json.JSONStringer;
+
+/**
+ * Client-side instrumentation that can be used to tell whether slow responses are
+ * caused by the client, the network, or the server. Everything is updated with atomic
+ * counters, so it can be sampled at any time without blocking the threads that are
+ * sending requests or processing responses.
+ * <ul>
+ * <li>Per-procedure latency histograms for the client round trip and the time spent in the cluster.
+ * <li>Per-connection in-flight requests and the time spent throttled by the server.
+ * <li>How many requests were routed to each partition.
+ * <li>How long the client blocked in {@link Client#backpressureBarrier()}.
+ * </ul>
+ */
+public class ClientStats implements JSONString {
+
+    public enum Members {
+        TIMESTAMP,
+        PROCEDURES,
+        CONNECTIONS,
+        PARTITIONS,
+        UNROUTED,
+        BLOCKED_COUNT,
+        BLOCKED_TIME,
+    }
+
+    /**
+     * Response counters for a single stored procedure
+     */
+    public static class ProcedureCounters {
+        private final String name;
+        private final LatencyHistogram roundtrip = new LatencyHistogram();
+        private final LatencyHistogram cluster_roundtrip = new LatencyHistogram();
+        private final AtomicLong aborts = new AtomicLong(0);
+        private final AtomicLong errors = new AtomicLong(0);
+
+        private ProcedureCounters(String name) {
+            this.name = name;
+        }
+        public String getName() {
+            return (this.name);
+        }
+        /** Time from when the client queued the request until it got the response */
+        public LatencyHistogram getRoundtrip() {
+            return (this.roundtrip);
+        }
+        /** Time from when the server got the request until it sent the response */
+        public LatencyHistogram getClusterRoundtrip() {
+            return (this.cluster_roundtrip);
+        }
+        public long getAbortCount() {
+            return (this.aborts.get());
+        }
+        public long getErrorCount() {
+            return (this.errors.get());
+        }
+
+        private void toJSON(JSONStringer stringer) throws JSONException {
+            stringer.key("ABORTS").value(this.aborts.get());
+            stringer.key("ERRORS").value(this.errors.get());
+            stringer.key("ROUNDTRIP").object();
+            this.roundtrip.toJSON(stringer);
+            stringer.endObject();
+            stringer.key("CLUSTER_ROUNDTRIP").object();
+            this.cluster_roundtrip.toJSON(stringer);
+            stringer.endObject();
+        }
+    }
+
+    /**
+     * Counters for a single connection to a server
+     */
+    public static class ConnectionCounters {
+        private final String hostname;
+        private final int port;
+        private final Integer site_id;
+        private final AtomicInteger in_flight = new AtomicInteger(0);
+        private final AtomicLong backpressure_start = new AtomicLong(0);
+        private final AtomicLong backpressure_count = new AtomicLong(0);
+        private final AtomicLong backpressure_time = new AtomicLong(0);
+        private volatile boolean connected = true;
+
+        private ConnectionCounters(String hostname, int port, Integer site_id) {
+            this.hostname = hostname;
+            this.port = port;
+            this.site_id = site_id;
+        }
+
+        void requestSent() {
+            this.in_flight.incrementAndGet();
+        }
+        void responseReceived() {
+            this.in_flight.decrementAndGet();
+        }
+        void backpressureStarted(long now) {
+            if (this.backpressure_start.compareAndSet(0, now)) {
+                this.backpressure_count.incrementAndGet();
+            }
+        }
+        void backpressureEnded(long now) {
+            long start = this.backpressure_start.getAndSet(0);
+            if (start > 0) this.backpressure_time.addAndGet(now - start);
+        }
+        void disconnected() {
+            this.connected = false;
+            this.in_flight.set(0);
+            this.backpressureEnded(System.currentTimeMillis());
+        }
+
+        public String getHostname() {
+            return (this.hostname);
+        }
+        public int getPort() {
+            return (this.port);
+        }
+        /** The site that this connection was created for. May be null */
+        public Integer getSiteId() {
+            return (this.site_id);
+        }
+        public boolean isConnected() {
+            return (this.connected);
+        }
+        /** The number of requests that were sent on this connection that do not have a response yet */
+        public int getInFlightCount() {
+            return (this.in_flight.get());
+        }
+        /** The number of times that the server told the client to back off on this connection */
+        public long getBackpressureCount() {
+            return (this.backpressure_count.get());
+        }
+        /** The total time in milliseconds that this connection has been under backpressure, including now */
+        public long getBackpressureTime() {
+            long time = this.backpressure_time.get();
+            long start = this.backpressure_start.get();
+            if (start > 0) time += System.currentTimeMillis() - start;
+            return (time);
+        }
+
+        private void toJSON(JSONStringer stringer) throws JSONException {
+            stringer.key("HOSTNAME").value(this.hostname);
+            stringer.key("PORT").value(this.port);
+            stringer.key("SITE").value(this.site_id);
+            stringer.key("CONNECTED").value(this.connected);
+            stringer.key("IN_FLIGHT").value(this.getInFlightCount());
+            stringer.key("BACKPRESSURE_COUNT").value(this.getBackpressureCount());
+            stringer.key("BACKPRESSURE_TIME").value(this.getBackpressureTime());
+        }
+    }
+
+    private final ConcurrentHashMap<String, ProcedureCounters> procedures = new ConcurrentHashMap<String, ProcedureCounters>();
+    private final CopyOnWriteArrayList<ConnectionCounters> connections = new CopyOnWriteArrayList<ConnectionCounters>();
+    private final ConcurrentHashMap<Integer, AtomicLong> partitions = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLong unrouted = new AtomicLong(0);
+    private final AtomicLong blocked_count = new AtomicLong(0);
+    private final AtomicLong blocked_time = new AtomicLong(0);
+
+    // ----------------------------------------------------------------------------
+    // UPDATE METHODS
+    // ----------------------------------------------------------------------------
+
+    ConnectionCounters addConnection(String hostname, int port, Integer site_id) {
+        ConnectionCounters cc = new ConnectionCounters(hostname, port, site_id);
+        this.connections.add(cc);
+        return (cc);
+    }
+
+    void recordResponse(String procName, int roundtrip, int cluster_roundtrip, boolean abort, boolean error) {
+        ProcedureCounters pc = this.procedures.get(procName);
+        if (pc == null) {
+            pc = new ProcedureCounters(procName);
+            ProcedureCounters existing = this.procedures.putIfAbsent(procName, pc);
+            if (existing != null) pc = existing;
+        }
+        pc.roundtrip.add(roundtrip);
+        pc.cluster_roundtrip.add(cluster_roundtrip);
+        if (abort) pc.aborts.incrementAndGet();
+        if (error) pc.errors.incrementAndGet();
+    }
+
+    /**
+     * Record that a request was routed to the given partition. If the partition is
+     * null, then the client did not know where to send it.
+     * @param partition
+     */
+    void recordRouting(Integer partition) {
+        if (partition == null) {
+            this.unrouted.incrementAndGet();
+            return;
+        }
+        AtomicLong ctr = this.partitions.get(partition);
+        if (ctr == null) {
+            ctr = new AtomicLong(0);
+            AtomicLong existing = this.partitions.putIfAbsent(partition, ctr);
+            if (existing != null) ctr = existing;
+        }
+        ctr.incrementAndGet();
+    }
+
+    void recordBlocked(long time) {
+        this.blocked_count.incrementAndGet();
+        this.blocked_time.addAndGet(time);
+    }
+
+    // ----------------------------------------------------------------------------
+    // ACCESS METHODS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Return the counters for the given procedure, or null if there have not been
+     * any responses for it yet
+     * @param procName
+     * @return
+     */
+    public ProcedureCounters getProcedure(String procName) {
+        return (this.procedures.get(procName));
+    }
+
+    public Collection<ProcedureCounters> getProcedures() {
+        return (this.procedures.values());
+    }
+
+    public Collection<ConnectionCounters> getConnections() {
+        return (this.connections);
+    }
+
+    /**
+     * Return the number of requests that were routed to each partition
+     * @return
+     */
+    public Map<Integer, Long> getPartitionCounts() {
+        Map<Integer, Long> m = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, AtomicLong> e : this.partitions.entrySet()) {
+            m.put(e.getKey(), e.getValue().get());
+        } // FOR
+        return (m);
+    }
+
+    /** The number of requests that the client could not pick a partition for */
+    public long getUnroutedCount() {
+        return (this.unrouted.get());
+    }
+
+    /** The total number of requests on all connections that are waiting for a response */
+    public int getInFlightCount() {
+        int total = 0;
+        for (ConnectionCounters cc : this.connections) {
+            total += cc.getInFlightCount();
+        } // FOR
+        return (total);
+    }
+
+    /** The number of times that the client blocked because of backpressure */
+    public long getBlockedCount() {
+        return (this.blocked_count.get());
+    }
+
+    /** The total time in milliseconds that the client blocked because of backpressure */
+    public long getBlockedTime() {
+        return (this.blocked_time.get());
+    }
+
+    // ----------------------------------------------------------------------------
+    // SERIALIZATION
+    // ----------------------------------------------------------------------------
+
+    public void toJSON(JSONStringer stringer) throws JSONException {
+        stringer.key(Members.TIMESTAMP.name()).value(System.currentTimeMillis());
+
+        stringer.key(Members.PROCEDURES.name()).object();
+        for (ProcedureCounters pc : new TreeMap<String, ProcedureCounters>(this.procedures).values()) {
+            stringer.key(pc.name).object();
+            pc.toJSON(stringer);
+            stringer.endObject();
+        } // FOR
+        stringer.endObject();
+
+        stringer.key(Members.CONNECTIONS.name()).array();
+        for (ConnectionCounters cc : this.connections) {
+            stringer.object();
+            cc.toJSON(stringer);
+            stringer.endObject();
+        } // FOR
+        stringer.endArray();
+
+        stringer.key(Members.PARTITIONS.name()).object();
+        for (Map.Entry<Integer, Long> e : this.getPartitionCounts().entrySet()) {
+            stringer.key(e.getKey().toString()).value(e.getValue());
+        } // FOR
+        stringer.endObject();
+
+        stringer.key(Members.UNROUTED.name()).value(this.getUnroutedCount());
+        stringer.key(Members.BLOCKED_COUNT.name()).value(this.getBlockedCount());
+        stringer.key(Members.BLOCKED_TIME.name()).value(this.getBlockedTime());
+    }
+
+    @Override
+    public String toJSONString() {
+        JSONStringer stringer = new JSONStringer();
+        try {
+            stringer.object();
+            this.toJSON(stringer);
+            stringer.endObject();
+        } catch (JSONException ex) {
+            throw new RuntimeException(ex);
+        }
+        return (stringer.toString());
+    }
+}
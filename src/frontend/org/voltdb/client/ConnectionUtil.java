@@ -88,12 +88,31 @@ public class ConnectionUtil {
      * @returns An array of objects. The first is an
      * authenticated socket channel, the second. is an array of 4 longs -
      * Integer hostId, Long connectionId, Long timestamp (part of instanceId), Int leaderAddress (part of instanceId).
-     * The last object is the build string
+     * The third object is the build string and the last is the wire protocol version as a Byte
      */
     public static Object[] getAuthenticatedConnection(
             String host, String username, String password, int port) throws IOException
     {
-        return getAuthenticatedConnection("database", host, username, password, port);
+        return getAuthenticatedConnection("database", host, username, password, port, ClientResponseImpl.PROTOCOL_VERSION_LEGACY);
+    }
+
+    /**
+     * Create a connection to a Volt server and authenticate the connection. Ask the server
+     * to use the given wire protocol version. The version that the server agreed to is
+     * returned as the last object in the array. Servers that do not know about
+     * the protocol versions will always answer with {@link ClientResponseImpl#PROTOCOL_VERSION_LEGACY}.
+     * @param host
+     * @param username
+     * @param password
+     * @param port
+     * @param protocolVersion
+     * @throws IOException
+     * @see #getAuthenticatedConnection(String, String, String, int)
+     */
+    public static Object[] getAuthenticatedConnection(
+            String host, String username, String password, int port, byte protocolVersion) throws IOException
+    {
+        return getAuthenticatedConnection("database", host, username, password, port, protocolVersion);
     }
 
     /**
@@ -106,22 +125,22 @@ public class ConnectionUtil {
      * @returns An array of objects. The first is an
      * authenticated socket channel, the second. is an array of 4 longs -
      * Integer hostId, Long connectionId, Long timestamp (part of instanceId), Int leaderAddress (part of instanceId).
-     * The last object is the build string
+     * The third object is the build string and the last is the wire protocol version as a Byte
      */
     public static Object[] getAuthenticatedExportConnection(
             String host, String username, String password, int port) throws IOException
     {
-        return getAuthenticatedConnection("export", host, username, password, port);
+        return getAuthenticatedConnection("export", host, username, password, port, ClientResponseImpl.PROTOCOL_VERSION_LEGACY);
     }
 
 
     private static Object[] getAuthenticatedConnection(
-            String service, String host, String username, String password, int port)
+            String service, String host, String username, String password, int port, byte protocolVersion)
     throws IOException {
         LOG.debug("Ok, so now we're looking for an authenticated connection");
         LOG.debug("[service=" + service + ", host=" + host + ", user=" + username + ", pass=" + password + ", port=" + port + "]");
         
-        Object returnArray[] = new Object[3];
+        Object returnArray[] = new Object[4];
         boolean success = false;
         InetSocketAddress addr = new InetSocketAddress(host, port);
         SocketChannel aChannel = SocketChannel.open(addr);
@@ -149,7 +168,7 @@ public class ConnectionUtil {
             byte passwordHash[] = md.digest(password.getBytes());
             FastSerializer fs = new FastSerializer();
             fs.writeInt(0);             // placeholder for length
-            fs.writeByte(0);            // version
+            fs.writeByte(protocolVersion); // version
             fs.writeString(service);    // data service (export|database)
             fs.writeString(username);
             fs.write(passwordHash);
@@ -201,7 +220,8 @@ public class ConnectionUtil {
                 throw new IOException("Authentication rejected");
             } else {
                 loginResponse.flip();
-                loginResponse.position(1);
+                // Older servers always send zero here
+                returnArray[3] = loginResponse.get();
                 loginResponseCode = loginResponse.get();
             }
 
@@ -23,11 +23,18 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.collections15.map.ListOrderedMap;
 import org.apache.log4j.Logger;
@@ -39,6 +46,7 @@ import org.voltdb.VoltType;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializable;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.messaging.WireSchemaRegistry;
 import org.voltdb.network.Connection;
 import org.voltdb.network.QueueMonitor;
 import org.voltdb.network.VoltNetwork;
@@ -51,7 +59,6 @@ import edu.brown.hstore.HStoreSite;
 import edu.brown.hstore.Hstoreservice;
 import edu.brown.logging.LoggerUtil;
 import edu.brown.logging.LoggerUtil.LoggerBoolean;
-import edu.brown.utils.CollectionUtil;
 import edu.brown.utils.StringUtil;
 
 /**
@@ -71,16 +78,28 @@ class Distributer {
     // collection of connections to the cluster
     private final ArrayList<NodeConnection> m_connections = new ArrayList<NodeConnection>();
     
-    /** SiteId -> NodeConnection */
-    private final Map<Integer, Collection<NodeConnection>> m_connectionSiteXref = new HashMap<Integer, Collection<NodeConnection>>();
+    /**
+     * SiteId -> NodeConnections
+     * Only modified while holding the Distributer's lock, but read without it
+     */
+    private final Map<Integer, List<NodeConnection>> m_connectionSiteXref = new ConcurrentHashMap<Integer, List<NodeConnection>>();
+    
+    /** Where to start looking when picking between a site's connections */
+    private final AtomicInteger m_nextSiteConnection = new AtomicInteger(0);
 
     private final ArrayList<ClientStatusListener> m_listeners = new ArrayList<ClientStatusListener>();
 
     //Selector and connection handling, does all work in blocking selection thread
     private final VoltNetwork m_network;
 
-    // Temporary until a distribution/affinity algorithm is written
+    // Where to start looking for the next connection when an invocation does not have a site
     private int m_nextConnection = 0;
+    
+    /**
+     * If true, then invocations without a site go to the site with the fewest
+     * outstanding requests. Otherwise they are sent round-robin
+     */
+    private boolean m_leastLoadedRouting = false;
 
     private final int m_expectedOutgoingMessageSize;
 
@@ -89,6 +108,9 @@ class Distributer {
     private final boolean m_useMultipleThreads;
     
     private final int m_backpressureWait;
+    
+    /** Ask the servers to use the compact wire protocol */
+    private final boolean m_compactProtocol;
 
     private final String m_hostname;
 
@@ -98,6 +120,41 @@ class Distributer {
     private Object m_clusterInstanceId[];
 
     private final ClientStatsLoader m_statsLoader;
+    
+    /**
+     * Pipelining: caller threads hand off serialized invocations to their
+     * connection and the flusher writes them out in batches
+     */
+    private PipelineFlusher m_flusher = null;
+    private long m_pipelineFlushInterval;
+    private int m_pipelineBatchSize;
+    private final CopyOnWriteArrayList<NodeConnection> m_pipelinedConnections = new CopyOnWriteArrayList<NodeConnection>();
+    
+    /** If set, then procedure callbacks are invoked here instead of in the network thread */
+    private ExecutorService m_callbackExecutor = null;
+    private final AtomicInteger m_callbacksInFlight = new AtomicInteger(0);
+
+    
+    /** Latency, backpressure and routing counters that can be sampled without locks */
+    private final ClientStats m_clientStats = new ClientStats();
+    
+    private class CallbackRunner implements Runnable {
+        private final ProcedureCallback cb;
+        private final ClientResponse response;
+        
+        public CallbackRunner(ProcedureCallback cb, ClientResponse response) {
+            this.cb = cb;
+            this.response = response;
+        }
+        @Override
+        public void run() {
+            try {
+                this.cb.clientCallback(this.response);
+            } finally {
+                m_callbacksInFlight.decrementAndGet();
+            }
+        }
+    }
     private String m_buildString;
 
     private static class ProcedureStats {
@@ -164,6 +221,46 @@ class Distributer {
             this.name = name;
         }
     }
+    
+    /**
+     * A serialized invocation that a caller thread has handed off to a connection
+     * but that the PipelineFlusher has not written out yet
+     */
+    class PendingInvocation {
+        final long handle;
+        final BBContainer c;
+        final CallbackValues values;
+        
+        public PendingInvocation(long handle, BBContainer c, CallbackValues values) {
+            this.handle = handle;
+            this.c = c;
+            this.values = values;
+        }
+    }
+    
+    /**
+     * Wakes up every flush interval and writes out the invocations that have been
+     * handed off to each connection as a single batch. Caller threads will wake it
+     * up early if a connection has a full batch waiting.
+     */
+    private class PipelineFlusher extends Thread {
+        private volatile boolean stop = false;
+        
+        public PipelineFlusher() {
+            super(Distributer.class.getSimpleName() + "-Flusher");
+            this.setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            while (this.stop == false) {
+                LockSupport.parkNanos(m_pipelineFlushInterval);
+                for (NodeConnection cxn : m_pipelinedConnections) {
+                    cxn.flushPending();
+                } // FOR
+            } // WHILE
+        }
+    }
 
     class NodeConnection extends VoltProtocolHandler implements org.voltdb.network.QueueMonitor {
         private final HashMap<Long, CallbackValues> m_callbacks;
@@ -174,7 +271,7 @@ class Distributer {
         private Connection m_connection;
         private String m_hostname;
         private int m_port;
-        private boolean m_isConnected = true;
+        private volatile boolean m_isConnected = true;
         private final AtomicBoolean m_hasBackPressure = new AtomicBoolean(false);
         private long m_hasBackPressureTimestamp = -1;
         private int m_lastServerTimestamp = Integer.MIN_VALUE;
@@ -187,16 +284,33 @@ class Distributer {
         private long m_lastInvocationAborts = 0;
         private long m_invocationErrors = 0;
         private long m_lastInvocationErrors = 0;
+        
+        /** Whether the server agreed to use the compact wire protocol */
+        private final boolean m_compact;
+        /** Table schemas that the server has defined on this connection */
+        private final WireSchemaRegistry m_schemas;
+        
+        /** Invocations handed off by caller threads that have not been written yet */
+        private final ConcurrentLinkedQueue<PendingInvocation> m_pending = new ConcurrentLinkedQueue<PendingInvocation>();
+        private final AtomicInteger m_pendingCount = new AtomicInteger(0);
+        private long m_pipelineFlushes = 0;
+        private long m_pipelineInvocations = 0;
+        
+        /** Lock-free counters that are exposed through ClientStats */
+        private final ClientStats.ConnectionCounters m_counters;
 
-        public NodeConnection(long ids[]) {
+        public NodeConnection(long ids[], byte protocolVersion, ClientStats.ConnectionCounters counters) {
             m_callbacks = new HashMap<Long, CallbackValues>();
+            m_counters = counters;
             m_hostId = (int)ids[0];
             m_connectionId = ids[1];
+            m_compact = (protocolVersion == ClientResponseImpl.PROTOCOL_VERSION_COMPACT);
+            m_schemas = (m_compact ? new WireSchemaRegistry() : null);
         }
         
         @Override
         public String toString() {
-            return (String.format("NodeConnection[id=%d, host=%s, port=%d]", m_hostId, m_hostname, m_port));
+            return (String.format("NodeConnection[id=%d, host=%s, port=%d, compact=%s]", m_hostId, m_hostname, m_port, m_compact));
         }
 
         public void createWork(long now, long handle, String name, BBContainer c, ProcedureCallback callback) {
@@ -210,6 +324,7 @@ class Distributer {
                     return;
                 }
                 m_callbacks.put(handle, new CallbackValues(now, callback, name));
+                m_counters.requestSent();
             }
             m_connection.writeStream().enqueue(c);
         }
@@ -224,9 +339,75 @@ class Distributer {
                     return;
                 }
                 m_callbacks.put(handle, new CallbackValues(now, callback, name));
+                m_counters.requestSent();
             }
             m_connection.writeStream().enqueue(f);
         }
+        
+        /**
+         * Hand off a serialized invocation without taking any locks. It will be written
+         * out with the rest of this connection's batch by the PipelineFlusher.
+         */
+        public void queuePipelinedWork(long now, long handle, String name, BBContainer c, ProcedureCallback callback) {
+            if (!m_isConnected) {
+                createWork(now, handle, name, c, callback);
+                return;
+            }
+            m_pending.offer(new PendingInvocation(handle, c, new CallbackValues(now, callback, name)));
+            if (m_pendingCount.incrementAndGet() >= m_pipelineBatchSize) {
+                LockSupport.unpark(m_flusher);
+            }
+            // If we lost a race with stopping(), then nobody else is going to fail these
+            if (!m_isConnected) {
+                flushPending();
+            }
+        }
+        
+        /**
+         * Register the callbacks for all of the pending invocations and then queue them
+         * in the write stream together, so the network thread only gets woken up once.
+         * The batch is queued while holding this connection's lock so that batches are
+         * always written in the same order that their invocations were pulled off the queue.
+         * If the connection has been lost then the pending invocations are failed.
+         */
+        void flushPending() {
+            if (m_pending.isEmpty()) return;
+            
+            synchronized (this) {
+                PendingInvocation p = null;
+                if (!m_isConnected) {
+                    final ClientResponse r = new ClientResponseImpl(-1, -1, -1, Hstoreservice.Status.ABORT_CONNECTION_LOST,
+                            new VoltTable[0], "Connection to database host (" + m_hostname +
+                            ") was lost before a response was received");
+                    while ((p = m_pending.poll()) != null) {
+                        m_pendingCount.decrementAndGet();
+                        p.c.discard();
+                        p.values.callback.clientCallback(r);
+                    } // WHILE
+                    return;
+                }
+                
+                BBContainer batch[] = new BBContainer[Math.max(16, m_pendingCount.get())];
+                int count = 0;
+                while ((p = m_pending.poll()) != null) {
+                    m_callbacks.put(p.handle, p.values);
+                    m_counters.requestSent();
+                    if (count == batch.length) {
+                        BBContainer temp[] = new BBContainer[batch.length * 2];
+                        System.arraycopy(batch, 0, temp, 0, count);
+                        batch = temp;
+                    }
+                    batch[count++] = p.c;
+                } // WHILE
+                m_pendingCount.addAndGet(-count);
+                m_pipelineFlushes++;
+                m_pipelineInvocations += count;
+                
+                if (trace.get())
+                    LOG.trace(String.format("Flushing %d pipelined invocations to %s", count, this));
+                m_connection.writeStream().enqueue(batch, count);
+            } // SYNCH
+        }
 
         private void updateStats(
                 String name,
@@ -246,6 +427,7 @@ class Distributer {
         public void handleMessage(ByteBuffer buf, Connection c) {
             ClientResponseImpl response = null;
             FastDeserializer fds = new FastDeserializer(buf);
+            fds.setSchemaRegistry(m_schemas);
             try {
                 response = fds.readObject(ClientResponseImpl.class);
             } catch (IOException e) {
@@ -274,6 +456,7 @@ class Distributer {
                 stuff = m_callbacks.remove(clientHandle);
             
                 if (stuff != null) {
+                    m_counters.responseReceived();
                     callTime = stuff.time;
                     delta = (int)(now - callTime);
                     cb = stuff.callback;
@@ -308,12 +491,14 @@ class Distributer {
                         if (should_throttle == false && m_hasBackPressure.compareAndSet(true, should_throttle)) {
                             if (debug.get()) LOG.debug(String.format("Disabling throttling mode [counter=%d]", m_invocationsThrottled));
                             m_connection.writeStream().setBackPressure(false);
+                            m_counters.backpressureEnded(now);
                             
                         } else if (should_throttle == true && m_hasBackPressure.compareAndSet(false, true)) {
                             m_invocationsThrottled++;
                             if (debug.get()) LOG.debug(String.format("Enabling throttling mode [counter=%d]", m_invocationsThrottled));
                             m_connection.writeStream().setBackPressure(true);
                             m_hasBackPressureTimestamp = now;
+                            m_counters.backpressureStarted(now);
                         }
                     }
                 } else {
@@ -330,13 +515,19 @@ class Distributer {
                     error = true;
                 }
                 updateStats(stuff.name, delta, response.getClusterRoundtrip(), abort, error);
+                m_clientStats.recordResponse(stuff.name, delta, response.getClusterRoundtrip(), abort, error);
             }
 
             if (cb != null) {
                 // We always need to call this so that we unblock the blocking client
                 // if (status != Hstoreservice.Status.ABORT_THROTTLED && status != Hstoreservice.Status.ABORT_REJECT) {
                     response.setClientRoundtrip(delta);
-                    cb.clientCallback(response);
+                    if (m_callbackExecutor != null) {
+                        m_callbacksInFlight.incrementAndGet();
+                        m_callbackExecutor.execute(new CallbackRunner(cb, response));
+                    } else {
+                        cb.clientCallback(response);
+                    }
                 //}
             } else if (m_isConnected) {
                 // TODO: what's the right error path here?
@@ -372,6 +563,7 @@ class Distributer {
 //                    assert(m_hasBackPressureTimestamp >= 0);
                     m_hasBackPressure.set(false);
                     m_hasBackPressureTimestamp = -1;
+                    m_counters.backpressureEnded(now);
                     return (false);
                 }
                 return (true);
@@ -386,12 +578,20 @@ class Distributer {
                 //Prevent queueing of new work to this connection
                 synchronized (Distributer.this) {
                     m_connections.remove(this);
+                    // New invocations for this connection's site will go to its other
+                    // connections, or get rerouted to another site if this was the last one
+                    Integer site_id = m_counters.getSiteId();
+                    if (site_id != null && m_connectionSiteXref.containsKey(site_id)) {
+                        m_connectionSiteXref.get(site_id).remove(this);
+                    }
                     //Notify listeners that a connection has been lost
                     for (ClientStatusListener s : m_listeners) {
                         s.connectionLost(m_hostname, m_connections.size());
                     }
                 }
                 m_isConnected = false;
+                m_pipelinedConnections.remove(this);
+                m_counters.disconnected();
 
                 //Invoke callbacks for all queued invocations with a failure response
                 final ClientResponse r =
@@ -402,6 +602,7 @@ class Distributer {
                     cbv.callback.clientCallback(r);
                 }
             }
+            this.flushPending();
         }
 
         @Override
@@ -485,10 +686,11 @@ class Distributer {
             synchronized (this) {
                 for (NodeConnection cxn : m_connections) {
                     synchronized(cxn.m_callbacks) {
-                        more = more || cxn.m_callbacks.size() > 0;
+                        more = more || cxn.m_callbacks.size() > 0 || cxn.m_pending.isEmpty() == false;
                     }
                 }
             }
+            more = more || m_callbacksInFlight.get() > 0;
             Thread.yield();
         } while(more);
 
@@ -517,6 +719,16 @@ class Distributer {
             boolean useMultipleThreads,
             StatsUploaderSettings statsSettings,
             int backpressureWait) {
+        this(expectedOutgoingMessageSize, arenaSizes, useMultipleThreads, statsSettings, backpressureWait, false);
+    }
+    
+    Distributer(
+            int expectedOutgoingMessageSize,
+            int arenaSizes[],
+            boolean useMultipleThreads,
+            StatsUploaderSettings statsSettings,
+            int backpressureWait,
+            boolean compactProtocol) {
 //        if (statsSettings != null) {
 //            m_statsLoader = new ClientStatsLoader(statsSettings, this);
 //        } else {
@@ -524,6 +736,7 @@ class Distributer {
 //        }
         m_useMultipleThreads = useMultipleThreads;
         m_backpressureWait = backpressureWait;
+        m_compactProtocol = compactProtocol;
         m_network = new VoltNetwork( useMultipleThreads, true, 3);
         m_expectedOutgoingMessageSize = expectedOutgoingMessageSize;
         m_network.start();
@@ -537,8 +750,8 @@ class Distributer {
         m_hostname = hostname;
         
         if (debug.get())
-            LOG.debug(String.format("Created new Distributer for %s [multiThread=%s, backpressureWait=%d]",
-                                    m_hostname, m_useMultipleThreads, m_backpressureWait));
+            LOG.debug(String.format("Created new Distributer for %s [multiThread=%s, backpressureWait=%d, compact=%s]",
+                                    m_hostname, m_useMultipleThreads, m_backpressureWait, m_compactProtocol));
 
 //        new Thread() {
 //            @Override
@@ -596,7 +809,9 @@ class Distributer {
         Object connectionStuff[] = null;
         try {
             connectionStuff =
-            ConnectionUtil.getAuthenticatedConnection(host, program, password, port);
+            ConnectionUtil.getAuthenticatedConnection(host, program, password, port,
+                                                      (m_compactProtocol ? ClientResponseImpl.PROTOCOL_VERSION_COMPACT :
+                                                                           ClientResponseImpl.PROTOCOL_VERSION_LEGACY));
         } catch (Exception ex) {
             LOG.error("Failed to get connection to " + host + ":" + port, ex);
             throw new IOException(ex);
@@ -626,19 +841,19 @@ class Distributer {
             }
         }
         m_buildString = (String)connectionStuff[2];
-        NodeConnection cxn = new NodeConnection(numbers);
+        NodeConnection cxn = new NodeConnection(numbers, (Byte)connectionStuff[3],
+                                                m_clientStats.addConnection(host, port, site_id));
         m_connections.add(cxn);
+        m_pipelinedConnections.add(cxn);
         if (site_id != null) {
             if (debug.get())
                 LOG.debug(String.format("Created connection for Site %s: %s", HStoreSite.formatSiteName(site_id), cxn));
-            synchronized (m_connectionSiteXref) {
-                Collection<NodeConnection> nc = m_connectionSiteXref.get(site_id);
-                if (nc == null) {
-                    nc = new HashSet<NodeConnection>();
-                    m_connectionSiteXref.put(site_id, nc);
-                }
-                nc.add(cxn);    
-            } // SYNCH
+            List<NodeConnection> nc = m_connectionSiteXref.get(site_id);
+            if (nc == null) {
+                nc = new CopyOnWriteArrayList<NodeConnection>();
+                m_connectionSiteXref.put(site_id, nc);
+            }
+            nc.add(cxn);
         }
         
         Connection c = m_network.registerChannel(aChannel, cxn);
@@ -688,10 +903,11 @@ class Distributer {
             throw new NoConnectionsException("No connections.");
         }
         if (site_id != null && m_connectionSiteXref.containsKey(site_id)) {
-             cxn = CollectionUtil.random(m_connectionSiteXref.get(site_id));
-//            cxn = CollectionUtil.first(m_connectionSiteXref.get(site_id));
+            cxn = this.getLeastLoaded(m_connectionSiteXref.get(site_id));
             if (cxn == null) {
-                LOG.warn("No direct connection to " + HStoreSite.formatSiteName(site_id));
+                if (debug.get())
+                    LOG.debug(String.format("No open connection to %s. Rerouting %s invocation",
+                                            HStoreSite.formatSiteName(site_id), invocation.getProcName()));
             } else backpressure = false; // XXX
 //            else if (!cxn.hadBackPressure(now) || ignoreBackpressure) {
 //                backpressure = false;
@@ -705,7 +921,27 @@ class Distributer {
          * Synchronization is necessary to ensure that m_connections is not modified
          * as well as to ensure that backpressure is reported correctly
          */
-        if (cxn == null) {
+        if (cxn == null && m_leastLoadedRouting) {
+            synchronized (this) {
+                int start = Math.abs(++m_nextConnection % totalConnections);
+                int best_load = Integer.MAX_VALUE;
+                for (int i = 0; i < totalConnections; ++i) {
+                    NodeConnection next = m_connections.get((start + i) % totalConnections);
+                    if (ignoreBackpressure == false && next.hadBackPressure(now)) continue;
+                    int load = this.getSiteLoad(next);
+                    if (load < best_load) {
+                        cxn = next;
+                        best_load = load;
+                    }
+                } // FOR
+                if (cxn != null) {
+                    if (trace.get())
+                        LOG.trace(String.format("Least-loaded connection is %s [load=%d]", cxn, best_load));
+                    backpressure = false;
+                }
+            } // SYNCH
+        }
+        else if (cxn == null) {
             synchronized (this) {
                 for (int i=0; i < totalConnections; ++i) {
                     int idx = Math.abs(++m_nextConnection % totalConnections);
@@ -737,10 +973,11 @@ class Distributer {
          * createWork synchronizes on an individual connection which allows for more concurrency
          */
         if (cxn != null) {
-            if (m_useMultipleThreads) {
+            if (m_useMultipleThreads && m_flusher == null) {
                 cxn.createWork(now, invocation.getClientHandle(), invocation.getProcName(), invocation, cb);
             } else {
                 final FastSerializer fs = new FastSerializer(m_pool, expectedSerializedSize);
+                fs.setCompact(cxn.m_compact, null);
                 BBContainer c = null;
                 try {
                     c = fs.writeObjectForMessaging(invocation);
@@ -748,7 +985,11 @@ class Distributer {
                     fs.getBBContainer().discard();
                     throw new RuntimeException(e);
                 }
-                cxn.createWork(now, invocation.getClientHandle(), invocation.getProcName(), c, cb);
+                if (m_flusher != null) {
+                    cxn.queuePipelinedWork(now, invocation.getClientHandle(), invocation.getProcName(), c, cb);
+                } else {
+                    cxn.createWork(now, invocation.getClientHandle(), invocation.getProcName(), c, cb);
+                }
             }
 //            final String invocationName = invocation.getProcName();
 //            if (reportedSizes.containsKey(invocationName)) {
@@ -767,6 +1008,54 @@ class Distributer {
         return !backpressure;
     }
 
+    /**
+     * Return the open connection in the given list that has the fewest requests
+     * waiting for a response. Ties are broken round-robin. Returns null if none
+     * of them are open.
+     * @param connections
+     * @return
+     */
+    private NodeConnection getLeastLoaded(List<NodeConnection> connections) {
+        NodeConnection best = null;
+        int best_load = Integer.MAX_VALUE;
+        int num_connections = connections.size();
+        int start = Math.abs(m_nextSiteConnection.getAndIncrement() % Math.max(1, num_connections));
+        for (int i = 0; i < num_connections; i++) {
+            NodeConnection cxn = null;
+            try {
+                cxn = connections.get((start + i) % num_connections);
+            } catch (IndexOutOfBoundsException ex) {
+                // A connection was removed while we were looking
+                break;
+            }
+            if (cxn.m_isConnected == false) continue;
+            int load = cxn.m_counters.getInFlightCount();
+            if (load < best_load) {
+                best = cxn;
+                best_load = load;
+            }
+        } // FOR
+        return (best);
+    }
+    
+    /**
+     * Return the number of outstanding requests for the site that the given connection
+     * belongs to, summed over all of that site's connections. If the connection
+     * was not created for a particular site, then it is just the connection's own count.
+     * @param cxn
+     * @return
+     */
+    private int getSiteLoad(NodeConnection cxn) {
+        Integer site_id = cxn.m_counters.getSiteId();
+        List<NodeConnection> site_cxns = (site_id != null ? m_connectionSiteXref.get(site_id) : null);
+        if (site_cxns == null) return (cxn.m_counters.getInFlightCount());
+        int load = 0;
+        for (NodeConnection other : site_cxns) {
+            load += other.m_counters.getInFlightCount();
+        } // FOR
+        return (load);
+    }
+
     /**
      * Shutdown the VoltNetwork allowing the Ports to close and free resources
      * like memory pools
@@ -776,12 +1065,85 @@ class Distributer {
         if (m_statsLoader != null) {
             m_statsLoader.stop();
         }
+        if (m_flusher != null) {
+            m_flusher.stop = true;
+            LockSupport.unpark(m_flusher);
+            m_flusher.join();
+        }
+        if (m_callbackExecutor != null) {
+            m_callbackExecutor.shutdown();
+        }
         m_network.shutdown();
         synchronized (this) {
             m_pool.clear();
         }
     }
 
+    /**
+     * Send invocations that are not for a particular site to the site with the
+     * fewest outstanding requests instead of round-robin
+     * @param enable
+     */
+    synchronized void setLeastLoadedRouting(boolean enable) {
+        m_leastLoadedRouting = enable;
+    }
+
+    /**
+     * Enable pipelining. Instead of queuing each invocation in the connection's write
+     * stream when it is submitted, caller threads hand them off without locking and
+     * a separate thread writes them out in batches. A batch is written every flush
+     * interval, or sooner if a connection has batchSize invocations waiting.
+     * @param flushInterval The flush interval in microseconds
+     * @param batchSize
+     */
+    synchronized void enablePipelining(int flushInterval, int batchSize) {
+        assert(m_flusher == null);
+        m_pipelineFlushInterval = flushInterval * 1000l;
+        m_pipelineBatchSize = batchSize;
+        m_flusher = new PipelineFlusher();
+        m_flusher.start();
+        if (debug.get())
+            LOG.debug(String.format("Enabled pipelining [flushInterval=%dus, batchSize=%d]", flushInterval, batchSize));
+    }
+    
+    /**
+     * Invoke procedure callbacks in a pool with the given number of threads instead
+     * of in the network thread that read the response. The pool is shut down when
+     * the Distributer is shut down.
+     * @param num_threads
+     */
+    synchronized void setCallbackThreads(int num_threads) {
+        assert(m_callbackExecutor == null);
+        m_callbackExecutor = Executors.newFixedThreadPool(num_threads, new ThreadFactory() {
+            private int ctr = 0;
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, Distributer.class.getSimpleName() + "-Callback-" + (ctr++));
+                t.setDaemon(true);
+                return (t);
+            }
+        });
+    }
+    
+    /**
+     * Returns the number of pipelined batches that have been written and the
+     * number of invocations that were in them for all of the open connections. In that order.
+     */
+    long[] getPipelineCounters() {
+        long ret[] = { 0, 0 };
+        for (NodeConnection cxn : m_pipelinedConnections) {
+            synchronized (cxn) {
+                ret[0] += cxn.m_pipelineFlushes;
+                ret[1] += cxn.m_pipelineInvocations;
+            } // SYNCH
+        } // FOR
+        return (ret);
+    }
+
+    ClientStats getClientStats() {
+        return (m_clientStats);
+    }
+
     synchronized void addClientStatusListener(ClientStatusListener listener) {
         if (!m_listeners.contains(listener)) {
             m_listeners.add(listener);
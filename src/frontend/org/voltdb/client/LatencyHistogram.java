@@ -0,0 +1,134 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+/**
+ * Lock-free histogram of latencies in milliseconds. Values below {@link #EXACT_LIMIT}
+ * each get their own bucket, and larger values are put in power-of-two buckets.
+ * Any number of threads can add values and read percentiles at the same time. A reader
+ * that races with writers may see a few values that are not in the count yet, but it
+ * never blocks them.
+ */
+public class LatencyHistogram {
+
+    /** Values below this get an exact bucket */
+    public static final int EXACT_LIMIT = 1024;
+    private static final int LOG_BASE = 10; // log2(EXACT_LIMIT)
+    private static final int NUM_BUCKETS = EXACT_LIMIT + (31 - LOG_BASE);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    private static int bucket(int value) {
+        if (value < EXACT_LIMIT) return (value);
+        return (EXACT_LIMIT + (31 - Integer.numberOfLeadingZeros(value)) - LOG_BASE);
+    }
+
+    /**
+     * Return the largest value that could be in the given bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < EXACT_LIMIT) return (bucket);
+        return ((1l << (bucket - EXACT_LIMIT + LOG_BASE + 1)) - 1);
+    }
+
+    /**
+     * Add a latency. Negative values are counted as zero.
+     * @param value
+     */
+    public void add(int value) {
+        if (value < 0) value = 0;
+        this.buckets.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+        long cur;
+        while ((cur = this.max.get()) < value) {
+            if (this.max.compareAndSet(cur, value)) break;
+        } // WHILE
+    }
+
+    public long getCount() {
+        return (this.count.get());
+    }
+
+    public long getMax() {
+        return (this.max.get());
+    }
+
+    public double getMean() {
+        long c = this.count.get();
+        return (c == 0 ? 0d : this.total.get() / (double)c);
+    }
+
+    /**
+     * Return the latency that the given fraction of values are less than or equal to.
+     * Values that fell into one of the power-of-two buckets are reported as the upper
+     * bound of that bucket (but never more than the max).
+     * @param fraction between 0 and 1
+     * @return
+     */
+    public long getPercentile(double fraction) {
+        assert(fraction >= 0 && fraction <= 1) : "Invalid fraction " + fraction;
+        long snapshot[] = new long[NUM_BUCKETS];
+        long c = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = this.buckets.get(i);
+            c += snapshot[i];
+        } // FOR
+        if (c == 0) return (0);
+
+        long target = Math.max(1, (long)Math.ceil(fraction * c));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return (Math.min(upperBound(i), this.max.get()));
+        } // FOR
+        return (this.max.get());
+    }
+
+    /**
+     * Write the count, mean, max and the standard percentiles as fields of the
+     * current JSON object
+     * @param stringer
+     * @throws JSONException
+     */
+    public void toJSON(JSONStringer stringer) throws JSONException {
+        stringer.key("COUNT").value(this.getCount());
+        stringer.key("MEAN").value(this.getMean());
+        stringer.key("MAX").value(this.getMax());
+        stringer.key("P50").value(this.getPercentile(0.50));
+        stringer.key("P95").value(this.getPercentile(0.95));
+        stringer.key("P99").value(this.getPercentile(0.99));
+        stringer.key("P999").value(this.getPercentile(0.999));
+    }
+
+    @Override
+    public String toString() {
+        return (String.format("count=%d, mean=%.2f, p50=%d, p95=%d, p99=%d, max=%d",
+                              this.getCount(), this.getMean(), this.getPercentile(0.50),
+                              this.getPercentile(0.95), this.getPercentile(0.99), this.getMax()));
+    }
+}
@@ -68,6 +68,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.catalog.User;
 import org.voltdb.catalog.UserRef;
 import org.voltdb.compiler.projectfile.ClassdependenciesType.Classdependency;
+import org.voltdb.compiler.projectfile.ColumnarType;
 import org.voltdb.compiler.projectfile.DatabaseType;
 import org.voltdb.compiler.projectfile.ExportsType.Connector;
 import org.voltdb.compiler.projectfile.ExportsType.Connector.Tables;
@@ -782,6 +783,18 @@ public class VoltCompiler {
             }
         }
         
+        // mark the tables that the EE should also keep in a columnar layout
+        if (database.getColumnar() != null) {
+            for (ColumnarType.Table ct : database.getColumnar().getTable()) {
+                final Table t = tables.getIgnoreCase(ct.getName());
+                if (t == null) {
+                    msg += "\"columnar\" element has unknown \"table\" attribute '" + ct.getName() + "'";
+                    throw new VoltCompilerException(msg);
+                }
+                t.setColumnar(true);
+            }
+        }
+        
         // this should reorder the tables and partitions all alphabetically
         String catData = m_catalog.serialize();
         m_catalog = new Catalog();
@@ -187,6 +187,7 @@ public class VoltProjectBuilder {
     final LinkedHashSet<Class<?>> m_supplementals = new LinkedHashSet<Class<?>>();
     final LinkedHashMap<String, String> m_partitionInfos = new LinkedHashMap<String, String>();
     final LinkedHashMap<String, Pair<Boolean, Collection<String>>> m_verticalpartitionInfos = new LinkedHashMap<String, Pair<Boolean, Collection<String>>>();
+    final LinkedHashSet<String> m_columnarTables = new LinkedHashSet<String>();
 
     String m_elloader = null;         // loader package.Classname
     private boolean m_elenabled;      // true if enabled; false if disabled
@@ -404,6 +405,17 @@ public class VoltProjectBuilder {
     public void setEnableVerticalPartitionOptimizations(boolean val) { 
         m_verticalPartitionOptimizations = val;
     }
+    
+    /**
+     * Store the given table in a read-optimized columnar layout in the EE.
+     * This is only worthwhile for tables that are scanned far more often than
+     * they are modified, because any change to the table throws away its
+     * columnar copy until the next scan rebuilds it.
+     * @param tableName
+     */
+    public void addColumnarTable(final String tableName) {
+        m_columnarTables.add(tableName);
+    }
 
     public void setSecurityEnabled(final boolean enabled) {
         m_securityEnabled = enabled;
@@ -735,6 +747,20 @@ public class VoltProjectBuilder {
             } // FOR (tables)
         }
 
+        // Columnar Tables
+        if (m_columnarTables.size() > 0) {
+            // /project/database/columnar
+            final Element columnar = doc.createElement("columnar");
+            database.appendChild(columnar);
+
+            // columnar/table
+            for (final String tableName : m_columnarTables) {
+                final Element table = doc.createElement("table");
+                table.setAttribute("name", tableName);
+                columnar.appendChild(table);
+            } // FOR
+        }
+
         // /project/database/classdependencies
         final Element classdeps = doc.createElement("classdependencies");
         database.appendChild(classdeps);
@@ -31,6 +31,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="procedures" type="{}proceduresType"/>
  *         &lt;element name="partitions" type="{}partitionsType" minOccurs="0"/>
  *         &lt;element name="verticalpartitions" type="{}verticalpartitionsType" minOccurs="0"/>
+ *         &lt;element name="columnar" type="{}columnarType" minOccurs="0"/>
  *         &lt;element name="classdependencies" type="{}classdependenciesType" minOccurs="0"/>
  *         &lt;element name="exports" type="{}exportsType" minOccurs="0"/>
  *         &lt;element name="snapshot" type="{}snapshotType" minOccurs="0"/>
@@ -57,6 +58,7 @@ public class DatabaseType {
     protected ProceduresType procedures;
     protected PartitionsType partitions;
     protected VerticalpartitionsType verticalpartitions;
+    protected ColumnarType columnar;
     protected ClassdependenciesType classdependencies;
     protected ExportsType exports;
     protected SnapshotType snapshot;
@@ -207,6 +209,30 @@ public class DatabaseType {
         this.verticalpartitions = value;
     }
 
+    /**
+     * Gets the value of the columnar property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link ColumnarType }
+     *     
+     */
+    public ColumnarType getColumnar() {
+        return columnar;
+    }
+
+    /**
+     * Sets the value of the columnar property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link ColumnarType }
+     *     
+     */
+    public void setColumnar(ColumnarType value) {
+        this.columnar = value;
+    }
+
     /**
      * Gets the value of the classdependencies property.
      * 
@@ -208,6 +208,22 @@ public class ObjectFactory {
         return new VerticalpartitionsType();
     }
 
+    /**
+     * Create an instance of {@link ColumnarType }
+     * 
+     */
+    public ColumnarType createColumnarType() {
+        return new ColumnarType();
+    }
+
+    /**
+     * Create an instance of {@link ColumnarType.Table }
+     * 
+     */
+    public ColumnarType.Table createColumnarTypeTable() {
+        return new ColumnarType.Table();
+    }
+
     /**
      * Create an instance of {@link DatabaseType }
      * 
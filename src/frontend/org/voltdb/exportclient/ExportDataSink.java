@@ -162,12 +162,7 @@ public class ExportDataSink implements Runnable
         }
 
         // run the verifier until m.getData() is consumed
-        while (m.getData().hasRemaining()) {
-            int length = m.getData().getInt();
-            byte[] rowdata = new byte[length];
-            m.getData().get(rowdata, 0, length);
-            m_decoder.processRow(length, rowdata);
-        }
+        m_decoder.processBlock(m.getData());
 
         // ack the old block and poll the next.
         pollAndAck(m);
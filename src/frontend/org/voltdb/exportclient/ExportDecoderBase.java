@@ -19,6 +19,7 @@ package org.voltdb.exportclient;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.voltdb.VoltType;
@@ -48,6 +49,23 @@ public abstract class ExportDecoderBase
      */
     abstract public boolean processRow(int rowSize, byte[] rowData);
 
+    /**
+     * Process a block of rows from the ELT stream.  Each row in the block
+     * is prefixed with its length.  The default behavior is to hand each
+     * row to processRow(), but this can be overridden by decoders that do
+     * not need the rows one at a time.
+     * @param block the rows in the block (consumed by this call)
+     */
+    public void processBlock(ByteBuffer block)
+    {
+        while (block.hasRemaining()) {
+            int length = block.getInt();
+            byte[] rowdata = new byte[length];
+            block.get(rowdata, 0, length);
+            processRow(length, rowdata);
+        }
+    }
+
     /**
      * Called when the protocol handler received no data in response to
      * a poll.  Default behavior is to do nothing, but can be overridden
@@ -0,0 +1,194 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.voltdb.VoltType;
+import org.voltdb.elt.ELTProtoMessage.AdvertisedDataSource;
+
+/**
+ * Reads back the segment files written by an ExportSegmentWriter.
+ *
+ * command line args:
+ *   {segment file} [{segment file} ...]
+ *   Prints every row in the segments as tab-separated values.
+ *
+ * @see ExportSegmentWriter
+ */
+public class ExportSegmentReader
+{
+    private final File m_file;
+    private final DataInputStream m_in;
+    private final AdvertisedDataSource m_source;
+    private final Inflater m_inflater = new Inflater();
+    private byte[] m_stored = new byte[0];
+    private int m_blockRowCount;
+
+    // Only used to get at decodeRow()
+    private final ExportDecoderBase m_decoder;
+
+    public ExportSegmentReader(File file) throws IOException
+    {
+        m_file = file;
+        m_in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        if (m_in.readInt() != ExportSegmentWriter.MAGIC) {
+            m_in.close();
+            throw new IOException(file.getPath() + " is not an export segment");
+        }
+        byte version = m_in.readByte();
+        if (version != ExportSegmentWriter.VERSION) {
+            m_in.close();
+            throw new IOException("Unsupported export segment version " + version + " in " + file.getPath());
+        }
+        String tableName = m_in.readUTF();
+        int columnCount = m_in.readInt();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<VoltType> types = new ArrayList<VoltType>();
+        for (int i = 0; i < columnCount; i++) {
+            names.add(m_in.readUTF());
+            types.add(VoltType.get(m_in.readByte()));
+        }
+        m_source = new AdvertisedDataSource(-1, -1, tableName, names, types);
+        m_decoder = new ExportDecoderBase(m_source) {
+            @Override
+            public boolean processRow(int rowSize, byte[] rowData)
+            {
+                return true;
+            }
+        };
+    }
+
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * Returns the table schema stored in the segment header
+     */
+    public AdvertisedDataSource getSource()
+    {
+        return m_source;
+    }
+
+    /**
+     * Returns the next block of length-prefixed ELT rows, or null
+     * if we have reached the end of the segment. The returned buffer
+     * is only valid until the next call.
+     * @throws IOException
+     */
+    public ByteBuffer nextBlock() throws IOException
+    {
+        byte encoding;
+        try {
+            encoding = m_in.readByte();
+        } catch (EOFException e) {
+            return null;
+        }
+        m_blockRowCount = m_in.readInt();
+        int rawLength = m_in.readInt();
+        int storedLength = m_in.readInt();
+        if (m_stored.length < storedLength) {
+            m_stored = new byte[storedLength];
+        }
+        m_in.readFully(m_stored, 0, storedLength);
+
+        switch (encoding) {
+        case ExportSegmentWriter.BLOCK_RAW:
+            return ByteBuffer.wrap(m_stored, 0, storedLength);
+        case ExportSegmentWriter.BLOCK_DEFLATE: {
+            byte[] raw = new byte[rawLength];
+            m_inflater.reset();
+            m_inflater.setInput(m_stored, 0, storedLength);
+            try {
+                if (m_inflater.inflate(raw) != rawLength) {
+                    throw new IOException("Truncated block in " + m_file.getPath());
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block in " + m_file.getPath() + ": " + e.getMessage());
+            }
+            return ByteBuffer.wrap(raw);
+        }
+        default:
+            throw new IOException("Invalid block encoding " + encoding + " in " + m_file.getPath());
+        }
+    }
+
+    /**
+     * Returns the number of rows in the block last returned by nextBlock()
+     */
+    public int getBlockRowCount()
+    {
+        return m_blockRowCount;
+    }
+
+    /**
+     * Decode a single row from a block returned by nextBlock()
+     * @param rowData the row without its length prefix
+     * @throws IOException
+     */
+    public Object[] decodeRow(byte[] rowData) throws IOException
+    {
+        return m_decoder.decodeRow(rowData);
+    }
+
+    public void close() throws IOException
+    {
+        m_in.close();
+        m_inflater.end();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0) {
+            System.out.println("java -cp <classpath> org.voltdb.exportclient.ExportSegmentReader segment [segment ...]");
+            System.exit(-1);
+        }
+        long rows = 0;
+        for (String arg : args) {
+            ExportSegmentReader reader = new ExportSegmentReader(new File(arg));
+            ByteBuffer block = null;
+            while ((block = reader.nextBlock()) != null) {
+                while (block.hasRemaining()) {
+                    byte[] rowData = new byte[block.getInt()];
+                    block.get(rowData);
+                    Object[] row = reader.decodeRow(rowData);
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < row.length; i++) {
+                        if (i != 0) sb.append('\t');
+                        sb.append(row[i] == null ? "NULL" : row[i].toString());
+                    }
+                    System.out.println(sb);
+                    rows++;
+                }
+            }
+            reader.close();
+        }
+        System.err.println("Read " + rows + " rows from " + args.length + " segments");
+    }
+}
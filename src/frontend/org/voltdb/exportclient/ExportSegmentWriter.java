@@ -0,0 +1,264 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.voltdb.VoltType;
+import org.voltdb.elt.ELTProtoMessage.AdvertisedDataSource;
+
+/**
+ * Writes blocks of ELT rows for a single table into a series of binary
+ * segment files. Rows are not decoded: each block holds the length-prefixed
+ * rows exactly as they arrive in a poll response, optionally deflated.
+ * When a segment grows past the segment size, it is closed and the next
+ * block goes into a new segment. Segment numbers pick up after any segments
+ * with the same prefix that are already in the output directory, so a
+ * restarted client never overwrites what an earlier run wrote.
+ *
+ * Every segment starts with a header:
+ *   MAGIC (int), VERSION (byte), table name (UTF), column count (int),
+ *   and then the name (UTF) and VoltType (byte) of each column.
+ * The header is followed by any number of blocks:
+ *   encoding (byte), row count (int), raw length (int), stored length (int),
+ *   and then stored length bytes of row data.
+ *
+ * @see ExportSegmentReader
+ */
+public class ExportSegmentWriter
+{
+    public static final int MAGIC = 0x56455842; // "VEXB"
+    public static final byte VERSION = 1;
+    public static final String EXTENSION = "vexb";
+
+    public static final byte BLOCK_RAW = 0;
+    public static final byte BLOCK_DEFLATE = 1;
+
+    private final File m_outDir;
+    private final String m_prefix;
+    private final AdvertisedDataSource m_source;
+    private final long m_segmentSize;
+    private final Deflater m_deflater;
+    private byte[] m_compressed = new byte[0];
+
+    private DataOutputStream m_out;
+    private long m_segmentBytes;
+    private int m_nextSegment = 0;
+    private int m_segmentCount = 0;
+    private boolean m_closed = false;
+    private long m_rowCount = 0;
+    private long m_rawBytes = 0;
+    private long m_storedBytes = 0;
+
+    /**
+     * @param outdir where to write the segment files
+     * @param prefix the first part of each segment's file name
+     * @param source the table whose rows will be written
+     * @param compress whether to deflate each block
+     * @param segmentSize the number of bytes to write to a segment before rolling to the next one
+     */
+    public ExportSegmentWriter(File outdir, String prefix, AdvertisedDataSource source,
+                               boolean compress, long segmentSize)
+    {
+        m_outDir = outdir;
+        m_prefix = prefix;
+        m_source = source;
+        m_segmentSize = segmentSize;
+        m_deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    }
+
+    /**
+     * Returns the file for the given segment number
+     */
+    public static File getSegmentFile(File outdir, String prefix, String tableName, int segment)
+    {
+        String filename = String.format("%s-%s-%05d.%s", prefix, tableName, segment, EXTENSION);
+        return new File(outdir, filename);
+    }
+
+    /**
+     * Write a block of length-prefixed ELT rows. Consumes the remaining
+     * bytes of the buffer.
+     * @param block
+     * @throws IOException
+     */
+    public synchronized void writeBlock(ByteBuffer block) throws IOException
+    {
+        if (m_closed) {
+            throw new IOException("Export segment writer for " + m_source.tableName() + " is closed");
+        }
+        final int length = block.remaining();
+        if (length == 0) return;
+
+        // Count the rows without copying them
+        int rowCount = 0;
+        final int start = block.position();
+        for (int pos = start; pos < start + length; pos += block.getInt(pos) + 4) {
+            rowCount++;
+        }
+
+        byte[] raw;
+        int rawOffset;
+        if (block.hasArray()) {
+            raw = block.array();
+            rawOffset = block.arrayOffset() + start;
+        } else {
+            raw = new byte[length];
+            block.duplicate().get(raw);
+            rawOffset = 0;
+        }
+        block.position(start + length);
+
+        byte encoding = BLOCK_RAW;
+        byte[] stored = raw;
+        int storedOffset = rawOffset;
+        int storedLength = length;
+        if (m_deflater != null) {
+            if (m_compressed.length < length) {
+                m_compressed = new byte[length];
+            }
+            m_deflater.reset();
+            m_deflater.setInput(raw, rawOffset, length);
+            m_deflater.finish();
+            int compressedLength = m_deflater.deflate(m_compressed, 0, m_compressed.length);
+            // Only keep the compressed block if it actually fit in a smaller buffer
+            if (m_deflater.finished() && compressedLength < length) {
+                encoding = BLOCK_DEFLATE;
+                stored = m_compressed;
+                storedOffset = 0;
+                storedLength = compressedLength;
+            }
+        }
+
+        if (m_out == null) {
+            openSegment();
+        }
+        m_out.writeByte(encoding);
+        m_out.writeInt(rowCount);
+        m_out.writeInt(length);
+        m_out.writeInt(storedLength);
+        m_out.write(stored, storedOffset, storedLength);
+        m_segmentBytes += 13 + storedLength;
+
+        m_rowCount += rowCount;
+        m_rawBytes += length;
+        m_storedBytes += storedLength;
+
+        if (m_segmentBytes >= m_segmentSize) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment() throws IOException
+    {
+        File f = getSegmentFile(m_outDir, m_prefix, m_source.tableName(), m_nextSegment);
+        while (f.exists()) {
+            f = getSegmentFile(m_outDir, m_prefix, m_source.tableName(), ++m_nextSegment);
+        }
+        m_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 65536));
+        m_out.writeInt(MAGIC);
+        m_out.writeByte(VERSION);
+        m_out.writeUTF(m_source.tableName());
+        int columnCount = m_source.columnTypes().size();
+        m_out.writeInt(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            m_out.writeUTF(m_source.columnName(i));
+            VoltType type = m_source.columnType(i);
+            m_out.writeByte(type.getValue());
+        }
+        m_segmentBytes = m_out.size();
+        m_nextSegment++;
+        m_segmentCount++;
+    }
+
+    private void closeSegment() throws IOException
+    {
+        if (m_out != null) {
+            m_out.close();
+            m_out = null;
+        }
+    }
+
+    /**
+     * Push any buffered blocks out to the current segment
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException
+    {
+        if (m_out != null) {
+            m_out.flush();
+        }
+    }
+
+    /**
+     * Finish the current segment. Nothing else can be written afterwards.
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException
+    {
+        if (m_closed) return;
+        m_closed = true;
+        closeSegment();
+        if (m_deflater != null) {
+            m_deflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of segments that this writer created
+     */
+    public int getSegmentCount()
+    {
+        return m_segmentCount;
+    }
+
+    /**
+     * Returns the segment number of the next segment that this writer will create
+     */
+    public int getNextSegment()
+    {
+        return m_nextSegment;
+    }
+
+    public long getRowCount()
+    {
+        return m_rowCount;
+    }
+
+    /**
+     * Returns the number of bytes of row data written, before compression
+     */
+    public long getRawBytes()
+    {
+        return m_rawBytes;
+    }
+
+    /**
+     * Returns the number of bytes of row data written, after compression
+     */
+    public long getStoredBytes()
+    {
+        return m_storedBytes;
+    }
+}
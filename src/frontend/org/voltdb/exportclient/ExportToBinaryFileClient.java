@@ -0,0 +1,283 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.exportclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.voltdb.elt.ELTProtoMessage.AdvertisedDataSource;
+
+import edu.brown.hstore.HStoreConstants;
+
+/**
+ * Uses the Export feature of VoltDB to write exported tables to binary
+ * segment files. Unlike ExportToFileClient, rows are never decoded or
+ * escaped: each polled block is written out as-is (optionally deflated).
+ * Use ExportSegmentReader to read the segments back.
+ *
+ * command line args:
+ *   --servers {comma-separated list of VoltDB server to which to connect}
+ *   --outdir {path where output files should be written}
+ *   --nonce {string-to-unique-ify output files}
+ *   --user {username for cluster export user}
+ *   --password {password for cluster export user}
+ *   --compress (optional) deflate each block
+ *   --segmentsize {MB} (optional) roll to a new segment file after this many MB (default 64)
+ *
+ */
+
+public class ExportToBinaryFileClient extends ExportClientBase
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 64; // MB
+
+    private String m_nonce;
+    private File m_outDir;
+    private boolean m_compress;
+    private long m_segmentSize;
+    private HashMap<String, ExportToBinaryFileDecoder> m_tableDecoders;
+    private String m_user;
+    private String m_password;
+
+    // This class writes the blocks of exported rows for the table
+    // named in the constructor's AdvertisedDataSource
+    class ExportToBinaryFileDecoder extends ExportDecoderBase
+    {
+        private final ExportSegmentWriter m_writer;
+
+        public ExportToBinaryFileDecoder(AdvertisedDataSource source, String nonce,
+                                         File outdir, boolean compress, long segmentSize)
+        {
+            super(source);
+            System.out.println("Opening segments for " + nonce + "-" + source.tableName());
+            m_writer = new ExportSegmentWriter(outdir, nonce, source, compress, segmentSize);
+        }
+
+        @Override
+        public void processBlock(ByteBuffer block)
+        {
+            try
+            {
+                m_writer.writeBlock(block);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public boolean processRow(int rowSize, byte[] rowData)
+        {
+            ByteBuffer block = ByteBuffer.allocate(rowSize + 4);
+            block.putInt(rowSize).put(rowData, 0, rowSize).flip();
+            processBlock(block);
+            return true;
+        }
+
+        @Override
+        public void noDataReceived(long ackOffset)
+        {
+            // Nothing else is coming for now, so push out what we have
+            try
+            {
+                m_writer.flush();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Finish the table's last segment
+         */
+        public void close() throws IOException
+        {
+            m_writer.close();
+        }
+    }
+
+    public void setVoltServers(String[] voltServers)
+    {
+        ArrayList<InetSocketAddress> servers =
+            new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < voltServers.length; i++)
+        {
+            InetSocketAddress server =
+                new InetSocketAddress(voltServers[i], HStoreConstants.DEFAULT_PORT);
+            servers.add(server);
+        }
+        setServerInfo(servers);
+    }
+
+    public ExportToBinaryFileClient(String nonce, File outdir, boolean compress, long segmentSize,
+                                    String user, String password)
+    {
+        m_nonce = nonce;
+        m_outDir = outdir;
+        m_compress = compress;
+        m_segmentSize = segmentSize;
+        m_user = user;
+        m_password = password;
+        m_tableDecoders = new HashMap<String, ExportToBinaryFileDecoder>();
+    }
+
+    @Override
+    public synchronized ExportDecoderBase constructELTDecoder(AdvertisedDataSource source)
+    {
+        // For every source that provides part of a table, use the same
+        // export decoder.
+        String table_name = source.tableName();
+        if (!m_tableDecoders.containsKey(table_name))
+        {
+            m_tableDecoders.put(table_name,
+                                new ExportToBinaryFileDecoder(source, m_nonce, m_outDir,
+                                                              m_compress, m_segmentSize));
+        }
+        return m_tableDecoders.get(table_name);
+    }
+
+    /**
+     * Close the segments of all of the tables
+     */
+    public synchronized void close()
+    {
+        for (ExportToBinaryFileDecoder decoder : m_tableDecoders.values())
+        {
+            try
+            {
+                decoder.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void printHelpAndQuit(int code)
+    {
+        System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.exportclient.ExportToBinaryFileClient --help");
+        System.out.println("java -cp <classpath> -Djava.library.path=<library path> org.voltdb.exportclient.ExportToBinaryFileClient " +
+                           "--servers server1,server2,... --outdir dir --nonce any_string " +
+                           "--user export_username --password export_password [--compress] [--segmentsize MB]");
+        System.exit(code);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] volt_servers = null;
+        String user = null;
+        String password = null;
+        String nonce = null;
+        File outdir = null;
+        boolean compress = false;
+        int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+        for (int ii = 0; ii < args.length; ii++)
+        {
+            String arg = args[ii];
+            if (arg.equals("--help"))
+            {
+                printHelpAndQuit(0);
+            }
+            else if (arg.equals("--compress"))
+            {
+                compress = true;
+            }
+            else if (args.length < ii + 2)
+            {
+                System.err.println("Error: Not enough args following " + arg);
+                printHelpAndQuit(-1);
+            }
+            else if (arg.equals("--servers"))
+            {
+                volt_servers = args[++ii].split(",");
+            }
+            else if (arg.equals("--outdir"))
+            {
+                outdir = new File(args[++ii]);
+                if (!outdir.isDirectory() || !outdir.canWrite()) {
+                    System.err.println("Error: " + outdir.getPath() + " is not a writable directory");
+                    System.exit(-1);
+                }
+            }
+            else if (arg.equals("--nonce"))
+            {
+                nonce = args[++ii];
+            }
+            else if (arg.equals("--user"))
+            {
+                user = args[++ii];
+            }
+            else if (arg.equals("--password"))
+            {
+                password = args[++ii];
+            }
+            else if (arg.equals("--segmentsize"))
+            {
+                segmentSize = Integer.parseInt(args[++ii]);
+            }
+        }
+        // Check args for validity
+        if (volt_servers == null || volt_servers.length < 1)
+        {
+            System.err.println("ExportToBinaryFile: must provide at least one VoltDB server");
+            printHelpAndQuit(-1);
+        }
+        if (user == null)
+        {
+            System.err.println("ExportToBinaryFile: must provide a username");
+            printHelpAndQuit(-1);
+        }
+        if (password == null)
+        {
+            System.err.println("ExportToBinaryFile: must provide a password");
+            printHelpAndQuit(-1);
+        }
+        if (nonce == null)
+        {
+            System.err.println("ExportToBinaryFile: must provide a filename nonce");
+            printHelpAndQuit(-1);
+        }
+        if (outdir == null)
+        {
+            outdir = new File(".");
+        }
+
+        final ExportToBinaryFileClient client =
+            new ExportToBinaryFileClient(nonce, outdir, compress, segmentSize * 1024l * 1024l,
+                                         user, password);
+        client.setVoltServers(volt_servers);
+        // The client runs until it is killed, so make sure that the last
+        // segment of every table is finished when that happens
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run()
+            {
+                client.close();
+            }
+        });
+        client.run();
+    }
+}
@@ -36,6 +36,7 @@ import org.voltdb.catalog.Table;
 import org.voltdb.elt.ELTProtoMessage;
 import org.voltdb.exceptions.EEException;
 import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.utils.DBBPool;
 import org.voltdb.utils.DBBPool.BBContainer;
 import org.voltdb.utils.LogKeys;
 import org.voltdb.utils.VoltLoggerFactory;
@@ -59,6 +60,12 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
     // is the execution site dirty
     protected boolean m_dirty;
 
+    /**
+     * If set, result tables are copied into buffers from this pool
+     * instead of onto the heap. See {@link #setResultPool(DBBPool)}
+     */
+    protected DBBPool m_resultPool = null;
+
     /** Error codes exported for JNI methods. */
     public static final int ERRORCODE_SUCCESS = 0;
     public static final int ERRORCODE_ERROR = 1; // just error or not so far.
@@ -74,6 +81,17 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         return m_dirty;
     }
 
+    /**
+     * Allocate the tables returned by executeQueryPlanFragmentsAndGetDependencySet()
+     * from the given pool. These tables are reference counted and the caller
+     * is responsible for calling VoltTable.release() on them when it is done.
+     * Pass null to go back to heap-allocated result tables.
+     * Implementations that can't do this ignore the pool.
+     */
+    public void setResultPool(DBBPool pool) {
+        m_resultPool = pool;
+    }
+
     /** Utility method to verify return code and throw as required */
     final protected void checkErrorCode(final int errorCode) {
         if (errorCode != ERRORCODE_SUCCESS) {
@@ -247,9 +265,15 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         if (vt != null) {
             ByteBuffer buffer = vt.getTableDataReference();
             if (d) 
-                LOG.debug(String.format("Passing Dependency %d to EE [rows=%d, cols=%d, bytes=%d/%d]",
-                                        dependencyId, vt.getRowCount(), vt.getColumnCount(), vt.getUnderlyingBufferSize(), buffer.array().length));
-            assert(buffer.hasArray());
+                LOG.debug(String.format("Passing Dependency %d to EE [rows=%d, cols=%d, bytes=%d/%d, pooled=%s]",
+                                        dependencyId, vt.getRowCount(), vt.getColumnCount(), vt.getUnderlyingBufferSize(),
+                                        buffer.capacity(), vt.isPooled()));
+            // Pooled tables live in direct buffers, so we have to copy them out for the EE
+            if (buffer.hasArray() == false) {
+                byte bytes[] = new byte[buffer.limit()];
+                buffer.get(bytes);
+                return (bytes);
+            }
             return (buffer.array());
         }
         // Note that we will hit this after retrieving all the VoltTables for the given dependencyId
@@ -391,7 +391,15 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             // get a copy of the buffer
             // Because this is a copy, that means we don't have to worry about the EE overwriting us
             // Not sure of the implications for performance.
-            ByteBuffer fullBacking = deserializer.readBuffer(totalSize);
+            // If we have a result pool, then we read straight out of the EE's buffer and
+            // each table gets copied into its own pooled buffer below instead
+            ByteBuffer fullBacking = null;
+            if (m_resultPool != null) {
+                fullBacking = deserializer.buffer().slice();
+                fullBacking.limit(totalSize);
+            } else {
+                fullBacking = deserializer.readBuffer(totalSize);
+            }
             
             // At this point we don't know how many dependencies we expect to get back from our fragments (although
             // we clearly should be able to know). So we'll just chuck everything into an ArrayList first.
@@ -422,7 +430,11 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     fullBacking.position(fullBacking.position() + tableSize);
                     tableBacking.limit(tableSize);
                     
-                    results[dep_ctr] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
+                    if (m_resultPool != null) {
+                        results[dep_ctr] = PrivateVoltTableFactory.createPooledVoltTable(m_resultPool, tableBacking);
+                    } else {
+                        results[dep_ctr] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
+                    }
                     dependencies[dep_ctr] = depid;
                     dep_ctr++;
                 } // FOR
@@ -46,6 +46,7 @@ public class FastDeserializer implements DataInput {
     }
 
     private ByteBuffer buffer;
+    private WireSchemaRegistry m_schemas = null;
 
     /**
      * Create a <code>FastDeserializer</code> from an array of bytes.
@@ -74,6 +75,19 @@ public class FastDeserializer implements DataInput {
         return (this);
     }
 
+    /**
+     * Set the registry used to look up the schema ids in compact tables
+     * @param schemas
+     */
+    public FastDeserializer setSchemaRegistry(WireSchemaRegistry schemas) {
+        m_schemas = schemas;
+        return (this);
+    }
+
+    public WireSchemaRegistry getSchemaRegistry() {
+        return (m_schemas);
+    }
+
     /** Reset this FastDeserializer and make it ready for more reads. */
     public void clear() {
         buffer.clear();
@@ -201,6 +215,24 @@ public class FastDeserializer implements DataInput {
         return retval;
     }
 
+    /**
+     * Read a string written by {@link FastSerializer#writeVarString(String)}
+     *
+     * @return The String value read from the stream.
+     * @throws IOException Rethrows any IOExceptions.
+     */
+    public String readVarString() throws IOException {
+        final int len = readVarInt() - 1;
+        if (len == -1) return null;
+        if (len > VoltType.MAX_VALUE_LENGTH) {
+            throw new IOException("Serializable strings cannot be longer then "
+                    + VoltType.MAX_VALUE_LENGTH + " bytes");
+        }
+        final byte[] strbytes = new byte[len];
+        readFully(strbytes);
+        return new String(strbytes, "UTF-8");
+    }
+
     /**
      * Read the VoltDB BigDecimal serialization.
      * @return BigDecimal
@@ -399,6 +431,44 @@ public class FastDeserializer implements DataInput {
         return n;
     }
 
+    /**
+     * Read a value written by {@link FastSerializer#writeVarLong(long)}
+     * @return
+     * @throws IOException
+     */
+    public long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (v);
+        } // FOR
+        throw new IOException("Malformed variable-length value");
+    }
+
+    /**
+     * Read a value written by {@link FastSerializer#writeSignedVarLong(long)}
+     * @return
+     * @throws IOException
+     */
+    public long readSignedVarLong() throws IOException {
+        final long v = readVarLong();
+        return ((v >>> 1) ^ -(v & 1));
+    }
+
+    /**
+     * Read a non-negative variable-length value that must fit in an int
+     * @return
+     * @throws IOException
+     */
+    public int readVarInt() throws IOException {
+        final long v = readVarLong();
+        if (v < 0 || v > Integer.MAX_VALUE) {
+            throw new IOException("Variable-length value out of range " + v);
+        }
+        return ((int)v);
+    }
+
     /**
      * return Current position within the underlying buffer, for self-comparison only.
      */
@@ -48,6 +48,8 @@ public class FastSerializer implements DataOutput {
     private final BufferGrowCallback callback;
     private final DBBPool m_pool;
     private final boolean isDirect;
+    private boolean m_compact = false;
+    private WireSchemaRegistry m_schemas = null;
 
     /**
      * Create a <code>FastSerializer</code> that is BigEndian and uses a HeapByteBuffer
@@ -121,6 +123,27 @@ public class FastSerializer implements DataOutput {
         return buffer.b.position();
     }
 
+    /**
+     * Enable the compact wire encoding for objects that support it. This
+     * should only be used when the other side has said that it understands it.
+     * The registry is optional and is used to replace table schemas with ids.
+     * @param compact
+     * @param schemas
+     */
+    public FastSerializer setCompact(boolean compact, WireSchemaRegistry schemas) {
+        m_compact = compact;
+        m_schemas = (compact ? schemas : null);
+        return (this);
+    }
+
+    public boolean isCompact() {
+        return (m_compact);
+    }
+
+    public WireSchemaRegistry getSchemaRegistry() {
+        return (m_schemas);
+    }
+
     /** Clears the contents of the underlying buffer, making iteady for more writes. */
     public void clear() {
         buffer.b.clear();
@@ -300,6 +323,33 @@ public class FastSerializer implements DataOutput {
         write(strbytes);
     }
 
+    /**
+     * Write a string for the compact wire encoding. The length is written as a
+     * variable-length value that is one more than the number of UTF-8 bytes, so
+     * that zero can mean null.
+     *
+     * @param string The string value to be serialized.
+     * @throws IOException Rethrows any IOExceptions thrown.
+     */
+    public void writeVarString(String string) throws IOException {
+        if (string == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] strbytes = {};
+        try {
+            strbytes = string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        if (strbytes.length > VoltType.MAX_VALUE_LENGTH) {
+            throw new IOException("String exceeds maximum length of "
+                                  + VoltType.MAX_VALUE_LENGTH + " bytes.");
+        }
+        writeVarLong(strbytes.length + 1);
+        write(strbytes);
+    }
+
     // These writeArray() methods are tested in TestSQLTypesSuite.
     // If changing the max limits, please update testInvalidParameterSerializations.
 
@@ -505,6 +555,31 @@ public class FastSerializer implements DataOutput {
         throw new UnsupportedOperationException("FastSerializer.writeChars() not supported.");
     }
 
+    /**
+     * Write a non-negative value in 7-bit groups, least significant first. The
+     * high bit of each byte is set if more bytes follow.
+     * @param v
+     * @throws IOException
+     */
+    public void writeVarLong(long v) throws IOException {
+        growIfNeeded(10);
+        while ((v & ~0x7FL) != 0) {
+            buffer.b.put((byte)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.b.put((byte)v);
+    }
+
+    /**
+     * Write a signed value with zig-zag encoding so that small negative numbers
+     * are as short as small positive ones.
+     * @param v
+     * @throws IOException
+     */
+    public void writeSignedVarLong(long v) throws IOException {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
     /**
      * return Current position within the underlying buffer, for self-comparison only.
      */
@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.messaging;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-connection table of VoltTable schemas for the compact wire protocol.
+ * The first time that the server sends a table with a given shape (column count,
+ * types, and names), it sends the full schema together with a new id. After that it
+ * only sends the id. The client keeps the same mapping so that it can rebuild the
+ * full table header.
+ * <B>Note:</B> A definition must reach the client before any message that uses its id.
+ * The server must therefore serialize and write compact messages for a connection
+ * in the same critical section.
+ */
+public class WireSchemaRegistry {
+
+    /** Stop handing out new ids after this many schemas and just send them inline */
+    public static final int MAX_SCHEMAS = 4096;
+
+    /** Writer side: schema bytes -> id */
+    private final Map<ByteBuffer, Integer> m_ids = new HashMap<ByteBuffer, Integer>();
+
+    /** Reader side: id -> schema bytes */
+    private final Map<Integer, byte[]> m_schemas = new HashMap<Integer, byte[]>();
+
+    private int m_nextId = 1;
+
+    /**
+     * Get the id of the given schema. If the schema has not been seen before, then
+     * it is assigned a new id and the value returned is negative, which means that
+     * the caller must send the definition along with it. Returns zero if the registry
+     * is full and the schema should just be sent inline without an id.
+     * @param schema The serialized schema between its position and limit. It is not modified.
+     * @return
+     */
+    public synchronized int getSchemaId(ByteBuffer schema) {
+        Integer id = m_ids.get(schema);
+        if (id != null) return (id.intValue());
+        if (m_nextId > MAX_SCHEMAS) return (0);
+
+        // Copy the key because the schema usually points into a table's buffer
+        ByteBuffer key = ByteBuffer.allocate(schema.remaining());
+        key.put(schema.duplicate());
+        key.flip();
+        id = m_nextId++;
+        m_ids.put(key, id);
+        return (-id.intValue());
+    }
+
+    /**
+     * Record the definition of a schema id sent by the other side
+     * @param id
+     * @param schema
+     */
+    public synchronized void defineSchema(int id, byte schema[]) {
+        m_schemas.put(id, schema);
+    }
+
+    /**
+     * Return the schema for a previously defined id, or null if it is unknown
+     * @param id
+     * @return
+     */
+    public synchronized byte[] getSchema(int id) {
+        return (m_schemas.get(id));
+    }
+
+    /**
+     * Return the number of schema ids that this registry knows about
+     * @return
+     */
+    public synchronized int size() {
+        return (m_ids.size() + m_schemas.size());
+    }
+}
@@ -431,6 +431,36 @@ public class NIOWriteStream implements WriteStream {
         return true;
     }
 
+    /**
+     * Queue a batch of containers for writing. This takes the lock and wakes up the network
+     * thread once for the whole batch instead of once per message. The containers will end up
+     * next to each other in the queue so they can go out in one gathering write.
+     * @param cs
+     * @param count The number of containers at the front of the array to queue
+     * @return false if the stream is shutdown and the containers were discarded
+     */
+    public boolean enqueue(final BBContainer cs[], final int count) {
+        if (count == 0) return true;
+        synchronized (this) {
+            if (m_isShutdown) {
+                for (int i = 0; i < count; i++) {
+                    cs[i].discard();
+                }
+                return false;
+            }
+            updateLastPendingWriteTimeAndQueueBackpressure();
+            int bytes = 0;
+            for (int i = 0; i < count; i++) {
+                assert(cs[i] != null);
+                bytes += cs[i].b.remaining();
+                m_queuedBuffers.offer(cs[i]);
+            } // FOR
+            updateQueued(bytes, false);
+            m_port.setInterests( SelectionKey.OP_WRITE, 0);
+        }
+        return true;
+    }
+
     /**
      * Queue a FastSerializable object for writing. This is 3rd best way to serialize and queue messages.
      * Since no expected message size is provided the default one for this port is used which may not be accurate
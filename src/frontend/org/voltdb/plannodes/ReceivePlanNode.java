@@ -19,6 +19,7 @@ package org.voltdb.plannodes;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONStringer;
 import org.voltdb.catalog.Database;
 import org.voltdb.planner.PlannerContext;
 import org.voltdb.types.PlanNodeType;
@@ -28,6 +29,17 @@ import org.voltdb.types.PlanNodeType;
  */
 public class ReceivePlanNode extends AbstractPlanNode {
 
+    public enum Members {
+        MERGE_RECEIVE;
+    }
+
+    /**
+     * If true, then each of the input dependencies will arrive already sorted
+     * on the keys of the OrderByPlanNode directly above this node, so the EE
+     * can merge them instead of concatenating them and sorting again
+     */
+    private boolean m_mergeReceive = false;
+
     /**
      * @param id
      */
@@ -45,7 +57,21 @@ public class ReceivePlanNode extends AbstractPlanNode {
         super.validate();
     }
 
+    public boolean getMergeReceive() {
+        return m_mergeReceive;
+    }
+    public void setMergeReceive(boolean mergeReceive) {
+        m_mergeReceive = mergeReceive;
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException {
+        super.toJSONString(stringer);
+        stringer.key(Members.MERGE_RECEIVE.name()).value(m_mergeReceive);
+    }
+
     @Override
     protected void loadFromJSONObject(JSONObject obj, Database db) throws JSONException {
+        m_mergeReceive = obj.optBoolean(Members.MERGE_RECEIVE.name(), false);
     }
 }
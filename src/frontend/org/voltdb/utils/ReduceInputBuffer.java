@@ -0,0 +1,653 @@
+package org.voltdb.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.messaging.FastDeserializer;
+import org.voltdb.messaging.FastSerializer;
+
+import edu.brown.logging.LoggerUtil;
+import edu.brown.logging.LoggerUtil.LoggerBoolean;
+
+/**
+ * Collects the REDUCE input for a single partition and hands it back to the
+ * REDUCE phase one key at a time. The first column of the input is the key.
+ * <P>
+ * Rows are grouped either by hashing their keys or by sorting them. Keys
+ * of the integer types are hashed and compared as primitive longs.
+ * Once the estimated size of the rows held in memory goes over the memory limit,
+ * they are sorted and written out as a run to a temporary file. The runs are
+ * then streamed back and merged by key when the REDUCE phase asks for them,
+ * so only one block per run has to be in memory at a time. Hash grouping
+ * falls back to sorted runs as soon as it has to spill.
+ * <P>
+ * This class is not thread-safe.
+ * @param <K>
+ */
+public class ReduceInputBuffer<K> {
+    private static final Logger LOG = Logger.getLogger(ReduceInputBuffer.class);
+    private final static LoggerBoolean debug = new LoggerBoolean(LOG.isDebugEnabled());
+    private final static LoggerBoolean trace = new LoggerBoolean(LOG.isTraceEnabled());
+    static {
+        LoggerUtil.attachObserver(LOG, debug, trace);
+    }
+
+    /**
+     * The approximate serialized size of the VoltTable blocks that
+     * we write into and read back from a spilled run
+     */
+    private static final int BLOCK_SIZE = 262144; // 256KB
+
+    /**
+     * Extra heap bytes that we charge for every row held in memory on top of
+     * its serialized size (the Object array and the boxed values)
+     */
+    private static final int ROW_OVERHEAD = 32;
+    private static final int COLUMN_OVERHEAD = 16;
+
+    private final VoltTable schema;
+    private final File spill_dir;
+    private final long memory_limit;
+    private final boolean int_key;
+    private final Comparator<Object[]> comparator;
+
+    /**
+     * Whether we are still grouping by hash. This is switched off
+     * for good once we spill our first run
+     */
+    private boolean hash_grouping;
+
+    // In-memory rows for sort grouping
+    private final List<Object[]> rows = new ArrayList<Object[]>();
+
+    // In-memory groups for hash grouping
+    private final List<List<Object[]>> groups = new ArrayList<List<Object[]>>();
+    private final LongIntHashMap long_groups;
+    private final HashMap<Object, Integer> object_groups;
+
+    private long memory_bytes = 0;
+    private int row_count = 0;
+    private final List<File> runs = new ArrayList<File>();
+
+    // Iteration state
+    private boolean sealed = false;
+    private K current_key;
+    private Iterator<VoltTableRow> current_rows;
+    private int group_offset = -1;
+    private VoltTable group_block;
+    private PriorityQueue<RunCursor> queue;
+
+    /**
+     * Constructor
+     * @param schema a table with the schema of the REDUCE input
+     * @param hash_grouping if true, then group keys in memory with a hash table instead of sorting them
+     * @param memory_limit the number of bytes of input to hold in memory before we spill it to disk
+     * @param spill_dir where to write spilled runs
+     */
+    public ReduceInputBuffer(VoltTable schema, boolean hash_grouping, long memory_limit, File spill_dir) {
+        assert(schema.getColumnCount() > 0);
+        this.schema = new VoltTable(schema);
+        this.hash_grouping = hash_grouping;
+        this.memory_limit = memory_limit;
+        this.spill_dir = spill_dir;
+
+        switch (schema.getColumnType(0)) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                this.int_key = true;
+                break;
+            default:
+                this.int_key = false;
+        } // SWITCH
+        this.comparator = (this.int_key ? LONG_KEY_COMPARATOR : OBJECT_KEY_COMPARATOR);
+        this.long_groups = (this.int_key ? new LongIntHashMap() : null);
+        this.object_groups = (this.int_key ? null : new HashMap<Object, Integer>());
+    }
+
+    // ----------------------------------------------------------------------------
+    // INPUT
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Add all of the rows in the given table. The table must have the same
+     * schema as this buffer. Its row position will be reset afterwards.
+     * @param vt
+     */
+    public void add(VoltTable vt) {
+        assert(this.sealed == false) : "Trying to add rows after the REDUCE input was read";
+        int num_rows = vt.getRowCount();
+        if (num_rows == 0) return;
+
+        final int num_cols = vt.getColumnCount();
+        final long row_bytes = (vt.getUnderlyingBufferSize() / num_rows) + ROW_OVERHEAD + (num_cols * COLUMN_OVERHEAD);
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            Object row[] = new Object[num_cols];
+            for (int i = 0; i < num_cols; i++) {
+                row[i] = vt.get(i);
+            } // FOR
+
+            if (this.hash_grouping) {
+                this.addToGroup(vt, row);
+            } else {
+                this.rows.add(row);
+            }
+            this.memory_bytes += row_bytes;
+            this.row_count++;
+
+            if (this.memory_bytes > this.memory_limit) {
+                this.spill();
+            }
+        } // WHILE
+        vt.resetRowPosition();
+    }
+
+    private void addToGroup(VoltTable vt, Object row[]) {
+        int group = -1;
+        if (this.int_key) {
+            long key = vt.getLong(0);
+            group = this.long_groups.get(key);
+            if (group == -1) {
+                group = this.groups.size();
+                this.long_groups.put(key, group);
+                this.groups.add(new ArrayList<Object[]>());
+            }
+        } else {
+            Integer idx = this.object_groups.get(row[0]);
+            if (idx == null) {
+                idx = this.groups.size();
+                this.object_groups.put(row[0], idx);
+                this.groups.add(new ArrayList<Object[]>());
+            }
+            group = idx.intValue();
+        }
+        this.groups.get(group).add(row);
+    }
+
+    /**
+     * Sort all of the rows that we have in memory and write them out
+     * to a new run file.
+     */
+    private void spill() {
+        if (this.hash_grouping) {
+            if (debug.get())
+                LOG.debug(String.format("Switching from hash to sort grouping after %d rows", this.row_count));
+            for (List<Object[]> group : this.groups) {
+                this.rows.addAll(group);
+            } // FOR
+            this.groups.clear();
+            if (this.int_key) this.long_groups.clear();
+            else this.object_groups.clear();
+            this.hash_grouping = false;
+        }
+        if (this.rows.isEmpty()) return;
+        Collections.sort(this.rows, this.comparator);
+
+        File f = null;
+        DataOutputStream out = null;
+        try {
+            this.spill_dir.mkdirs();
+            f = File.createTempFile("reduce-", ".run", this.spill_dir);
+            f.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+
+            VoltTable block = new VoltTable(this.schema);
+            for (Object row[] : this.rows) {
+                block.addRow(row);
+                if (block.getUnderlyingBufferSize() >= BLOCK_SIZE) {
+                    writeBlock(out, block);
+                    block.clearRowData();
+                }
+            } // FOR
+            if (block.getRowCount() > 0) writeBlock(out, block);
+            out.close();
+        } catch (IOException ex) {
+            if (f != null) f.delete();
+            throw new RuntimeException("Failed to spill REDUCE input to " + this.spill_dir, ex);
+        }
+        this.runs.add(f);
+        if (debug.get())
+            LOG.debug(String.format("Spilled %d REDUCE input rows [bytes=%d] to %s",
+                                    this.rows.size(), f.length(), f));
+
+        this.rows.clear();
+        this.memory_bytes = 0;
+    }
+
+    private static void writeBlock(DataOutputStream out, VoltTable block) throws IOException {
+        byte bytes[] = FastSerializer.serialize(block);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Returns the total number of rows added to this buffer
+     * @return
+     */
+    public int getRowCount() {
+        return (this.row_count);
+    }
+
+    /**
+     * Returns the number of sorted runs that were spilled to disk
+     * @return
+     */
+    public int getSpillCount() {
+        return (this.runs.size());
+    }
+
+    /**
+     * Returns true if the rows are grouped by a hash table instead of by sorting them
+     * @return
+     */
+    public boolean isHashGrouping() {
+        return (this.hash_grouping);
+    }
+
+    // ----------------------------------------------------------------------------
+    // OUTPUT
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Move to the next key in the REDUCE input. Any rows of the
+     * current key that were not consumed are skipped.
+     * @return false if there are no more keys
+     */
+    public boolean nextKey() {
+        if (this.sealed == false) this.seal();
+
+        if (this.current_rows != null) {
+            while (this.current_rows.hasNext()) {
+                this.current_rows.next();
+            } // WHILE
+            this.current_rows = null;
+        }
+
+        // Hash Grouping
+        if (this.hash_grouping) {
+            if (++this.group_offset >= this.groups.size()) return (false);
+            List<Object[]> group = this.groups.get(this.group_offset);
+            this.groups.set(this.group_offset, null);
+
+            this.group_block.clearRowData();
+            for (Object row[] : group) {
+                this.group_block.addRow(row);
+            } // FOR
+            this.current_rows = new BlockIterator(this.group_block);
+            this.current_key = this.castKey(group.get(0)[0]);
+            return (true);
+        }
+
+        // Sort Grouping
+        if (this.queue.isEmpty()) return (false);
+        RunCursor top = this.queue.peek();
+        this.current_key = this.castKey(top.block.get(0));
+        this.current_rows = new GroupIterator(top);
+        return (true);
+    }
+
+    /**
+     * Returns the current key
+     * @return
+     */
+    public K getKey() {
+        assert(this.current_rows != null) : "nextKey() was not called";
+        return (this.current_key);
+    }
+
+    /**
+     * Returns an iterator over the rows for the current key. The returned
+     * VoltTableRow is only valid until the next call to the iterator.
+     * @return
+     */
+    public Iterator<VoltTableRow> getRows() {
+        assert(this.current_rows != null) : "nextKey() was not called";
+        return (this.current_rows);
+    }
+
+    /**
+     * Release all of the memory and remove any spilled runs
+     */
+    public void close() {
+        if (this.queue != null) {
+            for (RunCursor cursor : this.queue) {
+                cursor.close();
+            } // FOR
+            this.queue = null;
+        }
+        for (File f : this.runs) {
+            f.delete();
+        } // FOR
+        this.runs.clear();
+        this.rows.clear();
+        this.groups.clear();
+        this.current_rows = null;
+        this.memory_bytes = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K castKey(Object key) {
+        return ((K)key);
+    }
+
+    private void seal() {
+        this.sealed = true;
+        if (this.hash_grouping) {
+            this.group_block = new VoltTable(this.schema);
+            return;
+        }
+
+        Collections.sort(this.rows, this.comparator);
+        this.queue = new PriorityQueue<RunCursor>(this.runs.size() + 1);
+        int ordinal = 0;
+        for (File f : this.runs) {
+            this.addCursor(new FileRunCursor(ordinal++, f));
+        } // FOR
+        // The rows in memory were added after everything that was spilled
+        this.addCursor(new MemoryRunCursor(ordinal++, this.rows));
+        if (debug.get())
+            LOG.debug(String.format("Merging %d REDUCE input rows from %d spilled runs",
+                                    this.row_count, this.runs.size()));
+    }
+
+    private void addCursor(RunCursor cursor) {
+        if (cursor.advance()) {
+            this.queue.add(cursor);
+        } else {
+            cursor.close();
+        }
+    }
+
+    private boolean sameKey(RunCursor cursor) {
+        if (this.int_key) {
+            return (cursor.long_key == ((Number)this.current_key).longValue());
+        }
+        Object key = cursor.block.get(0);
+        return (key == null ? this.current_key == null : key.equals(this.current_key));
+    }
+
+    // ----------------------------------------------------------------------------
+    // ITERATORS
+    // ----------------------------------------------------------------------------
+
+    /**
+     * Returns the rows of a single block
+     */
+    private static class BlockIterator implements Iterator<VoltTableRow> {
+        private final VoltTable block;
+        private boolean advanced = false;
+        private boolean has_next = false;
+
+        public BlockIterator(VoltTable block) {
+            this.block = block;
+            this.block.resetRowPosition();
+        }
+        @Override
+        public boolean hasNext() {
+            if (this.advanced == false) {
+                this.has_next = this.block.advanceRow();
+                this.advanced = true;
+            }
+            return (this.has_next);
+        }
+        @Override
+        public VoltTableRow next() {
+            if (this.hasNext() == false) throw new NoSuchElementException();
+            this.advanced = false;
+            return (this.block);
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove from the REDUCE input");
+        }
+    }
+
+    /**
+     * Merges the rows for the current key from all of the runs
+     */
+    private class GroupIterator implements Iterator<VoltTableRow> {
+        /** The cursor whose row we last returned. We can't advance it until we're called again */
+        private RunCursor last;
+
+        public GroupIterator(RunCursor first) {
+            assert(first == queue.peek());
+        }
+        @Override
+        public boolean hasNext() {
+            if (this.last != null) {
+                addCursor(this.last);
+                this.last = null;
+            }
+            return (queue.isEmpty() == false && sameKey(queue.peek()));
+        }
+        @Override
+        public VoltTableRow next() {
+            if (this.hasNext() == false) throw new NoSuchElementException();
+            this.last = queue.poll();
+            return (this.last.block);
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove from the REDUCE input");
+        }
+    }
+
+    /**
+     * A position in a sorted run
+     */
+    private abstract class RunCursor implements Comparable<RunCursor> {
+        private final int ordinal;
+        protected VoltTable block;
+        private long long_key;
+
+        public RunCursor(int ordinal) {
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * Returns the next block of rows in this run, or null if there are none left
+         */
+        protected abstract VoltTable nextBlock() throws IOException;
+
+        public void close() {
+            this.block = null;
+        }
+
+        public final boolean advance() {
+            try {
+                while (this.block == null || this.block.advanceRow() == false) {
+                    this.block = this.nextBlock();
+                    if (this.block == null) return (false);
+                    this.block.resetRowPosition();
+                } // WHILE
+            } catch (IOException ex) {
+                throw new RuntimeException("Failed to read spilled REDUCE input", ex);
+            }
+            if (int_key) this.long_key = this.block.getLong(0);
+            return (true);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compareTo(RunCursor other) {
+            int cmp;
+            if (int_key) {
+                cmp = compareLongs(this.long_key, other.long_key);
+            } else {
+                cmp = compareObjects((Comparable<Object>)this.block.get(0), other.block.get(0));
+            }
+            // Preserve the order that the rows were added in for the same key
+            return (cmp != 0 ? cmp : this.ordinal - other.ordinal);
+        }
+    }
+
+    private class MemoryRunCursor extends RunCursor {
+        private final Iterator<Object[]> it;
+
+        public MemoryRunCursor(int ordinal, List<Object[]> rows) {
+            super(ordinal);
+            this.it = rows.iterator();
+        }
+        @Override
+        protected VoltTable nextBlock() {
+            if (this.it.hasNext() == false) return (null);
+            // We only get called once the caller is done with the last row
+            // of the previous block, so it's safe to reuse it
+            VoltTable ret = (this.block != null ? this.block : new VoltTable(schema));
+            ret.clearRowData();
+            while (this.it.hasNext() && ret.getUnderlyingBufferSize() < BLOCK_SIZE) {
+                ret.addRow(this.it.next());
+            } // WHILE
+            return (ret);
+        }
+    }
+
+    private class FileRunCursor extends RunCursor {
+        private final File file;
+        private DataInputStream in;
+
+        public FileRunCursor(int ordinal, File file) {
+            super(ordinal);
+            this.file = file;
+        }
+        @Override
+        protected VoltTable nextBlock() throws IOException {
+            if (this.in == null) {
+                this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+            }
+            int length;
+            try {
+                length = this.in.readInt();
+            } catch (EOFException ex) {
+                return (null);
+            }
+            byte bytes[] = new byte[length];
+            this.in.readFully(bytes);
+            return (new FastDeserializer(bytes).readObject(VoltTable.class));
+        }
+        @Override
+        public void close() {
+            super.close();
+            if (this.in != null) {
+                try {
+                    this.in.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+                this.in = null;
+            }
+            this.file.delete();
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+    // KEY COMPARISON
+    // ----------------------------------------------------------------------------
+
+    private static int compareLongs(long a, long b) {
+        return (a < b ? -1 : (a == b ? 0 : 1));
+    }
+
+    private static int compareObjects(Comparable<Object> a, Object b) {
+        if (a == null) return (b == null ? 0 : -1);
+        if (b == null) return (1);
+        return (a.compareTo(b));
+    }
+
+    private static final Comparator<Object[]> LONG_KEY_COMPARATOR = new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] o1, Object[] o2) {
+            return compareLongs(((Number)o1[0]).longValue(), ((Number)o2[0]).longValue());
+        }
+    };
+
+    private static final Comparator<Object[]> OBJECT_KEY_COMPARATOR = new Comparator<Object[]>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public int compare(Object[] o1, Object[] o2) {
+            return compareObjects((Comparable<Object>)o1[0], o2[0]);
+        }
+    };
+
+    /**
+     * Open-addressing map from primitive long keys to group offsets
+     */
+    private static class LongIntHashMap {
+        private long keys[] = new long[64];
+        private int values[] = new int[64];
+        private boolean used[] = new boolean[64];
+        private int size = 0;
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int)(h ^ (h >>> 32));
+        }
+
+        public int get(long key) {
+            int mask = this.keys.length - 1;
+            int idx = hash(key) & mask;
+            while (this.used[idx]) {
+                if (this.keys[idx] == key) return (this.values[idx]);
+                idx = (idx + 1) & mask;
+            } // WHILE
+            return (-1);
+        }
+
+        public void put(long key, int value) {
+            if ((this.size + 1) * 2 > this.keys.length) this.resize();
+            int mask = this.keys.length - 1;
+            int idx = hash(key) & mask;
+            while (this.used[idx]) {
+                if (this.keys[idx] == key) {
+                    this.values[idx] = value;
+                    return;
+                }
+                idx = (idx + 1) & mask;
+            } // WHILE
+            this.used[idx] = true;
+            this.keys[idx] = key;
+            this.values[idx] = value;
+            this.size++;
+        }
+
+        public void clear() {
+            this.keys = new long[64];
+            this.values = new int[64];
+            this.used = new boolean[64];
+            this.size = 0;
+        }
+
+        private void resize() {
+            long old_keys[] = this.keys;
+            int old_values[] = this.values;
+            boolean old_used[] = this.used;
+            this.keys = new long[old_keys.length * 2];
+            this.values = new int[old_keys.length * 2];
+            this.used = new boolean[old_keys.length * 2];
+            this.size = 0;
+            for (int i = 0; i < old_keys.length; i++) {
+                if (old_used[i]) this.put(old_keys[i], old_values[i]);
+            } // FOR
+        }
+    }
+}
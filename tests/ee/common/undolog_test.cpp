@@ -25,6 +25,7 @@
 #include "common/UndoLog.h"
 #include "common/UndoQuantum.h"
 #include "common/Pool.hpp"
+#include "common/executorcontext.hpp"
 #include <vector>
 #include <stdint.h>
 
@@ -290,6 +291,56 @@ TEST_F(UndoLogTest, TestTwoQuantumTwoActionUndoOneReleaseOne) {
     confirmReleaseActionHistoryOrder(m_undoActionHistoryByQuantum[0], startingIndex);
 }
 
+/*
+ * Asking for the same token more than once should always give back the same quantum.
+ */
+TEST_F(UndoLogTest, TestGetOrGenerateUndoQuantum) {
+    const int64_t undoToken = INT64_MIN + 1;
+    voltdb::UndoQuantum *quantum = m_undoLog->getOrGenerateUndoQuantum(undoToken);
+    ASSERT_TRUE(quantum != NULL);
+    ASSERT_EQ(undoToken, quantum->getUndoToken());
+    ASSERT_TRUE(quantum == m_undoLog->getOrGenerateUndoQuantum(undoToken));
+
+    voltdb::UndoQuantum *next = m_undoLog->getOrGenerateUndoQuantum(undoToken + 1);
+    ASSERT_TRUE(next != quantum);
+    ASSERT_EQ(undoToken + 1, next->getUndoToken());
+}
+
+/*
+ * A transaction that never wrote anything never generates its quantum, so
+ * undoing its token after everything before it was released is a no-op.
+ */
+TEST_F(UndoLogTest, TestUndoNeverGeneratedQuantum) {
+    std::vector<int64_t> undoTokens = generateQuantumsAndActions( 2, 2);
+    m_undoLog->release(undoTokens[1]);
+    int startingIndex = 0;
+    confirmReleaseActionHistoryOrder(m_undoActionHistoryByQuantum[0], startingIndex);
+    confirmReleaseActionHistoryOrder(m_undoActionHistoryByQuantum[1], startingIndex);
+
+    m_undoLog->undo(undoTokens[1] + 1);
+    ASSERT_EQ(0, staticUndoneIndex);
+}
+
+/*
+ * The ExecutorContext should only generate the quantum when somebody asks for it.
+ */
+TEST_F(UndoLogTest, TestExecutorContextLazyUndoQuantum) {
+    const int64_t undoToken = INT64_MIN + 1;
+    voltdb::ExecutorContext context(0, 0, NULL, NULL, false, 0, "localhost", 0);
+    context.setupForPlanFragments(m_undoLog, undoToken, 1, 0);
+
+    // The first batch was read-only and never asked for its quantum
+    context.setupForPlanFragments(m_undoLog, undoToken + 1, 2, 1);
+    voltdb::UndoQuantum *quantum = context.getCurrentUndoQuantum();
+    ASSERT_TRUE(quantum != NULL);
+    ASSERT_EQ(undoToken + 1, quantum->getUndoToken());
+    ASSERT_TRUE(quantum == context.getCurrentUndoQuantum());
+
+    // The next batch of the same transaction gets the same quantum back
+    context.setupForPlanFragments(m_undoLog, undoToken + 1, 2, 1);
+    ASSERT_TRUE(quantum == context.getCurrentUndoQuantum());
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -0,0 +1,274 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+#include "common/common.h"
+#include "common/NValue.hpp"
+#include "common/ValueFactory.hpp"
+#include "common/TupleSchema.h"
+#include "common/tabletuple.h"
+#include "execution/VoltDBEngine.h"
+#include "expressions/abstractexpression.h"
+#include "expressions/batchpredicate.h"
+#include "expressions/expressions.h"
+#include "expressions/expressionutil.h"
+#include "storage/persistenttable.h"
+#include "storage/ColumnarProjection.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+
+#include <string>
+#include <vector>
+
+#define TUPLES 3000
+
+using namespace voltdb;
+
+static const char* NAMES[] = { "alpha", "bravo", "charlie", "delta", "echo" };
+#define NUM_NAMES 5
+
+class ColumnarProjectionTest : public Test {
+public:
+    ColumnarProjectionTest() {
+        m_engine = new VoltDBEngine();
+        m_engine->initialize(1, 1, 0, 0, "");
+        m_engine->setUndoToken(INT64_MIN + 1);
+
+        std::vector<ValueType> columnTypes;
+        std::vector<int32_t> columnLengths;
+        std::vector<bool> columnAllowNull;
+        std::string columnNames[4] = { "ID", "VAL", "AMOUNT", "NAME" };
+
+        columnTypes.push_back(VALUE_TYPE_INTEGER);
+        columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_INTEGER));
+        columnAllowNull.push_back(false);
+        columnTypes.push_back(VALUE_TYPE_BIGINT);
+        columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+        columnAllowNull.push_back(true);
+        columnTypes.push_back(VALUE_TYPE_DOUBLE);
+        columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_DOUBLE));
+        columnAllowNull.push_back(true);
+        columnTypes.push_back(VALUE_TYPE_VARCHAR);
+        columnLengths.push_back(16);
+        columnAllowNull.push_back(true);
+
+        TupleSchema *schema = TupleSchema::createTupleSchema(columnTypes, columnLengths, columnAllowNull, true);
+        m_table = dynamic_cast<PersistentTable*>(TableFactory::getPersistentTable(0, 1, m_engine->getExecutorContext(),
+                                                                                  "test_table", schema, columnNames,
+                                                                                  -1, false, false));
+        m_table->enableColumnarProjection();
+
+        for (int ii = 0; ii < TUPLES; ii++) {
+            TableTuple &tuple = m_table->tempTuple();
+            tuple.setNValue(0, ValueFactory::getIntegerValue(ii));
+            tuple.setNValue(1, ValueFactory::getBigIntValue(ii % 10));
+            tuple.setNValue(2, ValueFactory::getDoubleValue(ii * 0.5));
+            if (ii % 7 == 0) {
+                tuple.setNValue(3, ValueFactory::getNullStringValue());
+            } else {
+                NValue name = ValueFactory::getStringValue(NAMES[ii % NUM_NAMES]);
+                tuple.setNValue(3, name);
+                name.free();
+            }
+            m_table->insertTuple(tuple);
+        }
+    }
+
+    ~ColumnarProjectionTest() {
+        delete m_engine;
+        delete m_table;
+    }
+
+    /**
+     * Evaluate the predicate over the table's ColumnarProjection and make sure
+     * that we get the same answer as eval()
+     */
+    int columnarCount(BatchPredicate &batch_predicate, AbstractExpression *predicate) {
+        ColumnarProjection *columns = m_table->columnarProjection();
+        columns->refresh();
+        batch_predicate.bind(columns);
+
+        int selected[BatchPredicate::BATCH_SIZE];
+        int64_t row = 0;
+        int count = 0;
+        while (row < columns->getRowCount()) {
+            int batch_size = (int)std::min<int64_t>(columns->getRowCount() - row, BatchPredicate::BATCH_SIZE);
+            int num_selected = batch_predicate.filter(columns, row, batch_size, selected);
+            for (int ii = 0; ii < num_selected; ii++) {
+                if (ii > 0) EXPECT_TRUE(selected[ii - 1] < selected[ii]);
+                TableTuple tuple(m_table->schema());
+                tuple.move(columns->getTupleAddress(row + selected[ii]));
+                EXPECT_TRUE(predicate->eval(&tuple, NULL).isTrue());
+            }
+            count += num_selected;
+            row += batch_size;
+        }
+
+        int expected = 0;
+        TableIterator iter = m_table->tableIterator();
+        TableTuple match(m_table->schema());
+        while (iter.next(match)) {
+            if (predicate->eval(&match, NULL).isTrue()) expected++;
+        }
+        EXPECT_EQ(expected, count);
+        return (count);
+    }
+
+    VoltDBEngine *m_engine;
+    PersistentTable *m_table;
+};
+
+TEST_F(ColumnarProjectionTest, Refresh) {
+    ColumnarProjection *columns = m_table->columnarProjection();
+    ASSERT_TRUE(columns != NULL);
+    ASSERT_FALSE(columns->isValid());
+
+    columns->refresh();
+    ASSERT_TRUE(columns->isValid());
+    ASSERT_EQ(TUPLES, columns->getRowCount());
+    ASSERT_EQ(1, columns->getRefreshCount());
+
+    // Columns are only materialized when somebody asks for them
+    ASSERT_EQ(0, columns->getMaterializedColumnCount());
+    const int64_t *values = reinterpret_cast<const int64_t*>(columns->getColumnData(1));
+    ASSERT_EQ(1, columns->getMaterializedColumnCount());
+    for (int64_t row = 0; row < columns->getRowCount(); row++) {
+        TableTuple tuple(m_table->schema());
+        tuple.move(columns->getTupleAddress(row));
+        ASSERT_EQ(ValuePeeker::peekAsBigInt(tuple.getNValue(1)), values[row]);
+    }
+
+    // Refreshing a valid projection is a no-op
+    columns->refresh();
+    ASSERT_EQ(1, columns->getRefreshCount());
+    ASSERT_EQ(1, columns->getMaterializedColumnCount());
+}
+
+TEST_F(ColumnarProjectionTest, Dictionary) {
+    ColumnarProjection *columns = m_table->columnarProjection();
+    columns->refresh();
+    ASSERT_TRUE(columns->isDictionaryEncoded(3));
+    ASSERT_FALSE(columns->isDictionaryEncoded(1));
+
+    const int32_t *codes = reinterpret_cast<const int32_t*>(columns->getColumnData(3));
+    for (int64_t row = 0; row < columns->getRowCount(); row++) {
+        TableTuple tuple(m_table->schema());
+        tuple.move(columns->getTupleAddress(row));
+        const NValue value = tuple.getNValue(3);
+        ASSERT_EQ(columns->lookupCode(3, value), codes[row]);
+        if (value.isNull()) {
+            ASSERT_EQ(ColumnarProjection::NULL_CODE, codes[row]);
+        } else {
+            ASSERT_TRUE(codes[row] > 0);
+        }
+    }
+
+    NValue missing = ValueFactory::getStringValue("zulu");
+    ASSERT_EQ(ColumnarProjection::MISSING_CODE, columns->lookupCode(3, missing));
+    missing.free();
+}
+
+TEST_F(ColumnarProjectionTest, ColumnarFilter) {
+    // WHERE VAL = 3 AND NAME = 'delta' AND AMOUNT < 1000.0
+    AbstractExpression *equal1 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(1, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(3)));
+    AbstractExpression *equal2 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(3, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getStringValue("delta")));
+    AbstractExpression *lt = comparisonFactory(EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                                               new TupleValueExpression(2, std::string("tablename"), std::string("colname")),
+                                               constantValueFactory(ValueFactory::getDoubleValue(1000.0)));
+    AbstractExpression *predicate2 = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, equal2, lt);
+    AbstractExpression *predicate = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, equal1, predicate2);
+
+    BatchPredicate batch_predicate(predicate, m_table->schema());
+
+    // String comparisons can only be vectorized with the dictionary
+    batch_predicate.bind();
+    ASSERT_EQ(3, batch_predicate.getTermCount());
+    ASSERT_EQ(2, batch_predicate.getVectorizedTermCount());
+
+    ASSERT_TRUE(columnarCount(batch_predicate, predicate) > 0);
+    ASSERT_EQ(3, batch_predicate.getVectorizedTermCount());
+    ::printf("\n%s\n", batch_predicate.debug().c_str());
+
+    // The scan only touched the columns that the predicate references
+    ASSERT_EQ(3, m_table->columnarProjection()->getMaterializedColumnCount());
+
+    delete predicate;
+}
+
+TEST_F(ColumnarProjectionTest, MissingString) {
+    // WHERE NAME = $1
+    AbstractExpression *predicate = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                      new TupleValueExpression(3, std::string("tablename"), std::string("colname")),
+                                                      parameterValueFactory(0));
+    NValueArray params(1);
+    params[0] = ValueFactory::getStringValue("zulu");
+    predicate->substitute(params);
+
+    BatchPredicate batch_predicate(predicate, m_table->schema());
+    ASSERT_EQ(0, columnarCount(batch_predicate, predicate));
+    ASSERT_EQ(1, batch_predicate.getVectorizedTermCount());
+    params[0].free();
+
+    // NULL = NULL in NValue::compare(), so this must select the NULL names
+    params[0] = ValueFactory::getNullStringValue();
+    predicate->substitute(params);
+    ASSERT_EQ((TUPLES + 6) / 7, columnarCount(batch_predicate, predicate));
+
+    delete predicate;
+}
+
+TEST_F(ColumnarProjectionTest, Invalidate) {
+    ColumnarProjection *columns = m_table->columnarProjection();
+    columns->refresh();
+    columns->getColumnData(0);
+    ASSERT_TRUE(columns->isValid());
+
+    // Deleting a tuple throws away the columnar copy
+    TableTuple tuple(m_table->schema());
+    tuple.move(columns->getTupleAddress(0));
+    m_engine->setUndoToken(INT64_MIN + 2);
+    m_engine->getExecutorContext();
+    m_table->deleteTuple(tuple, true);
+    ASSERT_FALSE(columns->isValid());
+
+    columns->refresh();
+    ASSERT_EQ(TUPLES - 1, columns->getRowCount());
+    ASSERT_EQ(2, columns->getRefreshCount());
+    ASSERT_EQ(0, columns->getMaterializedColumnCount());
+
+    // And so does undoing the delete
+    m_engine->undoUndoToken(INT64_MIN + 2);
+    ASSERT_FALSE(columns->isValid());
+    columns->refresh();
+    ASSERT_EQ(TUPLES, columns->getRowCount());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -56,6 +56,7 @@
 #include "common/ValueFactory.hpp"
 #include "common/tabletuple.h"
 #include "expressions/abstractexpression.h"
+#include "expressions/batchpredicate.h"
 #include "expressions/expressions.h"
 #include "expressions/expressionutil.h"
 #include "storage/temptable.h"
@@ -113,6 +114,41 @@ public:
         delete table_static;
     };
 
+    /**
+     * Count the tuples that match the predicate by feeding the table through a
+     * BatchPredicate and make sure that we get the same answer as eval()
+     */
+    int batchCount(AbstractExpression *predicate) {
+        BatchPredicate batch_predicate(predicate, table->schema());
+        batch_predicate.bind();
+
+        char* batch[BatchPredicate::BATCH_SIZE];
+        int selected[BatchPredicate::BATCH_SIZE];
+        int count = 0;
+        int expected = 0;
+        int batch_size = 0;
+        TableIterator iter = table->tableIterator();
+        TableTuple match(table->schema());
+        while (true) {
+            bool more = iter.next(match);
+            if (more) {
+                if (predicate->eval(&match, NULL).isTrue()) ++expected;
+                batch[batch_size++] = match.address();
+            }
+            if (batch_size == BatchPredicate::BATCH_SIZE || (more == false && batch_size > 0)) {
+                int found = batch_predicate.filter(batch, batch_size, selected);
+                for (int ii = 1; ii < found; ++ii) {
+                    EXPECT_TRUE(selected[ii-1] < selected[ii]);
+                }
+                count += found;
+                batch_size = 0;
+            }
+            if (more == false) break;
+        }
+        EXPECT_EQ(expected, count);
+        return count;
+    }
+
     static Table* table_static;
     Table* table;
 };
@@ -323,6 +359,68 @@ TEST_F(FilterTest, SubstituteFilter) {
     delete predicate;
 }
 
+TEST_F(FilterTest, BatchFilter) {
+    // WHERE val1=1 AND val2=2 AND 3=val3 AND val4 >= 4
+    AbstractExpression *equal1 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(1, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(1)));
+    AbstractExpression *equal2 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(2, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(2)));
+    AbstractExpression *equal3 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   constantValueFactory(ValueFactory::getBigIntValue(3)),
+                                                   new TupleValueExpression(3, std::string("tablename"), std::string("colname")));
+    AbstractExpression *gte4 = comparisonFactory(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                                                 new TupleValueExpression(4, std::string("tablename"), std::string("colname")),
+                                                 constantValueFactory(ValueFactory::getIntegerValue(4)));
+
+    AbstractExpression *predicate3 = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, equal3, gte4);
+    AbstractExpression *predicate2 = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, equal2, predicate3);
+    AbstractExpression *predicate = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, equal1, predicate2);
+
+    BatchPredicate batch_predicate(predicate, table->schema());
+    batch_predicate.bind();
+    ASSERT_EQ(4, batch_predicate.getTermCount());
+    ASSERT_EQ(4, batch_predicate.getVectorizedTermCount());
+    ::printf("\n%s\n", batch_predicate.debug().c_str());
+
+    ASSERT_EQ(14, batchCount(predicate));
+
+    delete predicate;
+}
+TEST_F(FilterTest, BatchFilterFallback) {
+    // WHERE (id = 20 OR id = 30) AND val1 < $1
+    AbstractExpression *equal1 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(0, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(20)));
+    AbstractExpression *equal2 = comparisonFactory(EXPRESSION_TYPE_COMPARE_EQUAL,
+                                                   new TupleValueExpression(0, std::string("tablename"), std::string("colname")),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(30)));
+    AbstractExpression *lt = comparisonFactory(EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                                               new TupleValueExpression(1, std::string("tablename"), std::string("colname")),
+                                               parameterValueFactory(0));
+    AbstractExpression *either = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_OR, equal1, equal2);
+    AbstractExpression *predicate = conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, either, lt);
+
+    NValueArray params(1);
+    params[0] = ValueFactory::getBigIntValue(1);
+    predicate->substitute(params);
+    BatchPredicate batch_predicate(predicate, table->schema());
+    batch_predicate.bind();
+    ASSERT_EQ(2, batch_predicate.getTermCount());
+    ASSERT_EQ(1, batch_predicate.getVectorizedTermCount());
+    ASSERT_EQ(2, batchCount(predicate));
+
+    // A parameter that we can't compare natively falls back to eval()
+    params[0] = ValueFactory::getDoubleValue(0.5);
+    predicate->substitute(params);
+    batch_predicate.bind();
+    ASSERT_EQ(0, batch_predicate.getVectorizedTermCount());
+    ASSERT_EQ(2, batchCount(predicate));
+
+    delete predicate;
+}
+
 int main() {
     int ret = TestSuite::globalInstance()->runAll();
     FilterTest::releaseAll();// will be eventually done as its smart pointer, but safer is better.
@@ -246,6 +246,50 @@ TEST_F(PersistentTableLogTest, InsertThenUndoInsertsOneTest) {
     ASSERT_EQ( m_table->activeTupleCount(), 0);
 }
 
+/*
+ * The frontend holds off on releasing the undo tokens of committed txns. A batch
+ * that runs without undo logging after one of them must not log its changes into
+ * that txn's quantum.
+ */
+TEST_F(PersistentTableLogTest, NoUndoLoggingAfterUnreleasedCommitTest) {
+    initTable(true);
+    tableutil::addRandomTuples(m_table, 10);
+    ASSERT_EQ( m_table->activeTupleCount(), 10);
+
+    m_engine->setUndoToken(INT64_MAX);
+    ASSERT_TRUE(m_engine->getExecutorContext()->getCurrentUndoQuantum()->isDummy());
+    tableutil::addRandomTuples(m_table, 10);
+    ASSERT_EQ( m_table->activeTupleCount(), 20);
+
+    // Only the first txn's inserts were logged in its quantum
+    m_engine->setUndoToken(INT64_MIN + 2);
+    m_engine->getExecutorContext();
+    m_engine->undoUndoToken(INT64_MIN + 1);
+    ASSERT_EQ( m_table->activeTupleCount(), 10);
+}
+
+/*
+ * Releasing the token of a txn that committed before a batch without undo
+ * logging still has to release its quantum.
+ */
+TEST_F(PersistentTableLogTest, ReleaseAfterNoUndoLoggingTest) {
+    initTable(true);
+    tableutil::addRandomTuples(m_table, 10);
+    m_engine->setUndoToken(INT64_MAX);
+    m_engine->getExecutorContext();
+    tableutil::addRandomTuples(m_table, 10);
+    m_engine->releaseUndoToken(INT64_MIN + 1);
+
+    m_engine->setUndoToken(INT64_MIN + 2);
+    m_engine->getExecutorContext();
+    tableutil::addRandomTuples(m_table, 10);
+    ASSERT_EQ( m_table->activeTupleCount(), 30);
+
+    // The first txn's quantum is gone, so only the last txn gets rolled back
+    m_engine->undoUndoToken(INT64_MIN + 1);
+    ASSERT_EQ( m_table->activeTupleCount(), 20);
+}
+
 int main() {
     return TestSuite::globalInstance()->runAll();
 }
@@ -0,0 +1,184 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+#include "common/common.h"
+#include "common/NValue.hpp"
+#include "common/ValueFactory.hpp"
+#include "common/TupleSchema.h"
+#include "common/tabletuple.h"
+#include "storage/temptable.h"
+#include "storage/tablefactory.h"
+#include "storage/TempTableArena.h"
+#include "storage/tableiterator.h"
+#include "common/ValuePeeker.hpp"
+
+using namespace std;
+using namespace voltdb;
+
+#define NUM_OF_TUPLES 20000
+
+class TempTableArenaTest : public Test {
+public:
+    TempTableArenaTest() {
+        columnNames = new std::string[2];
+        columnNames[0] = "A";
+        columnNames[1] = "B";
+    }
+    ~TempTableArenaTest() {
+        delete[] columnNames;
+    }
+
+    TempTable* createTable() {
+        std::vector<voltdb::ValueType> columnTypes;
+        std::vector<int32_t> columnLengths;
+        std::vector<bool> columnAllowNull;
+        for (int ctr = 0; ctr < 2; ctr++) {
+            columnTypes.push_back(VALUE_TYPE_BIGINT);
+            columnLengths.push_back(NValue::getTupleStorageSize(VALUE_TYPE_BIGINT));
+            columnAllowNull.push_back(false);
+        }
+        TupleSchema *schema = TupleSchema::createTupleSchema(columnTypes, columnLengths, columnAllowNull, true);
+        return (TableFactory::getTempTable(1000, "temp_table", schema, columnNames, NULL));
+    }
+
+    void fill(TempTable *table, int count) {
+        TableTuple &tuple = table->tempTuple();
+        for (int i = 0; i < count; i++) {
+            tuple.setNValue(0, ValueFactory::getBigIntValue(i));
+            tuple.setNValue(1, ValueFactory::getBigIntValue(i * 2));
+            table->insertTuple(tuple);
+        }
+    }
+
+protected:
+    std::string *columnNames;
+};
+
+TEST_F(TempTableArenaTest, AllocateRelease) {
+    TempTableArena arena;
+    const int bytes = 131072;
+
+    char *block0 = arena.allocate(bytes);
+    char *block1 = arena.allocate(bytes);
+    ASSERT_EQ(2, arena.getAllocationCount());
+    ASSERT_EQ(0, arena.getHitCount());
+    ASSERT_EQ(2 * bytes, arena.getBytesInUse());
+
+    arena.release(block0, bytes);
+    arena.release(block1, bytes);
+    ASSERT_EQ(0, arena.getBytesInUse());
+    ASSERT_EQ(2 * bytes, arena.getPeakBytesInUse());
+    ASSERT_EQ(2 * bytes, arena.getBytesRetained());
+
+    // The next two requests should come straight out of the free list
+    char *block2 = arena.allocate(bytes);
+    char *block3 = arena.allocate(bytes);
+    ASSERT_EQ(2, arena.getHitCount());
+    ASSERT_TRUE(block2 == block0 || block2 == block1);
+    ASSERT_TRUE(block3 == block0 || block3 == block1);
+    ASSERT_EQ(0, arena.getBytesRetained());
+
+    // But a different size class should not
+    char *block4 = arena.allocate(bytes * 2);
+    ASSERT_EQ(2, arena.getHitCount());
+
+    arena.release(block2, bytes);
+    arena.release(block3, bytes);
+    arena.release(block4, bytes * 2);
+    ASSERT_EQ(4 * bytes, arena.getBytesRetained());
+    arena.trim();
+    ASSERT_EQ(0, arena.getBytesRetained());
+    ASSERT_EQ(4 * bytes, arena.getPeakBytesInUse());
+}
+
+TEST_F(TempTableArenaTest, PassThrough) {
+    TempTableArena arena(65536);
+
+    // Sizes that are not a size class are never pooled
+    char *odd = arena.allocate(1000);
+    arena.release(odd, 1000);
+    ASSERT_EQ(0, arena.getBytesRetained());
+    odd = arena.allocate(1000);
+    ASSERT_EQ(0, arena.getHitCount());
+    arena.release(odd, 1000);
+
+    // And we never hold on to more than the limit
+    char *block0 = arena.allocate(65536);
+    char *block1 = arena.allocate(65536);
+    arena.release(block0, 65536);
+    arena.release(block1, 65536);
+    ASSERT_EQ(65536, arena.getBytesRetained());
+    ASSERT_EQ(0, arena.getBytesInUse());
+}
+
+TEST_F(TempTableArenaTest, RecycleBetweenTables) {
+    TempTableArena arena;
+    TempTable *first = createTable();
+    TempTable *second = createTable();
+    // Give the first table a block of its own before it is attached
+    fill(first, 1);
+    first->setBlockArena(&arena);
+    second->setBlockArena(&arena);
+    const int64_t initialBytes = arena.getBytesInUse();
+    ASSERT_TRUE(initialBytes > 0);
+
+    // Fill the first table so that it needs more than one block and
+    // then clear it like we do at the end of every plan fragment
+    fill(first, NUM_OF_TUPLES - 1);
+    ASSERT_TRUE(arena.getBytesInUse() > initialBytes);
+    const int64_t allocations = arena.getAllocationCount();
+    ASSERT_TRUE(allocations > 1);
+    ASSERT_EQ(0, arena.getHitCount());
+    first->deleteAllTuples(false);
+    ASSERT_EQ(initialBytes, arena.getBytesInUse());
+    ASSERT_TRUE(arena.getBytesRetained() > 0);
+
+    // The second table should now be able to reuse all of those blocks. It
+    // needs one more than what was given back because it starts out empty
+    fill(second, NUM_OF_TUPLES);
+    ASSERT_EQ(allocations * 2 + 1, arena.getAllocationCount());
+    ASSERT_EQ(allocations, arena.getHitCount());
+    ASSERT_EQ(0, arena.getBytesRetained());
+
+    int64_t count = 0;
+    TableIterator iter = second->tableIterator();
+    TableTuple tuple(second->schema());
+    while (iter.next(tuple)) {
+        ASSERT_EQ(count * 2, ValuePeeker::peekAsBigInt(tuple.getNValue(1)));
+        count++;
+    }
+    ASSERT_EQ(NUM_OF_TUPLES, count);
+
+    // Deleting the tables gives everything back, including the blocks
+    // that they allocated before they were attached to the arena
+    delete first;
+    delete second;
+    ASSERT_EQ(0, arena.getBytesInUse());
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -0,0 +1,178 @@
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+/**
+ * Micro-benchmark for scanning wide tables with a predicate. We compare
+ * evaluating the predicate one tuple at a time through eval() against the
+ * BatchPredicate that the SeqScanExecutor uses and print the throughput of
+ * each. Set the WIDE_SCAN_TUPLES environment variable to scan a larger table.
+ */
+
+#include <cstdlib>
+#include <sys/time.h>
+#include "harness.h"
+#include "common/common.h"
+#include "common/valuevector.h"
+#include "common/ValueFactory.hpp"
+#include "common/tabletuple.h"
+#include "expressions/abstractexpression.h"
+#include "expressions/batchpredicate.h"
+#include "expressions/expressions.h"
+#include "expressions/expressionutil.h"
+#include "storage/temptable.h"
+#include "storage/tablefactory.h"
+#include "storage/tableiterator.h"
+
+#define NUM_COLUMNS 30
+#define DEFAULT_TUPLES 100000
+#define NUM_ROUNDS 5
+
+using namespace std;
+using namespace voltdb;
+
+class WideScanBenchmark : public Test {
+public:
+    WideScanBenchmark() {
+        num_tuples = DEFAULT_TUPLES;
+        const char *env = ::getenv("WIDE_SCAN_TUPLES");
+        if (env != NULL) num_tuples = ::atoi(env);
+
+        // Columns cycle through INTEGER, BIGINT, DOUBLE
+        std::string *columnNames = new std::string[NUM_COLUMNS];
+        std::vector<voltdb::ValueType> columnTypes;
+        std::vector<int32_t> columnLengths;
+        std::vector<bool> columnAllowNull;
+        for (int ctr = 0; ctr < NUM_COLUMNS; ctr++) {
+            char name[16];
+            ::sprintf(name, "col%02d", ctr);
+            columnNames[ctr] = name;
+            ValueType type = (ctr % 3 == 0 ? VALUE_TYPE_INTEGER :
+                             (ctr % 3 == 1 ? VALUE_TYPE_BIGINT : VALUE_TYPE_DOUBLE));
+            columnTypes.push_back(type);
+            columnLengths.push_back(NValue::getTupleStorageSize(type));
+            columnAllowNull.push_back(true);
+        }
+        TupleSchema *schema = TupleSchema::createTupleSchema(columnTypes, columnLengths, columnAllowNull, true);
+        table = TableFactory::getTempTable(1000, "wide_table", schema, columnNames, NULL);
+        delete[] columnNames;
+
+        srand(0);
+        for (int i = 0; i < num_tuples; ++i) {
+            TableTuple &tuple = table->tempTuple();
+            for (int ctr = 0; ctr < NUM_COLUMNS; ctr++) {
+                int value = rand() % 100;
+                if (ctr % 3 == 0) tuple.setNValue(ctr, ValueFactory::getIntegerValue(value));
+                else if (ctr % 3 == 1) tuple.setNValue(ctr, ValueFactory::getBigIntValue(value));
+                else tuple.setNValue(ctr, ValueFactory::getDoubleValue(value / 10.0));
+            }
+            table->insertTuple(tuple);
+        }
+    }
+    ~WideScanBenchmark() {
+        delete table;
+    }
+
+    /** WHERE col03 >= 10 AND col10 < 90 AND col17 <= 9.0 AND col27 <> 50 */
+    AbstractExpression* getPredicate() {
+        AbstractExpression *gte = comparisonFactory(EXPRESSION_TYPE_COMPARE_GREATERTHANOREQUALTO,
+                                                    new TupleValueExpression(3, "wide_table", "col03"),
+                                                    constantValueFactory(ValueFactory::getIntegerValue(10)));
+        AbstractExpression *lt = comparisonFactory(EXPRESSION_TYPE_COMPARE_LESSTHAN,
+                                                   new TupleValueExpression(10, "wide_table", "col10"),
+                                                   constantValueFactory(ValueFactory::getBigIntValue(90)));
+        AbstractExpression *lte = comparisonFactory(EXPRESSION_TYPE_COMPARE_LESSTHANOREQUALTO,
+                                                    new TupleValueExpression(17, "wide_table", "col17"),
+                                                    constantValueFactory(ValueFactory::getDoubleValue(9.0)));
+        AbstractExpression *ne = comparisonFactory(EXPRESSION_TYPE_COMPARE_NOTEQUAL,
+                                                   new TupleValueExpression(27, "wide_table", "col27"),
+                                                   constantValueFactory(ValueFactory::getIntegerValue(50)));
+        return conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, gte,
+                   conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, lt,
+                       conjunctionFactory(EXPRESSION_TYPE_CONJUNCTION_AND, lte, ne)));
+    }
+
+    static int64_t elapsed(const timeval &start, const timeval &end) {
+        return ((end.tv_sec - start.tv_sec) * 1000000 + (end.tv_usec - start.tv_usec));
+    }
+
+    void report(const char *name, int64_t us) {
+        double rate = (us > 0 ? (num_tuples * (double)NUM_ROUNDS) / (static_cast<double>(us) / 1000000.0) : 0);
+        ::printf("  %-8s %10jd us  %14.0f tuples/sec\n", name, (intmax_t)us, rate);
+    }
+
+    Table* table;
+    int num_tuples;
+};
+
+TEST_F(WideScanBenchmark, ScanThroughput) {
+    AbstractExpression *predicate = getPredicate();
+    timeval start, end;
+    ::printf("\nScanning %d tuples with %d columns %d times\n", num_tuples, NUM_COLUMNS, NUM_ROUNDS);
+
+    // Tuple-at-a-time
+    int expected = 0;
+    gettimeofday(&start, NULL);
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+        expected = 0;
+        TableIterator iter = table->tableIterator();
+        TableTuple tuple(table->schema());
+        while (iter.next(tuple)) {
+            if (predicate->eval(&tuple, NULL).isTrue()) ++expected;
+        }
+    }
+    gettimeofday(&end, NULL);
+    report("eval", elapsed(start, end));
+
+    // Batch-at-a-time
+    BatchPredicate batch_predicate(predicate, table->schema());
+    ASSERT_EQ(4, batch_predicate.getVectorizedTermCount());
+    char* batch[BatchPredicate::BATCH_SIZE];
+    int selected[BatchPredicate::BATCH_SIZE];
+    int found = 0;
+    gettimeofday(&start, NULL);
+    for (int round = 0; round < NUM_ROUNDS; round++) {
+        found = 0;
+        batch_predicate.bind();
+        TableIterator iter = table->tableIterator();
+        TableTuple tuple(table->schema());
+        bool more = true;
+        while (more) {
+            int batch_size = 0;
+            while (batch_size < BatchPredicate::BATCH_SIZE && (more = iter.next(tuple))) {
+                batch[batch_size++] = tuple.address();
+            }
+            found += batch_predicate.filter(batch, batch_size, selected);
+        }
+    }
+    gettimeofday(&end, NULL);
+    report("batch", elapsed(start, end));
+
+    ASSERT_EQ(expected, found);
+    delete predicate;
+}
+
+int main() {
+    return TestSuite::globalInstance()->runAll();
+}
@@ -47,6 +47,26 @@ public class MockMapReduce extends VoltMapReduceProcedure<String> {
         this.mapEmit(key, new_row); // mapOutputTable
     }
     
+    @Override
+    public boolean hasCombine() {
+        return (true);
+    }
+    
+    @Override
+    public void combine(String key, Iterator<VoltTableRow> rows) {
+        long count = 0;
+        for (VoltTableRow r : CollectionUtil.iterable(rows)) {
+            assert(r != null);
+            count += r.getLong(1);
+        } // FOR
+
+        Object new_row[] = {
+            key,
+            count
+        };
+        this.combineEmit(key, new_row);
+    }
+    
     @Override
     public void reduce(String key, Iterator<VoltTableRow> rows) {
         long count = 0;
@@ -0,0 +1,237 @@
+package edu.brown.costmodel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.Table;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.costmodel.SingleSitedCostModel.TransactionCacheEntry;
+import edu.brown.utils.ProjectType;
+import edu.brown.utils.ThreadUtil;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+import edu.brown.workload.Workload;
+import edu.brown.workload.filters.Filter;
+import edu.brown.workload.filters.QueryLimitFilter;
+
+/**
+ * Make sure that the parallel estimation path in the cost models produces the
+ * exact same results as the serial path
+ */
+public class TestCostModelParallelEstimation extends BaseTestCase {
+
+    private static final int NUM_TXNS = SingleSitedCostModel.PARALLEL_MIN_TXNS * 2;
+    private static final int NUM_PARTITIONS = 8;
+    private static final int NUM_INTERVALS = 5;
+    private static final int NUM_THREADS = 4;
+
+    private static Workload workload;
+    private final Random rand = new Random(1);
+    private int orig_threads;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.orig_threads = ThreadUtil.getMaxGlobalThreads();
+
+        if (workload == null) {
+            List<Procedure> procs = new ArrayList<Procedure>();
+            for (Procedure catalog_proc : catalog_db.getProcedures()) {
+                if (catalog_proc.getSystemproc() || catalog_proc.getParameters().isEmpty()) continue;
+                boolean valid = true;
+                for (ProcParameter catalog_param : catalog_proc.getParameters()) {
+                    valid = valid && (catalog_param.getType() != VoltType.VOLTTABLE.getValue());
+                } // FOR
+                if (valid) procs.add(catalog_proc);
+            } // FOR
+            workload = new Workload(catalog);
+            long start = 1000000;
+            for (int i = 0; i < NUM_TXNS; i++) {
+                Procedure catalog_proc = procs.get(rand.nextInt(procs.size()));
+                TransactionTrace txn_trace = new TransactionTrace(1000 + i, catalog_proc, this.makeParams(catalog_proc.getParameters(), "type"));
+                start += rand.nextInt(100);
+                for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                    QueryTrace query_trace = new QueryTrace(catalog_stmt, this.makeParams(catalog_stmt.getParameters(), "javatype"), 0);
+                    query_trace.setTimestamps(start, start + 1);
+                    txn_trace.addQuery(query_trace);
+                } // FOR
+                if (txn_trace.getQueryCount() == 0) continue;
+                if (i % 10 == 0) txn_trace.setWeight(3);
+                txn_trace.setTimestamps(start, start + 10);
+                workload.addTransaction(catalog_proc, txn_trace);
+            } // FOR
+            assert(workload.getTransactionCount() >= SingleSitedCostModel.PARALLEL_MIN_TXNS);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ThreadUtil.setMaxGlobalThreads(this.orig_threads);
+        super.tearDown();
+    }
+
+    private <T extends CatalogType> Object[] makeParams(CatalogMap<T> catalog_params, String type_field) {
+        Object params[] = new Object[catalog_params.size()];
+        for (int i = 0; i < params.length; i++) {
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object isarray = catalog_param.getField("isarray");
+            if (isarray != null && (Boolean)isarray) {
+                Object inner[] = new Object[rand.nextInt(5) + 1];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = this.makeValue(type);
+                } // FOR
+                params[i] = inner;
+            } else {
+                params[i] = this.makeValue(type);
+            }
+        } // FOR
+        return (params);
+    }
+
+    private Object makeValue(VoltType type) {
+        // Keep the numbers small so that we get a mix of single- and
+        // multi-partition txns
+        switch (type) {
+            case TINYINT:
+                return (new Byte((byte)rand.nextInt(NUM_PARTITIONS * 2)));
+            case SMALLINT:
+                return (new Short((short)rand.nextInt(NUM_PARTITIONS * 2)));
+            case INTEGER:
+                return (new Integer(rand.nextInt(NUM_PARTITIONS * 2)));
+            case BIGINT:
+                return (new Long(rand.nextInt(NUM_PARTITIONS * 2)));
+            default:
+                return (VoltTypeUtil.getRandomValue(type));
+        } // SWITCH
+    }
+
+    private double estimate(AbstractCostModel cost_model, Filter filter, int num_threads) throws Exception {
+        ThreadUtil.setMaxGlobalThreads(num_threads);
+        if (filter != null) filter.reset();
+        return (cost_model.estimateWorkloadCost(catalog_db, workload, filter, null));
+    }
+
+    private void compareHistograms(AbstractCostModel expected, AbstractCostModel actual) {
+        assertEquals(expected.getProcedureHistogram(), actual.getProcedureHistogram());
+        assertEquals(expected.getSinglePartitionProcedureHistogram(), actual.getSinglePartitionProcedureHistogram());
+        assertEquals(expected.getMultiPartitionProcedureHistogram(), actual.getMultiPartitionProcedureHistogram());
+        assertEquals(expected.getJavaExecutionHistogram(), actual.getJavaExecutionHistogram());
+        assertEquals(expected.getTxnPartitionAccessHistogram(), actual.getTxnPartitionAccessHistogram());
+        assertEquals(expected.getQueryPartitionAccessHistogram(), actual.getQueryPartitionAccessHistogram());
+        assertEquals(expected.query_ctr.get(), actual.query_ctr.get());
+        assertEquals(expected.txn_ctr.get(), actual.txn_ctr.get());
+    }
+
+    private void compareEntries(SingleSitedCostModel expected, SingleSitedCostModel actual) {
+        Collection<TransactionCacheEntry> expected_entries = expected.getTransactionCacheEntries();
+        Collection<TransactionCacheEntry> actual_entries = actual.getTransactionCacheEntries();
+        assertEquals(expected_entries.size(), actual_entries.size());
+        Iterator<TransactionCacheEntry> it = actual_entries.iterator();
+        for (TransactionCacheEntry e : expected_entries) {
+            TransactionCacheEntry a = it.next();
+            assertEquals(e.getTransactionId(), a.getTransactionId());
+            assertEquals(e.isSinglePartitioned(), a.isSinglePartitioned());
+            assertEquals(e.getExecutionPartition(), a.getExecutionPartition());
+            assertEquals(e.getExaminedQueryCount(), a.getExaminedQueryCount());
+            assertEquals(e.getUnknownQueryCount(), a.getUnknownQueryCount());
+            assertEquals(e.getAllTouchedPartitionsHistogram(), a.getAllTouchedPartitionsHistogram());
+        } // FOR
+        assertEquals(expected.getAllQueryCacheEntries().size(), actual.getAllQueryCacheEntries().size());
+        for (Statement catalog_stmt : catalog_db.getProcedures().get("neworder").getStatements()) {
+            assertEquals(catalog_stmt.fullName(), expected.getQueryCacheEntries(catalog_stmt).size(), actual.getQueryCacheEntries(catalog_stmt).size());
+        } // FOR
+    }
+
+    /**
+     * testSingleSitedCostModel
+     */
+    public void testSingleSitedCostModel() throws Exception {
+        SingleSitedCostModel serial = new SingleSitedCostModel(catalog_db);
+        serial.setParallelEstimationEnabled(false);
+        SingleSitedCostModel parallel = new SingleSitedCostModel(catalog_db);
+
+        double expected = this.estimate(serial, null, 1);
+        assert(expected > 0);
+        assertEquals(expected, this.estimate(parallel, null, NUM_THREADS));
+        this.compareHistograms(serial, parallel);
+        this.compareEntries(serial, parallel);
+        assertFalse(serial.getSinglePartitionProcedureHistogram().isEmpty());
+        assertFalse(serial.getMultiPartitionProcedureHistogram().isEmpty());
+
+        // Invalidate each table and make sure that both cost models still
+        // agree after the partial recomputation
+        for (Table catalog_tbl : catalog_db.getTables()) {
+            serial.invalidateCache(catalog_tbl);
+            parallel.invalidateCache(catalog_tbl);
+            expected = this.estimate(serial, null, 1);
+            assertEquals(catalog_tbl.getName(), expected, this.estimate(parallel, null, NUM_THREADS));
+            this.compareHistograms(serial, parallel);
+            this.compareEntries(serial, parallel);
+        } // FOR
+    }
+
+    /**
+     * testSingleSitedCostModelFilter
+     */
+    public void testSingleSitedCostModelFilter() throws Exception {
+        // The QueryLimitFilter keeps a counter of the number of queries that
+        // it has seen, so the parallel path must invoke it in the same order
+        long limit = workload.getQueryCount() / 2;
+        Filter filter = new QueryLimitFilter(limit);
+
+        SingleSitedCostModel serial = new SingleSitedCostModel(catalog_db);
+        serial.setParallelEstimationEnabled(false);
+        SingleSitedCostModel parallel = new SingleSitedCostModel(catalog_db);
+        double expected = this.estimate(serial, filter, 1);
+        assertEquals(expected, this.estimate(parallel, filter, NUM_THREADS));
+        this.compareHistograms(serial, parallel);
+        this.compareEntries(serial, parallel);
+        assert(serial.getTransactionCacheEntries().size() < workload.getTransactionCount());
+    }
+
+    /**
+     * testTimeIntervalCostModel
+     */
+    public void testTimeIntervalCostModel() throws Exception {
+        TimeIntervalCostModel<SingleSitedCostModel> serial = new TimeIntervalCostModel<SingleSitedCostModel>(catalog_db, SingleSitedCostModel.class, NUM_INTERVALS);
+        TimeIntervalCostModel<SingleSitedCostModel> parallel = new TimeIntervalCostModel<SingleSitedCostModel>(catalog_db, SingleSitedCostModel.class, NUM_INTERVALS);
+
+        // The baseline's inner cost models can't be split into EstimationShards,
+        // so each interval is estimated one txn at a time with estimateTransactionCost()
+        for (int i = 0; i < NUM_INTERVALS; i++) {
+            serial.getCostModel(i).setParallelEstimationEnabled(false);
+            assertTrue(parallel.getCostModel(i).isParallelEstimationEnabled());
+        } // FOR
+
+        for (int round = 0; round < 2; round++) {
+            double expected = this.estimate(serial, null, 1);
+            assert(expected > 0);
+            assertEquals(expected, this.estimate(parallel, null, NUM_THREADS));
+            assertEquals(serial.getLastExecutionCost(), parallel.getLastExecutionCost());
+            assertEquals(serial.getLastSkewCost(), parallel.getLastSkewCost());
+            this.compareHistograms(serial, parallel);
+            for (int i = 0; i < NUM_INTERVALS; i++) {
+                this.compareHistograms(serial.getCostModel(i), parallel.getCostModel(i));
+                this.compareEntries(serial.getCostModel(i), parallel.getCostModel(i));
+            } // FOR
+
+            // Make sure that incremental invalidation works the same
+            Table catalog_tbl = this.getTable("CUSTOMER");
+            serial.invalidateCache(catalog_tbl);
+            parallel.invalidateCache(catalog_tbl);
+        } // FOR
+    }
+}
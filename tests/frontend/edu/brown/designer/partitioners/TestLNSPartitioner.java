@@ -342,4 +342,44 @@ public class TestLNSPartitioner extends BasePartitionerTestCase {
 //        assertEquals(this.partitioner.initial_cost, new_cost);
         
     }
-}
\ No newline at end of file
+    
+    /**
+     * testParallelLocalSearch
+     */
+    public void testParallelLocalSearch() throws Exception {
+        int num_neighborhoods = 2;
+        hints.enable_procparameter_search = false;
+        hints.max_memory_per_partition = Long.MAX_VALUE;
+        hints.relaxation_min_size = 1;
+        hints.relaxation_seed = 1l;
+        hints.limit_back_tracks = 100;
+        this.partitioner.init(this.hints);
+        this.partitioner.calculateInitialSolution(hints);
+        assert(this.partitioner.initial_cost > 0);
+        this.partitioner.best_solution = new PartitionPlan(this.partitioner.initial_solution);
+        this.partitioner.best_memory = this.partitioner.initial_memory;
+        this.partitioner.best_cost = this.partitioner.initial_cost;
+        this.partitioner.restart_ctr = 0;
+
+        // Each neighborhood should get its own relaxation
+        assertTrue(this.partitioner.parallelLocalSearch(hints, num_neighborhoods));
+        assertEquals(num_neighborhoods, this.partitioner.restart_ctr.intValue());
+        assertEquals(num_neighborhoods, this.partitioner.relaxed_sets.size());
+        assertEquals(num_neighborhoods, this.partitioner.neighborhoods.size());
+        assert(this.partitioner.best_cost <= this.partitioner.initial_cost);
+        
+        // The best solution must reference our catalog and be applied to it
+        for (Table catalog_tbl : this.partitioner.best_solution.getTableEntries().keySet()) {
+            assertEquals(catalog_db, catalog_tbl.getParent());
+            Column catalog_col = this.partitioner.best_solution.getTableEntry(catalog_tbl).getAttribute();
+            if (catalog_col != null && catalog_tbl.getIsreplicated() == false) {
+                assertEquals(catalog_tbl.toString(), catalog_col, catalog_tbl.getPartitioncolumn());
+            }
+        } // FOR
+        
+        // And the neighborhood searchers should not have touched our catalog
+        for (LNSPartitioner.NeighborhoodSearch search : this.partitioner.neighborhoods) {
+            assertNotSame(catalog_db, search.catalog_db);
+        } // FOR
+    }
+}
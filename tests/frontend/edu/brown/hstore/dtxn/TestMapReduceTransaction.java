@@ -1,6 +1,7 @@
 package edu.brown.hstore.dtxn;
 
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Random;
 
 import org.voltdb.StoredProcedureInvocation;
@@ -11,6 +12,10 @@ import org.voltdb.VoltTableRow;
 import org.voltdb.catalog.Partition;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Site;
+import org.voltdb.types.SortDirectionType;
+import org.voltdb.utils.Pair;
+import org.voltdb.utils.ReduceInputBuffer;
+import org.voltdb.utils.VoltTableUtil;
 import org.voltdb.utils.VoltTypeUtil;
 
 import edu.brown.BaseTestCase;
@@ -119,9 +124,22 @@ public class TestMapReduceTransaction extends BaseTestCase{
 
        ts.storeData(1, table);
        
-       VoltTable result = ts.getReduceInputByPartition(1);
-       assertNotNull(result);
-       this.compareTables(this.table, result);
+       ReduceInputBuffer<String> buffer = ts.getReduceInputByPartition(1);
+       assertNotNull(buffer);
+       assertEquals(NUM_ROWS, buffer.getRowCount());
+       
+       // The REDUCE input comes back out grouped by key
+       VoltTable result = new VoltTable(this.schema);
+       while (buffer.nextKey()) {
+           Iterator<VoltTableRow> rows = buffer.getRows();
+           while (rows.hasNext()) {
+               VoltTableRow row = rows.next();
+               assertEquals(buffer.getKey(), row.get(0));
+               result.addRow(row.get(0), row.get(1));
+           } // WHILE
+       } // WHILE
+       VoltTable sorted = VoltTableUtil.sort(this.table, Pair.of(0, SortDirectionType.ASC));
+       this.compareTables(sorted, result);
        
     }
 }
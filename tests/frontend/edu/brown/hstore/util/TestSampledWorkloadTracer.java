@@ -0,0 +1,241 @@
+package edu.brown.hstore.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+import edu.brown.BaseTestCase;
+import edu.brown.hstore.util.SampledWorkloadTracer.PartitionTrace;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.BinaryTraceReader;
+import edu.brown.workload.TransactionTrace;
+
+public class TestSampledWorkloadTracer extends BaseTestCase {
+
+    private static final double RATE = 0.1;
+    private static final int BUFFER_SIZE = 64;
+
+    private File output;
+    private SampledWorkloadTracer tracer;
+    private Procedure catalog_proc;
+    private long next_txn_id = 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.output = FileUtil.getTempFile("btrace", true);
+        this.tracer = new SampledWorkloadTracer(catalog_db, CollectionUtil.addAll(new ArrayList<Integer>(), 0, 1),
+                                                RATE, BUFFER_SIZE, this.output);
+        this.catalog_proc = this.getProcedure("neworder");
+    }
+
+    /**
+     * Run a fake txn through the PartitionTrace the same way that VoltProcedure does
+     * @return the txn id if it was sampled, otherwise null
+     */
+    private Long execute(PartitionTrace pt, Procedure catalog_proc, boolean abort) {
+        long txn_id = this.next_txn_id++;
+        Object handle = pt.startTransaction(txn_id, catalog_proc, new Object[catalog_proc.getParameters().size()]);
+        if (handle == null) return (null);
+        int batch_id = pt.getNextBatchId(handle);
+        for (Statement catalog_stmt : catalog_proc.getStatements()) {
+            Object query_handle = pt.startQuery(handle, catalog_stmt, new Object[catalog_stmt.getParameters().size()], batch_id);
+            pt.stopQuery(query_handle, null);
+        } // FOR
+        if (abort) {
+            pt.abortTransaction(handle);
+        } else {
+            pt.stopTransaction(handle);
+        }
+        return (txn_id);
+    }
+
+    /**
+     * testTraceRingBuffer
+     */
+    public void testTraceRingBuffer() {
+        TraceRingBuffer<Integer> buffer = new TraceRingBuffer<Integer>(5);
+        assertEquals(8, buffer.getCapacity());
+        assertNull(buffer.poll());
+
+        // Wrap around a few times
+        int next = 0;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < buffer.getCapacity(); i++) {
+                assertTrue(buffer.offer(round * 100 + i));
+            } // FOR
+            assertFalse(buffer.offer(-1));
+            assertEquals(buffer.getCapacity(), buffer.size());
+            for (int i = 0; i < buffer.getCapacity(); i++) {
+                assertEquals(round * 100 + i, buffer.poll().intValue());
+                next++;
+            } // FOR
+            assertTrue(buffer.isEmpty());
+        } // FOR
+        assertEquals(5 * buffer.getCapacity(), next);
+    }
+
+    /**
+     * testStratifiedSampling
+     */
+    public void testStratifiedSampling() throws Exception {
+        PartitionTrace pt = this.tracer.getPartitionTrace(0);
+        assertNotNull(pt);
+        Procedure rare_proc = this.getProcedure("delivery");
+
+        int num_txns = 500;
+        int rare_txns = 0;
+        for (int i = 0; i < num_txns; i++) {
+            this.execute(pt, this.catalog_proc, false);
+            if (i % 50 == 0) {
+                this.execute(pt, rare_proc, false);
+                rare_txns++;
+            }
+        } // FOR
+        assertEquals(num_txns + rare_txns, pt.getTransactionCount());
+
+        // Each procedure should be sampled at the same rate, including the first invocation
+        int expected = (int)Math.ceil(num_txns * RATE) + (int)Math.ceil(rare_txns * RATE);
+        assertEquals(expected, pt.getSampledCount());
+        assertEquals(0, pt.getDroppedCount());
+        assertEquals(expected, pt.getPendingCount());
+
+        // Sysprocs are never traced
+        Procedure sysproc = null;
+        for (Procedure p : catalog_db.getProcedures()) {
+            if (p.getSystemproc()) {
+                sysproc = p;
+                break;
+            }
+        } // FOR
+        assertNotNull(sysproc);
+        assertNull(pt.startTransaction(this.next_txn_id++, sysproc, new Object[0]));
+    }
+
+    /**
+     * testIgnoredProcedure
+     */
+    public void testIgnoredProcedure() throws Exception {
+        PartitionTrace pt = this.tracer.getPartitionTrace(0);
+        PartitionTrace other = this.tracer.getPartitionTrace(1);
+
+        // These are what ProcedureProfiler calls on its WorkloadTrace, so
+        // they can't blow up on us
+        pt.setCatalog(catalog_db.getCatalog());
+        pt.setOutputPath(FileUtil.getTempFile("btrace", true).getAbsolutePath());
+        pt.addIgnoredProcedure("ThisProcedureDoesNotExist");
+        pt.addIgnoredProcedure(this.catalog_proc.getName().toUpperCase());
+        assertEquals(this.output, this.tracer.getOutputPath());
+
+        // Ignored procedures are skipped just like sysprocs and don't count
+        // as txns at this partition. The other partition isn't affected.
+        for (int i = 0; i < 10; i++) {
+            assertNull(this.execute(pt, this.catalog_proc, false));
+        } // FOR
+        assertEquals(0, pt.getTransactionCount());
+        assertEquals(0, pt.getSampledCount());
+        assertNotNull(this.execute(other, this.catalog_proc, false));
+        assertEquals(1, other.getTransactionCount());
+
+        Procedure proc = this.getProcedure("delivery");
+        assertNotNull(this.execute(pt, proc, false));
+        assertEquals(1, pt.getTransactionCount());
+    }
+
+    /**
+     * testDrain
+     */
+    public void testDrain() throws Exception {
+        Set<Long> expected = new HashSet<Long>();
+        Set<Long> aborted = new HashSet<Long>();
+        for (int i = 0; i < 200; i++) {
+            PartitionTrace pt = this.tracer.getPartitionTrace(i % 2);
+            boolean abort = (i % 3 == 0);
+            Long txn_id = this.execute(pt, this.catalog_proc, abort);
+            if (txn_id != null) {
+                expected.add(txn_id);
+                if (abort) aborted.add(txn_id);
+            }
+        } // FOR
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), this.tracer.drain());
+        assertEquals(0, this.tracer.drain());
+        this.tracer.getWriter().close();
+
+        BinaryTraceReader reader = new BinaryTraceReader(this.output, catalog_db, null);
+        Set<Long> found = new HashSet<Long>();
+        for (TransactionTrace txn_trace : reader) {
+            assertEquals(this.catalog_proc, txn_trace.getCatalogItem(catalog_db));
+            assertEquals(this.catalog_proc.getStatements().size(), txn_trace.getQueryCount());
+            assertTrue(txn_trace.isStopped());
+            assertEquals(aborted.contains(txn_trace.getTransactionId()), txn_trace.isAborted());
+            found.add(txn_trace.getTransactionId());
+        } // FOR
+        reader.close();
+        assertEquals(expected, found);
+    }
+
+    /**
+     * testDropWhenFull
+     */
+    public void testDropWhenFull() throws Exception {
+        PartitionTrace pt = this.tracer.getPartitionTrace(1);
+        List<Long> sampled = new ArrayList<Long>();
+        while (sampled.size() < BUFFER_SIZE + 10) {
+            Long txn_id = this.execute(pt, this.catalog_proc, false);
+            if (txn_id != null) sampled.add(txn_id);
+        } // WHILE
+        assertEquals(BUFFER_SIZE, pt.getPendingCount());
+        assertEquals(10, pt.getDroppedCount());
+
+        // Once it has been drained the partition can trace again
+        assertEquals(BUFFER_SIZE, this.tracer.drain());
+        assertEquals(0, pt.getPendingCount());
+        while (this.execute(pt, this.catalog_proc, false) == null) {
+            // Keep going until the next sampled txn
+        } // WHILE
+        assertEquals(1, pt.getPendingCount());
+        assertEquals(10, pt.getDroppedCount());
+    }
+
+    /**
+     * testDrainError
+     */
+    public void testDrainError() throws Exception {
+        // The output path is a directory, so the drain thread can't write to it
+        File dir = FileUtil.getTempFile("btrace", true);
+        dir.delete();
+        assertTrue(dir.mkdirs());
+        SampledWorkloadTracer tracer = new SampledWorkloadTracer(catalog_db, CollectionUtil.addAll(new ArrayList<Integer>(), 0),
+                                                                 1.0, BUFFER_SIZE, dir);
+        PartitionTrace pt = tracer.getPartitionTrace(0);
+        assertNotNull(this.execute(pt, this.catalog_proc, false));
+        assertNull(tracer.getError());
+
+        Thread t = new Thread(tracer);
+        t.setDaemon(true);
+        t.start();
+        t.join(10000);
+        assertFalse(t.isAlive());
+        assertNotNull(tracer.getError());
+        assertTrue(tracer.isShuttingDown());
+        assertEquals(0, pt.getPendingCount());
+
+        // The partition shouldn't keep sampling txns that will never get written
+        long sampled = pt.getSampledCount();
+        for (int i = 0; i < 10; i++) {
+            assertNull(this.execute(pt, this.catalog_proc, false));
+        } // FOR
+        assertEquals(sampled, pt.getSampledCount());
+        assertEquals(0, pt.getPendingCount());
+        assertEquals(0, pt.getDroppedCount());
+        dir.delete();
+    }
+}
@@ -0,0 +1,320 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.catalog.StmtParameter;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.hstore.conf.HStoreConf;
+import edu.brown.mappings.ParameterMapping;
+import edu.brown.mappings.ParameterMappingsSet;
+import edu.brown.markov.containers.MarkovGraphContainersUtil;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+
+public class TestCompiledMarkovGraph extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 4;
+    private static final int NUM_TXNS = 500;
+
+    private final Random rand = new Random(1);
+    private final Map<Integer, MarkovGraphsContainer> markovs = new HashMap<Integer, MarkovGraphsContainer>();
+    private final Map<StmtParameter, ProcParameter> stmt_mappings = new HashMap<StmtParameter, ProcParameter>();
+    private final List<TransactionTrace> txn_traces = new ArrayList<TransactionTrace>();
+    private final ParameterMappingsSet mappings = new ParameterMappingsSet();
+    private PartitionEstimator p_estimator;
+    private List<Procedure> procs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.p_estimator = new PartitionEstimator(catalog_db);
+
+        // Map every StmtParameter to the first scalar ProcParameter with the same type
+        // so that the path estimator can figure out where the queries will go
+        this.procs = new ArrayList<Procedure>();
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            if (catalog_proc.getSystemproc() || catalog_proc.getParameters().isEmpty()) continue;
+            boolean valid = true;
+            for (ProcParameter catalog_param : catalog_proc.getParameters()) {
+                valid = valid && (catalog_param.getType() != VoltType.VOLTTABLE.getValue());
+            } // FOR
+            if (valid == false) continue;
+            this.procs.add(catalog_proc);
+
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                for (StmtParameter catalog_stmt_param : catalog_stmt.getParameters()) {
+                    for (ProcParameter catalog_proc_param : catalog_proc.getParameters()) {
+                        if (catalog_proc_param.getIsarray() || catalog_proc_param.getType() != catalog_stmt_param.getJavatype()) continue;
+                        this.mappings.add(new ParameterMapping(catalog_stmt, 0, catalog_stmt_param, catalog_proc_param, 0, 1.0d));
+                        this.stmt_mappings.put(catalog_stmt_param, catalog_proc_param);
+                        break;
+                    } // FOR
+                } // FOR
+            } // FOR
+        } // FOR
+        assertFalse(this.stmt_mappings.isEmpty());
+
+        long start = 1000000;
+        for (int i = 0; i < NUM_TXNS; i++) {
+            TransactionTrace txn_trace = this.makeTransaction(1000 + i, this.procs.get(i % this.procs.size()), start);
+            if (txn_trace == null) continue;
+            start += 100;
+            this.txn_traces.add(txn_trace);
+
+            int partition = this.p_estimator.getBasePartition(txn_trace);
+            MarkovGraphsContainer m = this.markovs.get(partition);
+            if (m == null) {
+                m = new MarkovGraphsContainer();
+                this.markovs.put(partition, m);
+            }
+            m.getOrCreate(partition, txn_trace.getCatalogItem(catalog_db), true).processTransaction(txn_trace, this.p_estimator);
+        } // FOR
+        MarkovGraphContainersUtil.calculateProbabilities(this.markovs);
+        assertFalse(this.markovs.isEmpty());
+    }
+
+    /**
+     * Create a random TransactionTrace where the StmtParameters that have a mapping
+     * get their values from the txn's ProcParameters. Each Statement is only executed
+     * at most once so that it always has the query instance index that we mapped.
+     */
+    private TransactionTrace makeTransaction(long txn_id, Procedure catalog_proc, long start) {
+        Object proc_params[] = new Object[catalog_proc.getParameters().size()];
+        for (ProcParameter catalog_param : catalog_proc.getParameters()) {
+            VoltType type = VoltType.get((byte)catalog_param.getType());
+            if (catalog_param.getIsarray()) {
+                Object inner[] = new Object[rand.nextInt(3) + 1];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = this.makeValue(type);
+                } // FOR
+                proc_params[catalog_param.getIndex()] = inner;
+            } else {
+                proc_params[catalog_param.getIndex()] = this.makeValue(type);
+            }
+        } // FOR
+
+        TransactionTrace txn_trace = new TransactionTrace(txn_id, catalog_proc, proc_params);
+        for (Statement catalog_stmt : catalog_proc.getStatements()) {
+            if (rand.nextInt(3) == 0) continue;
+            Object stmt_params[] = new Object[catalog_stmt.getParameters().size()];
+            for (StmtParameter catalog_param : catalog_stmt.getParameters()) {
+                ProcParameter catalog_proc_param = this.stmt_mappings.get(catalog_param);
+                if (catalog_proc_param != null) {
+                    stmt_params[catalog_param.getIndex()] = proc_params[catalog_proc_param.getIndex()];
+                } else {
+                    stmt_params[catalog_param.getIndex()] = this.makeValue(VoltType.get((byte)catalog_param.getJavatype()));
+                }
+            } // FOR
+            QueryTrace query_trace = new QueryTrace(catalog_stmt, stmt_params, 0);
+            query_trace.setTimestamps(start, start + 1);
+            txn_trace.addQuery(query_trace);
+        } // FOR
+        if (txn_trace.getQueryCount() == 0) return (null);
+        if (rand.nextInt(10) == 0) txn_trace.abort();
+        txn_trace.setTimestamps(start, start + 10);
+        return (txn_trace);
+    }
+
+    private Object makeValue(VoltType type) {
+        switch (type) {
+            case TINYINT:
+                return (new Byte((byte)rand.nextInt(NUM_PARTITIONS * 2)));
+            case SMALLINT:
+                return (new Short((short)rand.nextInt(NUM_PARTITIONS * 2)));
+            case INTEGER:
+                return (new Integer(rand.nextInt(NUM_PARTITIONS * 2)));
+            case BIGINT:
+                return (new Long(rand.nextInt(NUM_PARTITIONS * 2)));
+            default:
+                return (VoltTypeUtil.getRandomValue(type));
+        } // SWITCH
+    }
+
+    /**
+     * Returns true if any of the vertices in the path (except the last one) has out edges
+     * whose probabilities are too close for MarkovEdge.compareTo() to order them. The
+     * original MarkovPathEstimator breaks those ties with the edges' hash codes, so we
+     * can only expect it to pick the same path as the compiled graph if there are none.
+     */
+    private boolean hasTies(MarkovGraph markov, List<MarkovVertex> path) {
+        for (int i = 0, cnt = path.size() - 1; i < cnt; i++) {
+            List<MarkovEdge> edges = new ArrayList<MarkovEdge>(markov.getOutEdges(path.get(i)));
+            for (int j = 0; j < edges.size(); j++) {
+                for (int k = j + 1; k < edges.size(); k++) {
+                    if (Math.abs(edges.get(j).getProbability() - edges.get(k).getProbability()) < 0.01f) return (true);
+                } // FOR
+            } // FOR
+        } // FOR
+        return (false);
+    }
+
+    /**
+     * Check that every step in the path follows an edge in the MarkovGraph
+     */
+    private void checkPath(MarkovGraph markov, List<MarkovVertex> path) {
+        assertFalse(path.isEmpty());
+        assertSame(markov.getStartVertex(), path.get(0));
+        for (int i = 1, cnt = path.size(); i < cnt; i++) {
+            assertNotNull(path.toString(), markov.findEdge(path.get(i-1), path.get(i)));
+        } // FOR
+    }
+
+    private Collection<MarkovGraph> getAllMarkovs() {
+        List<MarkovGraph> ret = new ArrayList<MarkovGraph>();
+        for (MarkovGraphsContainer m : this.markovs.values()) {
+            ret.addAll(m.getAll());
+        } // FOR
+        return (ret);
+    }
+
+    /**
+     * testCompile
+     */
+    public void testCompile() throws Exception {
+        for (MarkovGraph markov : this.getAllMarkovs()) {
+            CompiledMarkovGraph compiled = markov.getCompiledGraph();
+            assertNotNull(markov.toString(), compiled);
+            assertSame(markov, compiled.getMarkovGraph());
+            assertEquals(markov.getRecomputeCount(), compiled.getVersion());
+            assertEquals(markov.getVertexCount(), compiled.getVertexCount());
+            assertEquals(markov.getEdgeCount(), compiled.getEdgeCount());
+            assertSame(markov.getStartVertex(), compiled.getVertex(CompiledMarkovGraph.START_VERTEX_ID));
+
+            for (int v = 0; v < compiled.getVertexCount(); v++) {
+                MarkovVertex vertex = compiled.getVertex(v);
+                assertEquals(v, compiled.getVertexId(vertex));
+                assertEquals(vertex.getType(), compiled.getVertexType(v));
+                assertEquals(vertex.getCatalogItem(), compiled.getStatement(v));
+                assertEquals(vertex.getQueryInstanceIndex(), compiled.getQueryInstanceIndex(v));
+                assertEquals(vertex.getPartitions().size(), compiled.getPartitionEnd(v) - compiled.getPartitionStart(v));
+                for (int i = compiled.getPartitionStart(v); i < compiled.getPartitionEnd(v); i++) {
+                    assertTrue(vertex.getPartitions().contains(compiled.getPartition(i)));
+                } // FOR
+                if (vertex.isQueryVertex()) {
+                    assertTrue(compiled.isEqual(v, vertex.getCatalogItem(), vertex.getPartitions(),
+                                                vertex.getPastPartitions(), vertex.getQueryInstanceIndex()));
+                }
+
+                // The out edges have to be sorted by their probabilities
+                assertEquals(markov.getOutEdges(vertex).size(), compiled.getEdgeEnd(v) - compiled.getEdgeStart(v));
+                float last = Float.MAX_VALUE;
+                for (int e = compiled.getEdgeStart(v); e < compiled.getEdgeEnd(v); e++) {
+                    MarkovEdge edge = compiled.getEdge(e);
+                    assertSame(markov.getDest(edge), compiled.getVertex(compiled.getEdgeDest(e)));
+                    assertEquals(edge.getProbability(), compiled.getEdgeProbability(e));
+                    assertTrue(compiled.getEdgeProbability(e) <= last);
+                    last = compiled.getEdgeProbability(e);
+
+                    MarkovVertex dest = markov.getDest(edge);
+                    if (dest.isQueryVertex()) {
+                        assertEquals(e, compiled.findEdge(v, dest.getCatalogItem(), dest.getPartitions(),
+                                                          dest.getPastPartitions(), dest.getQueryInstanceIndex()));
+                    }
+                } // FOR
+            } // FOR
+            for (int p = 0; p < NUM_PARTITIONS; p++) {
+                assertEquals(markov.getStartVertex().getDoneProbability(p), compiled.getStartDoneProbability(p));
+            } // FOR
+
+            // Recalculating the probabilities creates a new version
+            markov.calculateProbabilities();
+            assertNotSame(compiled, markov.getCompiledGraph());
+            assertEquals(compiled.getVersion() + 1, markov.getCompiledGraph().getVersion());
+        } // FOR
+    }
+
+    /**
+     * testTraverse
+     */
+    public void testTraverse() throws Exception {
+        int ctr = 0;
+        for (TransactionTrace txn_trace : this.txn_traces) {
+            int partition = this.p_estimator.getBasePartition(txn_trace);
+            Procedure catalog_proc = txn_trace.getCatalogItem(catalog_db);
+            MarkovGraph markov = this.markovs.get(partition).get(partition, catalog_proc);
+            assertNotNull(markov);
+            TransactionEstimator t_estimator = new TransactionEstimator(this.p_estimator, this.mappings, this.markovs.get(partition));
+            Object args[] = txn_trace.getParams();
+
+            // Force the traversals so that they make it past the queries whose partitions
+            // we can't figure out from the txn's parameters
+            MarkovPathEstimator expected = new MarkovPathEstimator(markov, t_estimator, partition, args);
+            expected.enableForceTraversal(true);
+            expected.traverse(markov.getStartVertex());
+            MarkovPathEstimator actual = new MarkovPathEstimator(markov, t_estimator, partition, args);
+            actual.enableForceTraversal(true);
+            actual.traverse(markov.getCompiledGraph());
+            this.checkPath(markov, actual.getVisitPath());
+            if (this.hasTies(markov, expected.getVisitPath())) continue;
+
+            String debug = txn_trace.toString();
+            assertEquals(debug, expected.getVisitPath(), actual.getVisitPath());
+            assertEquals(debug, expected.getConfidence(), actual.getConfidence(), 0.0001f);
+            assertEquals(debug, expected.getTouchedPartitions(), actual.getTouchedPartitions());
+            assertEquals(debug, expected.getReadPartitions(), actual.getReadPartitions());
+            assertEquals(debug, expected.getWritePartitions(), actual.getWritePartitions());
+
+            MarkovEstimate e0 = expected.getEstimate();
+            MarkovEstimate e1 = actual.getEstimate();
+            assertEquals(debug, e0.getAbortProbability(), e1.getAbortProbability(), 0.0001f);
+            assertEquals(debug, e0.getSingleSitedProbability(), e1.getSingleSitedProbability(), 0.0001f);
+            for (int p = 0; p < NUM_PARTITIONS; p++) {
+                assertEquals(debug, e0.getReadOnlyProbability(p), e1.getReadOnlyProbability(p), 0.0001f);
+                assertEquals(debug, e0.getWriteProbability(p), e1.getWriteProbability(p), 0.0001f);
+                assertEquals(debug, e0.getDoneProbability(p), e1.getDoneProbability(p), 0.0001f);
+                assertEquals(debug, e0.getTouchedCounter(p), e1.getTouchedCounter(p));
+            } // FOR
+            if (actual.getVisitPath().size() > 2) ctr++;
+        } // FOR
+        assertTrue(ctr > 0);
+    }
+
+    /**
+     * testTransactionEstimator
+     */
+    public void testTransactionEstimator() throws Exception {
+        HStoreConf hstore_conf = HStoreConf.singleton();
+        hstore_conf.site.markov_path_caching = false;
+
+        // The TransactionEstimator should follow the same path whether or not it uses the compiled graphs
+        Map<Integer, TransactionEstimator> t_estimators = new HashMap<Integer, TransactionEstimator>();
+        for (Integer partition : this.markovs.keySet()) {
+            t_estimators.put(partition, new TransactionEstimator(this.p_estimator, this.mappings, this.markovs.get(partition)));
+        } // FOR
+        for (TransactionTrace txn_trace : this.txn_traces) {
+            int partition = this.p_estimator.getBasePartition(txn_trace);
+            TransactionEstimator t_estimator = t_estimators.get(partition);
+            MarkovGraph markov = this.markovs.get(partition).get(partition, txn_trace.getCatalogItem(catalog_db));
+
+            hstore_conf.site.markov_path_compiled = false;
+            TransactionEstimator.State expected = t_estimator.processTransactionTrace(txn_trace);
+            assertNull(expected.getCompiledGraph());
+            List<MarkovVertex> expected_path = new ArrayList<MarkovVertex>(expected.getActualPath());
+            List<MarkovVertex> expected_initial = new ArrayList<MarkovVertex>(expected.getInitialPath());
+
+            hstore_conf.site.markov_path_compiled = true;
+            TransactionEstimator.State actual = t_estimator.processTransactionTrace(txn_trace);
+            assertNotNull(actual.getCompiledGraph());
+            assertEquals(expected_path, actual.getActualPath());
+            this.checkPath(markov, actual.getInitialPath());
+            if (this.hasTies(markov, expected_initial) == false) {
+                assertEquals(expected_initial, actual.getInitialPath());
+            }
+        } // FOR
+    }
+}
@@ -0,0 +1,311 @@
+package edu.brown.markov;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.markov.containers.MarkovGraphsContainer;
+import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+
+public class TestMarkovGraphRefresher extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 4;
+    private static final int NUM_TXNS = 100;
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_UPDATES = 2000;
+
+    private final Random rand = new Random(1);
+    private final MarkovGraphsContainer markovs = new MarkovGraphsContainer();
+    private final List<List<MarkovVertex>> paths = new ArrayList<List<MarkovVertex>>();
+    private MarkovGraph markov;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+
+        Procedure catalog_proc = null;
+        for (Procedure p : catalog_db.getProcedures()) {
+            if (p.getSystemproc() || p.getParameters().isEmpty() || p.getStatements().size() < 3) continue;
+            boolean valid = true;
+            for (ProcParameter catalog_param : p.getParameters()) {
+                valid = valid && (catalog_param.getType() != VoltType.VOLTTABLE.getValue());
+            } // FOR
+            if (valid) {
+                catalog_proc = p;
+                break;
+            }
+        } // FOR
+        assertNotNull(catalog_proc);
+
+        PartitionEstimator p_estimator = new PartitionEstimator(catalog_db);
+        this.markov = this.markovs.getOrCreate(0, catalog_proc, true);
+        long start = 1000000;
+        for (int i = 0; i < NUM_TXNS; i++) {
+            TransactionTrace txn_trace = new TransactionTrace(1000 + i, catalog_proc, this.makeParams(catalog_proc.getParameters(), "type"));
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                if (rand.nextBoolean()) continue;
+                QueryTrace query_trace = new QueryTrace(catalog_stmt, this.makeParams(catalog_stmt.getParameters(), "javatype"), 0);
+                query_trace.setTimestamps(start, start + 1);
+                txn_trace.addQuery(query_trace);
+            } // FOR
+            if (txn_trace.getQueryCount() == 0) continue;
+            if (i % 5 == 0) txn_trace.abort();
+            txn_trace.setTimestamps(start, start + 10);
+            start += 100;
+            this.paths.add(this.markov.processTransaction(txn_trace, p_estimator));
+        } // FOR
+        this.markov.calculateProbabilities();
+        assertTrue(this.markov.isValid());
+    }
+
+    private <T extends CatalogType> Object[] makeParams(CatalogMap<T> catalog_params, String type_field) {
+        Object params[] = new Object[catalog_params.size()];
+        for (int i = 0; i < params.length; i++) {
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object isarray = catalog_param.getField("isarray");
+            if (isarray != null && (Boolean)isarray) {
+                Object inner[] = new Object[rand.nextInt(3) + 1];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = this.makeValue(type);
+                } // FOR
+                params[i] = inner;
+            } else {
+                params[i] = this.makeValue(type);
+            }
+        } // FOR
+        return (params);
+    }
+
+    private Object makeValue(VoltType type) {
+        switch (type) {
+            case TINYINT:
+                return (new Byte((byte)rand.nextInt(NUM_PARTITIONS * 2)));
+            case SMALLINT:
+                return (new Short((short)rand.nextInt(NUM_PARTITIONS * 2)));
+            case INTEGER:
+                return (new Integer(rand.nextInt(NUM_PARTITIONS * 2)));
+            case BIGINT:
+                return (new Long(rand.nextInt(NUM_PARTITIONS * 2)));
+            default:
+                return (VoltTypeUtil.getRandomValue(type));
+        } // SWITCH
+    }
+
+    /**
+     * Update the instance hit counters for the given path the same way that
+     * TransactionEstimator does when a txn finishes
+     */
+    private void finishTransaction(List<MarkovVertex> path) {
+        for (MarkovVertex v : path) v.incrementInstanceHits();
+        for (int i = 1, cnt = path.size(); i < cnt; i++) {
+            this.markov.findEdge(path.get(i-1), path.get(i)).incrementInstanceHits();
+        } // FOR
+        this.markov.incrementPendingUpdates();
+    }
+
+    /**
+     * testRefresh
+     */
+    public void testRefresh() throws Exception {
+        MarkovGraphRefresher refresher = new MarkovGraphRefresher(-1, 10);
+        refresher.addMarkovs(this.markovs);
+        CompiledMarkovGraph compiled = this.markov.getCompiledGraph();
+        assertNotNull(compiled);
+        assertEquals(0, this.markov.getPendingUpdates());
+        assertFalse(refresher.refresh(this.markov));
+        assertSame(compiled, this.markov.getCompiledGraph());
+
+        // Nothing should happen until there are enough pending updates
+        for (int i = 0; i < 9; i++) {
+            this.finishTransaction(this.paths.get(i));
+        } // FOR
+        assertEquals(9, this.markov.getPendingUpdates());
+        assertEquals(0, refresher.refreshAll());
+        assertSame(compiled, this.markov.getCompiledGraph());
+
+        this.finishTransaction(this.paths.get(9));
+        assertEquals(1, refresher.refreshAll());
+        assertEquals(1, refresher.getRefreshCount());
+        assertEquals(0, this.markov.getPendingUpdates());
+        assertNotSame(compiled, this.markov.getCompiledGraph());
+        assertEquals(compiled.getVersion() + 1, this.markov.getCompiledGraph().getVersion());
+        assertEquals(compiled.getStartTotalHits() + 10, this.markov.getCompiledGraph().getStartTotalHits());
+        assertTrue(this.markov.isValid());
+    }
+
+    /**
+     * testQueue
+     */
+    public void testQueue() throws Exception {
+        MarkovGraphRefresher refresher = new MarkovGraphRefresher(-1, 1000);
+        CompiledMarkovGraph compiled = this.markov.getCompiledGraph();
+        this.finishTransaction(this.paths.get(0));
+
+        // Queued graphs get refreshed even if they don't have a lot of pending updates
+        assertTrue(refresher.queue(this.markov));
+        assertFalse(refresher.queue(this.markov));
+        Thread thread = new Thread(refresher);
+        thread.setDaemon(true);
+        thread.start();
+        for (int i = 0; i < 100 && refresher.getRefreshCount() == 0; i++) {
+            Thread.sleep(50);
+        } // FOR
+        refresher.shutdown();
+        thread.join();
+        assertEquals(1, refresher.getRefreshCount());
+        assertNotSame(compiled, this.markov.getCompiledGraph());
+        assertEquals(compiled.getVersion() + 1, this.markov.getCompiledGraph().getVersion());
+    }
+
+    /**
+     * testConcurrentUpdates
+     */
+    public void testConcurrentUpdates() throws Exception {
+        Map<MarkovVertex, Long> expected = new HashMap<MarkovVertex, Long>();
+        for (MarkovVertex v : this.markov.getVertices()) {
+            expected.put(v, v.getTotalHits());
+        } // FOR
+        for (int i = 0; i < NUM_UPDATES; i++) {
+            for (MarkovVertex v : this.paths.get(i % this.paths.size())) {
+                expected.put(v, expected.get(v) + 1);
+            } // FOR
+        } // FOR
+
+        // Keep refreshing the graph while the txns are updating the counters.
+        // None of the updates should get lost and the graph should always be valid.
+        final MarkovGraphRefresher refresher = new MarkovGraphRefresher(-1, 1);
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread refresh_thread = new Thread() {
+            public void run() {
+                try {
+                    while (stop.get() == false) {
+                        refresher.refresh(markov);
+                    } // WHILE
+                } catch (Throwable ex) {
+                    error.set(ex);
+                }
+            }
+        };
+        refresh_thread.start();
+
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = offset; i < NUM_UPDATES; i += NUM_THREADS) {
+                        finishTransaction(paths.get(i % paths.size()));
+                    } // FOR
+                }
+            };
+            threads[t].start();
+        } // FOR
+        for (Thread t : threads) {
+            t.join();
+        } // FOR
+        stop.set(true);
+        refresh_thread.join();
+        assertNull(String.valueOf(error.get()), error.get());
+        assertTrue(refresher.getRefreshCount() > 0);
+
+        this.markov.calculateProbabilities();
+        assertEquals(0, this.markov.getPendingUpdates());
+        for (MarkovVertex v : this.markov.getVertices()) {
+            assertEquals(v.toString(), expected.get(v).longValue(), v.getTotalHits());
+            assertEquals(v.toString(), 0, v.getInstanceHits());
+        } // FOR
+        assertTrue(this.markov.isValid());
+    }
+
+    private List<Float> getEstimate(MarkovVertex v) {
+        MarkovEstimate est = new MarkovEstimate(NUM_PARTITIONS);
+        est.init(v, 1);
+        List<Float> ret = new ArrayList<Float>();
+        ret.add(est.getSingleSitedProbability());
+        ret.add(est.getAbortProbability());
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            ret.add(est.getDoneProbability(p));
+            ret.add(est.getReadOnlyProbability(p));
+            ret.add(est.getWriteProbability(p));
+        } // FOR
+        return (ret);
+    }
+
+    /**
+     * testPublishedProbabilities
+     */
+    public void testPublishedProbabilities() throws Exception {
+        final Map<MarkovVertex, List<Float>> expected = new HashMap<MarkovVertex, List<Float>>();
+        for (MarkovVertex v : this.markov.getVertices()) {
+            if (v.isQueryVertex()) expected.put(v, this.getEstimate(v));
+        } // FOR
+        assertFalse(expected.isEmpty());
+
+        // Estimates should not see the tables while they are being recomputed
+        MarkovVertex v = expected.keySet().iterator().next();
+        v.resetAllProbabilities();
+        assertEquals(expected.get(v), this.getEstimate(v));
+        this.markov.calculateProbabilities();
+        assertEquals(expected.get(v), this.getEstimate(v));
+
+        // Keep recomputing the graph while other threads create estimates from it.
+        // Nothing has changed, so they should always get the same probabilities.
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread refresh_thread = new Thread() {
+            public void run() {
+                try {
+                    while (stop.get() == false) {
+                        markov.calculateProbabilities();
+                    } // WHILE
+                } catch (Throwable ex) {
+                    error.set(ex);
+                }
+            }
+        };
+        refresh_thread.start();
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < NUM_UPDATES; i++) {
+                            for (MarkovVertex v : expected.keySet()) {
+                                assertEquals(v.toString(), expected.get(v), getEstimate(v));
+                            } // FOR
+                        } // FOR
+                    } catch (Throwable ex) {
+                        error.compareAndSet(null, ex);
+                    }
+                }
+            };
+            threads[t].start();
+        } // FOR
+        for (Thread t : threads) {
+            t.join();
+        } // FOR
+        stop.set(true);
+        refresh_thread.join();
+        assertNull(String.valueOf(error.get()), error.get());
+        assertTrue(this.markov.isValid());
+    }
+}
@@ -0,0 +1,254 @@
+package edu.brown.markov.containers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.utils.CollectionUtil;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+
+public class TestBinaryMarkovGraphsFile extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 4;
+    private static final int NUM_TXNS = 200;
+
+    private final Random rand = new Random(1);
+    private final Map<Integer, MarkovGraphsContainer> markovs = new HashMap<Integer, MarkovGraphsContainer>();
+    private List<Procedure> procs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+
+        this.procs = new ArrayList<Procedure>();
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            if (catalog_proc.getSystemproc() || catalog_proc.getParameters().isEmpty()) continue;
+            boolean valid = true;
+            for (ProcParameter catalog_param : catalog_proc.getParameters()) {
+                valid = valid && (catalog_param.getType() != VoltType.VOLTTABLE.getValue());
+            } // FOR
+            if (valid) this.procs.add(catalog_proc);
+        } // FOR
+
+        PartitionEstimator p_estimator = new PartitionEstimator(catalog_db);
+        long start = 1000000;
+        for (int i = 0; i < NUM_TXNS; i++) {
+            Procedure catalog_proc = this.procs.get(i % this.procs.size());
+            TransactionTrace txn_trace = new TransactionTrace(1000 + i, catalog_proc, this.makeParams(catalog_proc.getParameters(), "type"));
+            start += rand.nextInt(100);
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                QueryTrace query_trace = new QueryTrace(catalog_stmt, this.makeParams(catalog_stmt.getParameters(), "javatype"), 0);
+                query_trace.setTimestamps(start, start + 1);
+                txn_trace.addQuery(query_trace);
+            } // FOR
+            if (txn_trace.getQueryCount() == 0) continue;
+            if (i % 7 == 0) txn_trace.abort();
+            txn_trace.setTimestamps(start, start + 10);
+
+            int partition = p_estimator.getBasePartition(txn_trace);
+            MarkovGraphsContainer m = this.markovs.get(partition);
+            if (m == null) {
+                m = new MarkovGraphsContainer();
+                this.markovs.put(partition, m);
+            }
+            m.getOrCreate(partition, catalog_proc, true).processTransaction(txn_trace, p_estimator);
+        } // FOR
+        MarkovGraphContainersUtil.calculateProbabilities(this.markovs);
+        assertFalse(this.markovs.isEmpty());
+    }
+
+    private <T extends CatalogType> Object[] makeParams(CatalogMap<T> catalog_params, String type_field) {
+        Object params[] = new Object[catalog_params.size()];
+        for (int i = 0; i < params.length; i++) {
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object isarray = catalog_param.getField("isarray");
+            if (isarray != null && (Boolean)isarray) {
+                Object inner[] = new Object[rand.nextInt(3) + 1];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = this.makeValue(type);
+                } // FOR
+                params[i] = inner;
+            } else {
+                params[i] = this.makeValue(type);
+            }
+        } // FOR
+        return (params);
+    }
+
+    private Object makeValue(VoltType type) {
+        switch (type) {
+            case TINYINT:
+                return (new Byte((byte)rand.nextInt(NUM_PARTITIONS * 2)));
+            case SMALLINT:
+                return (new Short((short)rand.nextInt(NUM_PARTITIONS * 2)));
+            case INTEGER:
+                return (new Integer(rand.nextInt(NUM_PARTITIONS * 2)));
+            case BIGINT:
+                return (new Long(rand.nextInt(NUM_PARTITIONS * 2)));
+            default:
+                return (VoltTypeUtil.getRandomValue(type));
+        } // SWITCH
+    }
+
+    private void compareGraphs(MarkovGraph expected, MarkovGraph actual) {
+        assertEquals(expected.getProcedure(), actual.getProcedure());
+        assertEquals(expected.getGraphId(), actual.getGraphId());
+        assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        assertEquals(expected.getEdgeCount(), actual.getEdgeCount());
+        for (MarkovVertex v0 : expected.getVertices()) {
+            MarkovVertex v1 = actual.getVertex(v0.getElementId());
+            assertNotNull(v0.toString(), v1);
+            assertEquals(v0.getType(), v1.getType());
+            assertEquals(v0.getCatalogItem(), v1.getCatalogItem());
+            assertEquals(v0.getCatalogKey(), v1.getCatalogKey());
+            assertEquals(v0.getQueryInstanceIndex(), v1.getQueryInstanceIndex());
+            assertEquals(v0.getPartitions(), v1.getPartitions());
+            assertEquals(v0.getPastPartitions(), v1.getPastPartitions());
+            assertEquals(v0.getTotalHits(), v1.getTotalHits());
+            assertEquals(v0.getExecutionTime(), v1.getExecutionTime());
+            for (int i = 0; i < v0.probabilities.length; i++) {
+                assertEquals(v0.probabilities[i].length, v1.probabilities[i].length);
+                for (int j = 0; j < v0.probabilities[i].length; j++) {
+                    assertEquals(v0.probabilities[i][j], v1.probabilities[i][j]);
+                } // FOR
+            } // FOR
+        } // FOR
+        for (MarkovEdge e0 : expected.getEdges()) {
+            MarkovVertex src = actual.getVertex(expected.getSource(e0).getElementId());
+            MarkovVertex dest = actual.getVertex(expected.getDest(e0).getElementId());
+            MarkovEdge e1 = actual.findEdge(src, dest);
+            assertNotNull(e0.toString(), e1);
+            assertEquals(e0.getElementId(), e1.getElementId());
+            assertEquals(e0.getTotalHits(), e1.getTotalHits());
+            assertEquals(e0.getProbability(), e1.getProbability());
+        } // FOR
+        assertTrue(actual.isValid());
+    }
+
+    /**
+     * testLazyLoad
+     */
+    public void testLazyLoad() throws Exception {
+        File temp = FileUtil.getTempFile(BinaryMarkovGraphsWriter.EXTENSION, true);
+        BinaryMarkovGraphsWriter.save(this.markovs, temp);
+        assertTrue(BinaryMarkovGraphsFile.isBinaryFile(temp));
+
+        Map<Integer, MarkovGraphsContainer> clone = MarkovGraphContainersUtil.load(catalog_db, temp.getAbsolutePath(), null, null);
+        assertEquals(this.markovs.keySet(), clone.keySet());
+        for (Integer partition : this.markovs.keySet()) {
+            MarkovGraphsContainer expected = this.markovs.get(partition);
+            MarkovGraphsContainer actual = clone.get(partition);
+            assertEquals(expected.keySet(), actual.keySet());
+            assertEquals(expected.getAll().size(), actual.getLazyCount());
+
+            // Nothing should get loaded until we ask for it
+            Procedure catalog_proc = CollectionUtil.first(expected.getAll(partition).keySet());
+            MarkovGraph m = actual.get(partition, catalog_proc);
+            assertNotNull(m);
+            assertEquals(expected.getAll().size() - 1, actual.getLazyCount());
+            assertSame(m, actual.getOrCreate(partition, catalog_proc));
+            this.compareGraphs(expected.get(partition, catalog_proc), m);
+
+            // Everything else gets loaded if we ask for all of them
+            assertEquals(expected.getAll().size(), actual.getAll().size());
+            assertEquals(0, actual.getLazyCount());
+            for (MarkovGraph markov : expected.getAll()) {
+                this.compareGraphs(markov, actual.get(partition, markov.getProcedure()));
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testClear
+     */
+    public void testClear() throws Exception {
+        File temp = FileUtil.getTempFile(BinaryMarkovGraphsWriter.EXTENSION, true);
+        BinaryMarkovGraphsWriter.save(this.markovs, temp);
+        Map<Integer, MarkovGraphsContainer> clone = MarkovGraphContainersUtil.load(catalog_db, temp.getAbsolutePath(), null, null);
+        assertTrue(clone.size() > 1);
+
+        // Load one graph so that the file has a mix of loaded and unloaded graphs
+        Integer partition = CollectionUtil.first(clone.keySet());
+        Procedure catalog_proc = CollectionUtil.first(this.markovs.get(partition).getAll(partition).keySet());
+        assertNotNull(clone.get(partition).get(partition, catalog_proc));
+
+        BinaryMarkovGraphsFile bfile = CollectionUtil.first(clone.get(partition).getLazy()).getFile();
+        assertTrue(bfile.isOpen());
+        int pending = bfile.getPendingCount();
+        assertTrue(pending > 0);
+
+        // The file can only be closed once every container has let go of its graphs
+        List<MarkovGraphsContainer> containers = new ArrayList<MarkovGraphsContainer>(clone.values());
+        for (int i = 0; i < containers.size(); i++) {
+            MarkovGraphsContainer m = containers.get(i);
+            pending -= m.getLazyCount();
+            m.clear();
+            assertEquals(0, m.getLazyCount());
+            assertEquals(pending, bfile.getPendingCount());
+            assertEquals(i + 1 < containers.size(), bfile.isOpen());
+        } // FOR
+        assertEquals(0, pending);
+    }
+
+    /**
+     * testLoadFilters
+     */
+    public void testLoadFilters() throws Exception {
+        File temp = FileUtil.getTempFile(BinaryMarkovGraphsWriter.EXTENSION, true);
+        BinaryMarkovGraphsWriter.save(this.markovs, temp);
+
+        Integer partition = CollectionUtil.first(this.markovs.keySet());
+        Procedure catalog_proc = CollectionUtil.first(this.markovs.get(partition).getAll(partition).keySet());
+        Collection<Procedure> procedures = CollectionUtil.addAll(new ArrayList<Procedure>(), catalog_proc);
+        Map<Integer, MarkovGraphsContainer> clone = MarkovGraphContainersUtil.load(catalog_db, temp.getAbsolutePath(), procedures, CollectionUtil.addAll(new ArrayList<Integer>(), partition));
+        assertEquals(1, clone.size());
+        assertEquals(1, clone.get(partition).getLazyCount());
+        assertEquals(1, clone.get(partition).getAll().size());
+        this.compareGraphs(this.markovs.get(partition).get(partition, catalog_proc), clone.get(partition).get(partition, catalog_proc));
+    }
+
+    /**
+     * testConvert
+     */
+    public void testConvert() throws Exception {
+        File json = FileUtil.getTempFile("markovs", true);
+        File binary = FileUtil.getTempFile(BinaryMarkovGraphsWriter.EXTENSION, true);
+        MarkovGraphContainersUtil.save(this.markovs, json.getAbsolutePath());
+        assertFalse(BinaryMarkovGraphsFile.isBinaryFile(json));
+
+        int num_graphs = ConvertMarkovGraphs.jsonToBinary(catalog_db, json, binary);
+        assertTrue(num_graphs > 0);
+        Map<Integer, MarkovGraphsContainer> clone = BinaryMarkovGraphsFile.load(catalog_db, binary, null, null);
+        assertEquals(this.markovs.keySet(), clone.keySet());
+        int ctr = 0;
+        for (Integer partition : this.markovs.keySet()) {
+            for (MarkovGraph markov : this.markovs.get(partition).getAll()) {
+                this.compareGraphs(markov, clone.get(partition).get(partition, markov.getProcedure()));
+                ctr++;
+            } // FOR
+        } // FOR
+        assertEquals(num_graphs, ctr);
+    }
+}
@@ -0,0 +1,313 @@
+package edu.brown.markov.containers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.ProcParameter;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.markov.MarkovEdge;
+import edu.brown.markov.MarkovGraph;
+import edu.brown.markov.MarkovUtil;
+import edu.brown.markov.MarkovVertex;
+import edu.brown.utils.PartitionEstimator;
+import edu.brown.utils.ProjectType;
+import edu.brown.utils.ThreadUtil;
+import edu.brown.workload.BinaryTraceReader;
+import edu.brown.workload.BinaryTraceWriter;
+import edu.brown.workload.QueryTrace;
+import edu.brown.workload.TransactionTrace;
+
+public class TestMarkovGraphContainersUtil extends BaseTestCase {
+
+    private static final int NUM_PARTITIONS = 4;
+    private static final int NUM_TXNS = 1000;
+    private static final int NUM_THREADS = 4;
+    private static final int QUEUE_SIZE = 2;
+    private static final long TIMEOUT = 60000;
+
+    /**
+     * MarkovGraph that takes a while to process each txn so that the
+     * queuing thread gets ahead of the processing threads
+     */
+    public static class SlowMarkovGraph extends MarkovGraph {
+        private static final long serialVersionUID = 1L;
+        public SlowMarkovGraph(Procedure catalog_proc) {
+            super(catalog_proc);
+        }
+        @Override
+        public List<MarkovVertex> processTransaction(TransactionTrace txn_trace, PartitionEstimator pest) throws Exception {
+            ThreadUtil.sleep(1);
+            return (super.processTransaction(txn_trace, pest));
+        }
+    }
+
+    public static class SlowMarkovGraphsContainer extends MarkovGraphsContainer {
+        public SlowMarkovGraphsContainer(Collection<Procedure> procedures) {
+            super(procedures);
+        }
+        @Override
+        public MarkovGraph getFromParams(long txn_id, int base_partition, Object params[], Procedure catalog_proc) {
+            MarkovGraph markov = this.get(base_partition, catalog_proc);
+            if (markov == null) {
+                markov = new SlowMarkovGraph(catalog_proc);
+                markov.initialize();
+                this.put(base_partition, markov);
+            }
+            return (markov);
+        }
+    }
+
+    private final Random rand = new Random(1);
+    private final List<TransactionTrace> txns = new ArrayList<TransactionTrace>();
+    private PartitionEstimator p_estimator;
+    private byte trace[];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+        this.addPartitions(NUM_PARTITIONS);
+        this.p_estimator = new PartitionEstimator(catalog_db);
+
+        List<Procedure> procs = new ArrayList<Procedure>();
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            if (catalog_proc.getSystemproc() || catalog_proc.getParameters().isEmpty()) continue;
+            boolean valid = true;
+            for (ProcParameter catalog_param : catalog_proc.getParameters()) {
+                valid = valid && (catalog_param.getType() != VoltType.VOLTTABLE.getValue());
+            } // FOR
+            if (valid) procs.add(catalog_proc);
+        } // FOR
+
+        long start = 1000000;
+        for (int i = 0; i < NUM_TXNS; i++) {
+            Procedure catalog_proc = procs.get(rand.nextInt(procs.size()));
+            TransactionTrace txn_trace = new TransactionTrace(1000 + i, catalog_proc, this.makeParams(catalog_proc.getParameters(), "type"));
+            start += rand.nextInt(100);
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                if (rand.nextInt(4) == 0) continue;
+                QueryTrace query_trace = new QueryTrace(catalog_stmt, this.makeParams(catalog_stmt.getParameters(), "javatype"), 0);
+                query_trace.setTimestamps(start, start + 1);
+                txn_trace.addQuery(query_trace);
+            } // FOR
+            if (txn_trace.getQueryCount() == 0) continue;
+            if (i % 7 == 0) txn_trace.abort();
+            txn_trace.setTimestamps(start, start + 10);
+            this.txns.add(txn_trace);
+        } // FOR
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryTraceWriter writer = new BinaryTraceWriter(out, catalog_db, true, 100);
+        for (TransactionTrace txn_trace : this.txns) {
+            writer.write(txn_trace);
+        } // FOR
+        writer.close();
+        this.trace = out.toByteArray();
+    }
+
+    private <T extends CatalogType> Object[] makeParams(CatalogMap<T> catalog_params, String type_field) {
+        Object params[] = new Object[catalog_params.size()];
+        for (int i = 0; i < params.length; i++) {
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object isarray = catalog_param.getField("isarray");
+            if (isarray != null && (Boolean)isarray) {
+                Object inner[] = new Object[rand.nextInt(3) + 1];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = this.makeValue(type);
+                } // FOR
+                params[i] = inner;
+            } else {
+                params[i] = this.makeValue(type);
+            }
+        } // FOR
+        return (params);
+    }
+
+    private Object makeValue(VoltType type) {
+        switch (type) {
+            case TINYINT:
+                return (new Byte((byte)rand.nextInt(NUM_PARTITIONS * 2)));
+            case SMALLINT:
+                return (new Short((short)rand.nextInt(NUM_PARTITIONS * 2)));
+            case INTEGER:
+                return (new Integer(rand.nextInt(NUM_PARTITIONS * 2)));
+            case BIGINT:
+                return (new Long(rand.nextInt(NUM_PARTITIONS * 2)));
+            default:
+                return (VoltTypeUtil.getRandomValue(type));
+        } // SWITCH
+    }
+
+    /**
+     * Build the MarkovGraphs one txn at a time without any threads
+     */
+    private Map<Integer, MarkovGraphsContainer> buildSerial(boolean global) throws Exception {
+        Map<Integer, MarkovGraphsContainer> markovs = new HashMap<Integer, MarkovGraphsContainer>();
+        for (TransactionTrace txn_trace : this.txns) {
+            int partition = this.p_estimator.getBasePartition(txn_trace);
+            int id = (global ? MarkovUtil.GLOBAL_MARKOV_CONTAINER_ID : partition);
+            MarkovGraphsContainer m = markovs.get(id);
+            if (m == null) {
+                m = new MarkovGraphsContainer();
+                markovs.put(id, m);
+            }
+            m.getOrCreate(id, txn_trace.getCatalogItem(catalog_db), true).processTransaction(txn_trace, this.p_estimator);
+        } // FOR
+        MarkovGraphContainersUtil.calculateProbabilities(markovs);
+        return (markovs);
+    }
+
+    private String toKey(MarkovVertex v) {
+        return (String.format("%s:%s:%d:%s:%s", v.getType(), v.getCatalogItemName(), v.getQueryInstanceIndex(),
+                                                v.getPartitions(), v.getPastPartitions()));
+    }
+
+    /**
+     * Return a sorted list of all of the vertices and edges in the graph along with
+     * their hit counters. The element ids are not included because they are global.
+     */
+    private List<String> getSignature(MarkovGraph markov) {
+        List<String> sig = new ArrayList<String>();
+        for (MarkovVertex v : markov.getVertices()) {
+            sig.add(this.toKey(v) + "=" + v.getTotalHits());
+        } // FOR
+        for (MarkovEdge e : markov.getEdges()) {
+            sig.add(this.toKey(markov.getSource(e)) + "->" + this.toKey(markov.getDest(e)) + "=" + e.getTotalHits());
+        } // FOR
+        Collections.sort(sig);
+        return (sig);
+    }
+
+    private void checkContainers(Map<Integer, MarkovGraphsContainer> expected, Map<Integer, MarkovGraphsContainer> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Integer id : expected.keySet()) {
+            MarkovGraphsContainer e_markovs = expected.get(id);
+            MarkovGraphsContainer a_markovs = actual.get(id);
+            assertEquals(e_markovs.getAll().size(), a_markovs.getAll().size());
+            for (MarkovGraph e_markov : e_markovs.getAll()) {
+                MarkovGraph a_markov = a_markovs.get(id, e_markov.getProcedure());
+                assertNotNull(id + " " + e_markov, a_markov);
+                assertEquals(id + " " + e_markov, this.getSignature(e_markov), this.getSignature(a_markov));
+                assertTrue(a_markov.isValid());
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * Build the MarkovGraphs from the given stream in a separate thread and make
+     * sure that it finishes before the timeout
+     */
+    private Map<Integer, MarkovGraphsContainer> createWithTimeout(final Iterator<TransactionTrace> stream, final Class<? extends MarkovGraphsContainer> containerClass, final int queue_size) throws Throwable {
+        final AtomicReference<Map<Integer, MarkovGraphsContainer>> result = new AtomicReference<Map<Integer, MarkovGraphsContainer>>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    result.set(MarkovGraphContainersUtil.createMarkovGraphsContainers(catalog_db, stream, p_estimator, containerClass, NUM_THREADS, queue_size));
+                } catch (Throwable ex) {
+                    error.set(ex);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        thread.join(TIMEOUT);
+        assertFalse("Timed out building MarkovGraphs", thread.isAlive());
+        if (error.get() != null) throw error.get();
+        return (result.get());
+    }
+
+    /**
+     * testCreateFromStream
+     */
+    public void testCreateFromStream() throws Exception {
+        Map<Integer, MarkovGraphsContainer> expected = this.buildSerial(false);
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(this.trace), catalog_db, null);
+        Map<Integer, MarkovGraphsContainer> actual = MarkovGraphContainersUtil.createMarkovGraphsContainers(catalog_db, reader, p_estimator, MarkovGraphsContainer.class, NUM_THREADS);
+        assertFalse(reader.hasNext());
+        assertEquals(this.txns.size(), reader.getTransactionCount());
+        this.checkContainers(expected, actual);
+    }
+
+    /**
+     * testCreateGlobalFromStream
+     */
+    public void testCreateGlobalFromStream() throws Exception {
+        Map<Integer, MarkovGraphsContainer> expected = this.buildSerial(true);
+        assertEquals(1, expected.size());
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(this.trace), catalog_db, null);
+        Map<Integer, MarkovGraphsContainer> actual = MarkovGraphContainersUtil.createMarkovGraphsContainers(catalog_db, reader, p_estimator, GlobalMarkovGraphsContainer.class, NUM_THREADS);
+        this.checkContainers(expected, actual);
+    }
+
+    /**
+     * testBackpressure
+     */
+    public void testBackpressure() throws Throwable {
+        // The queues can only hold a fraction of the txns and the processing threads
+        // are slower than the stream, so the queuing thread has to wait on full queues
+        assert(this.txns.size() > NUM_THREADS * QUEUE_SIZE * 10);
+        Map<Integer, MarkovGraphsContainer> expected = this.buildSerial(false);
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(this.trace), catalog_db, null);
+        Map<Integer, MarkovGraphsContainer> actual = this.createWithTimeout(reader, SlowMarkovGraphsContainer.class, QUEUE_SIZE);
+        assertNotNull(actual);
+        assertFalse(reader.hasNext());
+        this.checkContainers(expected, actual);
+        for (MarkovGraphsContainer markovs : actual.values()) {
+            for (MarkovGraph markov : markovs.getAll()) {
+                assertEquals(SlowMarkovGraph.class, markov.getClass());
+            } // FOR
+        } // FOR
+    }
+
+    /**
+     * testStreamError
+     */
+    public void testStreamError() throws Throwable {
+        // Make sure that we don't hang if the stream blows up while the
+        // queues are full and the processing threads are still busy
+        final int limit = this.txns.size() / 2;
+        final Iterator<TransactionTrace> it = this.txns.iterator();
+        Iterator<TransactionTrace> stream = new Iterator<TransactionTrace>() {
+            int ctr = 0;
+            @Override
+            public boolean hasNext() {
+                return (it.hasNext());
+            }
+            @Override
+            public TransactionTrace next() {
+                if (++ctr > limit) throw new RuntimeException("Fake Error");
+                return (it.next());
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        Throwable error = null;
+        try {
+            this.createWithTimeout(stream, SlowMarkovGraphsContainer.class, QUEUE_SIZE);
+        } catch (Exception ex) {
+            error = ex;
+        }
+        assertNotNull("Expected an exception", error);
+        assertNotNull(error.getCause());
+        assertEquals("Fake Error", error.getCause().getMessage());
+    }
+}
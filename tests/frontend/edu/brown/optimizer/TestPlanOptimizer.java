@@ -19,6 +19,7 @@ import org.voltdb.plannodes.AggregatePlanNode;
 import org.voltdb.plannodes.LimitPlanNode;
 import org.voltdb.plannodes.OrderByPlanNode;
 import org.voltdb.plannodes.ProjectionPlanNode;
+import org.voltdb.plannodes.ReceivePlanNode;
 import org.voltdb.plannodes.SeqScanPlanNode;
 import org.voltdb.types.PlanNodeType;
 
@@ -526,6 +527,13 @@ public class TestPlanOptimizer extends BasePlanOptimizerTestCase {
                 assertEquals(PlanNodeUtil.debug(node), 1, node.getChildPlanNodeCount());
             } // FOR
         } // FOR
+        
+        // The coordinator's ReceivePlanNode should merge the sorted inputs
+        Collection<ReceivePlanNode> recv_nodes = PlanNodeUtil.getPlanNodes(root, ReceivePlanNode.class);
+        assertEquals(1, recv_nodes.size());
+        ReceivePlanNode recv_node = CollectionUtil.first(recv_nodes);
+        assertTrue(PlanNodeUtil.debug(root), recv_node.getMergeReceive());
+        assertEquals(OrderByPlanNode.class, recv_node.getParent(0).getClass());
     }
     
     /**
@@ -0,0 +1,136 @@
+package edu.brown.statistics;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentIntHistogram extends TestCase {
+
+    private static final int CAPACITY = 200;
+    private static final int NUM_SAMPLES = 1000;
+    private static final int NUM_THREADS = 8;
+
+    private final Random rand = new Random(0);
+
+    /**
+     * testCompareWithHistogram
+     */
+    public void testCompareWithHistogram() {
+        ConcurrentIntHistogram h = new ConcurrentIntHistogram(CAPACITY, 3);
+        assertEquals(4, h.getStripeCount());
+        assertTrue(h.isEmpty());
+        Histogram<Integer> expected = new Histogram<Integer>();
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            int value = rand.nextInt(CAPACITY);
+            long delta = rand.nextInt(5) + 1;
+            h.put(value, delta);
+            expected.put(value, delta);
+        } // FOR
+        h.put(CAPACITY - 1);
+        expected.put(CAPACITY - 1);
+        h.remove(CAPACITY - 1);
+        expected.remove(CAPACITY - 1);
+
+        assertEquals(expected.getSampleCount(), h.getSampleCount());
+        for (int value = 0; value < CAPACITY; value++) {
+            assertEquals(expected.get(value, 0l), h.get(value));
+        } // FOR
+        assertEquals(0, h.get(-1));
+        assertEquals(0, h.get(CAPACITY));
+        assertEquals(expected, h.snapshot());
+        assertEquals(expected.toString(), h.toString());
+
+        try {
+            h.put(-1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+
+        // Keys past the capacity make the histogram grow
+        int big = CAPACITY * 10;
+        h.put(big, 7);
+        expected.put(big, 7);
+        assertTrue(h.getCapacity() > big);
+        assertEquals(7, h.get(big));
+        assertEquals(expected.getSampleCount(), h.getSampleCount());
+        assertEquals(expected, h.snapshot());
+
+        h.clear();
+        assertTrue(h.isEmpty());
+        assertTrue(h.snapshot().isEmpty());
+    }
+
+    /**
+     * testConcurrentPut
+     */
+    public void testConcurrentPut() throws Exception {
+        final ConcurrentIntHistogram h = new ConcurrentIntHistogram(CAPACITY, NUM_THREADS / 2);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < NUM_SAMPLES; j++) {
+                        for (int value = 0; value < CAPACITY; value += 10) {
+                            h.put(value);
+                        } // FOR
+                    } // FOR
+                }
+            };
+            threads[i].start();
+        } // FOR
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        } // FOR
+
+        for (int value = 0; value < CAPACITY; value++) {
+            assertEquals(value % 10 == 0 ? NUM_THREADS * NUM_SAMPLES : 0, h.get(value));
+        } // FOR
+        assertEquals(NUM_THREADS * NUM_SAMPLES * (CAPACITY / 10), h.getSampleCount());
+        assertEquals(CAPACITY / 10, h.snapshot().getValueCount());
+    }
+
+    /**
+     * testConcurrentGrow
+     */
+    public void testConcurrentGrow() throws Exception {
+        final int max_value = CAPACITY * 20;
+        final ConcurrentIntHistogram h = new ConcurrentIntHistogram(1, NUM_THREADS / 2);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[NUM_THREADS];
+        for (int i = 0; i < NUM_THREADS; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int value = 0; value < max_value; value++) {
+                        h.put(value);
+                    } // FOR
+                }
+            };
+            threads[i].start();
+        } // FOR
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        } // FOR
+
+        // Growing the histogram shouldn't lose any of the updates
+        assertTrue(h.getCapacity() >= max_value);
+        for (int value = 0; value < max_value; value++) {
+            assertEquals(NUM_THREADS, h.get(value));
+        } // FOR
+        assertEquals(NUM_THREADS * max_value, h.getSampleCount());
+    }
+}
@@ -0,0 +1,101 @@
+package edu.brown.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+public class TestPartitionSet extends TestCase {
+
+    private static final int NUM_PARTITIONS = 200;
+    private final Random rand = new Random(0);
+
+    /**
+     * testCompareWithTreeSet
+     */
+    public void testCompareWithTreeSet() {
+        PartitionSet pset = new PartitionSet(8);
+        Set<Integer> expected = new TreeSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            int partition = rand.nextInt(NUM_PARTITIONS);
+            if (rand.nextBoolean()) {
+                assertEquals(expected.add(partition), pset.add(partition));
+            } else {
+                assertEquals(expected.remove(partition), pset.remove(partition));
+            }
+            assertEquals(expected.size(), pset.size());
+        } // FOR
+        assertEquals(expected, pset);
+        assertEquals(pset, expected);
+        assertEquals(expected.hashCode(), pset.hashCode());
+        assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(pset));
+        assertEquals(((TreeSet<Integer>) expected).first().intValue(), pset.first());
+        assertFalse(pset.contains(-1));
+        assertFalse(pset.contains(NUM_PARTITIONS * 10));
+        assertFalse(pset.contains("0"));
+    }
+
+    /**
+     * testBulkOperations
+     */
+    public void testBulkOperations() {
+        PartitionSet pset0 = new PartitionSet();
+        PartitionSet pset1 = new PartitionSet();
+        for (int p = 0; p < NUM_PARTITIONS; p += 3) {
+            pset0.add(p);
+        } // FOR
+        for (int p = 0; p < NUM_PARTITIONS / 2; p += 2) {
+            pset1.add(p);
+        } // FOR
+        assertTrue(pset0.intersects(pset1));
+
+        PartitionSet union = pset0.clone();
+        assertTrue(union.addAll(pset1));
+        assertFalse(union.addAll(pset1));
+        Set<Integer> expected = new TreeSet<Integer>(pset0);
+        expected.addAll(pset1);
+        assertEquals(expected, union);
+        assertEquals(expected.size(), union.size());
+
+        assertTrue(union.removeAll(pset0));
+        expected.removeAll(pset0);
+        assertEquals(expected, union);
+        assertFalse(union.intersects(pset0));
+
+        // The clone should not have been changed
+        assertEquals(NUM_PARTITIONS / 3 + 1, pset0.size());
+        union.clear();
+        assertTrue(union.isEmpty());
+        assertEquals(-1, union.first());
+    }
+
+    /**
+     * testIteratorRemove
+     */
+    public void testIteratorRemove() {
+        PartitionSet pset = new PartitionSet();
+        for (int p = 0; p < NUM_PARTITIONS; p++) {
+            pset.add(p);
+        } // FOR
+        List<Integer> removed = new ArrayList<Integer>();
+        Iterator<Integer> it = pset.iterator();
+        while (it.hasNext()) {
+            int p = it.next();
+            if (p % 2 == 1) {
+                it.remove();
+                removed.add(p);
+            }
+        } // WHILE
+        assertEquals(NUM_PARTITIONS / 2, pset.size());
+        assertEquals(NUM_PARTITIONS / 2, removed.size());
+        for (int p : removed) {
+            assertFalse(pset.contains(p));
+        } // FOR
+        assertEquals(2, pset.next(1));
+        assertEquals(-1, pset.next(NUM_PARTITIONS));
+    }
+}
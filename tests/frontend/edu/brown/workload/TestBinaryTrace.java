@@ -0,0 +1,245 @@
+package edu.brown.workload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.CatalogMap;
+import org.voltdb.catalog.CatalogType;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+import org.voltdb.utils.VoltTypeUtil;
+
+import edu.brown.BaseTestCase;
+import edu.brown.utils.FileUtil;
+import edu.brown.utils.ProjectType;
+import edu.brown.workload.filters.ProcedureLimitFilter;
+import edu.brown.workload.filters.ProcedureNameFilter;
+
+public class TestBinaryTrace extends BaseTestCase {
+
+    private static final int NUM_TXNS = 500;
+    private static final Random rand = new Random(0);
+
+    private final List<TransactionTrace> txns = new ArrayList<TransactionTrace>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp(ProjectType.TPCC);
+
+        List<Procedure> procs = new ArrayList<Procedure>();
+        for (Procedure catalog_proc : catalog_db.getProcedures()) {
+            if (catalog_proc.getSystemproc() == false) procs.add(catalog_proc);
+        } // FOR
+        long start = 1000000;
+        for (int i = 0; i < NUM_TXNS; i++) {
+            Procedure catalog_proc = procs.get(rand.nextInt(procs.size()));
+            TransactionTrace txn_trace = new TransactionTrace(10000 + i, catalog_proc, this.makeParams(catalog_proc.getParameters(), "type"));
+            start += rand.nextInt(1000);
+            int batch_id = 0;
+            for (Statement catalog_stmt : catalog_proc.getStatements()) {
+                QueryTrace query_trace = new QueryTrace(catalog_stmt, this.makeParams(catalog_stmt.getParameters(), "javatype"), batch_id++ / 2);
+                query_trace.setTimestamps(start + batch_id, start + batch_id + rand.nextInt(100));
+                if (rand.nextInt(10) == 0) query_trace.setWeight(3);
+                txn_trace.addQuery(query_trace);
+            } // FOR
+            txn_trace.setTimestamps(start, (i % 50 == 0 ? null : start + rand.nextInt(5000)));
+            if (i % 7 == 0) txn_trace.aborted = true;
+            if (i % 11 == 0) {
+                txn_trace.setOutput(new Object[][]{ { new Long(i), "xyz", new Double(0.25) }, { new Long(-i), "abc", new Double(1.5) } });
+            }
+            this.txns.add(txn_trace);
+        } // FOR
+    }
+
+    private <T extends CatalogType> Object[] makeParams(CatalogMap<T> catalog_params, String type_field) {
+        Object params[] = new Object[catalog_params.size()];
+        for (int i = 0; i < params.length; i++) {
+            T catalog_param = catalog_params.get(i);
+            VoltType type = VoltType.get(((Integer)catalog_param.getField(type_field)).byteValue());
+            Object isarray = catalog_param.getField("isarray");
+            if (isarray != null && (Boolean)isarray) {
+                Object inner[] = new Object[rand.nextInt(10)];
+                for (int j = 0; j < inner.length; j++) {
+                    inner[j] = VoltTypeUtil.getRandomValue(type);
+                } // FOR
+                params[i] = inner;
+            } else {
+                params[i] = VoltTypeUtil.getRandomValue(type);
+            }
+        } // FOR
+        return (params);
+    }
+
+    private byte[] writeBinary(int block_size, boolean compress) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryTraceWriter writer = new BinaryTraceWriter(out, catalog_db, compress, block_size);
+        for (TransactionTrace txn_trace : this.txns) {
+            writer.write(txn_trace);
+        } // FOR
+        writer.close();
+        assertEquals(NUM_TXNS, writer.getTransactionCount());
+        assertEquals((int)Math.ceil(NUM_TXNS / (double)block_size), writer.getBlockCount());
+        return (out.toByteArray());
+    }
+
+    /**
+     * testRoundTrip
+     */
+    public void testRoundTrip() throws Exception {
+        for (boolean compress : new boolean[]{ false, true }) {
+            byte bytes[] = this.writeBinary(64, compress);
+            BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(bytes), catalog_db, null);
+            Iterator<TransactionTrace> it = this.txns.iterator();
+            for (TransactionTrace actual : reader) {
+                assertTrue(it.hasNext());
+                TransactionTrace expected = it.next();
+                // The binary trace should come back the same as if it was loaded from JSON
+                String json = expected.toJSONString(catalog_db);
+                TransactionTrace from_json = TransactionTrace.loadFromJSONObject(new JSONObject(json), catalog_db);
+                assertEquals(from_json.toJSONString(catalog_db), actual.toJSONString(catalog_db));
+                assertEquals(expected.getBatchCount(), actual.getBatchCount());
+            } // FOR
+            assertFalse(it.hasNext());
+            assertEquals(NUM_TXNS, reader.getTransactionCount());
+        } // FOR
+    }
+
+    /**
+     * testInvalidTransaction
+     */
+    public void testInvalidTransaction() throws Exception {
+        // Give the last query of a txn one more parameter than its Statement has
+        TransactionTrace orig = null;
+        for (TransactionTrace txn_trace : this.txns) {
+            if (txn_trace.getQueryCount() > 1) {
+                orig = txn_trace;
+                break;
+            }
+        } // FOR
+        assertNotNull(orig);
+        Procedure catalog_proc = orig.getCatalogItem(catalog_db);
+        TransactionTrace bad = new TransactionTrace(orig.getTransactionId() + NUM_TXNS, catalog_proc, orig.getParams());
+        for (QueryTrace query_trace : orig.getQueries()) {
+            Object params[] = query_trace.getParams();
+            if (bad.getQueryCount() + 1 == orig.getQueryCount()) {
+                Object new_params[] = new Object[params.length + 1];
+                System.arraycopy(params, 0, new_params, 0, params.length);
+                new_params[params.length] = new Long(1);
+                params = new_params;
+            }
+            bad.addQuery(new QueryTrace(query_trace.getCatalogItem(catalog_db), params, query_trace.getBatchId()));
+        } // FOR
+        bad.setTimestamps(orig.start_timestamp + 99999, null);
+
+        for (boolean compress : new boolean[]{ false, true }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BinaryTraceWriter writer = new BinaryTraceWriter(out, catalog_db, compress, 64);
+            writer.write(this.txns.get(0));
+            try {
+                writer.write(bad);
+                fail("Expected an error for " + bad);
+            } catch (IOException ex) {
+                // Expected
+            }
+            writer.write(this.txns.get(1));
+            writer.close();
+            assertEquals(2, writer.getTransactionCount());
+
+            // The bad txn shouldn't leave anything behind in the block
+            BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(out.toByteArray()), catalog_db, null);
+            Iterator<TransactionTrace> it = this.txns.iterator();
+            for (TransactionTrace actual : reader) {
+                TransactionTrace expected = it.next();
+                assertEquals(expected.getTransactionId(), actual.getTransactionId());
+                assertEquals(expected.start_timestamp, actual.start_timestamp);
+                assertEquals(expected.getQueryCount(), actual.getQueryCount());
+            } // FOR
+            assertEquals(2, reader.getTransactionCount());
+        } // FOR
+    }
+
+    /**
+     * testCompression
+     */
+    public void testCompression() throws Exception {
+        byte raw[] = this.writeBinary(100, false);
+        byte compressed[] = this.writeBinary(100, true);
+        assertTrue(compressed.length < raw.length);
+
+        int json_length = 0;
+        for (TransactionTrace txn_trace : this.txns) {
+            json_length += txn_trace.toJSONString(catalog_db).length() + 1;
+        } // FOR
+        assertTrue(raw.length < json_length);
+    }
+
+    /**
+     * testFilter
+     */
+    public void testFilter() throws Exception {
+        byte bytes[] = this.writeBinary(100, true);
+        String proc_name = this.txns.get(0).getCatalogItemName();
+        int expected = 0;
+        for (TransactionTrace txn_trace : this.txns) {
+            if (txn_trace.getCatalogItemName().equals(proc_name)) expected++;
+        } // FOR
+        assert(expected > 10);
+
+        // Only one procedure
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(bytes), catalog_db, new ProcedureNameFilter(false).include(proc_name));
+        int ctr = 0;
+        for (TransactionTrace txn_trace : reader) {
+            assertEquals(proc_name, txn_trace.getCatalogItemName());
+            ctr++;
+        } // FOR
+        assertEquals(expected, ctr);
+        assertEquals(NUM_TXNS - expected, reader.getSkippedCount());
+
+        // Stop early
+        reader = new BinaryTraceReader(new ByteArrayInputStream(bytes), catalog_db, new ProcedureLimitFilter(10));
+        ctr = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            ctr++;
+        } // WHILE
+        assertEquals(10, ctr);
+    }
+
+    /**
+     * testWorkloadLoad
+     */
+    public void testWorkloadLoad() throws Exception {
+        File json_file = FileUtil.getTempFile("trace", true);
+        File binary_file = FileUtil.getTempFile(BinaryTraceWriter.EXTENSION, true);
+        FileOutputStream out = new FileOutputStream(json_file);
+        for (TransactionTrace txn_trace : this.txns) {
+            Workload.writeTransactionToStream(catalog_db, txn_trace, out);
+        } // FOR
+        out.close();
+
+        assertFalse(BinaryTraceReader.isBinaryTrace(json_file));
+        assertEquals(NUM_TXNS, ConvertWorkloadTrace.jsonToBinary(catalog_db, json_file, new FileOutputStream(binary_file)));
+        assertTrue(BinaryTraceReader.isBinaryTrace(binary_file));
+
+        Workload json_workload = new Workload(catalog);
+        json_workload.load(json_file.getAbsolutePath(), catalog_db);
+        Workload binary_workload = new Workload(catalog);
+        binary_workload.load(binary_file.getAbsolutePath(), catalog_db);
+        assertEquals(json_workload.getTransactionCount(), binary_workload.getTransactionCount());
+        assertEquals(json_workload.getQueryCount(), binary_workload.getQueryCount());
+        for (TransactionTrace expected : json_workload) {
+            TransactionTrace actual = binary_workload.getTransaction(expected.getTransactionId());
+            assertNotNull(actual);
+            assertEquals(expected.toJSONString(catalog_db), actual.toJSONString(catalog_db));
+        } // FOR
+    }
+}
@@ -6,6 +6,7 @@ import junit.framework.TestCase;
 
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
+import org.voltdb.messaging.WireSchemaRegistry;
 import org.voltdb.utils.DBBPool;
 
 import edu.brown.hstore.Hstoreservice.Status;
@@ -61,4 +62,79 @@ public class TestClientResponseImpl extends TestCase {
         } // FOR
     }
     
+    private VoltTable makeTable(int rows) {
+        VoltTable vt = new VoltTable(new VoltTable.ColumnInfo("W_ID", VoltType.BIGINT),
+                                     new VoltTable.ColumnInfo("W_NAME", VoltType.STRING));
+        for (int i = 0; i < rows; i++) {
+            vt.addRow(i, "name" + i);
+        } // FOR
+        return (vt);
+    }
+    
+    private byte[] serialize(ClientResponseImpl response, WireSchemaRegistry schemas) throws Exception {
+        FastSerializer fs = new FastSerializer();
+        fs.setCompact(true, schemas);
+        fs.writeObject(response);
+        return (fs.getBytes());
+    }
+    
+    /**
+     * testCompact
+     */
+    public void testCompact() throws Exception {
+        VoltTable tables[] = { makeTable(1), makeTable(10) };
+        tables[1].setStatusCode((byte)3);
+        cr = new ClientResponseImpl(txn_id, client_handle, 1, status, tables, statusString);
+        cr.setClusterRoundtrip(99);
+        
+        WireSchemaRegistry server = new WireSchemaRegistry();
+        WireSchemaRegistry client = new WireSchemaRegistry();
+        byte legacy[] = FastSerializer.serialize(cr);
+        byte first[] = this.serialize(cr, server);
+        byte second[] = this.serialize(cr, server);
+        assertTrue(first.length < legacy.length);
+        assertTrue(second.length < first.length);
+        
+        // The raw modifiers should still work on the compact format
+        for (byte bytes[] : new byte[][]{ legacy, first, second }) {
+            ByteBuffer b = ByteBuffer.wrap(bytes);
+            ClientResponseImpl.setServerTimestamp(b, 1234);
+            ClientResponseImpl.setThrottleFlag(b, true);
+            
+            FastDeserializer fds = new FastDeserializer(bytes);
+            fds.setSchemaRegistry(client);
+            ClientResponseImpl clone = fds.readObject(ClientResponseImpl.class);
+            assertEquals(1234, clone.getServerTimestamp());
+            assertTrue(clone.getThrottleFlag());
+            assertEquals(txn_id, clone.getTransactionId());
+            assertEquals(client_handle, clone.getClientHandle());
+            assertEquals(statusString, clone.getStatusString());
+            assertEquals(99, clone.getClusterRoundtrip());
+            assertEquals(tables.length, clone.getResults().length);
+            for (int i = 0; i < tables.length; i++) {
+                assertEquals(tables[i], clone.getResults()[i]);
+                assertEquals(tables[i].getStatusCode(), clone.getResults()[i].getStatusCode());
+                assertEquals(tables[i].getColumnName(1), clone.getResults()[i].getColumnName(1));
+            } // FOR
+        } // FOR
+    }
+    
+    /**
+     * testCompactUnknownSchema
+     */
+    public void testCompactUnknownSchema() throws Exception {
+        cr = new ClientResponseImpl(txn_id, client_handle, 1, status, new VoltTable[]{ makeTable(1) }, statusString);
+        WireSchemaRegistry server = new WireSchemaRegistry();
+        this.serialize(cr, server);
+        
+        // A reference to a schema that the client never saw must not be silently accepted
+        FastDeserializer fds = new FastDeserializer(this.serialize(cr, server));
+        fds.setSchemaRegistry(new WireSchemaRegistry());
+        try {
+            fds.readObject(ClientResponseImpl.class);
+            fail();
+        } catch (java.io.IOException ex) {
+            // Expected
+        }
+    }
 }
@@ -51,7 +51,10 @@
 package org.voltdb;
 
 import org.voltdb.ParameterSet;
+import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializableTestUtil;
+import org.voltdb.messaging.FastSerializer;
+import org.voltdb.types.TimestampType;
 
 import junit.framework.TestCase;
 
@@ -87,4 +90,42 @@ public class TestParameterSet extends TestCase {
         // Hence, this probably should be a byte array.
         assertEquals("foo", out.toArray()[0]);
     }
+
+    public void testCompact() throws Exception {
+        Object values[] = { 1, -1, Integer.MIN_VALUE, 12345678901l, -7l, "foo", "",
+                            new TimestampType(1234567), null, 1.5d, (short)3, new long[]{ 1, 2, 3 } };
+        params.setParameters(values);
+
+        FastSerializer legacy = new FastSerializer();
+        params.writeExternal(legacy);
+        FastSerializer compact = new FastSerializer().setCompact(true, null);
+        params.writeExternal(compact);
+        assertTrue(compact.size() + " < " + legacy.size(), compact.size() < legacy.size());
+
+        // Both formats should come back the same
+        for (FastSerializer fs : new FastSerializer[]{ legacy, compact }) {
+            ParameterSet out = new FastDeserializer(fs.getBytes()).readObject(ParameterSet.class);
+            assertEquals(values.length, out.size());
+            for (int i = 0; i < values.length; i++) {
+                Object expected = values[i];
+                Object actual = out.toArray()[i];
+                if (expected instanceof long[]) {
+                    assertTrue(java.util.Arrays.equals((long[])expected, (long[])actual));
+                } else {
+                    assertEquals("[" + i + "]", expected, actual);
+                }
+            } // FOR
+        } // FOR
+    }
+
+    public void testCompactToEE() throws Exception {
+        // Parameters for the EE always use the fixed-width format
+        params = new ParameterSet(true);
+        params.setParameters(new Object[]{ 1l, "foo" });
+        FastSerializer legacy = new FastSerializer();
+        params.writeExternal(legacy);
+        FastSerializer compact = new FastSerializer().setCompact(true, null);
+        params.writeExternal(compact);
+        assertTrue(java.util.Arrays.equals(legacy.getBytes(), compact.getBytes()));
+    }
 }
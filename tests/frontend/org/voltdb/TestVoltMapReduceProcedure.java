@@ -0,0 +1,103 @@
+package org.voltdb;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import edu.brown.benchmark.mapreduce.procedures.MockMapReduce;
+
+public class TestVoltMapReduceProcedure extends TestCase {
+
+    private static final String NAMES[] = { "alpha", "beta", "gamma", "delta" };
+    private static final int NUM_ROWS = 100;
+
+    /**
+     * MockMapReduce that counts how many times its combiner is invoked
+     */
+    static class CountingMapReduce extends MockMapReduce {
+        int combine_ctr = 0;
+        @Override
+        public void combine(String key, Iterator<VoltTableRow> rows) {
+            this.combine_ctr++;
+            super.combine(key, rows);
+        }
+    }
+
+    private final Random rand = new Random(0);
+    private final Map<String, Long> expected = new TreeMap<String, Long>();
+    private VoltTable map_output;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.map_output = new VoltTable(new MockMapReduce().getMapOutputSchema());
+        for (int i = 0; i < NUM_ROWS; i++) {
+            String name = NAMES[rand.nextInt(NAMES.length)];
+            long counter = rand.nextInt(10) + 1;
+            this.map_output.addRow(name, counter);
+            Long total = this.expected.get(name);
+            this.expected.put(name, (total != null ? total : 0l) + counter);
+        } // FOR
+        assertEquals(NAMES.length, this.expected.size());
+    }
+
+    private Map<String, Long> getTotals(VoltTable vt) {
+        Map<String, Long> totals = new TreeMap<String, Long>();
+        vt.resetRowPosition();
+        while (vt.advanceRow()) {
+            String name = vt.getString(0);
+            Long total = totals.get(name);
+            totals.put(name, (total != null ? total : 0l) + vt.getLong(1));
+        } // WHILE
+        return (totals);
+    }
+
+    /**
+     * testCombine
+     */
+    public void testCombine() throws Exception {
+        CountingMapReduce proc = new CountingMapReduce();
+        assertTrue(proc.hasCombine());
+        ((VoltMapReduceProcedure<String>)proc).combineMapOutput(this.map_output);
+
+        // The combiner should have been called once per key and left
+        // one row for each key in the output that gets shuffled
+        assertEquals(NAMES.length, proc.combine_ctr);
+        assertEquals(NAMES.length, this.map_output.getRowCount());
+        assertEquals(this.expected, this.getTotals(this.map_output));
+    }
+
+    /**
+     * testDefaultCombine
+     */
+    public void testDefaultCombine() throws Exception {
+        VoltMapReduceProcedure<String> proc = new VoltMapReduceProcedure<String>() {
+            @Override
+            public VoltTable.ColumnInfo[] getMapOutputSchema() {
+                return (new MockMapReduce().getMapOutputSchema());
+            }
+            @Override
+            public VoltTable.ColumnInfo[] getReduceOutputSchema() {
+                return (new MockMapReduce().getReduceOutputSchema());
+            }
+            @Override
+            public void map(VoltTableRow tuple) {
+                // Nothing
+            }
+            @Override
+            public void reduce(String key, Iterator<VoltTableRow> rows) {
+                // Nothing
+            }
+        };
+        // Procedures have to ask for a combiner
+        assertFalse(proc.hasCombine());
+
+        // If one is used anyway, then the default just emits all of the rows
+        proc.combineMapOutput(this.map_output);
+        assertEquals(NUM_ROWS, this.map_output.getRowCount());
+        assertEquals(this.expected, this.getTotals(this.map_output));
+    }
+}
@@ -24,14 +24,18 @@
 package org.voltdb;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import junit.framework.TestCase;
 
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializableTestUtil;
+import org.voltdb.messaging.FastSerializer;
 import org.voltdb.types.TimestampType;
 import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.DBBPool;
 
 public class TestVoltTable extends TestCase {
     private VoltTable LONG_FIVE;
@@ -641,4 +645,180 @@ public class TestVoltTable extends TestCase {
         }
         assertEquals(rowcounter, content.length);
     }
+
+    public void testPooledTable() throws Exception {
+        VoltTable heap = new VoltTable(new ColumnInfo("ID", VoltType.BIGINT),
+                                       new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < 100; i++) {
+            heap.addRow(i, "row" + i);
+        }
+
+        // Put the table in a direct buffer like the one that the EE writes into
+        byte serialized[] = FastSerializer.serialize(heap);
+        ByteBuffer ee_buffer = ByteBuffer.allocateDirect(serialized.length);
+        ee_buffer.put(serialized);
+        ee_buffer.flip();
+        ee_buffer.position(4);
+        ee_buffer.limit(4 + heap.getUnderlyingBufferSize());
+
+        DBBPool pool = new DBBPool(false, false);
+        VoltTable pooled = PrivateVoltTableFactory.createPooledVoltTable(pool, ee_buffer);
+        assertTrue(pooled.isPooled());
+        assertFalse(heap.isPooled());
+        assertEquals(4, ee_buffer.position());
+        assertTrue(heap.hasSameContents(pooled));
+
+        // The pooled table should serialize the same way as the heap table
+        ByteBuffer expected = heap.getSerializedBuffer();
+        ByteBuffer actual = pooled.getSerializedBuffer();
+        assertEquals(expected, actual);
+        assertTrue(actual.isReadOnly());
+        byte bytes[] = new byte[actual.remaining()];
+        actual.get(bytes);
+        VoltTable copy = new FastDeserializer(bytes).readObject(VoltTable.class);
+        assertTrue(heap.hasSameContents(copy));
+        assertEquals(expected, ByteBuffer.wrap(FastSerializer.serialize(pooled), 0, bytes.length));
+
+        // Pooled tables are read-only
+        try {
+            pooled.addRow(1000, "fail");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+
+        // The table should stay usable until the last reference is released
+        pooled.retain();
+        pooled.release();
+        assertTrue(pooled.isPooled());
+        assertEquals(heap.getRowCount(), pooled.getRowCount());
+        pooled.release();
+        assertFalse(pooled.isPooled());
+        pooled.release();
+
+        // Releasing a heap table doesn't do anything
+        heap.release();
+        assertEquals(100, heap.getRowCount());
+        pool.clear();
+    }
+
+    public void testFixedOffsets() {
+        VoltTable table = new VoltTable(new ColumnInfo("A", VoltType.TINYINT),
+                                        new ColumnInfo("B", VoltType.INTEGER),
+                                        new ColumnInfo("C", VoltType.DECIMAL),
+                                        new ColumnInfo("D", VoltType.STRING),
+                                        new ColumnInfo("E", VoltType.BIGINT),
+                                        new ColumnInfo("F", VoltType.STRING),
+                                        new ColumnInfo("G", VoltType.FLOAT));
+        for (int i = 0; i < 20; i++) {
+            table.addRow(i, i * 10, new BigDecimal(i).setScale(VoltDecimalHelper.kDefaultScale),
+                         (i % 3 == 0 ? null : "d" + i), i * 100l, "f" + i, i / 2.0);
+        }
+        // Everything up to and including the first string is at a fixed position
+        assertTrue(Arrays.equals(new int[] { 0, 1, 5, 21 }, table.getFixedOffsets()));
+
+        VoltTable fixed = new VoltTable(new ColumnInfo("A", VoltType.BIGINT),
+                                        new ColumnInfo("B", VoltType.SMALLINT),
+                                        new ColumnInfo("C", VoltType.TIMESTAMP));
+        assertTrue(Arrays.equals(new int[] { 0, 8, 10 }, fixed.getFixedOffsets()));
+
+        VoltTableRow rows[] = { table, table.cloneRow() };
+        for (VoltTableRow row : rows) {
+            row.resetRowPosition();
+            int i = 0;
+            while (row.advanceRow()) {
+                assertEquals(i, row.getLong(0));
+                assertEquals(i * 10, row.getLong("b"));
+                assertEquals(new BigDecimal(i).setScale(VoltDecimalHelper.kDefaultScale), row.getDecimalAsBigDecimal(2));
+                assertEquals((i % 3 == 0 ? null : "d" + i), row.getString(3));
+                assertEquals(i * 100l, row.getLong(4));
+                assertEquals("f" + i, row.getString("F"));
+                assertEquals(i / 2.0, row.getDouble(6));
+                i++;
+            }
+            assertEquals(table.getRowCount(), i);
+        }
+        VoltTableRow row = table.fetchRow(7);
+        assertEquals(70, row.getLong(1));
+        assertEquals(700, row.getLong(4));
+    }
+
+    public void testColumnIndexCache() throws Exception {
+        VoltTable table = new VoltTable(new ColumnInfo("W_ID", VoltType.INTEGER),
+                                        new ColumnInfo("W_NAME", VoltType.STRING));
+        assertEquals(0, table.getColumnIndex("W_ID"));
+        assertEquals(1, table.getColumnIndex("W_NAME"));
+        assertEquals(1, table.getColumnIndex("w_name"));
+        assertEquals(1, table.getColumnIndex("w_name"));
+        assertTrue(table.hasColumn("w_Id"));
+        assertFalse(table.hasColumn("W_YTD"));
+        try {
+            table.getColumnIndex("W_YTD");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+        assertEquals(VoltType.STRING, table.getColumnType(1));
+
+        // The cached schema has to go away if the table is read in again
+        VoltTable other = new VoltTable(new ColumnInfo("D_ID", VoltType.STRING));
+        other.addRow("x");
+        FastDeserializer fds = new FastDeserializer(FastSerializer.serialize(other));
+        table.readExternal(fds);
+        assertEquals(0, table.getColumnIndex("d_id"));
+        assertFalse(table.hasColumn("W_ID"));
+        assertEquals("D_ID", table.getColumnName(0));
+        assertEquals(VoltType.STRING, table.getColumnType(0));
+        assertTrue(table.advanceRow());
+        assertEquals("x", table.getString(0));
+    }
+
+    public void testStringView() {
+        String values[] = { "NEW ORDER", "", null, "caf\u00e9", "\u20ac100", "\ud834\udd1e clef" };
+        VoltTable table = new VoltTable(new ColumnInfo("ID", VoltType.BIGINT),
+                                        new ColumnInfo("NAME", VoltType.STRING));
+        for (int i = 0; i < values.length; i++) {
+            table.addRow(i, values[i]);
+        }
+
+        VoltTableRow.StringView mine = new VoltTableRow.StringView();
+        int i = 0;
+        while (table.advanceRow()) {
+            VoltTableRow.StringView view = table.getStringView(1);
+            if (values[i] == null) {
+                assertNull(view);
+                assertTrue(table.wasNull());
+                assertNull(table.getStringView(1, mine));
+            } else {
+                assertFalse(table.wasNull());
+                assertSame(view, table.getStringView("name"));
+                assertEquals(values[i], view.toString());
+                assertEquals(values[i].length(), view.length());
+                assertTrue(view.contentEquals(values[i]));
+                assertFalse(view.contentEquals(values[i] + "x"));
+                for (int c = 0; c < values[i].length(); c++) {
+                    assertEquals(values[i].charAt(c), view.charAt(c));
+                }
+                byte expected[] = table.getStringAsBytes(1);
+                assertEquals(expected.length, view.byteLength());
+                byte actual[] = new byte[view.byteLength()];
+                view.getBytes(actual, 0);
+                assertTrue(Arrays.equals(expected, actual));
+                if (values[i].length() > 2) {
+                    assertEquals(values[i].substring(1, 3), view.subSequence(1, 3).toString());
+                }
+                assertSame(mine, table.getStringView(1, mine));
+                assertEquals(values[i], mine.toString());
+            }
+            i++;
+        }
+        try {
+            table.resetRowPosition();
+            table.advanceRow();
+            table.getStringView(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+    }
 }
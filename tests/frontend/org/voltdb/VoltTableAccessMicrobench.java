@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.types.TimestampType;
+
+/**
+ * Compares the different ways that a stored procedure can read the rows of
+ * result sets that look like the ones that TPC-C gets back from its queries:
+ * boxed values through get(), typed getters by column name, and typed getters
+ * by column index with StringViews for the strings.
+ *
+ * command line args:
+ *   [{number of passes over each table}]
+ */
+public class VoltTableAccessMicrobench {
+
+    static abstract class Runner {
+        final String name;
+
+        Runner(String name) {
+            this.name = name;
+        }
+
+        /** Read every column of every row and return something so it can't be optimized away */
+        abstract long scan(VoltTable table);
+    }
+
+    static VoltTable stockTable(Random rand, int rows) {
+        VoltTable table = new VoltTable(new ColumnInfo("S_I_ID", VoltType.INTEGER),
+                                        new ColumnInfo("S_W_ID", VoltType.SMALLINT),
+                                        new ColumnInfo("S_QUANTITY", VoltType.INTEGER),
+                                        new ColumnInfo("S_YTD", VoltType.INTEGER),
+                                        new ColumnInfo("S_ORDER_CNT", VoltType.INTEGER),
+                                        new ColumnInfo("S_REMOTE_CNT", VoltType.INTEGER));
+        for (int i = 0; i < rows; i++) {
+            table.addRow(rand.nextInt(100000), rand.nextInt(10), rand.nextInt(100),
+                         rand.nextInt(10000), rand.nextInt(100), rand.nextInt(10));
+        }
+        return table;
+    }
+
+    static VoltTable orderLineTable(Random rand, int rows) {
+        VoltTable table = new VoltTable(new ColumnInfo("OL_I_ID", VoltType.INTEGER),
+                                        new ColumnInfo("OL_SUPPLY_W_ID", VoltType.SMALLINT),
+                                        new ColumnInfo("OL_QUANTITY", VoltType.INTEGER),
+                                        new ColumnInfo("OL_AMOUNT", VoltType.FLOAT),
+                                        new ColumnInfo("OL_DELIVERY_D", VoltType.TIMESTAMP));
+        for (int i = 0; i < rows; i++) {
+            table.addRow(rand.nextInt(100000), rand.nextInt(10), rand.nextInt(10),
+                         rand.nextDouble() * 10000, new TimestampType());
+        }
+        return table;
+    }
+
+    static VoltTable customerTable(Random rand, int rows) {
+        VoltTable table = new VoltTable(new ColumnInfo("C_ID", VoltType.INTEGER),
+                                        new ColumnInfo("C_FIRST", VoltType.STRING),
+                                        new ColumnInfo("C_MIDDLE", VoltType.STRING),
+                                        new ColumnInfo("C_LAST", VoltType.STRING),
+                                        new ColumnInfo("C_CREDIT", VoltType.STRING),
+                                        new ColumnInfo("C_DISCOUNT", VoltType.FLOAT),
+                                        new ColumnInfo("C_BALANCE", VoltType.FLOAT));
+        String syllables[] = { "BAR", "OUGHT", "ABLE", "PRI", "PRES", "ESE", "ANTI", "CALLY", "ATION", "EING" };
+        for (int i = 0; i < rows; i++) {
+            table.addRow(i, "first" + rand.nextInt(1000), "OE",
+                         syllables[rand.nextInt(10)] + syllables[rand.nextInt(10)] + syllables[rand.nextInt(10)],
+                         (rand.nextInt(10) == 0 ? "BC" : "GC"), rand.nextDouble() / 2, rand.nextDouble() * 1000);
+        }
+        return table;
+    }
+
+    public static void main(String[] args) {
+        int passes = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        Random rand = new Random(0);
+        VoltTable tables[] = {
+            stockTable(rand, 15),        // NewOrder: getStockInfo for each item
+            orderLineTable(rand, 150),   // StockLevel/OrderStatus: order lines for the last orders
+            customerTable(rand, 30),     // Payment/OrderStatus: getCustomersByLastName
+        };
+
+        Runner runners[] = {
+            new Runner("boxed get()") {
+                @Override
+                long scan(VoltTable table) {
+                    long total = 0;
+                    final int cols = table.getColumnCount();
+                    table.resetRowPosition();
+                    while (table.advanceRow()) {
+                        for (int i = 0; i < cols; i++) {
+                            total += table.get(i).hashCode();
+                        }
+                    }
+                    return total;
+                }
+            },
+            new Runner("typed by name") {
+                @Override
+                long scan(VoltTable table) {
+                    long total = 0;
+                    final int cols = table.getColumnCount();
+                    String names[] = new String[cols];
+                    for (int i = 0; i < cols; i++) names[i] = table.getColumnName(i);
+                    table.resetRowPosition();
+                    while (table.advanceRow()) {
+                        for (int i = 0; i < cols; i++) {
+                            switch (table.getColumnType(i)) {
+                                case STRING:
+                                    total += table.getString(names[i]).length();
+                                    break;
+                                case FLOAT:
+                                    total += (long)table.getDouble(names[i]);
+                                    break;
+                                case TIMESTAMP:
+                                    total += table.getTimestampAsLong(names[i]);
+                                    break;
+                                default:
+                                    total += table.getLong(names[i]);
+                            }
+                        }
+                    }
+                    return total;
+                }
+            },
+            new Runner("typed by index") {
+                @Override
+                long scan(VoltTable table) {
+                    long total = 0;
+                    final int cols = table.getColumnCount();
+                    table.resetRowPosition();
+                    while (table.advanceRow()) {
+                        for (int i = 0; i < cols; i++) {
+                            switch (table.getColumnType(i)) {
+                                case STRING:
+                                    total += table.getStringView(i).length();
+                                    break;
+                                case FLOAT:
+                                    total += (long)table.getDouble(i);
+                                    break;
+                                case TIMESTAMP:
+                                    total += table.getTimestampAsLong(i);
+                                    break;
+                                default:
+                                    total += table.getLong(i);
+                            }
+                        }
+                    }
+                    return total;
+                }
+            },
+        };
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean)threads;
+        }
+        final long thread_id = Thread.currentThread().getId();
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "Warming up..." : "Results:");
+            for (Runner runner : runners) {
+                for (VoltTable table : tables) {
+                    long alloc_start = (allocations != null ? allocations.getThreadAllocatedBytes(thread_id) : 0);
+                    long start = System.nanoTime();
+                    long total = 0;
+                    for (int p = 0; p < passes; p++) {
+                        total += runner.scan(table);
+                    }
+                    long nanos = System.nanoTime() - start;
+                    long alloc = (allocations != null ? allocations.getThreadAllocatedBytes(thread_id) - alloc_start : -1);
+                    long rows = (long)passes * table.getRowCount();
+                    if (round > 0) {
+                        System.out.printf("%-16s %-8s %8.1f ns/row %10.1f bytes/row  [%d]\n",
+                                          runner.name, table.getColumnName(0).substring(0, 2),
+                                          nanos / (double)rows, alloc / (double)rows, total % 10);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.log4j.Logger;
 import org.voltdb.VoltTable;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStats;
 import org.voltdb.client.ClientStatusListener;
 import org.voltdb.client.NoConnectionsException;
 import org.voltdb.client.ProcCallException;
@@ -241,4 +242,9 @@ public class BlockingClient extends Semaphore implements Client {
     public ProfileMeasurement getQueueTime() {
         return this.inner.getQueueTime();
     }
+
+    @Override
+    public ClientStats getClientStats() {
+        return this.inner.getClientStats();
+    }
 }
@@ -317,4 +317,9 @@ public class MockVoltClient implements Client {
     public ProfileMeasurement getQueueTime() {
         return null;
     }
+
+    @Override
+    public ClientStats getClientStats() {
+        return null;
+    }
 }
@@ -34,6 +34,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
+import org.json.JSONObject;
 import org.junit.Test;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.StoredProcedureInvocation;
@@ -354,6 +355,136 @@ public class TestDistributer extends TestCase {
         }
     }
 
+    public void testPipelinedQueue() throws Exception {
+        final int num_invocations = 100;
+        MockVolt volt = new MockVolt(20003);
+        volt.start();
+        Distributer dist = null;
+        try {
+            dist = new Distributer();
+            dist.enablePipelining(1000, 8);
+            dist.setCallbackThreads(2);
+            dist.createConnection(null, "localhost", 20003, "", "");
+            assertTrue(volt.handler != null);
+
+            final AtomicInteger callbacks = new AtomicInteger();
+            final AtomicBoolean networkThread = new AtomicBoolean(false);
+            ProcedureCallback callback = new ProcedureCallback() {
+                @Override
+                public void clientCallback(ClientResponse clientResponse) {
+                    assertEquals(Status.OK, clientResponse.getStatus());
+                    if (Thread.currentThread().getName().contains("Callback") == false) {
+                        networkThread.set(true);
+                    }
+                    callbacks.incrementAndGet();
+                }
+            };
+            for (int i = 0; i < num_invocations; i++) {
+                assertTrue(dist.queue(new StoredProcedureInvocation(i, "i1", new Integer(i)), callback, 128, true));
+            } // FOR
+            dist.drain();
+
+            assertEquals(num_invocations, volt.handler.roundTrips.get());
+            assertEquals(num_invocations, callbacks.get());
+            assertFalse(networkThread.get());
+
+            // The invocations should have gone out in batches
+            long counters[] = dist.getPipelineCounters();
+            assertEquals(num_invocations, counters[1]);
+            assertTrue(counters[0] > 0);
+            assertTrue(counters[0] < num_invocations);
+        } finally {
+            if (dist != null) dist.shutdown();
+            volt.shutdown();
+            volt.join();
+        }
+    }
+
+    public void testClientStats() throws Exception {
+        final int num_invocations = 50;
+        MockVolt volt = new MockVolt(20004);
+        volt.start();
+        Distributer dist = null;
+        try {
+            dist = new Distributer();
+            dist.createConnection(null, "localhost", 20004, "", "");
+            assertTrue(volt.handler != null);
+
+            for (int i = 0; i < num_invocations; i++) {
+                String procName = (i % 2 == 0 ? "i1" : "i2");
+                assertTrue(dist.queue(new StoredProcedureInvocation(i, procName, new Integer(i)), new ProcCallback(), 128, true));
+            } // FOR
+            dist.drain();
+
+            ClientStats stats = dist.getClientStats();
+            for (String procName : new String[]{ "i1", "i2" }) {
+                ClientStats.ProcedureCounters pc = stats.getProcedure(procName);
+                assertNotNull(procName, pc);
+                assertEquals(num_invocations / 2, pc.getRoundtrip().getCount());
+                assertEquals(num_invocations / 2, pc.getClusterRoundtrip().getCount());
+                assertEquals(0, pc.getErrorCount());
+                assertTrue(pc.getRoundtrip().getPercentile(0.99) <= pc.getRoundtrip().getMax());
+            } // FOR
+            assertEquals(1, stats.getConnections().size());
+            ClientStats.ConnectionCounters cc = stats.getConnections().iterator().next();
+            assertTrue(cc.isConnected());
+            assertEquals(20004, cc.getPort());
+            assertEquals(0, cc.getInFlightCount());
+
+            JSONObject json = new JSONObject(stats.toJSONString());
+            JSONObject procs = json.getJSONObject(ClientStats.Members.PROCEDURES.name());
+            assertEquals(num_invocations / 2, procs.getJSONObject("i1").getJSONObject("ROUNDTRIP").getLong("COUNT"));
+            assertEquals(1, json.getJSONArray(ClientStats.Members.CONNECTIONS.name()).length());
+        } finally {
+            if (dist != null) dist.shutdown();
+            volt.shutdown();
+            volt.join();
+        }
+    }
+
+    public void testSiteFailover() throws Exception {
+        final int num_invocations = 20;
+        MockVolt volt0 = new MockVolt(20005);
+        volt0.start();
+        MockVolt volt1 = new MockVolt(20006);
+        volt1.start();
+        Distributer dist = null;
+        try {
+            dist = new Distributer();
+            dist.setLeastLoadedRouting(true);
+            dist.createConnection(0, "localhost", 20005, "", "");
+            dist.createConnection(1, "localhost", 20006, "", "");
+            assertTrue(volt0.handler != null);
+            assertTrue(volt1.handler != null);
+
+            for (int i = 0; i < num_invocations; i++) {
+                assertTrue(dist.queue(new StoredProcedureInvocation(i, "i1", new Integer(i)), new ProcCallback(), 128, true, 0));
+            } // FOR
+            dist.drain();
+            assertEquals(num_invocations, volt0.handler.roundTrips.get());
+            assertEquals(0, volt1.handler.roundTrips.get());
+
+            // Kill site 0. Its invocations should now get rerouted to site 1
+            volt0.shutdown();
+            volt0.join();
+            for (int i = 0; i < 100 && dist.getConnectionCount() > 1; i++) {
+                Thread.sleep(50);
+            } // FOR
+            assertEquals(1, dist.getConnectionCount());
+
+            for (int i = 0; i < num_invocations; i++) {
+                assertTrue(dist.queue(new StoredProcedureInvocation(i, "i1", new Integer(i)), new ProcCallback(), 128, true, 0));
+            } // FOR
+            dist.drain();
+            assertEquals(num_invocations, volt1.handler.roundTrips.get());
+        } finally {
+            if (dist != null) dist.shutdown();
+            volt0.shutdown();
+            volt1.shutdown();
+            volt1.join();
+        }
+    }
+
     public void testClient() {
        MockVolt volt = null;
 
@@ -0,0 +1,101 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+public class TestLatencyHistogram extends TestCase {
+
+    /**
+     * testExactPercentiles
+     */
+    public void testExactPercentiles() throws Exception {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            h.add(i);
+        } // FOR
+        assertEquals(100, h.getCount());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.0001);
+        assertEquals(50, h.getPercentile(0.50));
+        assertEquals(95, h.getPercentile(0.95));
+        assertEquals(99, h.getPercentile(0.99));
+        assertEquals(100, h.getPercentile(1.0));
+        assertEquals(1, h.getPercentile(0.0));
+    }
+
+    /**
+     * testLargeValues
+     */
+    public void testLargeValues() throws Exception {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(-5);
+        h.add(1500);
+        h.add(Integer.MAX_VALUE);
+        assertEquals(3, h.getCount());
+        assertEquals(0, h.getPercentile(0.1));
+        // 1500 is in the [1024, 2047] bucket
+        assertEquals(2047, h.getPercentile(0.5));
+        assertEquals(Integer.MAX_VALUE, h.getPercentile(1.0));
+    }
+
+    /**
+     * testConcurrentAdd
+     */
+    public void testConcurrentAdd() throws Exception {
+        final LatencyHistogram h = new LatencyHistogram();
+        final int num_threads = 4;
+        final int num_values = 10000;
+        Thread threads[] = new Thread[num_threads];
+        for (int t = 0; t < num_threads; t++) {
+            final Random rand = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < num_values; i++) {
+                        h.add(rand.nextInt(5000));
+                    } // FOR
+                }
+            };
+            threads[t].start();
+        } // FOR
+        for (Thread t : threads) t.join();
+        assertEquals(num_threads * num_values, h.getCount());
+        assertTrue(h.getMax() < 5000);
+
+        JSONStringer stringer = new JSONStringer();
+        stringer.object();
+        h.toJSON(stringer);
+        stringer.endObject();
+        JSONObject json = new JSONObject(stringer.toString());
+        assertEquals(h.getCount(), json.getLong("COUNT"));
+        assertTrue(json.getLong("P50") <= json.getLong("P99"));
+        assertTrue(json.getLong("P99") <= json.getLong("MAX"));
+    }
+}
@@ -388,6 +388,65 @@ public class TestVoltCompiler extends BaseTestCase {
         assertTrue(found);
     }
 
+    public void testColumnarTable() throws IOException {
+        final VoltProjectBuilder project = new VoltProjectBuilder("sqltypessuite");
+        project.addSchema(TestSQLTypesSuite.class.getResource("sqltypessuite-ddl.sql"));
+        project.addProcedures(org.voltdb.regressionsuites.sqltypesprocs.Insert.class);
+        project.addTablePartitionInfo("NO_NULLS", "PKEY");
+        project.addColumnarTable("NO_NULLS");
+        try {
+            assertTrue(project.compile("/tmp/columnartest.jar"));
+            final String catalogContents =
+                JarReader.readFileFromJarfile("/tmp/columnartest.jar", "catalog.txt");
+            final Catalog cat = new Catalog();
+            cat.execute(catalogContents);
+
+            CatalogMap<Table> tables = cat.getClusters().get("cluster").getDatabases().
+                get("database").getTables();
+            assertTrue(tables.get("NO_NULLS").getColumnar());
+            assertFalse(tables.get("ALLOW_NULLS").getColumnar());
+        } finally {
+            final File jar = new File("/tmp/columnartest.jar");
+            jar.delete();
+        }
+    }
+
+    public void testColumnarUnknownTable() throws IOException {
+        final String simpleSchema =
+            "create table books (cash integer default 23, title varchar(3) default 'foo', PRIMARY KEY(cash));";
+
+        final File schemaFile = VoltProjectBuilder.writeStringToTempFile(simpleSchema);
+        final String schemaPath = schemaFile.getPath();
+
+        final String simpleProject =
+            "<?xml version=\"1.0\"?>\n" +
+            "<project>" +
+            "<database name='database'>" +
+            "<schemas><schema path='" + schemaPath + "' /></schemas>" +
+            "<procedures><procedure class='org.voltdb.compiler.procedures.AddBook'/></procedures>" +
+            "<columnar><table name='MAGAZINES' /></columnar>" +
+            "</database>" +
+            "</project>";
+
+        final File projectFile = VoltProjectBuilder.writeStringToTempFile(simpleProject);
+        final String projectPath = projectFile.getPath();
+
+        final VoltCompiler compiler = new VoltCompiler();
+        final ClusterConfig cluster_config = new ClusterConfig(1, 1, 0, "localhost");
+
+        final boolean success = compiler.compile(projectPath, cluster_config,
+                                                 "testout.jar", System.out, null);
+
+        assertFalse(success);
+
+        boolean found = false;
+        for (final VoltCompiler.Feedback fb : compiler.m_errors) {
+            if (fb.message.indexOf("columnar") > 0)
+                found = true;
+        }
+        assertTrue(found);
+    }
+
     public void testXMLFileWithBadDDL() throws IOException {
         final String simpleSchema =
             "create table books (id integer default 0, strval varchar(33000) default '', PRIMARY KEY(id));";
@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.exportclient;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.voltdb.elt.ELTProtoMessage.AdvertisedDataSource;
+import org.voltdb.utils.CSVEscaperUtil;
+
+/**
+ * Compares the throughput of the CSV export path (ExportToFileClient)
+ * against the binary segment path (ExportToBinaryFileClient), with and
+ * without compression. Both are fed the same pre-encoded poll blocks.
+ *
+ * command line args:
+ *   [{number of blocks} [{rows per block}]]
+ */
+public class ExportSegmentMicrobench
+{
+    static abstract class Runner
+    {
+        final String m_name;
+
+        Runner(String name)
+        {
+            m_name = name;
+        }
+
+        abstract ExportDecoderBase decoder(File outdir, AdvertisedDataSource source);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numBlocks = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+        int rowsPerBlock = (args.length > 1 ? Integer.parseInt(args[1]) : 500);
+
+        final AdvertisedDataSource source = TestExportSegmentFiles.makeSource();
+        Random rand = new Random(0);
+        ArrayList<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+        int id = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            ArrayList<Object[]> rows = new ArrayList<Object[]>();
+            for (int r = 0; r < rowsPerBlock; r++) {
+                rows.add(new Object[] {
+                    id++,
+                    "warehouse, \"" + rand.nextInt(1000) + "\"",
+                    rand.nextDouble(),
+                    Long.valueOf(rand.nextInt(1000)),
+                });
+            }
+            blocks.add(TestExportSegmentFiles.encodeBlock(rows));
+        }
+
+        Runner runners[] = {
+            new Runner("csv") {
+                @Override
+                ExportDecoderBase decoder(File outdir, AdvertisedDataSource source) {
+                    return new ExportToFileClient(new CSVEscaperUtil.CSVEscaper(), "bench", outdir, null, null).constructELTDecoder(source);
+                }
+            },
+            new Runner("binary") {
+                @Override
+                ExportDecoderBase decoder(File outdir, AdvertisedDataSource source) {
+                    return new ExportToBinaryFileClient("bench", outdir, false, 64 * 1024 * 1024, null, null).constructELTDecoder(source);
+                }
+            },
+            new Runner("binary+deflate") {
+                @Override
+                ExportDecoderBase decoder(File outdir, AdvertisedDataSource source) {
+                    return new ExportToBinaryFileClient("bench", outdir, true, 64 * 1024 * 1024, null, null).constructELTDecoder(source);
+                }
+            },
+        };
+
+        long totalRows = (long)numBlocks * rowsPerBlock;
+        for (Runner runner : runners) {
+            File outdir = new File(System.getProperty("java.io.tmpdir"), "ExportSegmentMicrobench-" + runner.m_name);
+            outdir.mkdirs();
+            ExportDecoderBase decoder = runner.decoder(outdir, source);
+
+            long start = System.nanoTime();
+            for (ByteBuffer block : blocks) {
+                decoder.processBlock(block.duplicate());
+            }
+            decoder.noDataReceived(0);
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+            long bytes = 0;
+            for (File f : outdir.listFiles()) {
+                bytes += f.length();
+                f.delete();
+            }
+            outdir.delete();
+            System.out.printf("%-16s %10.0f rows/s  %8.2f MB on disk\n",
+                              runner.m_name, totalRows / seconds, bytes / 1048576.0);
+        }
+    }
+}
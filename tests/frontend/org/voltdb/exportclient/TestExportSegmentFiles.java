@@ -0,0 +1,261 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2010 VoltDB L.L.C.
+ *
+ * VoltDB is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * VoltDB is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.voltdb.exportclient;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltType;
+import org.voltdb.elt.ELTProtoMessage.AdvertisedDataSource;
+import org.voltdb.messaging.FastSerializer;
+
+public class TestExportSegmentFiles extends TestCase
+{
+    static final String TABLE_NAME = "WAREHOUSE";
+    static final int NUM_BLOCKS = 50;
+    static final int ROWS_PER_BLOCK = 100;
+
+    private final File m_outdir = new File(System.getProperty("java.io.tmpdir"), "TestExportSegmentFiles");
+    private final Random m_rand = new Random(0);
+
+    static AdvertisedDataSource makeSource()
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<VoltType> types = new ArrayList<VoltType>();
+        names.add("W_ID");   types.add(VoltType.INTEGER);
+        names.add("W_NAME"); types.add(VoltType.STRING);
+        names.add("W_YTD");  types.add(VoltType.FLOAT);
+        names.add("W_TAX");  types.add(VoltType.BIGINT);
+        return new AdvertisedDataSource(0, 0, TABLE_NAME, names, types);
+    }
+
+    /**
+     * Serialize a row the same way that the EE's export tuple stream does:
+     * the null flags followed by the non-null column values
+     */
+    static byte[] encodeRow(Object row[]) throws IOException
+    {
+        FastSerializer fs = new FastSerializer();
+        byte nulls = 0;
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) nulls |= (byte)(0x80 >>> i);
+        }
+        fs.writeByte(nulls);
+        if (row[0] != null) fs.writeLong((Integer)row[0]);
+        if (row[1] != null) {
+            byte strdata[] = ((String)row[1]).getBytes("UTF-8");
+            fs.writeInt(strdata.length);
+            fs.write(strdata);
+        }
+        if (row[2] != null) fs.writeDouble((Double)row[2]);
+        if (row[3] != null) fs.writeLong((Long)row[3]);
+        return fs.getBytes();
+    }
+
+    static ByteBuffer encodeBlock(ArrayList<Object[]> rows) throws IOException
+    {
+        ArrayList<byte[]> encoded = new ArrayList<byte[]>();
+        int size = 0;
+        for (Object row[] : rows) {
+            byte data[] = encodeRow(row);
+            encoded.add(data);
+            size += 4 + data.length;
+        }
+        ByteBuffer block = ByteBuffer.allocate(size);
+        for (byte data[] : encoded) {
+            block.putInt(data.length).put(data);
+        }
+        block.flip();
+        return block;
+    }
+
+    private Object[] randomRow(int id)
+    {
+        return new Object[] {
+            id,
+            (m_rand.nextInt(10) == 0 ? null : "name" + m_rand.nextInt(100)),
+            m_rand.nextDouble(),
+            (m_rand.nextInt(10) == 0 ? null : Long.valueOf(m_rand.nextInt(1000))),
+        };
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        m_outdir.mkdirs();
+        cleanup();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        cleanup();
+        m_outdir.delete();
+    }
+
+    private void cleanup()
+    {
+        File files[] = m_outdir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    private void checkRoundTrip(boolean compress) throws Exception
+    {
+        AdvertisedDataSource source = makeSource();
+        ExportSegmentWriter writer = new ExportSegmentWriter(m_outdir, "test", source, compress, 32 * 1024);
+
+        ArrayList<Object[]> expected = new ArrayList<Object[]>();
+        int id = 0;
+        for (int b = 0; b < NUM_BLOCKS; b++) {
+            ArrayList<Object[]> rows = new ArrayList<Object[]>();
+            for (int r = 0; r < ROWS_PER_BLOCK; r++) {
+                rows.add(randomRow(id++));
+            }
+            expected.addAll(rows);
+            writer.writeBlock(encodeBlock(rows));
+        } // FOR
+        writer.close();
+        assertEquals(expected.size(), writer.getRowCount());
+        assertTrue(writer.getSegmentCount() > 1);
+        if (compress) {
+            assertTrue(writer.getStoredBytes() < writer.getRawBytes());
+        } else {
+            assertEquals(writer.getRawBytes(), writer.getStoredBytes());
+        }
+
+        int offset = 0;
+        for (int segment = 0; segment < writer.getSegmentCount(); segment++) {
+            File file = ExportSegmentWriter.getSegmentFile(m_outdir, "test", TABLE_NAME, segment);
+            assertTrue(file.getPath(), file.exists());
+            ExportSegmentReader reader = new ExportSegmentReader(file);
+            assertEquals(TABLE_NAME, reader.getSource().tableName());
+            assertEquals(source.columnTypes(), reader.getSource().columnTypes());
+            assertEquals(source.columnNames(), reader.getSource().columnNames());
+
+            ByteBuffer block = null;
+            while ((block = reader.nextBlock()) != null) {
+                int count = 0;
+                while (block.hasRemaining()) {
+                    byte rowData[] = new byte[block.getInt()];
+                    block.get(rowData);
+                    Object row[] = reader.decodeRow(rowData);
+                    Object expected_row[] = expected.get(offset++);
+                    assertEquals(expected_row.length, row.length);
+                    for (int i = 0; i < row.length; i++) {
+                        assertEquals("[" + offset + ", " + i + "]", expected_row[i], row[i]);
+                    }
+                    count++;
+                } // WHILE
+                assertEquals(reader.getBlockRowCount(), count);
+            } // WHILE
+            reader.close();
+        } // FOR
+        assertEquals(expected.size(), offset);
+    }
+
+    /**
+     * testRawSegments
+     */
+    public void testRawSegments() throws Exception
+    {
+        checkRoundTrip(false);
+    }
+
+    /**
+     * testCompressedSegments
+     */
+    public void testCompressedSegments() throws Exception
+    {
+        checkRoundTrip(true);
+    }
+
+    /**
+     * testRestart
+     */
+    public void testRestart() throws Exception
+    {
+        AdvertisedDataSource source = makeSource();
+        int id = 0;
+        int segments = 0;
+        for (int run = 0; run < 2; run++) {
+            ExportSegmentWriter writer = new ExportSegmentWriter(m_outdir, "test", source, true, 32 * 1024);
+            for (int b = 0; b < NUM_BLOCKS; b++) {
+                ArrayList<Object[]> rows = new ArrayList<Object[]>();
+                for (int r = 0; r < ROWS_PER_BLOCK; r++) {
+                    rows.add(randomRow(id++));
+                }
+                writer.writeBlock(encodeBlock(rows));
+            } // FOR
+            writer.close();
+            ArrayList<Object[]> rows = new ArrayList<Object[]>();
+            rows.add(randomRow(id));
+            try {
+                writer.writeBlock(encodeBlock(rows));
+                fail("Expected IOException");
+            } catch (IOException ex) {
+                // Expected
+            }
+
+            // The second writer should start after the first one's segments
+            segments += writer.getSegmentCount();
+            assertEquals(segments, writer.getNextSegment());
+        } // FOR
+
+        int count = 0;
+        for (int segment = 0; segment < segments; segment++) {
+            File file = ExportSegmentWriter.getSegmentFile(m_outdir, "test", TABLE_NAME, segment);
+            ExportSegmentReader reader = new ExportSegmentReader(file);
+            ByteBuffer block = null;
+            while ((block = reader.nextBlock()) != null) {
+                while (block.hasRemaining()) {
+                    byte rowData[] = new byte[block.getInt()];
+                    block.get(rowData);
+                    assertEquals(count++, reader.decodeRow(rowData)[0]);
+                } // WHILE
+            } // WHILE
+            reader.close();
+        } // FOR
+        assertEquals(id, count);
+        assertFalse(ExportSegmentWriter.getSegmentFile(m_outdir, "test", TABLE_NAME, segments).exists());
+    }
+
+    /**
+     * testBadSegment
+     */
+    public void testBadSegment() throws Exception
+    {
+        File file = new File(m_outdir, "bogus." + ExportSegmentWriter.EXTENSION);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        out.close();
+        try {
+            new ExportSegmentReader(file);
+            fail("Expected IOException");
+        } catch (IOException ex) {
+            // Expected
+        }
+    }
+}
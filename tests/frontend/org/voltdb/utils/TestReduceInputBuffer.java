@@ -0,0 +1,157 @@
+package org.voltdb.utils;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
+
+import edu.brown.statistics.Histogram;
+
+public class TestReduceInputBuffer extends TestCase {
+
+    static final VoltTable.ColumnInfo[] LONG_SCHEMA = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+        new VoltTable.ColumnInfo("COUNTER", VoltType.BIGINT),
+    };
+    static final VoltTable.ColumnInfo[] STRING_SCHEMA = new VoltTable.ColumnInfo[] {
+        new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+        new VoltTable.ColumnInfo("COUNTER", VoltType.BIGINT),
+    };
+
+    static final int NUM_ROWS = 5000;
+    static final int NUM_KEYS = 200;
+    static final int NUM_CHUNKS = 10;
+    static final Random rand = new Random(0);
+
+    private final File spill_dir = new File(System.getProperty("java.io.tmpdir"), "TestReduceInputBuffer");
+
+    /**
+     * Load NUM_ROWS random rows into the buffer in several chunks, and
+     * record how many rows each key got in the histogram
+     */
+    private <K> void load(ReduceInputBuffer<K> buffer, VoltTable.ColumnInfo[] schema, Histogram<Object> expected) {
+        VoltTable vt = new VoltTable(schema);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            int key = rand.nextInt(NUM_KEYS);
+            Object row[] = {
+                (schema[0].getType() == VoltType.STRING ? "key" + key : Long.valueOf(key)),
+                Long.valueOf(i)
+            };
+            vt.addRow(row);
+            expected.put(row[0]);
+            if (vt.getRowCount() == NUM_ROWS / NUM_CHUNKS) {
+                buffer.add(vt);
+                vt.clearRowData();
+            }
+        } // FOR
+        buffer.add(vt);
+        assertEquals(NUM_ROWS, buffer.getRowCount());
+    }
+
+    /**
+     * Drain the buffer and check that every key comes back once with all of its rows,
+     * that the keys are in order if sorted is true, and that the rows for each
+     * key come back in the order that they were added
+     */
+    @SuppressWarnings("unchecked")
+    private <K> void check(ReduceInputBuffer<K> buffer, Histogram<Object> expected, boolean sorted) {
+        Histogram<Object> actual = new Histogram<Object>();
+        Comparable<Object> last_key = null;
+        while (buffer.nextKey()) {
+            K key = buffer.getKey();
+            assertNotNull(key);
+            assertFalse(key.toString(), actual.contains(key));
+            if (sorted && last_key != null) {
+                assertTrue(last_key + " -> " + key, last_key.compareTo(key) < 0);
+            }
+            last_key = (Comparable<Object>)key;
+
+            long last_counter = -1;
+            Iterator<VoltTableRow> rows = buffer.getRows();
+            while (rows.hasNext()) {
+                VoltTableRow row = rows.next();
+                assertEquals(key, row.get(0));
+                long counter = row.getLong(1);
+                assertTrue(last_counter < counter);
+                last_counter = counter;
+                actual.put(key);
+            } // WHILE
+        } // WHILE
+        assertFalse(buffer.nextKey());
+
+        assertEquals(expected.getValueCount(), actual.getValueCount());
+        for (Object key : expected.values()) {
+            assertEquals(key.toString(), expected.get(key), actual.get(key));
+        } // FOR
+    }
+
+    /**
+     * testSortGrouping
+     */
+    public void testSortGrouping() throws Exception {
+        ReduceInputBuffer<Long> buffer = new ReduceInputBuffer<Long>(new VoltTable(LONG_SCHEMA), false, Long.MAX_VALUE, spill_dir);
+        Histogram<Object> expected = new Histogram<Object>();
+        this.load(buffer, LONG_SCHEMA, expected);
+        assertEquals(0, buffer.getSpillCount());
+        this.check(buffer, expected, true);
+        buffer.close();
+    }
+
+    /**
+     * testHashGrouping
+     */
+    public void testHashGrouping() throws Exception {
+        for (VoltTable.ColumnInfo schema[] : new VoltTable.ColumnInfo[][]{ LONG_SCHEMA, STRING_SCHEMA }) {
+            ReduceInputBuffer<Object> buffer = new ReduceInputBuffer<Object>(new VoltTable(schema), true, Long.MAX_VALUE, spill_dir);
+            Histogram<Object> expected = new Histogram<Object>();
+            this.load(buffer, schema, expected);
+            assertEquals(0, buffer.getSpillCount());
+            assertTrue(buffer.isHashGrouping());
+            this.check(buffer, expected, false);
+            buffer.close();
+        } // FOR
+    }
+
+    /**
+     * testSpill
+     */
+    public void testSpill() throws Exception {
+        for (boolean hash : new boolean[]{ false, true }) {
+            ReduceInputBuffer<String> buffer = new ReduceInputBuffer<String>(new VoltTable(STRING_SCHEMA), hash, 16384, spill_dir);
+            Histogram<Object> expected = new Histogram<Object>();
+            this.load(buffer, STRING_SCHEMA, expected);
+            assertTrue(buffer.getSpillCount() > 1);
+            assertFalse(buffer.isHashGrouping());
+            this.check(buffer, expected, true);
+            buffer.close();
+            String files[] = spill_dir.list();
+            assertTrue(files == null || files.length == 0);
+        } // FOR
+    }
+
+    /**
+     * testSkipRows
+     */
+    public void testSkipRows() throws Exception {
+        ReduceInputBuffer<Long> buffer = new ReduceInputBuffer<Long>(new VoltTable(LONG_SCHEMA), false, 16384, spill_dir);
+        Histogram<Object> expected = new Histogram<Object>();
+        this.load(buffer, LONG_SCHEMA, expected);
+        assertTrue(buffer.getSpillCount() > 0);
+
+        // Only look at the first row for each key. The rest should get skipped
+        int keys = 0;
+        while (buffer.nextKey()) {
+            Iterator<VoltTableRow> rows = buffer.getRows();
+            assertTrue(rows.hasNext());
+            assertEquals(buffer.getKey().longValue(), rows.next().getLong(0));
+            keys++;
+        } // WHILE
+        assertEquals(expected.getValueCount(), keys);
+        buffer.close();
+    }
+}